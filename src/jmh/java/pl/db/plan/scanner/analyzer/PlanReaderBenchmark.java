@@ -0,0 +1,66 @@
+package pl.db.plan.scanner.analyzer;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares parsing of large plans into tree ({@link ExecutionPlanAnalyzer}) with {@link StreamingPlanReader}.
+ * Plan is synthetic {@code Append} of hash joins, like a {@code UNION ALL} over partitions, with {@code nodes}
+ * nodes in total. Run with {@code gradlew jmh -Pjmh.includes=PlanReaderBenchmark}, {@code gc.alloc.rate.norm}
+ * shows bytes allocated per plan.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class PlanReaderBenchmark {
+
+    @Param({"1000", "10000"})
+    public int nodes;
+
+    private final ExecutionPlanAnalyzer analyzer = new ExecutionPlanAnalyzer();
+    private final StreamingPlanReader reader = new StreamingPlanReader();
+    private String json;
+
+    @Setup
+    public void setUp() {
+        // every branch has 4 nodes: Hash Join, Seq Scan, Hash, Index Scan
+        int branches = (nodes - 1) / 4;
+        StringBuilder plan = new StringBuilder(nodes * 600).append("""
+                [{"Plan": {"Node Type": "Append", "Parallel Aware": false, "Startup Cost": 0.0, "Total Cost": %d.0,
+                  "Plan Rows": %d, "Plan Width": 64, "Plans": [
+                """.formatted(branches * 2040, branches * 5000));
+        for (int i = 0; i < branches; i++) {
+            if (i > 0) {
+                plan.append(',');
+            }
+            plan.append("""
+                    {"Node Type": "Hash Join", "Parent Relationship": "Member", "Parallel Aware": false, "Join Type": "Inner",
+                     "Startup Cost": 12.5, "Total Cost": 2040.75, "Plan Rows": 5000, "Plan Width": 64, "Inner Unique": true,
+                     "Hash Cond": "(al%1$d.person_id = p%1$d.id)", "Plans": [
+                       {"Node Type": "Seq Scan", "Parent Relationship": "Outer", "Parallel Aware": false,
+                        "Relation Name": "activity_log_%1$d", "Alias": "al%1$d", "Startup Cost": 0.00, "Total Cost": 1887.00,
+                        "Plan Rows": 50000, "Plan Width": 40, "Filter": "((action)::text = 'LOGIN'::text)"},
+                       {"Node Type": "Hash", "Parent Relationship": "Inner", "Parallel Aware": false, "Startup Cost": 8.30,
+                        "Total Cost": 8.30, "Plan Rows": 1, "Plan Width": 24, "Plans": [
+                          {"Node Type": "Index Scan", "Parent Relationship": "Outer", "Parallel Aware": false,
+                           "Scan Direction": "Forward", "Index Name": "person_%1$d_pkey", "Relation Name": "person_%1$d",
+                           "Alias": "p%1$d", "Startup Cost": 0.29, "Total Cost": 8.30, "Plan Rows": 1, "Plan Width": 24,
+                           "Index Cond": "(id = 1)"}]}]}
+                    """.formatted(i));
+        }
+        json = plan.append("]}}]").toString();
+    }
+
+    @Benchmark
+    public ExecutionPlan tree() {
+        return analyzer.analyze("select ...", json);
+    }
+
+    @Benchmark
+    public PlanSummary streaming() throws IOException {
+        return reader.read("select ...", new StringReader(json));
+    }
+}
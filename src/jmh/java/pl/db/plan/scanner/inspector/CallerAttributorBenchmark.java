@@ -0,0 +1,68 @@
+package pl.db.plan.scanner.inspector;
+
+import org.openjdk.jmh.annotations.*;
+import org.springframework.data.repository.Repository;
+import pl.db.plan.scanner.entities.Person;
+
+import java.lang.reflect.Proxy;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Measures overhead {@link CallerAttributor} adds to every statement. Hibernate frames between repository
+ * and {@link SqlCaptureInspector} are simulated by recursion of given depth. {@code attributed} walks the stack
+ * for every statement, {@code sampled} only for sampled executions of the shape, as the inspector does.
+ * Run with {@code gradlew jmh -Pjmh.includes=CallerAttributorBenchmark}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class CallerAttributorBenchmark {
+
+    public interface BenchmarkRepository extends Repository<Person, Long> {
+        Object findByLastName();
+    }
+
+    @Param({"20", "80"})
+    public int depth;
+
+    private final CallerAttributor attributor = new CallerAttributor(256, 8, 1024, Duration.ofSeconds(1));
+    private final AtomicLong occurrence = new AtomicLong();
+    private BenchmarkRepository withAttribution;
+    private BenchmarkRepository withSampledAttribution;
+    private BenchmarkRepository withoutAttribution;
+
+    @Setup
+    public void setUp() {
+        withAttribution = proxy(() -> attributor.attribute());
+        // the same statement shape executed over and over again
+        withSampledAttribution = proxy(() -> attributor.attribute(occurrence.incrementAndGet()));
+        withoutAttribution = proxy(() -> null);
+    }
+
+    @Benchmark
+    public Object baseline() {
+        return withoutAttribution.findByLastName();
+    }
+
+    @Benchmark
+    public Object attributed() {
+        return withAttribution.findByLastName();
+    }
+
+    @Benchmark
+    public Object sampled() {
+        return withSampledAttribution.findByLastName();
+    }
+
+    private BenchmarkRepository proxy(Supplier<Object> body) {
+        return (BenchmarkRepository) Proxy.newProxyInstance(BenchmarkRepository.class.getClassLoader(),
+                new Class<?>[]{BenchmarkRepository.class}, (proxy, method, args) -> descend(depth, body));
+    }
+
+    private static Object descend(int remaining, Supplier<Object> body) {
+        return remaining == 0 ? body.get() : descend(remaining - 1, body);
+    }
+}
@@ -0,0 +1,56 @@
+package pl.db.plan.scanner.inspector;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Compares previous, regex based splitting of jpql comment and sql in {@link SqlCaptureInspector} with
+ * {@link StatementSplitter}. Run with {@code gradlew jmh -Pjmh.includes=StatementSplitterBenchmark},
+ * {@code gc.alloc.rate.norm} shows bytes allocated per call.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class StatementSplitterBenchmark {
+
+    private static final Pattern PATTERN = Pattern.compile("(/\\*.*?\\*/)(\\s+.*)", Pattern.DOTALL);
+
+    @Param({
+        "/* SELECT a FROM ActivityLog a WHERE a.person.id = :personId AND a.action = :action */ "
+            + "select al1_0.id,al1_0.action,al1_0.person_id,al1_0.timestamp from activity_log al1_0 "
+            + "where al1_0.person_id=? and al1_0.action=?",
+        "select al1_0.id,al1_0.action,al1_0.person_id,al1_0.timestamp from activity_log al1_0 "
+            + "where al1_0.person_id=? and al1_0.action=?"
+    })
+    public String statement;
+
+    private final StatementSplitter splitter = new StatementSplitter();
+
+    @Benchmark
+    public void regex(Blackhole blackhole) {
+        Matcher matcher = PATTERN.matcher(statement);
+        if (matcher.matches()) {
+            blackhole.consume(matcher.group(1).trim());
+            blackhole.consume(matcher.group(2).trim());
+        } else {
+            blackhole.consume(statement);
+        }
+    }
+
+    @Benchmark
+    public SplitStatement scanner() {
+        // consumer never asks for strings, e.g. only fingerprint is computed from offsets
+        return splitter.split(statement);
+    }
+
+    @Benchmark
+    public void scannerMaterialized(Blackhole blackhole) {
+        SplitStatement split = splitter.split(statement);
+        blackhole.consume(split.jpqlComment());
+        blackhole.consume(split.sql());
+    }
+}
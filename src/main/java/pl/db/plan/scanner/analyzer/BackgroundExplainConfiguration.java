@@ -0,0 +1,34 @@
+package pl.db.plan.scanner.analyzer;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import pl.db.plan.scanner.inspector.SqlCaptureInspector;
+
+/**
+ * Registers {@link BackgroundExplainer} as listener of {@link SqlCaptureInspector}. Explains run on own,
+ * small connection pool (not a bean, so it never replaces application data source), created from
+ * {@code spring.datasource.*} properties.
+ */
+@Configuration
+@ConditionalOnProperty(prefix = "plan.scanner.explain", name = "enabled", havingValue = "true")
+public class BackgroundExplainConfiguration {
+
+    @Bean(destroyMethod = "close")
+    public BackgroundExplainer backgroundExplainer(DataSourceProperties dataSourceProperties,
+                                                   BackgroundExplainProperties properties,
+                                                   SqlCaptureInspector inspector) {
+        HikariDataSource pool = dataSourceProperties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+        pool.setPoolName("plan-explain");
+        pool.setMaximumPoolSize(properties.poolSize());
+        pool.setMinimumIdle(0);
+        pool.setReadOnly(true);
+        pool.setConnectionInitSql("SET statement_timeout = " + properties.statementTimeout().toMillis());
+
+        BackgroundExplainer explainer = new BackgroundExplainer(pool, properties);
+        inspector.addFingerprintListener(explainer);
+        return explainer;
+    }
+}
@@ -0,0 +1,24 @@
+package pl.db.plan.scanner.analyzer;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+
+/**
+ * Settings of {@link BackgroundExplainer}, bound from {@code plan.scanner.explain.*} properties.
+ *
+ * @param enabled whether new statement shapes are explained in the background
+ * @param sampleRate fraction (0 - 1) of new statement shapes which are explained
+ * @param poolSize maximum number of connections (and worker threads) used for explaining
+ * @param queueCapacity maximum number of statements waiting for explain, above that new ones are rejected
+ * @param statementTimeout {@code statement_timeout} of explain connections
+ */
+@ConfigurationProperties(prefix = "plan.scanner.explain")
+public record BackgroundExplainProperties(
+        @DefaultValue("false") boolean enabled,
+        @DefaultValue("0.1") double sampleRate,
+        @DefaultValue("1") int poolSize,
+        @DefaultValue("100") int queueCapacity,
+        @DefaultValue("5s") Duration statementTimeout) {
+}
@@ -0,0 +1,157 @@
+package pl.db.plan.scanner.analyzer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import pl.db.plan.scanner.inspector.FingerprintListener;
+import pl.db.plan.scanner.inspector.QueryFingerprint;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Explains a sample of newly seen statement shapes in the background, to detect full scans on live traffic.
+ * <p>
+ * Request threads only try to put the statement into a bounded queue, when the queue is full the statement
+ * is dropped, so we never block or slow down the application. Extra database load is limited by the size
+ * of the dedicated connection pool (one worker thread per connection) and its statement timeout.
+ */
+public class BackgroundExplainer implements FingerprintListener, AutoCloseable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(BackgroundExplainer.class);
+    private static final long CLOSE_TIMEOUT_SECONDS = 5;
+    private static final Set<String> EXPLAINABLE = Set.of("select", "insert", "update", "delete", "with", "values");
+
+    private final DataSource dataSource;
+    private final double sampleRate;
+    private final ThreadPoolExecutor executor;
+    private final ExecutionPlanAnalyzer analyzer = new ExecutionPlanAnalyzer(ExplainOptions.GENERIC_PLAN);
+    private final Map<Long, ExplainResult> results = new ConcurrentHashMap<>();
+    private final LongAdder sampledOut = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+
+    public BackgroundExplainer(DataSource dataSource, BackgroundExplainProperties properties) {
+        this.dataSource = dataSource;
+        this.sampleRate = properties.sampleRate();
+        AtomicInteger threads = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(
+                properties.poolSize(), properties.poolSize(),
+                0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(properties.queueCapacity()),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "plan-explain-" + threads.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                (runnable, pool) -> rejected.increment()
+        );
+    }
+
+    @Override
+    public void onNewFingerprint(QueryFingerprint fingerprint) {
+        if (!isExplainable(fingerprint.getSampleSql())) {
+            return;
+        }
+        if (ThreadLocalRandom.current().nextDouble() >= sampleRate) {
+            sampledOut.increment();
+            return;
+        }
+        executor.execute(() -> explain(fingerprint));
+    }
+
+    private void explain(QueryFingerprint fingerprint) {
+        long start = System.nanoTime();
+        ExplainResult result;
+        try (Connection connection = dataSource.getConnection()) {
+            ExecutionPlan plan = analyzer.analyze(connection, fingerprint.getSampleSql());
+            result = new ExplainResult(fingerprint, plan, elapsedMillis(start), null);
+            if (plan.hasFullScan()) {
+                LOG.warn("Full scan in plan of: {}\n{}", fingerprint.getSampleSql(), plan.findings(FindingType.FULL_SCAN));
+            }
+        } catch (SQLException | IllegalArgumentException e) {
+            result = new ExplainResult(fingerprint, null, elapsedMillis(start), e.getMessage());
+            LOG.debug("Could not explain: {}", fingerprint.getSampleSql(), e);
+        }
+        results.put(fingerprint.getId(), result);
+    }
+
+    private static boolean isExplainable(String sql) {
+        int start = 0;
+        while (start < sql.length() && !Character.isLetter(sql.charAt(start))) {
+            start++;
+        }
+        int end = start;
+        while (end < sql.length() && Character.isLetter(sql.charAt(end))) {
+            end++;
+        }
+        return EXPLAINABLE.contains(sql.substring(start, end).toLowerCase(Locale.ROOT));
+    }
+
+    private static long elapsedMillis(long start) {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+    }
+
+    /**
+     * @return explained statements, the most expensive first
+     */
+    public List<ExplainResult> getResults() {
+        return results.values().stream()
+                .sorted(Comparator.comparing(ExplainResult::totalCost, Comparator.nullsFirst(Comparator.naturalOrder())).reversed())
+                .toList();
+    }
+
+    public ExplainResult getResult(long fingerprint) {
+        return results.get(fingerprint);
+    }
+
+    /**
+     * @return number of statements skipped by sampling
+     */
+    public long getSampledOutCount() {
+        return sampledOut.sum();
+    }
+
+    /**
+     * @return number of statements dropped, because the queue was full
+     */
+    public long getRejectedCount() {
+        return rejected.sum();
+    }
+
+    /**
+     * @return number of statements waiting for explain
+     */
+    public int getQueueSize() {
+        return executor.getQueue().size();
+    }
+
+    /**
+     * Stops workers, waits a moment for running explains, and closes the dedicated connection pool.
+     */
+    @Override
+    public void close() {
+        executor.shutdownNow();
+        try {
+            if (!executor.awaitTermination(CLOSE_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                LOG.warn("Explains still running after {} s, closing their connections", CLOSE_TIMEOUT_SECONDS);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (dataSource instanceof AutoCloseable closeable) {
+            try {
+                closeable.close();
+            } catch (Exception e) {
+                LOG.warn("Could not close connection pool of background explains", e);
+            }
+        }
+    }
+}
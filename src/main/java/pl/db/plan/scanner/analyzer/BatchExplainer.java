@@ -0,0 +1,144 @@
+package pl.db.plan.scanner.analyzer;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Explains many statements in a single round trip: statements are passed as an array to a temporary
+ * PL/pgSQL function, which explains them one by one on the server and returns their JSON plans.
+ * <p>
+ * Every statement is explained in its own exception block (subtransaction), so a failing statement
+ * is reported in its result and does not affect the others.
+ * <p>
+ * Statements are explained with {@link ExplainOptions#clause() options} of the analyzer. With
+ * {@link ExplainOptions#GENERIC_PLAN} jdbc placeholders are replaced by {@code $n} ones and the function explains
+ * the generic plan like {@link GenericPlanExplainer}: {@code EXPLAIN (GENERIC_PLAN)} on postgres 16+, otherwise
+ * {@code PREPARE} and {@code EXPLAIN EXECUTE} with {@code NULL} parameters. {@code plan_cache_mode} is set by
+ * the function, so the setting of the session is restored when it returns.
+ */
+public class BatchExplainer {
+
+    private static final TemporaryFunction FUNCTION = new TemporaryFunction("""
+            CREATE OR REPLACE FUNCTION pg_temp.plan_scanner_explain(statements text[], parameters int[], options text,
+                                                                    generic_plan boolean)
+            RETURNS TABLE (ordinal int, plan text, error text, micros bigint)
+            LANGUAGE plpgsql
+            SET plan_cache_mode = force_generic_plan AS $$
+            DECLARE
+                started timestamptz;
+                native_generic_plan boolean := current_setting('server_version_num')::int >= 160000;
+            BEGIN
+                FOR i IN 1 .. coalesce(array_length(statements, 1), 0) LOOP
+                    ordinal := i;
+                    started := clock_timestamp();
+                    BEGIN
+                        IF NOT generic_plan OR parameters[i] = 0 THEN
+                            EXECUTE 'EXPLAIN (' || options || ') ' || statements[i] INTO plan;
+                        ELSIF native_generic_plan THEN
+                            EXECUTE 'EXPLAIN (GENERIC_PLAN, ' || options || ') ' || statements[i] INTO plan;
+                        ELSE
+                            EXECUTE 'PREPARE plan_scanner_batch AS ' || statements[i];
+                            BEGIN
+                                EXECUTE 'EXPLAIN (' || options || ') EXECUTE plan_scanner_batch('
+                                        || array_to_string(array_fill('NULL'::text, ARRAY[parameters[i]]), ', ') || ')' INTO plan;
+                            EXCEPTION WHEN OTHERS THEN
+                                -- prepared statements are not transactional
+                                DEALLOCATE plan_scanner_batch;
+                                RAISE;
+                            END;
+                            DEALLOCATE plan_scanner_batch;
+                        END IF;
+                        error := NULL;
+                    EXCEPTION WHEN OTHERS THEN
+                        plan := NULL;
+                        error := SQLERRM;
+                    END;
+                    micros := (extract(epoch FROM clock_timestamp() - started) * 1000000)::bigint;
+                    RETURN NEXT;
+                END LOOP;
+            END
+            $$
+            """);
+
+    private static final String CALL = "SELECT ordinal, plan, error, micros FROM pg_temp.plan_scanner_explain(?, ?, ?, ?)";
+
+    private final GenericPlanExplainer genericPlanExplainer = new GenericPlanExplainer();
+    private final ExplainOptions options;
+
+    public BatchExplainer() {
+        this(ExplainOptions.ESTIMATE);
+    }
+
+    /**
+     * @param options options of explain, without {@code ANALYZE}
+     */
+    public BatchExplainer(ExplainOptions options) {
+        if (options.analyze()) {
+            // statements of a batch would share one transaction and timeout
+            throw new IllegalArgumentException("Batches are supported for estimated plans only, not with ANALYZE");
+        }
+        this.options = options;
+    }
+
+    /**
+     * Temporary function is (re)created in the session of given connection and dropped together with the session,
+     * so the whole batch takes two round trips.
+     *
+     * @return one result per statement, in order of statements
+     */
+    public List<Result> explain(Connection connection, List<String> statements) throws SQLException {
+        if (statements.isEmpty()) {
+            return List.of();
+        }
+        String[] explained = new String[statements.size()];
+        Integer[] parameters = new Integer[statements.size()];
+        for (int i = 0; i < statements.size(); i++) {
+            // placeholders are left alone otherwise, e.g. jsonb operator ?
+            GenericPlanExplainer.ParameterizedSql parameterized = options.genericPlan()
+                    ? genericPlanExplainer.parameterize(statements.get(i))
+                    : new GenericPlanExplainer.ParameterizedSql(statements.get(i), 0);
+            explained[i] = parameterized.sql();
+            parameters[i] = parameterized.parameters();
+        }
+        Result[] results = new Result[statements.size()];
+        FUNCTION.call(connection, () -> {
+            try (PreparedStatement stmt = connection.prepareStatement(CALL)) {
+                stmt.setArray(1, connection.createArrayOf("text", explained));
+                stmt.setArray(2, connection.createArrayOf("int4", parameters));
+                stmt.setString(3, options.clause());
+                stmt.setBoolean(4, options.genericPlan());
+                try (ResultSet rs = stmt.executeQuery()) {
+                    while (rs.next()) {
+                        int index = rs.getInt(1) - 1;
+                        results[index] = new Result(statements.get(index), rs.getString(2), rs.getString(3),
+                                Duration.ofNanos(rs.getLong(4) * 1000));
+                    }
+                }
+            }
+            return null;
+        });
+        for (int i = 0; i < results.length; i++) {
+            if (results[i] == null) {
+                throw new SQLException("Batch explain returned no result for: " + statements.get(i));
+            }
+        }
+        return List.of(results);
+    }
+
+    /**
+     * @param sql explained statement
+     * @param planJson output of {@code EXPLAIN (FORMAT JSON)} with options of the explainer or {@code null} when explain failed
+     * @param error error message when explain failed, otherwise {@code null}
+     * @param duration time of explain measured on the server
+     */
+    public record Result(String sql, String planJson, String error, Duration duration) {
+
+        public boolean failed() {
+            return error != null;
+        }
+    }
+}
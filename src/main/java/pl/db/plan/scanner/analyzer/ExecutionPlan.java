@@ -0,0 +1,33 @@
+package pl.db.plan.scanner.analyzer;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+/**
+ * Parsed execution plan of a statement with findings derived from it.
+ *
+ * @param sql explained statement
+ * @param root root node of the plan
+ * @param findings problems found in the plan, in order of plan nodes
+ */
+public record ExecutionPlan(String sql, PlanNode root, List<Finding> findings) {
+
+    /**
+     * @return total cost of the root node
+     */
+    public BigDecimal totalCost() {
+        return BigDecimal.valueOf(root.totalCost());
+    }
+
+    public boolean hasFullScan() {
+        return has(FindingType.FULL_SCAN);
+    }
+
+    public boolean has(FindingType type) {
+        return findings.stream().anyMatch(finding -> finding.type() == type);
+    }
+
+    public List<Finding> findings(FindingType type) {
+        return findings.stream().filter(finding -> finding.type() == type).toList();
+    }
+}
@@ -0,0 +1,204 @@
+package pl.db.plan.scanner.analyzer;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Savepoint;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Explains statements with {@code EXPLAIN (FORMAT JSON)} and derives findings from the typed plan tree,
+ * so we know which table was scanned and under which join, not only that the plan contains a full scan.
+ * Findings are reported by {@link PlanRules}, evaluated for every node in a single traversal of the tree.
+ * <p>
+ * With {@link ExplainOptions#analyze(Duration)} statements are executed (and rolled back) to get actual times,
+ * rows and buffer usage of every node. With {@link ExplainOptions#GENERIC_PLAN} statements are explained with
+ * jdbc placeholders, no parameter values are needed.
+ */
+public class ExecutionPlanAnalyzer {
+
+    /**
+     * Estimate of rows which is 10 times lower or higher than actual rows is reported as {@link FindingType#MISESTIMATE}.
+     */
+    public static final double DEFAULT_MISESTIMATE_FACTOR = 10;
+
+    private final JsonPlanParser parser = new JsonPlanParser();
+    private final StreamingPlanReader streamingReader;
+    private final GenericPlanExplainer genericPlanExplainer = new GenericPlanExplainer();
+    private final ExplainOptions options;
+    private final PlanRules rules;
+
+    public ExecutionPlanAnalyzer() {
+        this(ExplainOptions.ESTIMATE);
+    }
+
+    public ExecutionPlanAnalyzer(ExplainOptions options) {
+        this(options, DEFAULT_MISESTIMATE_FACTOR);
+    }
+
+    /**
+     * @param misestimateFactor how many times actual rows of a node may differ from its estimate before
+     *                          {@link FindingType#MISESTIMATE} is reported, only plans explained with {@code ANALYZE} have actual rows
+     */
+    public ExecutionPlanAnalyzer(ExplainOptions options, double misestimateFactor) {
+        this(options, PlanRules.load(misestimateFactor));
+    }
+
+    /**
+     * @param rules rules evaluated for every node of explained plans
+     */
+    public ExecutionPlanAnalyzer(ExplainOptions options, PlanRules rules) {
+        this.options = options;
+        this.rules = rules;
+        this.streamingReader = new StreamingPlanReader(rules);
+    }
+
+    /**
+     * Explains statement, it may contain jdbc placeholders in {@link ExplainOptions#GENERIC_PLAN generic plan} mode
+     * only, otherwise literals are required.
+     */
+    public ExecutionPlan analyze(Connection connection, String sql) throws SQLException {
+        return analyze(sql, explain(connection, sql));
+    }
+
+    /**
+     * Explains statement and reads the plan with {@link StreamingPlanReader} straight from the result set,
+     * for plans too large to be kept as a tree.
+     *
+     * @param costBudget highest acceptable total cost, {@link FindingType#OVER_BUDGET} is reported for more expensive plans
+     * @param listener receives every node, children before their parent
+     */
+    public PlanSummary stream(Connection connection, String sql, double costBudget, Consumer<PlanNode> listener) throws SQLException {
+        if (options.genericPlan()) {
+            return readStreaming(sql, new StringReader(explain(connection, sql)), costBudget, listener);
+        }
+        return explain(connection, sql, rs -> readStreaming(sql, rs.getCharacterStream(1), costBudget, listener));
+    }
+
+    private PlanSummary readStreaming(String sql, Reader reader, double costBudget, Consumer<PlanNode> listener) throws SQLException {
+        try {
+            return streamingReader.read(sql, reader, costBudget, listener);
+        } catch (IOException e) {
+            throw new SQLException("Could not read execution plan of: " + sql, e);
+        }
+    }
+
+    /**
+     * @return output of {@code EXPLAIN (FORMAT JSON)}
+     */
+    public String explain(Connection connection, String sql) throws SQLException {
+        if (options.genericPlan()) {
+            return genericPlanExplainer.explain(connection, sql, options.clause());
+        }
+        return explain(connection, sql, rs -> rs.getString(1));
+    }
+
+    private <T> T explain(Connection connection, String sql, PlanReader<T> reader) throws SQLException {
+        if (!options.analyze()) {
+            return query(connection, sql, reader);
+        }
+        // statement was really executed, changes must never be committed
+        return rolledBack(connection, () -> {
+            if (options.statementTimeout() != null) {
+                try (Statement stmt = connection.createStatement()) {
+                    stmt.execute("SET LOCAL statement_timeout = " + options.statementTimeout().toMillis());
+                }
+            }
+            return query(connection, sql, reader);
+        });
+    }
+
+    /**
+     * Runs work in a transaction which is always rolled back, in a savepoint when the caller already has
+     * a transaction, so its work is not rolled back. The savepoint is released afterwards, so they do not pile up
+     * in the transaction of the caller. Failure of the rollback is suppressed by failure of the work.
+     */
+    static <T> T rolledBack(Connection connection, TransactionWork<T> work) throws SQLException {
+        boolean autoCommit = connection.getAutoCommit();
+        Savepoint savepoint = null;
+        if (autoCommit) {
+            connection.setAutoCommit(false);
+        } else {
+            savepoint = connection.setSavepoint();
+        }
+        Throwable failure = null;
+        try {
+            return work.run();
+        } catch (Throwable e) {
+            failure = e;
+            throw e;
+        } finally {
+            try {
+                if (savepoint != null) {
+                    connection.rollback(savepoint);
+                    connection.releaseSavepoint(savepoint);
+                } else {
+                    try {
+                        connection.rollback();
+                    } finally {
+                        connection.setAutoCommit(true);
+                    }
+                }
+            } catch (SQLException e) {
+                if (failure == null) {
+                    throw e;
+                }
+                failure.addSuppressed(e);
+            }
+        }
+    }
+
+    private <T> T query(Connection connection, String sql, PlanReader<T> reader) throws SQLException {
+        try (Statement stmt = connection.createStatement();
+             ResultSet rs = stmt.executeQuery("EXPLAIN (" + options.clause() + ") " + sql)) {
+            if (!rs.next()) {
+                throw new SQLException("Explain returned no plan for: " + sql);
+            }
+            return reader.read(rs);
+        }
+    }
+
+    public ExplainOptions getOptions() {
+        return options;
+    }
+
+    public PlanRules getRules() {
+        return rules;
+    }
+
+    /**
+     * @param sql explained statement
+     * @param json output of {@code EXPLAIN (FORMAT JSON)}
+     */
+    public ExecutionPlan analyze(String sql, String json) {
+        PlanNode root = parser.parse(json);
+        List<Finding> findings = new ArrayList<>();
+        collectFindings(root, null, findings);
+        return new ExecutionPlan(sql, root, List.copyOf(findings));
+    }
+
+    private void collectFindings(PlanNode node, PlanNode join, List<Finding> findings) {
+        rules.evaluate(node, join, findings::add);
+        PlanNode childJoin = node.isJoin() ? node : join;
+        for (PlanNode child : node.children()) {
+            collectFindings(child, childJoin, findings);
+        }
+    }
+
+    @FunctionalInterface
+    private interface PlanReader<T> {
+        T read(ResultSet resultSet) throws SQLException;
+    }
+
+    @FunctionalInterface
+    interface TransactionWork<T> {
+        T run() throws SQLException;
+    }
+}
@@ -0,0 +1,62 @@
+package pl.db.plan.scanner.analyzer;
+
+import java.time.Duration;
+
+/**
+ * Options of {@code EXPLAIN} used by {@link ExecutionPlanAnalyzer}.
+ * <p>
+ * With {@code analyze} the statement is really executed, always in a transaction which is rolled back
+ * (or savepoint, when connection is already in a transaction), so modifying statements are safe as well.
+ * <p>
+ * With {@code genericPlan} statements are explained with jdbc placeholders intact, see {@link GenericPlanExplainer}.
+ *
+ * @param analyze whether statement is executed to get actual times and rows
+ * @param buffers whether buffer usage is reported, requires {@code analyze}
+ * @param timing whether actual time of every node is measured, requires {@code analyze}
+ * @param genericPlan whether the generic plan of statement with placeholders is explained, can not be analyzed
+ * @param statementTimeout timeout of the executed statement or {@code null} for the session default
+ */
+public record ExplainOptions(boolean analyze, boolean buffers, boolean timing, boolean genericPlan, Duration statementTimeout) {
+
+    /**
+     * Plain {@code EXPLAIN}, only estimates of the planner, statement is not executed.
+     */
+    public static final ExplainOptions ESTIMATE = new ExplainOptions(false, false, false, false, null);
+
+    /**
+     * Generic plan of statement with placeholders, the one pooled prepared statements get in production.
+     */
+    public static final ExplainOptions GENERIC_PLAN = new ExplainOptions(false, false, false, true, null);
+
+    public ExplainOptions {
+        if (!analyze && (buffers || timing)) {
+            throw new IllegalArgumentException("BUFFERS and TIMING require ANALYZE");
+        }
+        if (analyze && genericPlan) {
+            throw new IllegalArgumentException("Generic plan can not be analyzed, statement has no parameter values");
+        }
+    }
+
+    /**
+     * @return {@code EXPLAIN (ANALYZE, BUFFERS, TIMING)} with given statement timeout
+     */
+    public static ExplainOptions analyze(Duration statementTimeout) {
+        return new ExplainOptions(true, true, true, false, statementTimeout);
+    }
+
+    /**
+     * @return options in parentheses of {@code EXPLAIN}, always with {@code FORMAT JSON}, without
+     * {@code GENERIC_PLAN} which depends on database version
+     */
+    public String clause() {
+        StringBuilder clause = new StringBuilder();
+        if (analyze) {
+            clause.append("ANALYZE, ");
+            if (buffers) {
+                clause.append("BUFFERS, ");
+            }
+            clause.append(timing ? "TIMING, " : "TIMING OFF, ");
+        }
+        return clause.append("FORMAT JSON").toString();
+    }
+}
@@ -0,0 +1,60 @@
+package pl.db.plan.scanner.analyzer;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Plans of all statements explained by {@link ParallelExplainEngine}, in order of input statements.
+ *
+ * @param entries one entry per input statement
+ * @param wallClock time of the whole explain phase
+ * @param connections number of connections used in parallel
+ */
+public record ExplainReport(List<Entry> entries, Duration wallClock, int connections) {
+
+    /**
+     * @return sum of times of single explains, i.e. wall clock time of sequential run
+     */
+    public Duration totalExplainTime() {
+        return entries.stream().map(Entry::duration).reduce(Duration.ZERO, Duration::plus);
+    }
+
+    /**
+     * @return how many statements were explained at the same time on average
+     */
+    public double parallelism() {
+        return wallClock.isZero() ? 0 : (double) totalExplainTime().toNanos() / wallClock.toNanos();
+    }
+
+    public List<Entry> failed() {
+        return entries.stream().filter(Entry::failed).toList();
+    }
+
+    /**
+     * @return number of plans taken from {@link PlanCache}, without database round trip
+     */
+    public long cachedCount() {
+        return entries.stream().filter(Entry::cached).count();
+    }
+
+    @Override
+    public String toString() {
+        return "Explained " + entries.size() + " statements on " + connections + " connections in "
+                + wallClock.toMillis() + " ms (sequential " + totalExplainTime().toMillis() + " ms, "
+                + cachedCount() + " cached, " + failed().size() + " failed)";
+    }
+
+    /**
+     * @param sql explained statement
+     * @param plan execution plan or {@code null} when explain failed
+     * @param duration how long explain took, without waiting for connection
+     * @param error error message when explain failed, otherwise {@code null}
+     * @param cached whether plan was taken from {@link PlanCache}
+     */
+    public record Entry(String sql, ExecutionPlan plan, Duration duration, String error, boolean cached) {
+
+        public boolean failed() {
+            return error != null;
+        }
+    }
+}
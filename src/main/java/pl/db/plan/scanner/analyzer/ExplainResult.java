@@ -0,0 +1,38 @@
+package pl.db.plan.scanner.analyzer;
+
+import pl.db.plan.scanner.inspector.QueryFingerprint;
+
+import java.math.BigDecimal;
+
+/**
+ * Execution plan of captured statement, explained in the background.
+ *
+ * @param fingerprint explained statement shape
+ * @param plan parsed execution plan, {@code null} when explain failed
+ * @param durationMillis how long explain took
+ * @param error error message when explain failed, otherwise {@code null}
+ */
+public record ExplainResult(
+        QueryFingerprint fingerprint,
+        ExecutionPlan plan,
+        long durationMillis,
+        String error) {
+
+    /**
+     * @return whether plan contains sequential scan
+     */
+    public boolean fullScan() {
+        return plan != null && plan.hasFullScan();
+    }
+
+    /**
+     * @return total cost of the root node or {@code null} when explain failed
+     */
+    public BigDecimal totalCost() {
+        return plan != null ? plan.totalCost() : null;
+    }
+
+    public boolean failed() {
+        return error != null;
+    }
+}
@@ -0,0 +1,46 @@
+package pl.db.plan.scanner.analyzer;
+
+/**
+ * Problem found in a single node of execution plan.
+ *
+ * @param type kind of problem
+ * @param node plan node with the problem
+ * @param join the nearest join above the node or {@code null} when node is not part of a join
+ * @param detail what the rule found, e.g. how much a sort spilled to disk, or {@code null}
+ */
+public record Finding(FindingType type, PlanNode node, PlanNode join, String detail) {
+
+    public Finding(FindingType type, PlanNode node, PlanNode join) {
+        this(type, node, join, null);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder description = new StringBuilder(type.name()).append(": ").append(node);
+        if (type == FindingType.OVER_BUDGET) {
+            description.append(", cost ").append(node.totalCost());
+        }
+        if (type == FindingType.MISESTIMATE) {
+            description.append(", estimated rows=").append(node.planRows());
+        }
+        if (detail != null) {
+            description.append(", ").append(detail);
+        }
+        if (node.filter() != null) {
+            description.append(", filter: ").append(node.filter());
+        }
+        if (node.actual() != null) {
+            description.append(", ").append(node.actual());
+        }
+        if (node.buffers() != null) {
+            description.append(", ").append(node.ownBuffers());
+        }
+        if (join != null) {
+            description.append(", under ").append(join.nodeType());
+            if (join.joinCondition() != null) {
+                description.append(" on ").append(join.joinCondition());
+            }
+        }
+        return description.toString();
+    }
+}
@@ -0,0 +1,48 @@
+package pl.db.plan.scanner.analyzer;
+
+/**
+ * Kind of problem found in execution plan.
+ */
+public enum FindingType {
+    /**
+     * Sequential scan of the whole table.
+     */
+    FULL_SCAN,
+    /**
+     * Scan which read more blocks from disk than it found in buffers, reported with {@code BUFFERS} only.
+     */
+    IO_BOUND,
+    /**
+     * Estimated total cost of the plan higher than the budget, reported for the root node.
+     */
+    OVER_BUDGET,
+    /**
+     * Estimated rows of a node differ from actual rows by more than a factor, reported with {@code ANALYZE} only.
+     * Usually caused by correlated columns or skewed values, which extended statistics fix.
+     */
+    MISESTIMATE,
+    /**
+     * Sequential scan of a large table, more expensive than a threshold.
+     */
+    LARGE_SEQ_SCAN,
+    /**
+     * Inner side of nested loop returning many rows, which are read again for every row of the outer side.
+     */
+    NESTED_LOOP_LARGE_INNER,
+    /**
+     * Sort which did not fit into {@code work_mem} and was done on disk, reported with {@code ANALYZE} only.
+     */
+    SORT_SPILL,
+    /**
+     * Build side of hash join with many rows or split into batches, because it did not fit into memory.
+     */
+    LARGE_HASH_BUILD,
+    /**
+     * Bitmap heap scan with lossy blocks, whose rows had to be checked again against the condition.
+     */
+    BITMAP_RECHECK,
+    /**
+     * Found by a rule loaded with {@link java.util.ServiceLoader}, described by {@link Finding#detail()}.
+     */
+    CUSTOM
+}
@@ -0,0 +1,210 @@
+package pl.db.plan.scanner.analyzer;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntFunction;
+
+/**
+ * Explains statements with jdbc placeholders ({@code ?}) left intact, so we get the generic plan, the same one
+ * pooled prepared statements get after a few executions.
+ * <p>
+ * On postgres 16+ it is {@code EXPLAIN (GENERIC_PLAN)}, older versions need {@code PREPARE} with
+ * {@code plan_cache_mode = force_generic_plan} and {@code EXPLAIN EXECUTE} with {@code NULL} parameters.
+ * <p>
+ * The driver sends every statement with the extended protocol, where server expects values for {@code $n}
+ * placeholders, so {@code EXPLAIN (GENERIC_PLAN)} is executed by a temporary PL/pgSQL function instead, created
+ * once per session. {@code plan_cache_mode} of older versions is set only for a rolled back transaction, or savepoint,
+ * so the setting of the session is kept.
+ */
+public class GenericPlanExplainer {
+
+    private static final int GENERIC_PLAN_VERSION = 16;
+    // keywords followed by a value, a question mark after them is a placeholder
+    private static final Set<String> KEYWORDS = Set.of("select", "where", "and", "or", "not", "on", "when", "then",
+            "else", "in", "is", "like", "ilike", "similar", "escape", "between", "limit", "offset", "first", "next",
+            "by", "set", "values", "returning", "having", "any", "all", "some", "distinct", "from", "to", "as", "case");
+
+    private static final TemporaryFunction FUNCTION = new TemporaryFunction("""
+            CREATE OR REPLACE FUNCTION pg_temp.plan_scanner_generic_plan(statement text)
+            RETURNS SETOF text
+            LANGUAGE plpgsql AS $$
+            DECLARE
+                line text;
+            BEGIN
+                FOR line IN EXECUTE statement LOOP
+                    RETURN NEXT line;
+                END LOOP;
+            END
+            $$
+            """);
+
+    private static final String CALL = "SELECT * FROM pg_temp.plan_scanner_generic_plan(?)";
+
+    private final AtomicLong statementIds = new AtomicLong();
+
+    /**
+     * @return plan in text format, one line per row
+     */
+    public String explain(Connection connection, String sql) throws SQLException {
+        return explain(connection, sql, null);
+    }
+
+    /**
+     * @param options explain options, e.g. {@code FORMAT JSON}, or {@code null}
+     * @return plan, in text format one line per row
+     */
+    public String explain(Connection connection, String sql, String options) throws SQLException {
+        ParameterizedSql parameterized = parameterize(sql);
+        try (Statement stmt = connection.createStatement()) {
+            if (parameterized.parameters() == 0) {
+                return explain(stmt, explainPrefix(options) + sql);
+            }
+            if (connection.getMetaData().getDatabaseMajorVersion() >= GENERIC_PLAN_VERSION) {
+                String genericOptions = options == null ? "GENERIC_PLAN" : "GENERIC_PLAN, " + options;
+                return FUNCTION.call(connection, () -> {
+                    try (PreparedStatement call = connection.prepareStatement(CALL)) {
+                        call.setString(1, explainPrefix(genericOptions) + parameterized.sql());
+                        return read(call.executeQuery());
+                    }
+                });
+            }
+
+            String name = "plan_scanner_" + statementIds.incrementAndGet();
+            stmt.execute("PREPARE " + name + " AS " + parameterized.sql());
+            try {
+                return ExecutionPlanAnalyzer.rolledBack(connection, () -> {
+                    stmt.execute("SET LOCAL plan_cache_mode = force_generic_plan");
+                    return explain(stmt, explainPrefix(options) + "EXECUTE " + name + "(" + "NULL, ".repeat(parameterized.parameters() - 1) + "NULL)");
+                });
+            } finally {
+                // prepared statements are not transactional
+                stmt.execute("DEALLOCATE " + name);
+            }
+        }
+    }
+
+    /**
+     * Replaces jdbc placeholders with postgres ones ({@code $1}, {@code $2}, ...), skipping quoted
+     * literals, identifiers and comments.
+     */
+    public ParameterizedSql parameterize(String sql) {
+        return replacePlaceholders(sql, parameter -> "$" + parameter);
+    }
+
+    /**
+     * Replaces jdbc placeholders with given text, skipping quoted literals, identifiers and comments.
+     * <p>
+     * Question marks of jsonb operators are kept: {@code ??} escaped the same way as for the driver, {@code ?|},
+     * {@code ?&} and {@code ?} between two operands, e.g. {@code data ? 'key'}. An identifier before the question
+     * mark is an operand unless it is a keyword, e.g. {@code LIMIT ?}.
+     *
+     * @param replacement text of placeholder by its number, starting with 1
+     */
+    static ParameterizedSql replacePlaceholders(String sql, IntFunction<String> replacement) {
+        StringBuilder result = new StringBuilder(sql.length() + 8);
+        int parameters = 0;
+        int i = 0;
+        int length = sql.length();
+        while (i < length) {
+            char c = sql.charAt(i);
+            char next = i + 1 < length ? sql.charAt(i + 1) : 0;
+            int end;
+            if (c == '\'' || c == '"') {
+                end = sql.indexOf(c, i + 1);
+                // escaped quotes are just two literals next to each other
+                end = end < 0 ? length : end + 1;
+            } else if (c == '/' && next == '*') {
+                end = sql.indexOf("*/", i + 2);
+                end = end < 0 ? length : end + 2;
+            } else if (c == '-' && next == '-') {
+                end = sql.indexOf('\n', i + 2);
+                end = end < 0 ? length : end + 1;
+            } else if (c == '?' && next == '?') {
+                result.append('?');
+                i += 2;
+                continue;
+            } else if (c == '?' && !isOperator(sql, i)) {
+                result.append(replacement.apply(++parameters));
+                i++;
+                continue;
+            } else {
+                end = i + 1;
+            }
+            result.append(sql, i, end);
+            i = end;
+        }
+        return new ParameterizedSql(result.toString(), parameters);
+    }
+
+    /**
+     * @return whether the question mark at the index is a jsonb operator, not a placeholder
+     */
+    private static boolean isOperator(String sql, int index) {
+        int length = sql.length();
+        char next = index + 1 < length ? sql.charAt(index + 1) : 0;
+        if (next == '|' || next == '&') {
+            // ?|| and ?&& are a placeholder followed by concatenation or overlap
+            return index + 2 >= length || sql.charAt(index + 2) != next;
+        }
+        int before = index - 1;
+        while (before >= 0 && Character.isWhitespace(sql.charAt(before))) {
+            before--;
+        }
+        int after = index + 1;
+        while (after < length && Character.isWhitespace(sql.charAt(after))) {
+            after++;
+        }
+        if (before < 0 || after >= length) {
+            return false;
+        }
+        char last = sql.charAt(before);
+        char first = sql.charAt(after);
+        boolean operandAfter = first == '\'' || first == '"' || first == '(' || first == '?'
+                || Character.isLetterOrDigit(first) || first == '_';
+        if (!operandAfter) {
+            return false;
+        }
+        if (last == ')' || last == ']' || last == '\'' || last == '"') {
+            return true;
+        }
+        if (!Character.isLetterOrDigit(last) && last != '_') {
+            return false;
+        }
+        int start = before;
+        while (start > 0 && (Character.isLetterOrDigit(sql.charAt(start - 1)) || sql.charAt(start - 1) == '_')) {
+            start--;
+        }
+        return !KEYWORDS.contains(sql.substring(start, before + 1).toLowerCase(Locale.ROOT));
+    }
+
+    private static String explainPrefix(String options) {
+        return options == null ? "EXPLAIN " : "EXPLAIN (" + options + ") ";
+    }
+
+    private String explain(Statement stmt, String explainSql) throws SQLException {
+        return read(stmt.executeQuery(explainSql));
+    }
+
+    private static String read(ResultSet resultSet) throws SQLException {
+        try (ResultSet rs = resultSet) {
+            StringBuilder plan = new StringBuilder();
+            while (rs.next()) {
+                plan.append(rs.getString(1)).append("\n");
+            }
+            return plan.toString();
+        }
+    }
+
+    /**
+     * @param sql statement with replaced placeholders
+     * @param parameters number of placeholders
+     */
+    public record ParameterizedSql(String sql, int parameters) {
+    }
+}
@@ -0,0 +1,96 @@
+package pl.db.plan.scanner.analyzer;
+
+import java.util.List;
+
+/**
+ * Candidate index verified by {@link IndexAdvisor}: plans of affected statements while the index existed,
+ * and what the index would cost.
+ *
+ * @param candidate proposed index
+ * @param statements statements with full scan of the table, explained with and without the index
+ * @param indexSize size of the built index in bytes
+ * @param tableIndexes number of indexes the table already has
+ * @param tableWrites inserted and non-HOT updated rows of the table since statistics reset, every one of them
+ *                    would maintain the index too (and updates of indexed columns cannot be HOT anymore)
+ * @param error why the candidate could not be verified, otherwise {@code null}
+ */
+public record IndexAdvice(
+        Candidate candidate,
+        List<Statement> statements,
+        long indexSize,
+        int tableIndexes,
+        long tableWrites,
+        String error) {
+
+    /**
+     * @return sum of cost decrease of all affected statements, negative when plans got more expensive
+     */
+    public double costImprovement() {
+        return statements.stream().mapToDouble(statement -> statement.costBefore() - statement.costAfter()).sum();
+    }
+
+    /**
+     * @return whether the planner used the index in at least one plan
+     */
+    public boolean used() {
+        return statements.stream().anyMatch(Statement::indexUsed);
+    }
+
+    public boolean failed() {
+        return error != null;
+    }
+
+    @Override
+    public String toString() {
+        if (failed()) {
+            return candidate + ": " + error;
+        }
+        StringBuilder advice = new StringBuilder(candidate.toString())
+                .append(": cost improvement ").append(Math.round(costImprovement() * 100) / 100.0)
+                .append(", size ").append(indexSize / 1024).append(" kB")
+                .append(", existing indexes ").append(tableIndexes)
+                .append(", table writes ").append(tableWrites);
+        statements.forEach(statement -> advice.append("\n  ").append(statement));
+        return advice.toString();
+    }
+
+    /**
+     * @param table indexed table
+     * @param expressions indexed columns or expressions, e.g. {@code person_id} or {@code lower((city)::text)}
+     */
+    public record Candidate(String table, List<String> expressions) {
+
+        /**
+         * @return {@code CREATE INDEX} statement, expressions are enclosed in parentheses
+         */
+        public String ddl(String name) {
+            return "CREATE INDEX " + name + " ON " + table + " (" + columns() + ")";
+        }
+
+        private String columns() {
+            return String.join(", ", expressions.stream()
+                    .map(expression -> expression.indexOf('(') >= 0 ? "(" + expression + ")" : expression)
+                    .toList());
+        }
+
+        @Override
+        public String toString() {
+            return table + " (" + columns() + ")";
+        }
+    }
+
+    /**
+     * @param key key of the statement, e.g. repository method
+     * @param sql explained statement
+     * @param costBefore total cost of the current plan
+     * @param costAfter total cost of the plan with the index
+     * @param indexUsed whether the plan with the index uses it
+     */
+    public record Statement(String key, String sql, double costBefore, double costAfter, boolean indexUsed) {
+
+        @Override
+        public String toString() {
+            return key + ": " + costBefore + " -> " + costAfter + (indexUsed ? "" : " (index not used)");
+        }
+    }
+}
@@ -0,0 +1,335 @@
+package pl.db.plan.scanner.analyzer;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Proposes indexes for sequentially scanned tables and verifies every proposal on the database.
+ * <p>
+ * Candidates are derived from conditions of {@link FindingType#FULL_SCAN full scans}: columns and expressions
+ * compared in their filter (e.g. {@code activity_log.timestamp}, {@code lower(address.city)}) and columns of
+ * the scanned table in the condition of the join above (e.g. {@code address.person_id}). Every candidate is
+ * created in a transaction which is always rolled back, plans of affected statements are explained again
+ * while the index exists, and the advice reports the cost improvement, size of the index and how many writes
+ * of the table would have to maintain it.
+ * <p>
+ * {@code CREATE INDEX} builds the whole index and blocks writes to the table until rollback, so run the advisor
+ * against a copy of production data, not production itself. Connections already in a transaction are rejected,
+ * the lock would be held until the caller ends it.
+ */
+public class IndexAdvisor {
+
+    static final String CANDIDATE_NAME = "plan_scanner_candidate";
+
+    private static final Pattern COLUMN = Pattern.compile("(?:([A-Za-z_]\\w*)\\.)?([A-Za-z_]\\w*|\"(?:[^\"]|\"\")+\")");
+    private static final Pattern FUNCTION = Pattern.compile("[A-Za-z_]\\w*\\(.*\\)");
+    private static final Pattern QUALIFIER = Pattern.compile("(?<![\\w$])([A-Za-z_]\\w*)\\.(?=[A-Za-z_])");
+    private static final Pattern LITERAL = Pattern.compile("'(?:[^']|'')*'");
+    private static final Pattern CAST = Pattern.compile("::[\\w ]+(?:\\[])?");
+    private static final Pattern ARGUMENT = Pattern.compile("(?<![\\w.$])(?:[A-Za-z_]\\w*|\"[^\"]+\")(?![\\w.]|\\s*\\()");
+    private static final Pattern TRAILING_CAST = Pattern.compile("::[\\w ]+(?:\\[])?$");
+    private static final Set<String> KEYWORDS = Set.of("null", "true", "false");
+    private static final String INDEX_STATISTICS = """
+            SELECT pg_relation_size(i.indexrelid), i.indcheckxmin,
+                   (SELECT count(*) FROM pg_index other WHERE other.indrelid = i.indrelid) - 1,
+                   coalesce(s.n_tup_ins + s.n_tup_upd - s.n_tup_hot_upd, 0)
+              FROM pg_index i
+              LEFT JOIN pg_stat_user_tables s ON s.relid = i.indrelid
+             WHERE i.indexrelid = to_regclass(?)
+            """;
+
+    private final ExecutionPlanAnalyzer analyzer;
+
+    public IndexAdvisor() {
+        this(new ExecutionPlanAnalyzer());
+    }
+
+    /**
+     * @param analyzer explains affected statements again, e.g. in {@link ExplainOptions#GENERIC_PLAN generic plan}
+     *                 mode for statements with jdbc placeholders, its statement timeout applies to index creation
+     */
+    public IndexAdvisor(ExecutionPlanAnalyzer analyzer) {
+        this.analyzer = analyzer;
+    }
+
+    /**
+     * @param plans current plans, keyed e.g. by repository method
+     * @return advice for every candidate, the highest cost improvement first
+     * @throws IllegalArgumentException when connection is not in auto-commit mode
+     */
+    public List<IndexAdvice> advise(Connection connection, Map<String, ExecutionPlan> plans) throws SQLException {
+        if (!connection.getAutoCommit()) {
+            // every candidate would keep the table locked for writes until the transaction of the caller ends
+            throw new IllegalArgumentException("Index advisor needs a connection in auto-commit mode, not in a transaction");
+        }
+        Set<IndexAdvice.Candidate> candidates = new LinkedHashSet<>();
+        plans.values().forEach(plan -> candidates.addAll(candidates(plan)));
+        List<IndexAdvice> advice = new ArrayList<>(candidates.size());
+        for (IndexAdvice.Candidate candidate : candidates) {
+            Map<String, ExecutionPlan> affected = new LinkedHashMap<>();
+            plans.forEach((key, plan) -> {
+                if (plan.findings(FindingType.FULL_SCAN).stream().anyMatch(finding -> candidate.table().equals(finding.node().relationName()))) {
+                    affected.put(key, plan);
+                }
+            });
+            advice.add(verify(connection, candidate, affected));
+        }
+        advice.sort(Comparator.comparingDouble(IndexAdvice::costImprovement).reversed());
+        return advice;
+    }
+
+    private IndexAdvice verify(Connection connection, IndexAdvice.Candidate candidate, Map<String, ExecutionPlan> affected) {
+        try {
+            return ExecutionPlanAnalyzer.rolledBack(connection, () -> {
+                try (Statement stmt = connection.createStatement()) {
+                    if (analyzer.getOptions().statementTimeout() != null) {
+                        stmt.execute("SET LOCAL statement_timeout = " + analyzer.getOptions().statementTimeout().toMillis());
+                    }
+                    stmt.execute(candidate.ddl(CANDIDATE_NAME));
+                }
+                long size;
+                int tableIndexes;
+                long tableWrites;
+                try (PreparedStatement stmt = connection.prepareStatement(INDEX_STATISTICS)) {
+                    stmt.setString(1, CANDIDATE_NAME);
+                    try (ResultSet rs = stmt.executeQuery()) {
+                        if (!rs.next()) {
+                            throw new SQLException("Candidate index was not created: " + candidate);
+                        }
+                        if (rs.getBoolean(2)) {
+                            // table has broken HOT chains, planner ignores such index in the transaction which created it
+                            throw new SQLException("Candidate index is not usable before commit: " + candidate);
+                        }
+                        size = rs.getLong(1);
+                        tableIndexes = rs.getInt(3);
+                        tableWrites = rs.getLong(4);
+                    }
+                }
+                List<IndexAdvice.Statement> statements = new ArrayList<>(affected.size());
+                for (Map.Entry<String, ExecutionPlan> entry : affected.entrySet()) {
+                    ExecutionPlan before = entry.getValue();
+                    ExecutionPlan after = analyzer.analyze(connection, before.sql());
+                    boolean used = after.root().stream().anyMatch(node -> CANDIDATE_NAME.equals(node.indexName()));
+                    statements.add(new IndexAdvice.Statement(entry.getKey(), before.sql(), before.root().totalCost(), after.root().totalCost(), used));
+                }
+                return new IndexAdvice(candidate, List.copyOf(statements), size, tableIndexes, tableWrites, null);
+            });
+        } catch (SQLException e) {
+            return new IndexAdvice(candidate, List.of(), 0, 0, 0, e.getMessage());
+        }
+    }
+
+    /**
+     * Every compared column or expression of a full scan alone, and equality columns followed by one range column
+     * together, when there are more of them.
+     */
+    static List<IndexAdvice.Candidate> candidates(ExecutionPlan plan) {
+        Set<IndexAdvice.Candidate> candidates = new LinkedHashSet<>();
+        for (Finding finding : plan.findings(FindingType.FULL_SCAN)) {
+            PlanNode node = finding.node();
+            String alias = node.alias() == null ? node.relationName() : node.alias();
+            List<String> equality = new ArrayList<>();
+            List<String> range = new ArrayList<>();
+            for (String conjunct : conjuncts(node.filter())) {
+                Comparison comparison = comparison(conjunct);
+                if (comparison == null) {
+                    continue;
+                }
+                String left = indexable(comparison.left(), alias);
+                String right = indexable(comparison.right(), alias);
+                if ((left == null) == (right == null)) {
+                    // no column of the table, or column compared with another column of the same row
+                    continue;
+                }
+                String expression = left != null ? left : right;
+                List<String> target = comparison.equality() ? equality : range;
+                if (!equality.contains(expression) && !range.contains(expression)) {
+                    target.add(expression);
+                }
+            }
+            equality.forEach(expression -> candidates.add(new IndexAdvice.Candidate(node.relationName(), List.of(expression))));
+            range.forEach(expression -> candidates.add(new IndexAdvice.Candidate(node.relationName(), List.of(expression))));
+            if (equality.size() + Math.min(range.size(), 1) > 1) {
+                List<String> composite = new ArrayList<>(equality);
+                if (!range.isEmpty()) {
+                    composite.add(range.getFirst());
+                }
+                candidates.add(new IndexAdvice.Candidate(node.relationName(), List.copyOf(composite)));
+            }
+            if (finding.join() != null) {
+                for (String conjunct : conjuncts(finding.join().joinCondition())) {
+                    Comparison comparison = comparison(conjunct);
+                    if (comparison == null || !comparison.equality()) {
+                        continue;
+                    }
+                    String left = joinColumn(comparison.left(), alias);
+                    String expression = left != null ? left : joinColumn(comparison.right(), alias);
+                    if (expression != null) {
+                        candidates.add(new IndexAdvice.Candidate(node.relationName(), List.of(expression)));
+                    }
+                }
+            }
+        }
+        return List.copyOf(candidates);
+    }
+
+    /**
+     * @return column or expression of the table with given alias, without the alias, or {@code null}
+     */
+    static String indexable(String side, String alias) {
+        String value = unwrap(side);
+        Matcher column = COLUMN.matcher(value);
+        if (column.matches()) {
+            boolean ownColumn = column.group(1) == null || column.group(1).equals(alias);
+            return ownColumn && !KEYWORDS.contains(column.group(2).toLowerCase()) ? column.group(2) : null;
+        }
+        if (!FUNCTION.matcher(value).matches() || value.contains("$")) {
+            return null;
+        }
+        Matcher qualifier = QUALIFIER.matcher(value);
+        while (qualifier.find()) {
+            if (!qualifier.group(1).equals(alias)) {
+                return null;
+            }
+        }
+        String expression = value.replace(alias + ".", "");
+        // expression has to reference a column, not only literals, e.g. not now()
+        String columns = CAST.matcher(LITERAL.matcher(expression).replaceAll("''")).replaceAll("");
+        return ARGUMENT.matcher(columns).find() ? expression : null;
+    }
+
+    /**
+     * @return column of the table with given alias in a join condition, only qualified columns are considered
+     */
+    private static String joinColumn(String side, String alias) {
+        Matcher column = COLUMN.matcher(unwrap(side));
+        return column.matches() && alias.equals(column.group(1)) ? column.group(2) : null;
+    }
+
+    /**
+     * @return value without enclosing parentheses and cast, e.g. {@code action} for {@code ((action)::text)}
+     */
+    private static String unwrap(String value) {
+        String unwrapped = value.trim();
+        while (true) {
+            String previous = unwrapped;
+            if (enclosed(unwrapped)) {
+                unwrapped = unwrapped.substring(1, unwrapped.length() - 1).trim();
+            }
+            unwrapped = TRAILING_CAST.matcher(unwrapped).replaceFirst("").trim();
+            if (unwrapped.equals(previous)) {
+                return unwrapped;
+            }
+        }
+    }
+
+    private static boolean enclosed(String value) {
+        if (!value.startsWith("(") || !value.endsWith(")")) {
+            return false;
+        }
+        return closingParenthesis(value, 0) == value.length() - 1;
+    }
+
+    private static int closingParenthesis(String value, int open) {
+        int depth = 0;
+        boolean quoted = false;
+        for (int i = open; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '\'') {
+                quoted = !quoted;
+            } else if (!quoted && c == '(') {
+                depth++;
+            } else if (!quoted && c == ')' && --depth == 0) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return parts of the condition joined with {@code AND}, none when the condition contains {@code OR} at top level
+     */
+    static List<String> conjuncts(String condition) {
+        if (condition == null) {
+            return List.of();
+        }
+        String value = unwrap(condition);
+        List<String> conjuncts = new ArrayList<>();
+        int depth = 0;
+        int start = 0;
+        boolean quoted = false;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '\'') {
+                quoted = !quoted;
+            } else if (!quoted && c == '(') {
+                depth++;
+            } else if (!quoted && c == ')') {
+                depth--;
+            } else if (!quoted && depth == 0) {
+                if (value.startsWith(" OR ", i)) {
+                    return List.of();
+                }
+                if (value.startsWith(" AND ", i)) {
+                    conjuncts.add(value.substring(start, i));
+                    start = i + 5;
+                }
+            }
+        }
+        conjuncts.add(value.substring(start));
+        return conjuncts;
+    }
+
+    /**
+     * @return comparison by operator at top level which can use b-tree index, {@code null} for other conditions
+     */
+    static Comparison comparison(String conjunct) {
+        String value = unwrap(conjunct);
+        int depth = 0;
+        boolean quoted = false;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '\'') {
+                quoted = !quoted;
+            } else if (!quoted && c == '(') {
+                depth++;
+            } else if (!quoted && c == ')') {
+                depth--;
+            } else if (!quoted && depth == 0 && (c == '=' || c == '<' || c == '>')) {
+                char next = i + 1 < value.length() ? value.charAt(i + 1) : ' ';
+                char previous = i > 0 ? value.charAt(i - 1) : ' ';
+                if (previous == '!' || c == '<' && next == '>') {
+                    return null;
+                }
+                int end = next == '=' ? i + 2 : i + 1;
+                String right = value.substring(end).trim();
+                boolean any = c == '=' && right.startsWith("ANY ");
+                if (any) {
+                    right = right.substring(4);
+                } else if (right.startsWith("ALL ")) {
+                    return null;
+                }
+                return new Comparison(value.substring(0, i).trim(), right, c == '=' && next != '>');
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @param equality {@code =} or {@code = ANY}, otherwise a range comparison
+     */
+    record Comparison(String left, String right, boolean equality) {
+    }
+}
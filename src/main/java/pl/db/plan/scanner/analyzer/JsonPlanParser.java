@@ -0,0 +1,119 @@
+package pl.db.plan.scanner.analyzer;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Parses output of {@code EXPLAIN (FORMAT JSON)} into tree of {@link PlanNode}.
+ */
+public class JsonPlanParser {
+
+    static final Set<String> TYPED_KEYS = Set.of(
+            "Node Type", "Relation Name", "Alias", "Index Name", "Join Type", "Startup Cost", "Total Cost",
+            "Plan Rows", "Plan Width", "Filter", "Index Cond", "Recheck Cond", "Hash Cond", "Merge Cond",
+            "Join Filter", "Plans", "Actual Startup Time", "Actual Total Time", "Actual Rows", "Actual Loops",
+            "Shared Hit Blocks", "Shared Read Blocks", "Shared Dirtied Blocks", "Shared Written Blocks",
+            "Local Hit Blocks", "Local Read Blocks", "Temp Read Blocks", "Temp Written Blocks"
+    );
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    /**
+     * @param json explain output, array with single object holding the {@code Plan}
+     * @return root node of the plan
+     */
+    public PlanNode parse(String json) {
+        JsonNode document;
+        try {
+            document = mapper.readTree(json);
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("Invalid execution plan: " + e.getOriginalMessage(), e);
+        }
+        JsonNode plan = (document.isArray() ? document.path(0) : document).path("Plan");
+        if (!plan.isObject()) {
+            throw new IllegalArgumentException("Execution plan does not contain Plan node");
+        }
+        return node(plan);
+    }
+
+    private PlanNode node(JsonNode node) {
+        List<PlanNode> children = new ArrayList<>();
+        for (JsonNode child : node.path("Plans")) {
+            children.add(node(child));
+        }
+        Map<String, Object> properties = new LinkedHashMap<>();
+        node.properties().forEach(entry -> {
+            if (!TYPED_KEYS.contains(entry.getKey())) {
+                properties.put(entry.getKey(), mapper.convertValue(entry.getValue(), Object.class));
+            }
+        });
+        return new PlanNode(
+                text(node, "Node Type"),
+                text(node, "Relation Name"),
+                text(node, "Alias"),
+                text(node, "Index Name"),
+                text(node, "Join Type"),
+                node.path("Startup Cost").asDouble(),
+                node.path("Total Cost").asDouble(),
+                node.path("Plan Rows").asDouble(),
+                node.path("Plan Width").asInt(),
+                text(node, "Filter"),
+                firstText(node, "Index Cond", "Recheck Cond"),
+                firstText(node, "Hash Cond", "Merge Cond", "Join Filter"),
+                actual(node),
+                buffers(node),
+                List.copyOf(children),
+                properties
+        );
+    }
+
+    private static PlanNode.Actual actual(JsonNode node) {
+        if (!node.has("Actual Loops")) {
+            return null;
+        }
+        return new PlanNode.Actual(
+                node.path("Actual Startup Time").asDouble(),
+                node.path("Actual Total Time").asDouble(),
+                node.path("Actual Rows").asDouble(),
+                node.path("Actual Loops").asLong()
+        );
+    }
+
+    private static PlanNode.Buffers buffers(JsonNode node) {
+        if (!node.has("Shared Hit Blocks")) {
+            return null;
+        }
+        return new PlanNode.Buffers(
+                node.path("Shared Hit Blocks").asLong(),
+                node.path("Shared Read Blocks").asLong(),
+                node.path("Shared Dirtied Blocks").asLong(),
+                node.path("Shared Written Blocks").asLong(),
+                node.path("Local Hit Blocks").asLong(),
+                node.path("Local Read Blocks").asLong(),
+                node.path("Temp Read Blocks").asLong(),
+                node.path("Temp Written Blocks").asLong()
+        );
+    }
+
+    private static String firstText(JsonNode node, String... keys) {
+        for (String key : keys) {
+            String value = text(node, key);
+            if (value != null) {
+                return value;
+            }
+        }
+        return null;
+    }
+
+    private static String text(JsonNode node, String key) {
+        JsonNode value = node.get(key);
+        return value == null || value.isNull() ? null : value.asText();
+    }
+}
@@ -0,0 +1,151 @@
+package pl.db.plan.scanner.analyzer;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * {@link FindingType#MISESTIMATE Misestimated} nodes of many plans, e.g. of all scanned repository methods
+ * explained with {@code ANALYZE}, ranked by cost impact of the misestimate, with columns of their conditions
+ * and statistics which should improve the estimates.
+ *
+ * @param entries misestimated nodes, the highest cost impact first
+ */
+public record MisestimateReport(List<Entry> entries) {
+
+    private static final Pattern LITERAL = Pattern.compile("'(?:[^']|'')*'");
+    private static final Pattern CAST = Pattern.compile("::[\\w ]+(?:\\[])?");
+    private static final Pattern IDENTIFIER = Pattern.compile("(?<![\\w.$])([A-Za-z_]\\w*(?:\\.[A-Za-z_]\\w*)?)(?![\\w.]|\\s*\\()");
+    private static final Set<String> KEYWORDS = Set.of(
+            "and", "or", "not", "is", "null", "true", "false", "any", "all", "in", "like", "ilike", "between",
+            "case", "when", "then", "else", "end", "distinct", "from", "subplan", "initplan", "hashed", "returns");
+
+    /**
+     * @param plans analyzed plans keyed e.g. by repository method, plans without actual rows have no misestimates
+     */
+    public static MisestimateReport of(Map<String, ExecutionPlan> plans) {
+        List<Entry> entries = new ArrayList<>();
+        plans.forEach((key, plan) -> {
+            Map<String, String> relations = relations(plan.root());
+            plan.findings(FindingType.MISESTIMATE).forEach(finding -> entries.add(new Entry(
+                    key, plan.sql(), finding, finding.node().misestimate(), costImpact(finding.node()), columns(finding.node(), relations))));
+        });
+        entries.sort(Comparator.comparingDouble(Entry::costImpact).reversed());
+        return new MisestimateReport(List.copyOf(entries));
+    }
+
+    /**
+     * Cost of the node scaled by the misestimate, roughly what the planner got wrong: cost it would have
+     * estimated for actual rows, or cost it wrongly expected for overestimated rows, in all loops.
+     */
+    static double costImpact(PlanNode node) {
+        return node.totalCost() * (node.misestimate() - 1) * Math.max(node.actual().loops(), 1);
+    }
+
+    /**
+     * @return columns of filter, index and join conditions of the node, as {@code table.column} when the table
+     * is known
+     */
+    static List<String> columns(PlanNode node, Map<String, String> relations) {
+        Set<String> columns = new LinkedHashSet<>();
+        for (String condition : new String[]{node.filter(), node.indexCondition(), node.joinCondition()}) {
+            if (condition == null) {
+                continue;
+            }
+            String stripped = CAST.matcher(LITERAL.matcher(condition).replaceAll("''")).replaceAll("");
+            Matcher matcher = IDENTIFIER.matcher(stripped);
+            while (matcher.find()) {
+                String identifier = matcher.group(1);
+                if (KEYWORDS.contains(identifier.toLowerCase())) {
+                    continue;
+                }
+                int dot = identifier.indexOf('.');
+                if (dot < 0) {
+                    columns.add(node.relationName() == null ? identifier : node.relationName() + "." + identifier);
+                } else {
+                    String alias = identifier.substring(0, dot);
+                    columns.add(relations.getOrDefault(alias, alias) + identifier.substring(dot));
+                }
+            }
+        }
+        return List.copyOf(columns);
+    }
+
+    private static Map<String, String> relations(PlanNode root) {
+        Map<String, String> relations = new HashMap<>();
+        root.stream()
+                .filter(node -> node.relationName() != null && node.alias() != null)
+                .forEach(node -> relations.put(node.alias(), node.relationName()));
+        return relations;
+    }
+
+    /**
+     * @return statements suggested by all entries, without duplicates, in order of cost impact
+     */
+    public List<String> statistics() {
+        Set<String> statistics = new LinkedHashSet<>();
+        entries.forEach(entry -> statistics.addAll(entry.statistics()));
+        return List.copyOf(statistics);
+    }
+
+    public boolean isEmpty() {
+        return entries.isEmpty();
+    }
+
+    @Override
+    public String toString() {
+        if (entries.isEmpty()) {
+            return "No misestimates";
+        }
+        StringBuilder report = new StringBuilder().append(entries.size()).append(" misestimates");
+        entries.forEach(entry -> report.append("\n  ").append(entry));
+        return report.toString();
+    }
+
+    /**
+     * @param key key of the plan, e.g. repository method
+     * @param sql explained statement
+     * @param finding misestimated node
+     * @param ratio how many times actual rows differ from estimated
+     * @param costImpact see {@link #costImpact(PlanNode)}
+     * @param columns columns of conditions of the node, as {@code table.column}
+     */
+    public record Entry(String key, String sql, Finding finding, double ratio, double costImpact, List<String> columns) {
+
+        /**
+         * Extended statistics for two or more columns of a table (they are likely correlated), larger statistics
+         * target for a single column (its values are likely skewed). Statistics cannot span tables, so there are
+         * none for joins, misestimates of joins usually come from misestimated scans below them.
+         */
+        public List<String> statistics() {
+            if (finding.node().relationName() == null) {
+                return List.of();
+            }
+            Map<String, List<String>> byTable = new LinkedHashMap<>();
+            for (String column : columns) {
+                int dot = column.lastIndexOf('.');
+                if (dot > 0) {
+                    byTable.computeIfAbsent(column.substring(0, dot), table -> new ArrayList<>()).add(column.substring(dot + 1));
+                }
+            }
+            List<String> statistics = new ArrayList<>();
+            byTable.forEach((table, names) -> statistics.add(names.size() == 1
+                    ? "ALTER TABLE " + table + " ALTER COLUMN " + names.getFirst() + " SET STATISTICS 1000"
+                    : "CREATE STATISTICS ON " + String.join(", ", names) + " FROM " + table));
+            return statistics;
+        }
+
+        @Override
+        public String toString() {
+            return key + ": " + Math.round(ratio) + "x, cost impact " + Math.round(costImpact) + ", " + finding
+                    + (columns.isEmpty() ? "" : ", columns " + columns);
+        }
+    }
+}
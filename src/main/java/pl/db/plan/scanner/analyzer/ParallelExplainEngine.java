@@ -0,0 +1,233 @@
+package pl.db.plan.scanner.analyzer;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Explains many statements at once: every statement gets its own virtual thread, threads share a bounded
+ * number of connections opened once for the whole run. Explain is a single round trip with planning
+ * on the database side, so the run scales with number of connections until the database becomes the bottleneck.
+ * <p>
+ * With {@link PlanCache} only statements not explained yet, or whose tables changed statistics, are sent
+ * to the database. Statistics of all cached tables are read with a single query.
+ * <p>
+ * With {@link #withBatchSize(int) batches}, statements are sent to the database in groups by {@link BatchExplainer},
+ * a group per virtual thread, which removes round trip per statement on high latency links.
+ */
+public class ParallelExplainEngine {
+
+    private final DataSource dataSource;
+    private final int connections;
+    private final ExecutionPlanAnalyzer analyzer;
+    private final PlanCache cache;
+    private final int batchSize;
+    private final BatchExplainer batchExplainer;
+
+    public ParallelExplainEngine(DataSource dataSource, int connections) {
+        this(dataSource, connections, new ExecutionPlanAnalyzer(), null);
+    }
+
+    public ParallelExplainEngine(DataSource dataSource, int connections, PlanCache cache) {
+        this(dataSource, connections, new ExecutionPlanAnalyzer(), cache);
+    }
+
+    public ParallelExplainEngine(DataSource dataSource, int connections, ExecutionPlanAnalyzer analyzer) {
+        this(dataSource, connections, analyzer, null);
+    }
+
+    /**
+     * @param cache cache of plans or {@code null} when every statement is explained
+     */
+    public ParallelExplainEngine(DataSource dataSource, int connections, ExecutionPlanAnalyzer analyzer, PlanCache cache) {
+        this(dataSource, connections, analyzer, cache, 1);
+    }
+
+    private ParallelExplainEngine(DataSource dataSource, int connections, ExecutionPlanAnalyzer analyzer, PlanCache cache,
+                                  int batchSize) {
+        if (connections < 1) {
+            throw new IllegalArgumentException("At least one connection is required, but was: " + connections);
+        }
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("Batch size must be positive, but was: " + batchSize);
+        }
+        this.dataSource = dataSource;
+        this.connections = connections;
+        this.analyzer = analyzer;
+        this.cache = cache;
+        this.batchSize = batchSize;
+        // explains with the same options as the analyzer, plans are cached under the same keys
+        this.batchExplainer = batchSize > 1 ? new BatchExplainer(analyzer.getOptions()) : null;
+    }
+
+    /**
+     * @param batchSize number of statements explained in a single round trip, {@code 1} disables batching
+     */
+    public ParallelExplainEngine withBatchSize(int batchSize) {
+        return new ParallelExplainEngine(dataSource, connections, analyzer, cache, batchSize);
+    }
+
+    /**
+     * Explains all statements, failure of a single statement is reported in its entry.
+     *
+     * @return report with entries in order of statements
+     */
+    public ExplainReport explainAll(List<String> statements) throws SQLException, InterruptedException {
+        int poolSize = Math.max(1, Math.min(connections, statements.size()));
+        long start = System.nanoTime();
+        List<Connection> opened = new ArrayList<>(poolSize);
+        try {
+            for (int i = 0; i < poolSize; i++) {
+                opened.add(dataSource.getConnection());
+            }
+            ExplainReport.Entry[] entries = new ExplainReport.Entry[statements.size()];
+            String[] explained = new String[statements.size()];
+
+            StatisticsSnapshot statistics = null;
+            List<Integer> pending = new ArrayList<>();
+            if (cache != null) {
+                statistics = StatisticsSnapshot.read(opened.getFirst(), cache.tables());
+                for (int i = 0; i < statements.size(); i++) {
+                    PlanCache.CachedPlan cached = cache.get(cacheKey(statements.get(i)), statistics);
+                    if (cached != null) {
+                        entries[i] = fromCache(statements.get(i), cached);
+                    } else {
+                        pending.add(i);
+                    }
+                }
+            } else {
+                for (int i = 0; i < statements.size(); i++) {
+                    pending.add(i);
+                }
+            }
+
+            BlockingQueue<Connection> pool = new ArrayBlockingQueue<>(poolSize, false, opened);
+            try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+                if (batchSize == 1) {
+                    for (int index : pending) {
+                        executor.execute(() -> entries[index] = explain(pool, statements.get(index), explained, index));
+                    }
+                } else {
+                    for (int from = 0; from < pending.size(); from += batchSize) {
+                        List<Integer> batch = pending.subList(from, Math.min(pending.size(), from + batchSize));
+                        executor.execute(() -> explainBatch(pool, statements, batch, entries, explained));
+                    }
+                }
+            }
+            if (Thread.interrupted()) {
+                throw new InterruptedException("Explain of " + statements.size() + " statements was interrupted");
+            }
+            if (cache != null) {
+                store(opened.getFirst(), entries, explained, statistics);
+            }
+            return new ExplainReport(Arrays.asList(entries), Duration.ofNanos(System.nanoTime() - start), poolSize);
+        } finally {
+            for (Connection connection : opened) {
+                connection.close();
+            }
+        }
+    }
+
+    private ExplainReport.Entry fromCache(String sql, PlanCache.CachedPlan cached) {
+        long start = System.nanoTime();
+        ExecutionPlan plan = analyzer.analyze(sql, cached.planJson());
+        return new ExplainReport.Entry(sql, plan, Duration.ofNanos(System.nanoTime() - start), null, true);
+    }
+
+    private ExplainReport.Entry explain(BlockingQueue<Connection> pool, String sql, String[] explained, int index) {
+        Connection connection;
+        try {
+            connection = pool.take();
+        } catch (InterruptedException e) {
+            return new ExplainReport.Entry(sql, null, Duration.ZERO, "Interrupted", false);
+        }
+        long start = System.nanoTime();
+        try {
+            String json = analyzer.explain(connection, sql);
+            ExecutionPlan plan = analyzer.analyze(sql, json);
+            explained[index] = json;
+            return new ExplainReport.Entry(sql, plan, Duration.ofNanos(System.nanoTime() - start), null, false);
+        } catch (SQLException | IllegalArgumentException e) {
+            return new ExplainReport.Entry(sql, null, Duration.ofNanos(System.nanoTime() - start), e.getMessage(), false);
+        } finally {
+            pool.add(connection);
+        }
+    }
+
+    private void explainBatch(BlockingQueue<Connection> pool, List<String> statements, List<Integer> batch,
+                              ExplainReport.Entry[] entries, String[] explained) {
+        List<String> sqls = batch.stream().map(statements::get).toList();
+        Connection connection;
+        try {
+            connection = pool.take();
+        } catch (InterruptedException e) {
+            batch.forEach(index -> entries[index] = new ExplainReport.Entry(statements.get(index), null, Duration.ZERO, "Interrupted", false));
+            return;
+        }
+        try {
+            List<BatchExplainer.Result> results = batchExplainer.explain(connection, sqls);
+            for (int i = 0; i < batch.size(); i++) {
+                int index = batch.get(i);
+                entries[index] = toEntry(results.get(i));
+                if (!entries[index].failed()) {
+                    explained[index] = results.get(i).planJson();
+                }
+            }
+        } catch (SQLException e) {
+            // the whole batch failed, e.g. connection was lost
+            batch.forEach(index -> entries[index] = new ExplainReport.Entry(statements.get(index), null, Duration.ZERO, e.getMessage(), false));
+        } finally {
+            pool.add(connection);
+        }
+    }
+
+    private ExplainReport.Entry toEntry(BatchExplainer.Result result) {
+        if (result.failed()) {
+            return new ExplainReport.Entry(result.sql(), null, result.duration(), result.error(), false);
+        }
+        try {
+            ExecutionPlan plan = analyzer.analyze(result.sql(), result.planJson());
+            return new ExplainReport.Entry(result.sql(), plan, result.duration(), null, false);
+        } catch (IllegalArgumentException e) {
+            return new ExplainReport.Entry(result.sql(), null, result.duration(), e.getMessage(), false);
+        }
+    }
+
+    /**
+     * Puts newly explained plans into the cache, statistics of tables seen for the first time are read at once.
+     */
+    private void store(Connection connection, ExplainReport.Entry[] entries, String[] explained,
+                       StatisticsSnapshot statistics) throws SQLException {
+        Map<Integer, Set<String>> tables = new HashMap<>();
+        Set<String> unknown = new HashSet<>();
+        for (int i = 0; i < entries.length; i++) {
+            if (explained[i] != null) {
+                Set<String> planTables = new HashSet<>();
+                entries[i].plan().root().stream()
+                        .map(PlanNode::relationName)
+                        .filter(Objects::nonNull)
+                        .forEach(planTables::add);
+                tables.put(i, planTables);
+                planTables.stream().filter(table -> !statistics.contains(table)).forEach(unknown::add);
+            }
+        }
+        StatisticsSnapshot current = unknown.isEmpty()
+                ? statistics
+                : statistics.merge(StatisticsSnapshot.read(connection, unknown));
+        tables.forEach((index, planTables) -> cache.put(cacheKey(entries[index].sql()), explained[index], planTables, current));
+    }
+
+    /**
+     * Plans explained with different options are cached separately.
+     */
+    private String cacheKey(String sql) {
+        ExplainOptions options = analyzer.getOptions();
+        return options.equals(ExplainOptions.ESTIMATE) ? sql : options + " " + sql;
+    }
+}
@@ -0,0 +1,292 @@
+package pl.db.plan.scanner.analyzer;
+
+import javax.sql.DataSource;
+import java.sql.Array;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Explains a statement with many different parameter values, to find values for which the planner chooses
+ * a different plan, e.g. sequential scan of the whole table for a timestamp from a year ago instead of index
+ * scan for yesterday.
+ * <p>
+ * Columns the parameters are compared with are read from conditions of the generic plan, values come from
+ * planner statistics ({@code pg_stats}): most common values and histogram bounds. Parameters are varied one
+ * at a time, the others keep their typical value (the most common one, or the median). All variants are
+ * explained in parallel with {@link ParallelExplainEngine}, with values inlined as literals, so every variant
+ * gets its own custom plan.
+ */
+public class ParameterSweep {
+
+    private static final String OPERATOR = "(?:=|<>|!=|<=|>=|<|>|!?~~\\*?)";
+    private static final String CAST = "(?:::[\\w ]+?)?";
+    private static final Pattern COLUMN_FIRST = Pattern.compile(
+            "([A-Za-z_][\\w.]*)\\)?" + CAST + "\\s*" + OPERATOR + "\\s*\\(?\\$(\\d+)\\b");
+    private static final Pattern PARAMETER_FIRST = Pattern.compile(
+            "\\$(\\d+)\\)?" + CAST + "\\s*" + OPERATOR + "\\s*\\(?([A-Za-z_][\\w.]*)");
+    private static final String STATISTICS = """
+            SELECT tablename::text, attname::text, most_common_vals::text::text[], histogram_bounds::text::text[]
+              FROM pg_stats
+             WHERE schemaname = ANY (current_schemas(false))
+               AND tablename::text = ANY (?)
+               AND attname::text = ANY (?)
+            """;
+
+    private final DataSource dataSource;
+    private final ParallelExplainEngine engine;
+    private final ExecutionPlanAnalyzer genericPlanAnalyzer = new ExecutionPlanAnalyzer(ExplainOptions.GENERIC_PLAN);
+    private final int valuesPerParameter;
+    private final double costRatio;
+
+    public ParameterSweep(DataSource dataSource, int connections) {
+        this(dataSource, new ParallelExplainEngine(dataSource, connections), 8, 10);
+    }
+
+    /**
+     * @param valuesPerParameter how many values of every parameter are explained at most
+     * @param costRatio how many times cost has to differ from the baseline to be reported, even when plan shape is the same
+     */
+    public ParameterSweep(DataSource dataSource, ParallelExplainEngine engine, int valuesPerParameter, double costRatio) {
+        if (valuesPerParameter < 2) {
+            throw new IllegalArgumentException("At least two values per parameter are needed, but was: " + valuesPerParameter);
+        }
+        if (costRatio <= 1) {
+            throw new IllegalArgumentException("Cost ratio must be greater than 1, but was: " + costRatio);
+        }
+        this.dataSource = dataSource;
+        this.engine = engine;
+        this.valuesPerParameter = valuesPerParameter;
+        this.costRatio = costRatio;
+    }
+
+    /**
+     * @param sql statement with jdbc placeholders ({@code ?})
+     */
+    public SweepReport sweep(String sql) throws SQLException, InterruptedException {
+        Map<Integer, List<SweepValue>> values;
+        try (Connection connection = dataSource.getConnection()) {
+            ExecutionPlan genericPlan = genericPlanAnalyzer.analyze(connection, sql);
+            values = values(readStatistics(connection, boundColumns(genericPlan.root())));
+        }
+        return sweep(sql, values);
+    }
+
+    /**
+     * Explains statement with given values of its parameters, the first value of every parameter is its typical value.
+     *
+     * @param values values by parameter number, starting with 1
+     */
+    public SweepReport sweep(String sql, Map<Integer, List<SweepValue>> values) throws SQLException, InterruptedException {
+        int parameters = GenericPlanExplainer.replacePlaceholders(sql, parameter -> "?").parameters();
+        List<Integer> unresolved = new ArrayList<>();
+        for (int parameter = 1; parameter <= parameters; parameter++) {
+            if (values.getOrDefault(parameter, List.of()).isEmpty()) {
+                unresolved.add(parameter);
+            }
+        }
+        if (parameters == 0 || !unresolved.isEmpty()) {
+            return new SweepReport(sql, null, List.of(), unresolved, costRatio);
+        }
+
+        String[] typical = new String[parameters];
+        for (int parameter = 1; parameter <= parameters; parameter++) {
+            typical[parameter - 1] = values.get(parameter).getFirst().value();
+        }
+        List<Variant> variants = new ArrayList<>();
+        variants.add(new Variant(0, null, typical));
+        for (int parameter = 1; parameter <= parameters; parameter++) {
+            List<SweepValue> parameterValues = values.get(parameter);
+            for (SweepValue value : parameterValues.subList(1, parameterValues.size())) {
+                String[] bound = typical.clone();
+                bound[parameter - 1] = value.value();
+                variants.add(new Variant(parameter, value.source(), bound));
+            }
+        }
+
+        List<String> statements = variants.stream().map(variant -> inline(sql, variant.values())).toList();
+        List<ExplainReport.Entry> entries = engine.explainAll(statements).entries();
+        List<SweepReport.Point> points = new ArrayList<>(variants.size());
+        for (int i = 0; i < variants.size(); i++) {
+            Variant variant = variants.get(i);
+            ExplainReport.Entry entry = entries.get(i);
+            points.add(new SweepReport.Point(variant.parameter(), List.of(variant.values()), variant.source(),
+                    entry.sql(), entry.plan(), entry.error()));
+        }
+        return new SweepReport(sql, points.getFirst(), points.subList(1, points.size()), unresolved, costRatio);
+    }
+
+    /**
+     * Only conditions of the scan itself, {@code Index Cond} and {@code Filter}, are read, and only their columns
+     * of the scanned table: unqualified or qualified by its alias. Join conditions, including the ones pushed down
+     * into the inner scan of a nested loop, compare parameters with columns of other tables too.
+     *
+     * @return table and column every parameter is compared with in conditions of the plan, by parameter number
+     */
+    static Map<Integer, Column> boundColumns(PlanNode root) {
+        Map<Integer, Column> columns = new TreeMap<>();
+        root.stream()
+                .filter(node -> node.relationName() != null)
+                .forEach(node -> {
+                    String alias = node.alias() == null ? node.relationName() : node.alias();
+                    for (String condition : new String[]{node.indexCondition(), node.filter()}) {
+                        if (condition == null) {
+                            continue;
+                        }
+                        Matcher columnFirst = COLUMN_FIRST.matcher(condition);
+                        while (columnFirst.find()) {
+                            bind(columns, Integer.parseInt(columnFirst.group(2)), node.relationName(), alias, columnFirst.group(1));
+                        }
+                        Matcher parameterFirst = PARAMETER_FIRST.matcher(condition);
+                        while (parameterFirst.find()) {
+                            bind(columns, Integer.parseInt(parameterFirst.group(1)), node.relationName(), alias, parameterFirst.group(2));
+                        }
+                    }
+                });
+        return columns;
+    }
+
+    private static void bind(Map<Integer, Column> columns, int parameter, String table, String alias, String qualifiedColumn) {
+        int dot = qualifiedColumn.lastIndexOf('.');
+        if (dot < 0 || qualifiedColumn.substring(0, dot).equals(alias)) {
+            columns.putIfAbsent(parameter, column(table, qualifiedColumn));
+        }
+    }
+
+    private static Column column(String table, String qualifiedColumn) {
+        return new Column(table, qualifiedColumn.substring(qualifiedColumn.lastIndexOf('.') + 1));
+    }
+
+    /**
+     * @return statistics of bound columns by parameter number, parameters of columns without statistics are missing
+     */
+    private static Map<Integer, ColumnStatistics> readStatistics(Connection connection, Map<Integer, Column> columns) throws SQLException {
+        Map<Integer, ColumnStatistics> statistics = new HashMap<>();
+        if (columns.isEmpty()) {
+            return statistics;
+        }
+        Set<String> tables = new HashSet<>();
+        Set<String> names = new HashSet<>();
+        columns.values().forEach(column -> {
+            tables.add(column.table());
+            names.add(column.name());
+        });
+        Map<Column, ColumnStatistics> byColumn = new HashMap<>();
+        try (PreparedStatement stmt = connection.prepareStatement(STATISTICS)) {
+            stmt.setArray(1, connection.createArrayOf("text", tables.toArray()));
+            stmt.setArray(2, connection.createArrayOf("text", names.toArray()));
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    // the same table in more schemas of the search path, the first one wins as in queries
+                    byColumn.putIfAbsent(new Column(rs.getString(1), rs.getString(2)),
+                            new ColumnStatistics(strings(rs.getArray(3)), strings(rs.getArray(4))));
+                }
+            }
+        }
+        columns.forEach((parameter, column) -> {
+            ColumnStatistics columnStatistics = byColumn.get(column);
+            if (columnStatistics != null) {
+                statistics.put(parameter, columnStatistics);
+            }
+        });
+        return statistics;
+    }
+
+    private static List<String> strings(Array array) throws SQLException {
+        return array == null ? List.of() : List.of((String[]) array.getArray());
+    }
+
+    /**
+     * Up to half of the values are the most common ones, the rest are histogram bounds spread evenly from the lowest
+     * to the highest, so both frequent values and both ends of the distribution are covered.
+     */
+    private Map<Integer, List<SweepValue>> values(Map<Integer, ColumnStatistics> statistics) {
+        Map<Integer, List<SweepValue>> values = new HashMap<>();
+        statistics.forEach((parameter, columnStatistics) -> {
+            List<String> mostCommon = columnStatistics.mostCommonValues();
+            List<String> histogram = columnStatistics.histogramBounds();
+            Map<String, SweepValue> selected = new LinkedHashMap<>();
+            if (!mostCommon.isEmpty()) {
+                selected.put(mostCommon.getFirst(), new SweepValue(mostCommon.getFirst(), Source.MOST_COMMON));
+            } else if (!histogram.isEmpty()) {
+                String median = histogram.get(histogram.size() / 2);
+                selected.put(median, new SweepValue(median, Source.HISTOGRAM));
+            }
+            int fromMostCommon = histogram.isEmpty() ? valuesPerParameter : valuesPerParameter / 2;
+            for (String value : mostCommon) {
+                if (selected.size() >= fromMostCommon) {
+                    break;
+                }
+                selected.putIfAbsent(value, new SweepValue(value, Source.MOST_COMMON));
+            }
+            for (int i : evenlySpread(histogram.size(), Math.min(histogram.size(), valuesPerParameter - selected.size()))) {
+                if (selected.size() >= valuesPerParameter) {
+                    break;
+                }
+                selected.putIfAbsent(histogram.get(i), new SweepValue(histogram.get(i), Source.HISTOGRAM));
+            }
+            if (!selected.isEmpty()) {
+                values.put(parameter, List.copyOf(selected.values()));
+            }
+        });
+        return values;
+    }
+
+    private static Set<Integer> evenlySpread(int size, int count) {
+        Set<Integer> indexes = new LinkedHashSet<>();
+        if (count <= 0) {
+            return indexes;
+        }
+        if (count == 1) {
+            indexes.add(0);
+        } else {
+            for (int i = 0; i < count; i++) {
+                indexes.add((int) Math.round((double) i * (size - 1) / (count - 1)));
+            }
+        }
+        return indexes;
+    }
+
+    private static String inline(String sql, String[] values) {
+        return GenericPlanExplainer.replacePlaceholders(sql, parameter -> "'" + values[parameter - 1].replace("'", "''") + "'").sql();
+    }
+
+    /**
+     * Where value of a parameter comes from.
+     */
+    public enum Source {
+        MOST_COMMON,
+        HISTOGRAM
+    }
+
+    /**
+     * @param value text representation of the value, inlined as literal of unknown type
+     * @param source where value comes from
+     */
+    public record SweepValue(String value, Source source) {
+    }
+
+    record Column(String table, String name) {
+    }
+
+    private record ColumnStatistics(List<String> mostCommonValues, List<String> histogramBounds) {
+    }
+
+    /**
+     * @param parameter number of varied parameter or 0 for baseline
+     */
+    private record Variant(int parameter, Source source, String[] values) {
+    }
+}
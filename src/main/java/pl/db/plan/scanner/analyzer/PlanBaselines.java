@@ -0,0 +1,201 @@
+package pl.db.plan.scanner.analyzer;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Accepted execution plans of queries, keyed e.g. by repository method, kept in the repository and compared
+ * with current plans on every run (see {@link PlanDiff}).
+ * <p>
+ * Only the shape of the plan is kept: node types, relations, indexes and total costs. The file is binary:
+ * {@code int magic, int version}, table of distinct strings ({@link DataOutputStream#writeUTF(String)}) and
+ * entries with nodes in depth first order, every node as {@code varint nodeType, varint relation, varint index,
+ * float totalCost, varint children}, where strings are indexes into the table (0 for {@code null}).
+ * Thousands of baselines take a few hundred kilobytes and are loaded in milliseconds.
+ */
+public class PlanBaselines {
+
+    private static final int MAGIC = 0x50424C31;
+    private static final int VERSION = 1;
+
+    // sorted, so saved file does not change when plans do not change
+    private final Map<String, PlanNode> baselines = new TreeMap<>();
+
+    /**
+     * @return baselines saved by {@link #save(Path)}, empty when the file does not exist
+     */
+    public static PlanBaselines load(Path file) throws IOException {
+        PlanBaselines baselines = new PlanBaselines();
+        if (!Files.exists(file)) {
+            return baselines;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), 64 * 1024))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Not a plan baselines file: " + file);
+            }
+            int version = in.readInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported plan baselines version " + version + " in " + file);
+            }
+            String[] strings = new String[readVarInt(in) + 1];
+            for (int i = 1; i < strings.length; i++) {
+                strings[i] = in.readUTF();
+            }
+            int entries = readVarInt(in);
+            for (int i = 0; i < entries; i++) {
+                baselines.baselines.put(strings[readVarInt(in)], readNode(in, strings));
+            }
+        }
+        return baselines;
+    }
+
+    public synchronized void save(Path file) throws IOException {
+        Path directory = file.toAbsolutePath().getParent();
+        Files.createDirectories(directory);
+        Map<String, Integer> strings = new HashMap<>();
+        List<String> table = new ArrayList<>();
+        baselines.forEach((key, root) -> {
+            index(key, strings, table);
+            root.stream().forEach(node -> {
+                index(node.nodeType(), strings, table);
+                index(node.relationName(), strings, table);
+                index(node.indexName(), strings, table);
+            });
+        });
+        Path temporary = Files.createTempFile(directory, file.getFileName().toString(), ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary), 64 * 1024))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            writeVarInt(out, table.size());
+            for (String value : table) {
+                out.writeUTF(value);
+            }
+            writeVarInt(out, baselines.size());
+            for (Map.Entry<String, PlanNode> entry : baselines.entrySet()) {
+                writeVarInt(out, strings.get(entry.getKey()));
+                writeNode(out, entry.getValue(), strings);
+            }
+        }
+        Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * @return shape of accepted plan, without conditions and properties, or {@code null} when there is no baseline
+     */
+    public synchronized PlanNode get(String key) {
+        return baselines.get(key);
+    }
+
+    /**
+     * Accepts current plan of the query as its baseline.
+     */
+    public synchronized void put(String key, ExecutionPlan plan) {
+        baselines.put(key, shape(plan.root()));
+    }
+
+    /**
+     * @return differences of the plan against its baseline, {@code null} when there is no baseline
+     */
+    public PlanDiff diff(String key, ExecutionPlan plan, double costTolerance) {
+        PlanNode baseline = get(key);
+        return baseline == null ? null : PlanDiff.of(key, baseline, plan.root(), costTolerance);
+    }
+
+    public synchronized Set<String> keys() {
+        return Set.copyOf(baselines.keySet());
+    }
+
+    public synchronized int size() {
+        return baselines.size();
+    }
+
+    private static PlanNode shape(PlanNode node) {
+        List<PlanNode> children = new ArrayList<>(node.children().size());
+        for (PlanNode child : node.children()) {
+            children.add(shape(child));
+        }
+        return node(node.nodeType(), node.relationName(), node.indexName(), (float) node.totalCost(), children);
+    }
+
+    /**
+     * @param totalCost cost as stored in the file, so baselines are the same before and after save
+     */
+    private static PlanNode node(String nodeType, String relationName, String indexName, float totalCost, List<PlanNode> children) {
+        // shortest decimal of the float, e.g. 8.3 instead of 8.300000190734863
+        double cost = Double.parseDouble(Float.toString(totalCost));
+        return new PlanNode(nodeType, relationName, null, indexName, null, 0, cost, 0, 0,
+                null, null, null, null, null, List.copyOf(children), Map.of());
+    }
+
+    private static void index(String value, Map<String, Integer> strings, List<String> table) {
+        if (value != null && !strings.containsKey(value)) {
+            table.add(value);
+            strings.put(value, table.size());
+        }
+    }
+
+    private static int id(String value, Map<String, Integer> strings) {
+        return value == null ? 0 : strings.get(value);
+    }
+
+    private static void writeNode(DataOutputStream out, PlanNode node, Map<String, Integer> strings) throws IOException {
+        writeVarInt(out, id(node.nodeType(), strings));
+        writeVarInt(out, id(node.relationName(), strings));
+        writeVarInt(out, id(node.indexName(), strings));
+        out.writeFloat((float) node.totalCost());
+        writeVarInt(out, node.children().size());
+        for (PlanNode child : node.children()) {
+            writeNode(out, child, strings);
+        }
+    }
+
+    private static PlanNode readNode(DataInputStream in, String[] strings) throws IOException {
+        String nodeType = strings[readVarInt(in)];
+        String relationName = strings[readVarInt(in)];
+        String indexName = strings[readVarInt(in)];
+        float totalCost = in.readFloat();
+        int count = readVarInt(in);
+        List<PlanNode> children = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            children.add(readNode(in, strings));
+        }
+        return node(nodeType, relationName, indexName, totalCost, children);
+    }
+
+    private static void writeVarInt(OutputStream out, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.write((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    private static int readVarInt(InputStream in) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            int b = in.read();
+            if (b < 0) {
+                throw new IOException("Unexpected end of plan baselines file");
+            }
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed varint in plan baselines file");
+    }
+}
@@ -0,0 +1,42 @@
+package pl.db.plan.scanner.analyzer;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Limits of the execution plan of a repository method, checked by {@link PlanVerdict}. Point lookups on hot paths
+ * get tight budgets, known batch or reporting queries may be expensive:
+ * <pre>{@code
+ * @PlanBudget(maxCost = 50_000, allowedSeqScans = "activity_log")
+ * @Query("SELECT a FROM ActivityLog a WHERE a.timestamp >= :timestamp")
+ * List<ActivityLog> findRecentLogs(@Param("timestamp") LocalDateTime timestamp);
+ * }</pre>
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.METHOD)
+public @interface PlanBudget {
+
+    /**
+     * Allows sequential scan of any table.
+     */
+    String ANY_TABLE = "*";
+
+    /**
+     * @return highest acceptable total cost of the plan
+     */
+    double maxCost() default Double.POSITIVE_INFINITY;
+
+    /**
+     * @return tables which may be scanned sequentially, a full scan of any other table is over budget
+     */
+    String[] allowedSeqScans() default {};
+
+    /**
+     * @return highest acceptable number of rows the planner estimates the statement returns (or modifies)
+     */
+    double maxRows() default Double.POSITIVE_INFINITY;
+}
@@ -0,0 +1,139 @@
+package pl.db.plan.scanner.analyzer;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Cache of execution plans, keyed by sql, valid as long as statistics of tables in the plan do not change
+ * (see {@link StatisticsSnapshot}). Least recently used plans are evicted above the limit.
+ * <p>
+ * Plans are kept as {@code EXPLAIN (FORMAT JSON)} output and can be saved into a file, so the next run
+ * only re-plans statements which changed or whose tables changed.
+ */
+public class PlanCache {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private final int maxEntries;
+    private final LinkedHashMap<String, CachedPlan> entries;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    public PlanCache(int maxEntries) {
+        this.maxEntries = maxEntries;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedPlan> eldest) {
+                return size() > PlanCache.this.maxEntries;
+            }
+        };
+    }
+
+    /**
+     * @return cache with plans saved by {@link #save(Path)}, empty when the file does not exist
+     */
+    public static PlanCache load(Path file, int maxEntries) throws IOException {
+        PlanCache cache = new PlanCache(maxEntries);
+        if (Files.exists(file)) {
+            List<CachedPlan> plans = MAPPER.readValue(file.toFile(), new TypeReference<>() {
+            });
+            // saved from the least recently used
+            plans.forEach(plan -> cache.entries.put(key(plan.sql()), plan));
+        }
+        return cache;
+    }
+
+    public synchronized void save(Path file) throws IOException {
+        Path directory = file.toAbsolutePath().getParent();
+        Files.createDirectories(directory);
+        Path temporary = Files.createTempFile(directory, file.getFileName().toString(), ".tmp");
+        MAPPER.writeValue(temporary.toFile(), new ArrayList<>(entries.values()));
+        Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * @return cached plan or {@code null} when statement was not explained yet or statistics of its tables changed
+     */
+    public synchronized CachedPlan get(String sql, StatisticsSnapshot statistics) {
+        CachedPlan plan = entries.get(key(sql));
+        if (plan == null || plan.statisticsVersion() != statistics.version(plan.tables())) {
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        return plan;
+    }
+
+    public synchronized void put(String sql, String planJson, Set<String> tables, StatisticsSnapshot statistics) {
+        List<String> sortedTables = List.copyOf(new TreeSet<>(tables));
+        entries.put(key(sql), new CachedPlan(sql, planJson, sortedTables, statistics.version(sortedTables)));
+    }
+
+    /**
+     * @return tables referenced by cached plans, to read their statistics at once
+     */
+    public synchronized Set<String> tables() {
+        Set<String> tables = new HashSet<>();
+        entries.values().forEach(plan -> tables.addAll(plan.tables()));
+        return tables;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    /**
+     * Statements differing only in whitespace outside of quotes share the plan. Literals are kept,
+     * because the plan depends on them.
+     */
+    static String key(String sql) {
+        StringBuilder key = new StringBuilder(sql.length());
+        char quote = 0;
+        boolean space = false;
+        for (int i = 0; i < sql.length(); i++) {
+            char c = sql.charAt(i);
+            if (quote != 0) {
+                key.append(c);
+                if (c == quote) {
+                    quote = 0;
+                }
+            } else if (Character.isWhitespace(c)) {
+                space = true;
+            } else {
+                if (space && !key.isEmpty()) {
+                    key.append(' ');
+                }
+                space = false;
+                if (c == '\'' || c == '"') {
+                    quote = c;
+                }
+                key.append(c);
+            }
+        }
+        return key.toString();
+    }
+
+    /**
+     * @param sql explained statement
+     * @param planJson output of {@code EXPLAIN (FORMAT JSON)}
+     * @param tables tables referenced by the plan
+     * @param statisticsVersion version of statistics of the tables when statement was explained
+     */
+    public record CachedPlan(String sql, String planJson, List<String> tables, long statisticsVersion) {
+    }
+}
@@ -0,0 +1,144 @@
+package pl.db.plan.scanner.analyzer;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Structural differences of current execution plan against its baseline (see {@link PlanBaselines}).
+ * Nodes are compared by their position in the tree, index usage by relation, cost of every node found at the same
+ * position by ratio, so a subtree which got expensive is reported even when the whole plan is still within tolerance.
+ *
+ * @param key key of the baseline, e.g. repository method
+ * @param baseline shape of accepted plan
+ * @param current current plan
+ * @param changes differences, empty when plan did not change
+ */
+public record PlanDiff(String key, PlanNode baseline, PlanNode current, List<Change> changes) {
+
+    /**
+     * Costs are compared with at least the cost of reading a single page, cheap nodes would change many times.
+     */
+    private static final double MIN_COST = 1;
+
+    /**
+     * @param costTolerance how many times higher total cost of a node may be, e.g. {@code 2} for twice as expensive
+     */
+    public static PlanDiff of(String key, PlanNode baseline, PlanNode current, double costTolerance) {
+        if (costTolerance < 1) {
+            throw new IllegalArgumentException("Cost tolerance must be at least 1, but was: " + costTolerance);
+        }
+        List<Change> changes = new ArrayList<>();
+        if (!sameNode(baseline, current)) {
+            // cost of the whole plan even when its root changed
+            compareCost(baseline, current, baseline.nodeType(), costTolerance, changes);
+        }
+        Set<String> lostIndexes = new HashSet<>();
+        compare(baseline, current, baseline.nodeType(), costTolerance, changes, lostIndexes);
+
+        // index can be lost in a part of the plan which moved, so it is not found by position
+        Set<String> currentIndexes = new HashSet<>();
+        current.stream().filter(node -> node.indexName() != null).forEach(node -> currentIndexes.add(node.indexName()));
+        baseline.stream()
+                .filter(node -> node.indexName() != null && !currentIndexes.contains(node.indexName()) && lostIndexes.add(node.indexName()))
+                .forEach(node -> changes.add(new Change(ChangeType.INDEX_LOST, node.toString(), node.indexName(), scansOf(current, node.relationName()))));
+        return new PlanDiff(key, baseline, current, List.copyOf(changes));
+    }
+
+    private static void compare(PlanNode baseline, PlanNode current, String path, double costTolerance, List<Change> changes,
+                                Set<String> lostIndexes) {
+        if (sameNode(baseline, current)) {
+            compareCost(baseline, current, path, costTolerance, changes);
+        } else {
+            boolean indexLost = baseline.indexName() != null && !baseline.indexName().equals(current.indexName())
+                    && Objects.equals(baseline.relationName(), current.relationName());
+            if (indexLost && current.indexName() == null) {
+                lostIndexes.add(baseline.indexName());
+                changes.add(new Change(ChangeType.INDEX_LOST, path, baseline.toString(), current.toString()));
+            } else {
+                changes.add(new Change(ChangeType.NODE_CHANGED, path, baseline.toString(), current.toString()));
+            }
+        }
+        int common = Math.min(baseline.children().size(), current.children().size());
+        for (int i = 0; i < common; i++) {
+            compare(baseline.children().get(i), current.children().get(i), path + " > " + baseline.children().get(i).nodeType(),
+                    costTolerance, changes, lostIndexes);
+        }
+        for (int i = common; i < baseline.children().size(); i++) {
+            changes.add(new Change(ChangeType.NODE_REMOVED, path, baseline.children().get(i).shape(), null));
+        }
+        for (int i = common; i < current.children().size(); i++) {
+            changes.add(new Change(ChangeType.NODE_ADDED, path, null, current.children().get(i).shape()));
+        }
+    }
+
+    private static void compareCost(PlanNode baseline, PlanNode current, String path, double costTolerance, List<Change> changes) {
+        double ratio = current.totalCost() / Math.max(baseline.totalCost(), MIN_COST);
+        if (ratio > costTolerance) {
+            changes.add(new Change(ChangeType.COST_INCREASED, path,
+                    String.valueOf(baseline.totalCost()), current.totalCost() + " (" + Math.round(ratio * 10) / 10.0 + "x)"));
+        }
+    }
+
+    private static boolean sameNode(PlanNode baseline, PlanNode current) {
+        return Objects.equals(baseline.nodeType(), current.nodeType())
+                && Objects.equals(baseline.relationName(), current.relationName())
+                && Objects.equals(baseline.indexName(), current.indexName());
+    }
+
+    private static String scansOf(PlanNode plan, String relation) {
+        List<String> scans = plan.stream().filter(node -> Objects.equals(node.relationName(), relation)).map(PlanNode::toString).toList();
+        return scans.isEmpty() ? relation + " not scanned" : String.join(", ", scans);
+    }
+
+    public boolean changed() {
+        return !changes.isEmpty();
+    }
+
+    public boolean has(ChangeType type) {
+        return changes.stream().anyMatch(change -> change.type() == type);
+    }
+
+    @Override
+    public String toString() {
+        if (changes.isEmpty()) {
+            return key + ": plan unchanged";
+        }
+        StringBuilder description = new StringBuilder(key).append(": ").append(changes.size()).append(" changes");
+        changes.forEach(change -> description.append("\n  ").append(change));
+        return description.toString();
+    }
+
+    public enum ChangeType {
+        /**
+         * Node at the same position has different type, relation or index.
+         */
+        NODE_CHANGED,
+        /**
+         * Index used by the baseline is not used anymore, e.g. index scan became sequential scan.
+         */
+        INDEX_LOST,
+        NODE_ADDED,
+        NODE_REMOVED,
+        /**
+         * Total cost of the plan, or of a node at the same position, increased more than tolerated.
+         */
+        COST_INCREASED
+    }
+
+    /**
+     * @param type kind of change
+     * @param path node types from the root to the changed node (or its parent for added and removed nodes)
+     * @param before baseline value, {@code null} for added nodes
+     * @param after current value, {@code null} for removed nodes
+     */
+    public record Change(ChangeType type, String path, String before, String after) {
+
+        @Override
+        public String toString() {
+            return type + " at " + path + ": " + before + " -> " + after;
+        }
+    }
+}
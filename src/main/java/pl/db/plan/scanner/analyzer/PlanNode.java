@@ -0,0 +1,198 @@
+package pl.db.plan.scanner.analyzer;
+
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/**
+ * Single node of postgres execution plan, as returned by {@code EXPLAIN (FORMAT JSON)}.
+ *
+ * @param nodeType e.g. {@code Seq Scan}, {@code Index Scan}, {@code Hash Join}
+ * @param relationName scanned table or {@code null}
+ * @param alias alias of scanned table or {@code null}
+ * @param indexName used index or {@code null}
+ * @param joinType e.g. {@code Inner}, {@code Left} for join nodes, otherwise {@code null}
+ * @param startupCost estimated cost before the first row is returned
+ * @param totalCost estimated cost of returning all rows
+ * @param planRows estimated number of rows
+ * @param planWidth estimated average row width in bytes
+ * @param filter {@code Filter} condition or {@code null}
+ * @param indexCondition {@code Index Cond} (or {@code Recheck Cond} of bitmap heap scan) or {@code null}
+ * @param joinCondition {@code Hash Cond}, {@code Merge Cond} or {@code Join Filter} or {@code null}
+ * @param actual measured values, {@code null} unless explained with {@code ANALYZE}
+ * @param buffers buffer usage, {@code null} unless explained with {@code BUFFERS}
+ * @param children child nodes
+ * @param properties all other keys of the node, e.g. {@code Parallel Aware}, {@code Sort Key}
+ */
+public record PlanNode(
+        String nodeType,
+        String relationName,
+        String alias,
+        String indexName,
+        String joinType,
+        double startupCost,
+        double totalCost,
+        double planRows,
+        int planWidth,
+        String filter,
+        String indexCondition,
+        String joinCondition,
+        Actual actual,
+        Buffers buffers,
+        List<PlanNode> children,
+        Map<String, Object> properties) {
+
+    public boolean isSeqScan() {
+        return "Seq Scan".equals(nodeType);
+    }
+
+    public boolean isJoin() {
+        return "Nested Loop".equals(nodeType) || "Hash Join".equals(nodeType) || "Merge Join".equals(nodeType);
+    }
+
+    /**
+     * @return this node and all its descendants, depth first
+     */
+    public Stream<PlanNode> stream() {
+        return Stream.concat(Stream.of(this), children.stream().flatMap(PlanNode::stream));
+    }
+
+    /**
+     * @return buffers used by this node alone, without its children, or {@code null} when unknown
+     */
+    public Buffers ownBuffers() {
+        if (buffers == null) {
+            return null;
+        }
+        Buffers own = buffers;
+        for (PlanNode child : children) {
+            if (child.buffers() != null) {
+                own = own.minus(child.buffers());
+            }
+        }
+        return own;
+    }
+
+    /**
+     * Rows are compared per loop, both estimate and actual rows are at least 1 to avoid division by zero.
+     *
+     * @return how many times actual rows are higher or lower than estimated, {@code 1} for exact estimate,
+     * {@code 0} when node was not executed or not explained with {@code ANALYZE}
+     */
+    public double misestimate() {
+        if (actual == null || actual.loops() == 0) {
+            return 0;
+        }
+        double estimated = Math.max(planRows, 1);
+        double rows = Math.max(actual.rows(), 1);
+        return Math.max(estimated, rows) / Math.min(estimated, rows);
+    }
+
+    /**
+     * @return node types, indexes and relations of the whole tree, without costs and conditions, e.g.
+     * {@code Nested Loop(Seq Scan on person p1_0, Index Scan using address_pkey on address a1_0)}
+     */
+    public String shape() {
+        if (children.isEmpty()) {
+            return toString();
+        }
+        StringBuilder shape = new StringBuilder(toString()).append('(');
+        for (int i = 0; i < children.size(); i++) {
+            if (i > 0) {
+                shape.append(", ");
+            }
+            shape.append(children.get(i).shape());
+        }
+        return shape.append(')').toString();
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder description = new StringBuilder(nodeType);
+        if (indexName != null) {
+            description.append(" using ").append(indexName);
+        }
+        if (relationName != null) {
+            description.append(" on ").append(relationName);
+            if (alias != null && !alias.equals(relationName)) {
+                description.append(' ').append(alias);
+            }
+        }
+        return description.toString();
+    }
+
+    /**
+     * Values measured by {@code EXPLAIN ANALYZE}, times and rows are per loop.
+     *
+     * @param startupTime time in milliseconds before the first row was returned
+     * @param totalTime time in milliseconds of returning all rows
+     * @param rows number of rows returned
+     * @param loops how many times the node was executed
+     */
+    public record Actual(double startupTime, double totalTime, double rows, long loops) {
+
+        @Override
+        public String toString() {
+            return "actual time=" + startupTime + ".." + totalTime + " ms rows=" + rows + " loops=" + loops;
+        }
+    }
+
+    /**
+     * Blocks (pages) used by the node including its children, as reported by {@code BUFFERS}.
+     */
+    public record Buffers(
+            long sharedHit,
+            long sharedRead,
+            long sharedDirtied,
+            long sharedWritten,
+            long localHit,
+            long localRead,
+            long tempRead,
+            long tempWritten) {
+
+        /**
+         * @return blocks found in shared or local buffers
+         */
+        public long hit() {
+            return sharedHit + localHit;
+        }
+
+        /**
+         * @return blocks which had to be read from disk (or OS cache)
+         */
+        public long read() {
+            return sharedRead + localRead + tempRead;
+        }
+
+        Buffers plus(Buffers other) {
+            return new Buffers(
+                    sharedHit + other.sharedHit,
+                    sharedRead + other.sharedRead,
+                    sharedDirtied + other.sharedDirtied,
+                    sharedWritten + other.sharedWritten,
+                    localHit + other.localHit,
+                    localRead + other.localRead,
+                    tempRead + other.tempRead,
+                    tempWritten + other.tempWritten
+            );
+        }
+
+        Buffers minus(Buffers other) {
+            return new Buffers(
+                    sharedHit - other.sharedHit,
+                    sharedRead - other.sharedRead,
+                    sharedDirtied - other.sharedDirtied,
+                    sharedWritten - other.sharedWritten,
+                    localHit - other.localHit,
+                    localRead - other.localRead,
+                    tempRead - other.tempRead,
+                    tempWritten - other.tempWritten
+            );
+        }
+
+        @Override
+        public String toString() {
+            return "buffers hit=" + hit() + " read=" + read() + " dirtied=" + sharedDirtied + " written=" + (sharedWritten + tempWritten);
+        }
+    }
+}
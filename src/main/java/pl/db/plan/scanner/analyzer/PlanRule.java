@@ -0,0 +1,30 @@
+package pl.db.plan.scanner.analyzer;
+
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * Detects a problem in a single node of execution plan. All rules are evaluated in one traversal of the plan,
+ * by {@link ExecutionPlanAnalyzer} for plan trees and by {@link StreamingPlanReader} for streamed plans, where
+ * nodes have no children. Rules have to be stateless, plans are analyzed in parallel.
+ * <p>
+ * Shop specific rules are registered in {@code META-INF/services/pl.db.plan.scanner.analyzer.PlanRule} and
+ * loaded with {@link java.util.ServiceLoader}, their findings have type {@link FindingType#CUSTOM}.
+ */
+public interface PlanRule {
+
+    /**
+     * @return node types the rule applies to, e.g. {@code Sort}, empty for all nodes; the rule is not called
+     * for other nodes at all
+     */
+    default Set<String> nodeTypes() {
+        return Set.of();
+    }
+
+    /**
+     * @param node evaluated node
+     * @param join the nearest join above the node or {@code null}
+     * @param findings receives findings of the node
+     */
+    void evaluate(PlanNode node, PlanNode join, Consumer<Finding> findings);
+}
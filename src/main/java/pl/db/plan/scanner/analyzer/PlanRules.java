@@ -0,0 +1,250 @@
+package pl.db.plan.scanner.analyzer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.ServiceLoader;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+/**
+ * Rules evaluated for every node of a plan: built-in rules and rules loaded with {@link ServiceLoader}.
+ * <p>
+ * Rules are grouped by node types they apply to, so every node is passed only to its rules and evaluation
+ * stays linear in the size of the plan, however many rules are loaded. Findings of a node are reported
+ * in order of rules.
+ */
+public class PlanRules {
+
+    private final List<PlanRule> rules;
+    private final Map<String, PlanRule[]> rulesByNodeType = new ConcurrentHashMap<>();
+
+    public PlanRules(List<PlanRule> rules) {
+        this.rules = List.copyOf(rules);
+    }
+
+    /**
+     * @return built-in rules with default thresholds followed by rules registered for {@link ServiceLoader}
+     */
+    public static PlanRules load(double misestimateFactor) {
+        List<PlanRule> rules = new ArrayList<>(builtIn(misestimateFactor));
+        rules.addAll(Registered.RULES);
+        return new PlanRules(rules);
+    }
+
+    public static List<PlanRule> builtIn(double misestimateFactor) {
+        return List.of(
+                new FullScan(),
+                new IoBound(),
+                new Misestimate(misestimateFactor),
+                new LargeSeqScan(LargeSeqScan.DEFAULT_MIN_COST),
+                new NestedLoopLargeInner(NestedLoopLargeInner.DEFAULT_MIN_ROWS),
+                new SortSpill(),
+                new LargeHashBuild(LargeHashBuild.DEFAULT_MIN_ROWS),
+                new BitmapRecheck()
+        );
+    }
+
+    public List<PlanRule> rules() {
+        return rules;
+    }
+
+    /**
+     * @param join the nearest join above the node or {@code null}
+     */
+    public void evaluate(PlanNode node, PlanNode join, Consumer<Finding> findings) {
+        for (PlanRule rule : rulesByNodeType.computeIfAbsent(String.valueOf(node.nodeType()), this::rulesOf)) {
+            rule.evaluate(node, join, findings);
+        }
+    }
+
+    private PlanRule[] rulesOf(String nodeType) {
+        return rules.stream()
+                .filter(rule -> rule.nodeTypes().isEmpty() || rule.nodeTypes().contains(nodeType))
+                .toArray(PlanRule[]::new);
+    }
+
+    private static double number(PlanNode node, String property) {
+        return node.properties().get(property) instanceof Number number ? number.doubleValue() : 0;
+    }
+
+    /**
+     * Loaded once, providers are stateless.
+     */
+    private static final class Registered {
+        private static final List<PlanRule> RULES = ServiceLoader.load(PlanRule.class).stream()
+                .map(ServiceLoader.Provider::get)
+                .toList();
+    }
+
+    /**
+     * {@link FindingType#FULL_SCAN}
+     */
+    public record FullScan() implements PlanRule {
+
+        @Override
+        public Set<String> nodeTypes() {
+            return Set.of("Seq Scan");
+        }
+
+        @Override
+        public void evaluate(PlanNode node, PlanNode join, Consumer<Finding> findings) {
+            findings.accept(new Finding(FindingType.FULL_SCAN, node, join));
+        }
+    }
+
+    /**
+     * {@link FindingType#IO_BOUND}
+     */
+    public record IoBound() implements PlanRule {
+
+        @Override
+        public void evaluate(PlanNode node, PlanNode join, Consumer<Finding> findings) {
+            if (node.relationName() != null && node.buffers() != null) {
+                PlanNode.Buffers own = node.ownBuffers();
+                if (own.read() > own.hit()) {
+                    findings.accept(new Finding(FindingType.IO_BOUND, node, join));
+                }
+            }
+        }
+    }
+
+    /**
+     * {@link FindingType#MISESTIMATE}
+     *
+     * @param factor how many times actual rows of a node may differ from its estimate
+     */
+    public record Misestimate(double factor) implements PlanRule {
+
+        public Misestimate {
+            if (factor <= 1) {
+                throw new IllegalArgumentException("Misestimate factor must be greater than 1, but was: " + factor);
+            }
+        }
+
+        @Override
+        public void evaluate(PlanNode node, PlanNode join, Consumer<Finding> findings) {
+            if (node.misestimate() >= factor) {
+                findings.accept(new Finding(FindingType.MISESTIMATE, node, join));
+            }
+        }
+    }
+
+    /**
+     * {@link FindingType#LARGE_SEQ_SCAN}, sequential scan costs about one per page, so the default is about 80 MB
+     * of data. Parallel scans are {@code Seq Scan} nodes with {@code Parallel Aware}, their cost is the share
+     * of one process.
+     *
+     * @param minCost lowest total cost of a large scan
+     */
+    public record LargeSeqScan(double minCost) implements PlanRule {
+
+        public static final double DEFAULT_MIN_COST = 10_000;
+
+        @Override
+        public Set<String> nodeTypes() {
+            return Set.of("Seq Scan");
+        }
+
+        @Override
+        public void evaluate(PlanNode node, PlanNode join, Consumer<Finding> findings) {
+            if (node.totalCost() >= minCost) {
+                boolean parallel = Boolean.TRUE.equals(node.properties().get("Parallel Aware"));
+                findings.accept(new Finding(FindingType.LARGE_SEQ_SCAN, node, join,
+                        (parallel ? "parallel, cost " : "cost ") + node.totalCost()));
+            }
+        }
+    }
+
+    /**
+     * {@link FindingType#NESTED_LOOP_LARGE_INNER}
+     *
+     * @param minRows lowest number of rows per loop of a large inner side, actual rows when analyzed
+     */
+    public record NestedLoopLargeInner(double minRows) implements PlanRule {
+
+        public static final double DEFAULT_MIN_ROWS = 1_000;
+
+        @Override
+        public void evaluate(PlanNode node, PlanNode join, Consumer<Finding> findings) {
+            if (join == null || !"Nested Loop".equals(join.nodeType()) || !"Inner".equals(node.properties().get("Parent Relationship"))) {
+                return;
+            }
+            if (node.actual() != null) {
+                if (node.actual().loops() > 1 && node.actual().rows() >= minRows) {
+                    findings.accept(new Finding(FindingType.NESTED_LOOP_LARGE_INNER, node, join,
+                            node.actual().rows() + " rows in each of " + node.actual().loops() + " loops"));
+                }
+            } else if (node.planRows() >= minRows) {
+                findings.accept(new Finding(FindingType.NESTED_LOOP_LARGE_INNER, node, join, node.planRows() + " rows in each loop"));
+            }
+        }
+    }
+
+    /**
+     * {@link FindingType#SORT_SPILL}, reported with {@code ANALYZE} only.
+     */
+    public record SortSpill() implements PlanRule {
+
+        @Override
+        public Set<String> nodeTypes() {
+            return Set.of("Sort", "Incremental Sort");
+        }
+
+        @Override
+        public void evaluate(PlanNode node, PlanNode join, Consumer<Finding> findings) {
+            if ("Disk".equals(node.properties().get("Sort Space Type"))) {
+                findings.accept(new Finding(FindingType.SORT_SPILL, node, join,
+                        node.properties().get("Sort Method") + ", " + (long) number(node, "Sort Space Used") + " kB on disk"));
+            }
+        }
+    }
+
+    /**
+     * {@link FindingType#LARGE_HASH_BUILD}
+     *
+     * @param minRows lowest number of estimated rows of a huge build side
+     */
+    public record LargeHashBuild(double minRows) implements PlanRule {
+
+        public static final double DEFAULT_MIN_ROWS = 1_000_000;
+
+        @Override
+        public Set<String> nodeTypes() {
+            return Set.of("Hash");
+        }
+
+        @Override
+        public void evaluate(PlanNode node, PlanNode join, Consumer<Finding> findings) {
+            long batches = (long) number(node, "Hash Batches");
+            if (batches > 1) {
+                findings.accept(new Finding(FindingType.LARGE_HASH_BUILD, node, join,
+                        batches + " batches, " + (long) number(node, "Peak Memory Usage") + " kB in memory"));
+            } else if (batches == 0 && node.planRows() >= minRows) {
+                findings.accept(new Finding(FindingType.LARGE_HASH_BUILD, node, join, "estimated rows " + node.planRows()));
+            }
+        }
+    }
+
+    /**
+     * {@link FindingType#BITMAP_RECHECK}, reported with {@code ANALYZE} only.
+     */
+    public record BitmapRecheck() implements PlanRule {
+
+        @Override
+        public Set<String> nodeTypes() {
+            return Set.of("Bitmap Heap Scan");
+        }
+
+        @Override
+        public void evaluate(PlanNode node, PlanNode join, Consumer<Finding> findings) {
+            long removed = (long) number(node, "Rows Removed by Index Recheck");
+            long lossy = (long) number(node, "Lossy Heap Blocks");
+            if (removed > 0 || lossy > 0) {
+                findings.accept(new Finding(FindingType.BITMAP_RECHECK, node, join,
+                        lossy + " lossy blocks, " + removed + " rows removed by recheck"));
+            }
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package pl.db.plan.scanner.analyzer;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+/**
+ * Execution plan read by {@link StreamingPlanReader}, findings without the plan tree.
+ *
+ * @param sql explained statement
+ * @param root root node of the plan, without children
+ * @param nodes number of nodes in the plan
+ * @param depth depth of the plan, 0 when root has no children
+ * @param findings problems found in the plan, children before their parents
+ */
+public record PlanSummary(String sql, PlanNode root, int nodes, int depth, List<Finding> findings) {
+
+    /**
+     * @return total cost of the root node
+     */
+    public BigDecimal totalCost() {
+        return BigDecimal.valueOf(root.totalCost());
+    }
+
+    public boolean hasFullScan() {
+        return has(FindingType.FULL_SCAN);
+    }
+
+    public boolean has(FindingType type) {
+        return findings.stream().anyMatch(finding -> finding.type() == type);
+    }
+
+    public List<Finding> findings(FindingType type) {
+        return findings.stream().filter(finding -> finding.type() == type).toList();
+    }
+}
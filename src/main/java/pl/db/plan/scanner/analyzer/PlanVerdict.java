@@ -0,0 +1,56 @@
+package pl.db.plan.scanner.analyzer;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Execution plan of a repository method checked against its {@link PlanBudget}.
+ *
+ * @param method checked method, e.g. {@code ActivityLogRepository.findRecentLogs}
+ * @param budget budget of the method or {@code null} when the method has none
+ * @param plan checked plan
+ * @param violations reasons why the plan is over budget, empty when it is within budget
+ */
+public record PlanVerdict(String method, PlanBudget budget, ExecutionPlan plan, List<String> violations) {
+
+    public static PlanVerdict of(String method, PlanBudget budget, ExecutionPlan plan) {
+        if (budget == null) {
+            return new PlanVerdict(method, null, plan, List.of());
+        }
+        List<String> violations = new ArrayList<>();
+        PlanNode root = plan.root();
+        if (root.totalCost() > budget.maxCost()) {
+            violations.add("cost " + root.totalCost() + " exceeds " + budget.maxCost());
+        }
+        if (root.planRows() > budget.maxRows()) {
+            violations.add("estimated rows " + root.planRows() + " exceed " + budget.maxRows());
+        }
+        Set<String> allowed = Set.of(budget.allowedSeqScans());
+        if (!allowed.contains(PlanBudget.ANY_TABLE)) {
+            Set<String> scanned = new LinkedHashSet<>();
+            plan.findings(FindingType.FULL_SCAN).stream()
+                    .map(finding -> finding.node().relationName())
+                    .filter(table -> !allowed.contains(table))
+                    .forEach(scanned::add);
+            scanned.forEach(table -> violations.add("sequential scan of " + table + " is not allowed"));
+        }
+        return new PlanVerdict(method, budget, plan, List.copyOf(violations));
+    }
+
+    public boolean passed() {
+        return violations.isEmpty();
+    }
+
+    @Override
+    public String toString() {
+        if (budget == null) {
+            return "NO BUDGET " + method + ": cost " + plan.root().totalCost();
+        }
+        if (passed()) {
+            return "PASSED " + method + ": cost " + plan.root().totalCost() + ", estimated rows " + plan.root().planRows();
+        }
+        return "FAILED " + method + ": " + String.join(", ", violations);
+    }
+}
@@ -0,0 +1,90 @@
+package pl.db.plan.scanner.analyzer;
+
+import java.sql.Array;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * Versions of planner statistics of tables, read at once with a single query. Version of a table changes
+ * when the table is analyzed, its estimated size changes or an index is created, dropped or altered,
+ * i.e. whenever the planner could choose a different plan.
+ */
+public class StatisticsSnapshot {
+
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+    private static final String QUERY = """
+            SELECT c.relname, c.reltuples, c.relpages, s.last_analyze, s.last_autoanalyze,
+                   (SELECT string_agg(pg_get_indexdef(i.indexrelid), ';' ORDER BY i.indexrelid)
+                      FROM pg_index i
+                     WHERE i.indrelid = c.oid) AS indexes
+              FROM pg_class c
+              LEFT JOIN pg_stat_user_tables s ON s.relid = c.oid
+             WHERE c.relkind IN ('r', 'p', 'm')
+               AND c.relname::text = ANY (?)
+            """;
+
+    private final Map<String, Long> versions;
+
+    public StatisticsSnapshot(Map<String, Long> versions) {
+        this.versions = Map.copyOf(versions);
+    }
+
+    public static StatisticsSnapshot read(Connection connection, Collection<String> tables) throws SQLException {
+        Map<String, Long> versions = new HashMap<>();
+        if (tables.isEmpty()) {
+            return new StatisticsSnapshot(versions);
+        }
+        try (PreparedStatement stmt = connection.prepareStatement(QUERY)) {
+            Array names = connection.createArrayOf("text", tables.toArray());
+            stmt.setArray(1, names);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    String row = rs.getString(2) + '|' + rs.getString(3) + '|' + rs.getString(4) + '|'
+                            + rs.getString(5) + '|' + rs.getString(6);
+                    // tables of the same name in different schemas are combined
+                    versions.merge(rs.getString(1), hash(row, FNV_OFFSET), (a, b) -> a ^ b);
+                }
+            }
+        }
+        return new StatisticsSnapshot(versions);
+    }
+
+    /**
+     * @return combined version of statistics of given tables, missing tables contribute as well
+     */
+    public long version(Collection<String> tables) {
+        long version = FNV_OFFSET;
+        for (String table : new TreeSet<>(tables)) {
+            version = hash(table, version);
+            version = (version ^ versions.getOrDefault(table, 0L)) * FNV_PRIME;
+        }
+        return version;
+    }
+
+    /**
+     * @return snapshot with versions of both snapshots, this one wins for tables present in both
+     */
+    public StatisticsSnapshot merge(StatisticsSnapshot other) {
+        Map<String, Long> merged = new HashMap<>(other.versions);
+        merged.putAll(versions);
+        return new StatisticsSnapshot(merged);
+    }
+
+    public boolean contains(String table) {
+        return versions.containsKey(table);
+    }
+
+    private static long hash(String value, long hash) {
+        for (int i = 0; i < value.length(); i++) {
+            hash = (hash ^ value.charAt(i)) * FNV_PRIME;
+        }
+        return hash;
+    }
+}
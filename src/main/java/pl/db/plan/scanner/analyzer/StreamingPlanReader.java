@@ -0,0 +1,283 @@
+package pl.db.plan.scanner.analyzer;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.StreamReadConstraints;
+import com.fasterxml.jackson.databind.MappingJsonFactory;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Reads output of {@code EXPLAIN (FORMAT JSON)} token by token, without building the plan tree, so memory
+ * is bounded by depth of the plan rather than its size, e.g. for plans of partitioned tables or long
+ * {@code UNION} chains with thousands of nodes.
+ * <p>
+ * Nodes are passed to the listener as soon as they are complete (children first). They have no children and
+ * their {@link PlanNode#buffers() buffers} are their own buffers, without buffers of children. Findings are
+ * evaluated on the fly, the same ones as {@link ExecutionPlanAnalyzer} finds in the tree.
+ * <p>
+ * Postgres writes child {@code Plans} after all other keys of the node, so the nearest join above a node
+ * is known when the node is read.
+ */
+public class StreamingPlanReader {
+
+    private static final Consumer<PlanNode> NO_LISTENER = node -> {
+    };
+
+    // every level of the plan is two levels of json (node object and Plans array)
+    private static final int MAX_DEPTH = 100_000;
+
+    private final MappingJsonFactory factory = new MappingJsonFactory();
+    private final PlanRules rules;
+
+    public StreamingPlanReader() {
+        this(PlanRules.load(ExecutionPlanAnalyzer.DEFAULT_MISESTIMATE_FACTOR));
+    }
+
+    public StreamingPlanReader(PlanRules rules) {
+        this.rules = rules;
+        factory.setStreamReadConstraints(StreamReadConstraints.builder().maxNestingDepth(2 * MAX_DEPTH + 2).build());
+    }
+
+    public PlanSummary read(String sql, Reader reader) throws IOException {
+        return read(sql, reader, Double.POSITIVE_INFINITY, NO_LISTENER);
+    }
+
+    /**
+     * @param sql explained statement
+     * @param reader explain output, closed when read
+     * @param costBudget highest acceptable total cost, {@link FindingType#OVER_BUDGET} is reported for more expensive plans
+     * @param listener receives every node, children before their parent
+     * @throws IllegalArgumentException when output is not a valid execution plan
+     * @throws IOException when output could not be read
+     */
+    public PlanSummary read(String sql, Reader reader, double costBudget, Consumer<PlanNode> listener) throws IOException {
+        try (JsonParser parser = factory.createParser(reader)) {
+            JsonToken token = parser.nextToken();
+            if (token == JsonToken.START_ARRAY) {
+                token = parser.nextToken();
+            }
+            if (token != JsonToken.START_OBJECT) {
+                throw new IllegalArgumentException("Execution plan does not contain Plan node");
+            }
+            PlanSummary summary = null;
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String name = parser.currentName();
+                if (parser.nextToken() == JsonToken.START_OBJECT && name.equals("Plan")) {
+                    summary = readPlan(sql, parser, costBudget, listener);
+                } else {
+                    parser.skipChildren();
+                }
+            }
+            if (summary == null) {
+                throw new IllegalArgumentException("Execution plan does not contain Plan node");
+            }
+            return summary;
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("Invalid execution plan: " + e.getOriginalMessage(), e);
+        }
+    }
+
+    /**
+     * Reads the plan starting at the object of the root node, iteratively, so deep plans do not exhaust the stack.
+     */
+    private PlanSummary readPlan(String sql, JsonParser parser, double costBudget, Consumer<PlanNode> listener) throws IOException {
+        List<Finding> findings = new ArrayList<>();
+        Deque<Frame> frames = new ArrayDeque<>();
+        frames.push(new Frame(null));
+        PlanNode root = null;
+        int nodes = 0;
+        int depth = 0;
+        while (!frames.isEmpty()) {
+            Frame frame = frames.peek();
+            JsonToken token = parser.nextToken();
+            if (token == JsonToken.FIELD_NAME) {
+                String name = parser.currentName();
+                parser.nextToken();
+                if (name.equals("Plans")) {
+                    frame.header();
+                    if (frames.size() == 1) {
+                        checkBudget(frame.header, costBudget, findings);
+                    }
+                    // children are read one by one, END_ARRAY returns back to this frame
+                    continue;
+                }
+                frame.value(name, parser);
+            } else if (token == JsonToken.START_OBJECT) {
+                // child in Plans array of the current frame
+                frames.push(new Frame(frame.header.isJoin() ? frame.header : frame.join));
+                depth = Math.max(depth, frames.size() - 1);
+            } else if (token == JsonToken.END_OBJECT) {
+                frames.pop();
+                boolean leaf = frame.header == null;
+                PlanNode node = frame.complete();
+                nodes++;
+                rules.evaluate(node, frame.join, findings::add);
+                listener.accept(node);
+                Frame parent = frames.peek();
+                if (parent != null) {
+                    parent.addChild(frame.buffers);
+                } else {
+                    root = node;
+                    if (leaf) {
+                        checkBudget(node, costBudget, findings);
+                    }
+                }
+            } else if (token == null) {
+                throw new IllegalArgumentException("Execution plan ends in the middle of a node");
+            }
+            // END_ARRAY of Plans, nothing to do
+        }
+        return new PlanSummary(sql, root, nodes, depth, List.copyOf(findings));
+    }
+
+    private static void checkBudget(PlanNode root, double costBudget, List<Finding> findings) {
+        if (root.totalCost() > costBudget) {
+            findings.add(new Finding(FindingType.OVER_BUDGET, root, null));
+        }
+    }
+
+    /**
+     * Node being read, alive only until its end, so there is at most one frame per level of the plan.
+     */
+    private static final class Frame {
+        private final PlanNode join;
+        private final Map<String, Object> values = new HashMap<>();
+        private final Map<String, Object> properties = new LinkedHashMap<>();
+        private PlanNode header;
+        private PlanNode.Buffers buffers;
+        private PlanNode.Buffers childBuffers;
+
+        private Frame(PlanNode join) {
+            this.join = join;
+        }
+
+        void value(String name, JsonParser parser) throws IOException {
+            if (JsonPlanParser.TYPED_KEYS.contains(name)) {
+                values.put(name, switch (parser.currentToken()) {
+                    case VALUE_NUMBER_INT, VALUE_NUMBER_FLOAT -> parser.getDoubleValue();
+                    case VALUE_NULL -> null;
+                    default -> parser.getText();
+                });
+            } else {
+                properties.put(name, switch (parser.currentToken()) {
+                    case VALUE_STRING -> parser.getText();
+                    case VALUE_NUMBER_INT, VALUE_NUMBER_FLOAT -> parser.getNumberValue();
+                    case VALUE_TRUE -> Boolean.TRUE;
+                    case VALUE_FALSE -> Boolean.FALSE;
+                    case VALUE_NULL -> null;
+                    default -> parser.readValueAs(Object.class);
+                });
+            }
+        }
+
+        /**
+         * Builds node from keys read so far, with buffers including children.
+         */
+        void header() {
+            if (header == null) {
+                buffers = buffers();
+                header = node(buffers);
+            }
+        }
+
+        void addChild(PlanNode.Buffers child) {
+            if (child != null) {
+                childBuffers = childBuffers == null ? child : childBuffers.plus(child);
+            }
+        }
+
+        /**
+         * @return node with own buffers
+         */
+        PlanNode complete() {
+            if (header == null) {
+                buffers = buffers();
+            }
+            PlanNode.Buffers own = buffers != null && childBuffers != null ? buffers.minus(childBuffers) : buffers;
+            return header != null && own == buffers ? header : node(own);
+        }
+
+        private PlanNode node(PlanNode.Buffers nodeBuffers) {
+            return new PlanNode(
+                    text("Node Type"),
+                    text("Relation Name"),
+                    text("Alias"),
+                    text("Index Name"),
+                    text("Join Type"),
+                    number("Startup Cost"),
+                    number("Total Cost"),
+                    number("Plan Rows"),
+                    (int) number("Plan Width"),
+                    text("Filter"),
+                    firstText("Index Cond", "Recheck Cond"),
+                    firstText("Hash Cond", "Merge Cond", "Join Filter"),
+                    actual(),
+                    nodeBuffers,
+                    List.of(),
+                    properties
+            );
+        }
+
+        private PlanNode.Actual actual() {
+            if (!values.containsKey("Actual Loops")) {
+                return null;
+            }
+            return new PlanNode.Actual(
+                    number("Actual Startup Time"),
+                    number("Actual Total Time"),
+                    number("Actual Rows"),
+                    (long) number("Actual Loops")
+            );
+        }
+
+        private PlanNode.Buffers buffers() {
+            if (!values.containsKey("Shared Hit Blocks")) {
+                return null;
+            }
+            return new PlanNode.Buffers(
+                    (long) number("Shared Hit Blocks"),
+                    (long) number("Shared Read Blocks"),
+                    (long) number("Shared Dirtied Blocks"),
+                    (long) number("Shared Written Blocks"),
+                    (long) number("Local Hit Blocks"),
+                    (long) number("Local Read Blocks"),
+                    (long) number("Temp Read Blocks"),
+                    (long) number("Temp Written Blocks")
+            );
+        }
+
+        private String text(String key) {
+            Object value = values.get(key);
+            return value == null ? null : value.toString();
+        }
+
+        private String firstText(String... keys) {
+            for (String key : keys) {
+                String value = text(key);
+                if (value != null) {
+                    return value;
+                }
+            }
+            return null;
+        }
+
+        private double number(String key) {
+            return switch (values.get(key)) {
+                case null -> 0;
+                case Double value -> value;
+                case Object value -> Double.parseDouble(value.toString());
+            };
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package pl.db.plan.scanner.analyzer;
+
+import java.util.List;
+
+/**
+ * Plans of a statement explained by {@link ParameterSweep} with different parameter values.
+ *
+ * @param sql swept statement with jdbc placeholders
+ * @param baseline plan with typical values of all parameters or {@code null} when nothing was swept
+ * @param points plans with single parameter changed, in order of parameters
+ * @param unresolved parameters with no statistics (column not found in plan or not analyzed), statement
+ *                   is swept only when every parameter is resolved
+ * @param costRatio how many times cost has to differ from the baseline to be a flip
+ */
+public record SweepReport(String sql, Point baseline, List<Point> points, List<Integer> unresolved, double costRatio) {
+
+    /**
+     * @return points with different plan shape than the baseline or with cost at least {@link #costRatio} times
+     * higher or lower
+     */
+    public List<Point> flips() {
+        if (baseline == null || baseline.failed()) {
+            return List.of();
+        }
+        return points.stream()
+                .filter(point -> !point.failed())
+                .filter(point -> !point.shape().equals(baseline.shape()) || costChanged(point.cost(), baseline.cost()))
+                .toList();
+    }
+
+    public boolean hasFlips() {
+        return !flips().isEmpty();
+    }
+
+    private boolean costChanged(double cost, double baselineCost) {
+        double lower = Math.max(Math.min(cost, baselineCost), 0.01);
+        return Math.max(cost, baselineCost) / lower >= costRatio;
+    }
+
+    @Override
+    public String toString() {
+        if (baseline == null) {
+            return "Not swept: " + sql + (unresolved.isEmpty() ? "" : ", no statistics of parameters " + unresolved);
+        }
+        StringBuilder report = new StringBuilder("Swept ").append(points.size() + 1).append(" plans of: ").append(sql)
+                .append("\nbaseline ").append(baseline);
+        for (Point flip : flips()) {
+            report.append("\nflip ").append(flip);
+        }
+        return report.toString();
+    }
+
+    /**
+     * @param parameter number of the parameter with changed value, 0 for baseline
+     * @param values values of all parameters
+     * @param source where value of the changed parameter comes from, {@code null} for baseline
+     * @param sql explained statement with inlined values
+     * @param plan execution plan or {@code null} when explain failed
+     * @param error error message when explain failed, otherwise {@code null}
+     */
+    public record Point(int parameter, List<String> values, ParameterSweep.Source source, String sql,
+                        ExecutionPlan plan, String error) {
+
+        public boolean failed() {
+            return plan == null;
+        }
+
+        public String shape() {
+            return plan == null ? null : plan.root().shape();
+        }
+
+        public double cost() {
+            return plan == null ? Double.NaN : plan.root().totalCost();
+        }
+
+        @Override
+        public String toString() {
+            String value = parameter == 0 ? values.toString() : "$" + parameter + " = '" + values.get(parameter - 1) + "' (" + source + ")";
+            return value + ": " + (failed() ? error : shape() + ", cost " + cost());
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package pl.db.plan.scanner.analyzer;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Collections;
+import java.util.Set;
+import java.util.WeakHashMap;
+
+/**
+ * PL/pgSQL function in {@code pg_temp}, created once per database session instead of before every call.
+ * <p>
+ * Sessions are the physical connections, {@code unwrap(Connection.class)} of pooled ones, held weakly.
+ * A function created in a transaction of the caller may be rolled back with it, so it is remembered only
+ * when created in auto-commit. When it is gone anyway, e.g. after {@code DISCARD TEMP}, it is created again.
+ */
+final class TemporaryFunction {
+
+    private static final String UNDEFINED_FUNCTION = "42883";
+
+    private final String definition;
+    private final Set<Connection> sessions = Collections.synchronizedSet(Collections.newSetFromMap(new WeakHashMap<>()));
+
+    /**
+     * @param definition {@code CREATE OR REPLACE FUNCTION pg_temp...} statement
+     */
+    TemporaryFunction(String definition) {
+        this.definition = definition;
+    }
+
+    /**
+     * Runs work calling the function, after creating it when the session does not have it yet.
+     */
+    <T> T call(Connection connection, ExecutionPlanAnalyzer.TransactionWork<T> work) throws SQLException {
+        Connection session = connection.unwrap(Connection.class);
+        if (!sessions.contains(session)) {
+            create(connection, session);
+        }
+        try {
+            return work.run();
+        } catch (SQLException e) {
+            // failed statement aborts the transaction of the caller, nothing can be retried in it
+            if (!UNDEFINED_FUNCTION.equals(e.getSQLState()) || !connection.getAutoCommit()) {
+                throw e;
+            }
+            sessions.remove(session);
+            create(connection, session);
+            return work.run();
+        }
+    }
+
+    private void create(Connection connection, Connection session) throws SQLException {
+        try (Statement stmt = connection.createStatement()) {
+            stmt.execute(definition);
+        }
+        if (connection.getAutoCommit()) {
+            sessions.add(session);
+        }
+    }
+}
@@ -3,6 +3,8 @@ package pl.db.plan.scanner.entities;
 import jakarta.persistence.*;
 
 @Entity
+@NamedQuery(name = "Address.findByPostalCodePrefix",
+        query = "SELECT a FROM Address a WHERE a.postalCode LIKE CONCAT(:prefix, '%')")
 @Table(name = "address", indexes = {
     @Index(name = "idx_address_city", columnList = "city")
 })
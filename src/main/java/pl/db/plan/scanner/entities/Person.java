@@ -4,12 +4,14 @@ import jakarta.persistence.Entity;
 import jakarta.persistence.Id;
 import jakarta.persistence.GeneratedValue;
 import jakarta.persistence.GenerationType;
+import jakarta.persistence.NamedQuery;
 import jakarta.persistence.OneToMany;
 import jakarta.persistence.CascadeType;
 
 import java.util.List;
 
 @Entity
+@NamedQuery(name = "Person.withoutAddresses", query = "SELECT p FROM Person p WHERE p.addresses IS EMPTY")
 public class Person {
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
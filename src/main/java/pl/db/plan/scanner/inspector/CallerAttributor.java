@@ -0,0 +1,173 @@
+package pl.db.plan.scanner.inspector;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.repository.Repository;
+
+import java.lang.reflect.Proxy;
+import java.time.Duration;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Finds Spring Data repository method which produced currently inspected statement.
+ * <p>
+ * Repositories are JDK proxies, so the stack is walked lazily until the first frame of a proxy class
+ * implementing {@link Repository}. Walking stops there and does not materialize any other frame, resolving
+ * proxy class and method into {@link RepositoryMethod} is done once per call site (method with its descriptor
+ * and line) and cached.
+ * <p>
+ * Walking the stack still costs microseconds, so with {@link #attribute(long)} only first executions
+ * of every statement shape are attributed (and then every n-th, to notice new call sites of a known shape).
+ * Time spent is measured, when average cost per statement exceeds the budget, attribution switches itself off.
+ */
+public class CallerAttributor {
+
+    private static final Logger LOG = LoggerFactory.getLogger(CallerAttributor.class);
+
+    /**
+     * Budget is checked every that many statements.
+     */
+    static final int BUDGET_WINDOW = 1024;
+
+    private static final StackWalker WALKER = StackWalker.getInstance(StackWalker.Option.RETAIN_CLASS_REFERENCE);
+    private static final Optional<RepositoryMethod> NOT_REPOSITORY = Optional.empty();
+
+    private final int maxDepth;
+    private final int samplesPerShape;
+    private final int resampleInterval;
+    private final long budgetNanos;
+
+    // proxy class -> call site -> repository method, empty when proxy is not a repository
+    private final ClassValue<Map<CallSite, Optional<RepositoryMethod>>> callSites = new ClassValue<>() {
+        @Override
+        protected Map<CallSite, Optional<RepositoryMethod>> computeValue(Class<?> type) {
+            return new ConcurrentHashMap<>();
+        }
+    };
+
+    private final LongAdder attributed = new LongAdder();
+    private final LongAdder unattributed = new LongAdder();
+    private final LongAdder statements = new LongAdder();
+    private final LongAdder totalNanos = new LongAdder();
+    private final AtomicLong walks = new AtomicLong();
+    private final AtomicLong windowNanos = new AtomicLong();
+    private long windowStatements;
+    private volatile boolean enabled;
+
+    public CallerAttributor(int maxDepth, int samplesPerShape, int resampleInterval, Duration budget) {
+        this.maxDepth = maxDepth;
+        this.samplesPerShape = samplesPerShape;
+        this.resampleInterval = resampleInterval;
+        this.budgetNanos = budget.toNanos();
+        this.enabled = true;
+    }
+
+    /**
+     * Attributes only sampled executions of a statement shape.
+     *
+     * @param occurrence number of executions of the statement shape so far, including current one
+     * @return repository method or {@code null} when statement was not sampled or not produced by a repository
+     */
+    public RepositoryMethod attribute(long occurrence) {
+        if (occurrence <= samplesPerShape || occurrence % resampleInterval == 0) {
+            return attribute();
+        }
+        statements.increment();
+        return null;
+    }
+
+    /**
+     * @return repository method on the current thread's stack or {@code null} when statement was not produced
+     * by a repository (or attribution is off)
+     */
+    public RepositoryMethod attribute() {
+        statements.increment();
+        if (!enabled) {
+            return null;
+        }
+        long start = System.nanoTime();
+        RepositoryMethod caller = WALKER.walk(frames -> frames
+                .limit(maxDepth)
+                .filter(frame -> Proxy.isProxyClass(frame.getDeclaringClass()))
+                .map(frame -> resolve(frame.getDeclaringClass(),
+                        new CallSite(frame.getMethodName(), frame.getDescriptor(), frame.getLineNumber())))
+                .flatMap(Optional::stream)
+                .findFirst()
+                .orElse(null));
+        measure(System.nanoTime() - start);
+        if (caller != null) {
+            attributed.increment();
+        } else {
+            unattributed.increment();
+        }
+        return caller;
+    }
+
+    private Optional<RepositoryMethod> resolve(Class<?> proxy, CallSite callSite) {
+        return callSites.get(proxy).computeIfAbsent(callSite, site -> {
+            for (Class<?> type : proxy.getInterfaces()) {
+                if (Repository.class.isAssignableFrom(type) && type != Repository.class) {
+                    return Optional.of(new RepositoryMethod(type, site.method(), site.descriptor()));
+                }
+            }
+            return NOT_REPOSITORY;
+        });
+    }
+
+    private void measure(long nanos) {
+        totalNanos.add(nanos);
+        windowNanos.addAndGet(nanos);
+        if (walks.incrementAndGet() % BUDGET_WINDOW == 0) {
+            checkBudget();
+        }
+    }
+
+    /**
+     * Compares time of the last {@link #BUDGET_WINDOW} walks with number of all statements in the meantime.
+     */
+    private synchronized void checkBudget() {
+        long window = windowNanos.getAndSet(0);
+        long total = statements.sum();
+        long count = Math.max(1, total - windowStatements);
+        windowStatements = total;
+        long average = window / count;
+        if (average > budgetNanos && enabled) {
+            enabled = false;
+            LOG.warn("Caller attribution switched off, it took {} ns per statement on average, budget is {} ns",
+                    average, budgetNanos);
+        }
+    }
+
+    private record CallSite(String method, String descriptor, int line) {
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public long getAttributedCount() {
+        return attributed.sum();
+    }
+
+    public long getUnattributedCount() {
+        return unattributed.sum();
+    }
+
+    /**
+     * @return number of statements passed to the attributor, sampled or not
+     */
+    public long getStatementCount() {
+        return statements.sum();
+    }
+
+    /**
+     * @return total time spent on attribution, the overhead it adds to statements
+     */
+    public long getTotalNanos() {
+        return totalNanos.sum();
+    }
+}
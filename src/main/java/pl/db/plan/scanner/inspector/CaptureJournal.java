@@ -0,0 +1,322 @@
+package pl.db.plan.scanner.inspector;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Stream;
+
+/**
+ * Append-only journal of captured statements, written into memory-mapped segment files.
+ * <p>
+ * Segment layout: {@code int magic, int version}, followed by records {@code int length, byte type, payload}.
+ * There are two record types:
+ * <ul>
+ *     <li>{@link #SHAPE} - {@code long fingerprint, string sql, string jpqlComment}, written once per
+ *     fingerprint in every segment, so each segment can be read on its own</li>
+ *     <li>{@link #EXECUTION} - {@code long fingerprint, long timestamp, string thread}</li>
+ * </ul>
+ * Strings are {@code int length} (-1 for {@code null}) followed by modified UTF-8 bytes (as in
+ * {@link java.io.DataOutput#writeUTF(String)}), encoded straight into the mapped buffer.
+ * <p>
+ * Writers reserve space with single atomic add and write into their own region, so appending neither locks
+ * nor allocates. Right after the reservation its length is written negated, the record is committed by writing
+ * the length again, positive, after the rest. Reader skips records which are not committed, e.g. of a writer
+ * which stalled or died in between, and stops at the first zero length. The shape is
+ * reserved together with the execution which sees it first, right before it, and its fingerprint is published
+ * only then: an execution never refers to a shape which did not fit into its segment. Threads which see a new
+ * shape at the same time write it each, the reader takes any of them.
+ * <p>
+ * Fingerprints seen in a segment are kept in an open addressing table of primitive longs, sized with the segment.
+ * When the table is full, shapes are written again with their executions, which costs space but stays correct.
+ */
+public class CaptureJournal implements AutoCloseable {
+
+    static final int MAGIC = 0x50534A31;
+    static final int VERSION = 1;
+    static final int SEGMENT_HEADER = 8;
+    static final byte SHAPE = 1;
+    static final byte EXECUTION = 2;
+    static final String SEGMENT_PREFIX = "capture-";
+    static final String SEGMENT_SUFFIX = ".journal";
+
+    /**
+     * Positions in a segment are {@code int}s, with records never larger than their segment every record
+     * of a segment up to 1 GB ends below {@link Integer#MAX_VALUE}.
+     */
+    static final int MAX_SEGMENT_SIZE = 1 << 30;
+
+    private static final int RECORD_HEADER = 5;
+
+    private final Path directory;
+    private final int segmentSize;
+    private final LongAdder lost = new LongAdder();
+    private volatile Segment current;
+    private volatile boolean closed;
+
+    /**
+     * @param segmentSize size of single segment file, from 1 KB to 1 GB
+     */
+    public CaptureJournal(Path directory, long segmentSize) {
+        if (segmentSize < 1024 || segmentSize > MAX_SEGMENT_SIZE) {
+            throw new IllegalArgumentException("Segment size must be between 1024 and " + MAX_SEGMENT_SIZE + " bytes, but was: " + segmentSize);
+        }
+        this.directory = directory;
+        this.segmentSize = (int) segmentSize;
+        try {
+            Files.createDirectories(directory);
+            this.current = openSegment(lastSegmentIndex() + 1);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not open capture journal in " + directory, e);
+        }
+    }
+
+    /**
+     * Appends single statement execution, preceded by its shape when fingerprint was not seen in current segment.
+     *
+     * @return {@code false} when the statement was not written (journal closed or record larger than segment)
+     */
+    public boolean append(long fingerprint, SplitStatement statement, long timestamp, String thread) {
+        int size = RECORD_HEADER + Long.BYTES + Long.BYTES + stringSize(thread);
+        while (!closed) {
+            Segment segment = current;
+            int shapeSize = segment.shapes.contains(fingerprint)
+                    ? 0 : RECORD_HEADER + Long.BYTES + stringSize(statement.sql()) + stringSize(statement.jpqlComment());
+            int offset = segment.claim(shapeSize + size);
+            if (offset < 0) {
+                if (!roll(segment, shapeSize + size)) {
+                    return false;
+                }
+                continue;
+            }
+            MappedByteBuffer buffer = segment.buffer;
+            reserve(buffer, offset, shapeSize, size);
+            if (shapeSize > 0) {
+                segment.shapes.add(fingerprint);
+                writeShape(buffer, offset, shapeSize, fingerprint, statement);
+                offset += shapeSize;
+            }
+            int position = offset + RECORD_HEADER;
+            buffer.putLong(position, fingerprint);
+            buffer.putLong(position + Long.BYTES, timestamp);
+            putString(buffer, position + 2 * Long.BYTES, thread);
+            commit(buffer, offset, size, EXECUTION);
+            return true;
+        }
+        lost.increment();
+        return false;
+    }
+
+    private static void writeShape(MappedByteBuffer buffer, int offset, int size, long fingerprint, SplitStatement statement) {
+        int position = offset + RECORD_HEADER;
+        buffer.putLong(position, fingerprint);
+        position = putString(buffer, position + Long.BYTES, statement.sql());
+        putString(buffer, position, statement.jpqlComment());
+        commit(buffer, offset, size, SHAPE);
+    }
+
+    private static void reserve(MappedByteBuffer buffer, int offset, int shapeSize, int size) {
+        if (shapeSize > 0) {
+            buffer.putInt(offset, -shapeSize);
+        }
+        buffer.putInt(offset + shapeSize, -size);
+    }
+
+    private static void commit(MappedByteBuffer buffer, int offset, int size, byte type) {
+        buffer.put(offset + Integer.BYTES, type);
+        buffer.putInt(offset, size);
+    }
+
+    /**
+     * @return {@code false} when record can never fit into a segment
+     */
+    private boolean roll(Segment full, int size) {
+        if (size > segmentSize - SEGMENT_HEADER) {
+            lost.increment();
+            return false;
+        }
+        synchronized (this) {
+            if (current == full && !closed) {
+                full.buffer.force();
+                try {
+                    current = openSegment(full.index + 1);
+                } catch (IOException e) {
+                    throw new UncheckedIOException("Could not open next capture journal segment in " + directory, e);
+                }
+            }
+        }
+        return true;
+    }
+
+    private Segment openSegment(int index) throws IOException {
+        Path path = directory.resolve(segmentName(index));
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+            buffer.putInt(0, MAGIC);
+            buffer.putInt(Integer.BYTES, VERSION);
+            return new Segment(index, buffer, segmentSize, new ShapeTable(segmentSize));
+        }
+    }
+
+    private int lastSegmentIndex() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.map(path -> path.getFileName().toString())
+                    .filter(name -> name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX))
+                    .mapToInt(name -> Integer.parseInt(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length())))
+                    .max()
+                    .orElse(0);
+        }
+    }
+
+    static String segmentName(int index) {
+        return SEGMENT_PREFIX + String.format("%06d", index) + SEGMENT_SUFFIX;
+    }
+
+    static int stringSize(String value) {
+        if (value == null) {
+            return Integer.BYTES;
+        }
+        int size = Integer.BYTES;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            size += c != 0 && c < 0x80 ? 1 : c < 0x800 ? 2 : 3;
+        }
+        return size;
+    }
+
+    /**
+     * @return position right after written string
+     */
+    static int putString(MappedByteBuffer buffer, int position, String value) {
+        if (value == null) {
+            buffer.putInt(position, -1);
+            return position + Integer.BYTES;
+        }
+        int start = position;
+        position += Integer.BYTES;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c != 0 && c < 0x80) {
+                buffer.put(position++, (byte) c);
+            } else if (c < 0x800) {
+                buffer.put(position++, (byte) (0xC0 | (c >> 6)));
+                buffer.put(position++, (byte) (0x80 | (c & 0x3F)));
+            } else {
+                buffer.put(position++, (byte) (0xE0 | (c >> 12)));
+                buffer.put(position++, (byte) (0x80 | ((c >> 6) & 0x3F)));
+                buffer.put(position++, (byte) (0x80 | (c & 0x3F)));
+            }
+        }
+        buffer.putInt(start, position - start - Integer.BYTES);
+        return position;
+    }
+
+    public Path getDirectory() {
+        return directory;
+    }
+
+    /**
+     * @return number of statements not written, because journal was closed or statement did not fit into segment
+     */
+    public long getLostCount() {
+        return lost.sum();
+    }
+
+    @Override
+    public synchronized void close() {
+        if (!closed) {
+            closed = true;
+            current.buffer.force();
+        }
+    }
+
+    private static final class Segment {
+        private final int index;
+        private final MappedByteBuffer buffer;
+        private final int capacity;
+        private final AtomicLong position = new AtomicLong(SEGMENT_HEADER);
+        private final ShapeTable shapes;
+
+        private Segment(int index, MappedByteBuffer buffer, int capacity, ShapeTable shapes) {
+            this.index = index;
+            this.buffer = buffer;
+            this.capacity = capacity;
+            this.shapes = shapes;
+        }
+
+        /**
+         * @return offset of reserved space or -1 when segment is full
+         */
+        int claim(int size) {
+            long offset = position.getAndAdd(size);
+            return offset + size <= capacity ? (int) offset : -1;
+        }
+    }
+
+    /**
+     * Set of fingerprints without boxing: linear probing over {@link AtomicLongArray}, empty slots are {@code 0}
+     * and taken with CAS. Fingerprint {@code 0} and fingerprints not found within {@link #MAX_PROBES} are never
+     * remembered, their shapes are written again.
+     */
+    static final class ShapeTable {
+        // a shape record takes at least a few dozens of bytes, a slot per 64 bytes of segment is rarely filled up
+        private static final int BYTES_PER_SLOT = 64;
+        private static final int MAX_PROBES = 16;
+
+        private final AtomicLongArray slots;
+        private final int mask;
+
+        ShapeTable(int segmentSize) {
+            int size = Integer.highestOneBit(Math.max(MAX_PROBES, segmentSize / BYTES_PER_SLOT) - 1) << 1;
+            this.slots = new AtomicLongArray(size);
+            this.mask = size - 1;
+        }
+
+        boolean contains(long fingerprint) {
+            if (fingerprint == 0) {
+                return false;
+            }
+            int slot = slot(fingerprint);
+            for (int i = 0; i < MAX_PROBES; i++, slot = (slot + 1) & mask) {
+                long value = slots.get(slot);
+                if (value == fingerprint) {
+                    return true;
+                }
+                if (value == 0) {
+                    return false;
+                }
+            }
+            return false;
+        }
+
+        void add(long fingerprint) {
+            if (fingerprint == 0) {
+                return;
+            }
+            int slot = slot(fingerprint);
+            for (int i = 0; i < MAX_PROBES; i++, slot = (slot + 1) & mask) {
+                long value = slots.get(slot);
+                if (value == 0) {
+                    value = slots.compareAndExchange(slot, 0, fingerprint);
+                    if (value == 0) {
+                        return;
+                    }
+                }
+                if (value == fingerprint) {
+                    return;
+                }
+            }
+        }
+
+        private int slot(long fingerprint) {
+            long hash = fingerprint * 0x9E3779B97F4A7C15L;
+            return (int) (hash ^ (hash >>> 32)) & mask;
+        }
+    }
+}
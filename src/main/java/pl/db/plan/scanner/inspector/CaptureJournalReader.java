@@ -0,0 +1,155 @@
+package pl.db.plan.scanner.inspector;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+import static pl.db.plan.scanner.inspector.CaptureJournal.*;
+
+/**
+ * Reads segments written by {@link CaptureJournal}, oldest first, e.g. to analyze a day of production
+ * traffic on a workstation.
+ */
+public class CaptureJournalReader {
+
+    private final Path directory;
+
+    public CaptureJournalReader(Path directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Passes every recorded statement execution to the consumer, in order of segments.
+     */
+    public void replay(Consumer<? super JournalEntry> consumer) throws IOException {
+        for (Path segment : segments()) {
+            replaySegment(segment, consumer);
+        }
+    }
+
+    /**
+     * @return one entry per distinct statement shape with number of executions, the most frequent first,
+     * the same view as {@link SqlCaptureInspector#getFingerprints()} of the recording node
+     */
+    public List<QueryFingerprint> aggregate() throws IOException {
+        Map<Long, QueryFingerprint> fingerprints = new HashMap<>();
+        replay(entry -> fingerprints
+                .computeIfAbsent(entry.fingerprint(), id -> new QueryFingerprint(
+                        id, new QueryFingerprinter().normalize(entry.sql()), entry.sql(), entry.jpqlComment(), entry.timestamp()))
+                .hit(entry.timestamp()));
+        return fingerprints.values().stream()
+                .sorted(Comparator.comparingLong(QueryFingerprint::getHits).reversed())
+                .toList();
+    }
+
+    private List<Path> segments() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(path -> {
+                        String name = path.getFileName().toString();
+                        return name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX);
+                    })
+                    .sorted()
+                    .toList();
+        }
+    }
+
+    private void replaySegment(Path path, Consumer<? super JournalEntry> consumer) throws IOException {
+        MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        if (buffer.limit() < SEGMENT_HEADER || buffer.getInt(0) != MAGIC) {
+            throw new IOException("Not a capture journal segment: " + path);
+        }
+        if (buffer.getInt(Integer.BYTES) != VERSION) {
+            throw new IOException("Unsupported capture journal version " + buffer.getInt(Integer.BYTES) + " in " + path);
+        }
+
+        // shape is written right before the first execution which refers to it, a single pass finds both
+        Map<Long, String[]> shapes = new HashMap<>();
+        forEachRecord(buffer, (type, position) -> {
+            if (type == SHAPE) {
+                long fingerprint = buffer.getLong(position);
+                int[] cursor = {position + Long.BYTES};
+                String sql = readString(buffer, cursor);
+                String jpqlComment = readString(buffer, cursor);
+                shapes.put(fingerprint, new String[]{sql, jpqlComment});
+            } else if (type == EXECUTION) {
+                long fingerprint = buffer.getLong(position);
+                long timestamp = buffer.getLong(position + Long.BYTES);
+                String thread = readString(buffer, new int[]{position + 2 * Long.BYTES});
+                String[] shape = shapes.get(fingerprint);
+                if (shape != null) {
+                    consumer.accept(new JournalEntry(fingerprint, shape[0], shape[1], timestamp, thread));
+                }
+            }
+        });
+    }
+
+    private static void forEachRecord(MappedByteBuffer buffer, RecordVisitor visitor) {
+        int offset = SEGMENT_HEADER;
+        while (offset + Integer.BYTES + 1 <= buffer.limit()) {
+            int length = buffer.getInt(offset);
+            // negative length of a record reserved but not committed
+            int size = Math.abs(length);
+            if (size < Integer.BYTES + 1 || size > buffer.limit() - offset) {
+                // end of written data
+                return;
+            }
+            if (length > 0) {
+                visitor.visit(buffer.get(offset + Integer.BYTES), offset + Integer.BYTES + 1);
+            }
+            offset += size;
+        }
+    }
+
+    private static String readString(MappedByteBuffer buffer, int[] cursor) {
+        int position = cursor[0];
+        int length = buffer.getInt(position);
+        position += Integer.BYTES;
+        if (length < 0) {
+            cursor[0] = position;
+            return null;
+        }
+        int end = position + length;
+        char[] chars = new char[length];
+        int count = 0;
+        while (position < end) {
+            int b = buffer.get(position++) & 0xFF;
+            if (b < 0x80) {
+                chars[count++] = (char) b;
+            } else if ((b & 0xE0) == 0xC0) {
+                chars[count++] = (char) (((b & 0x1F) << 6) | (buffer.get(position++) & 0x3F));
+            } else {
+                int second = buffer.get(position++) & 0x3F;
+                int third = buffer.get(position++) & 0x3F;
+                chars[count++] = (char) (((b & 0x0F) << 12) | (second << 6) | third);
+            }
+        }
+        cursor[0] = end;
+        return new String(chars, 0, count);
+    }
+
+    @FunctionalInterface
+    private interface RecordVisitor {
+        void visit(byte type, int payloadPosition);
+    }
+
+    /**
+     * Single statement execution read from the journal.
+     *
+     * @param fingerprint statement shape
+     * @param sql native sql, as captured when shape was first seen in the segment
+     * @param jpqlComment jpql comment or {@code null}
+     * @param timestamp epoch millis of execution
+     * @param thread name of the thread which prepared the statement
+     */
+    public record JournalEntry(long fingerprint, String sql, String jpqlComment, long timestamp, String thread) {
+    }
+}
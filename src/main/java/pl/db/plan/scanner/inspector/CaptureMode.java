@@ -0,0 +1,16 @@
+package pl.db.plan.scanner.inspector;
+
+/**
+ * How {@link SqlCaptureInspector} keeps captured statements.
+ */
+public enum CaptureMode {
+    /**
+     * Unbounded, single threaded lists. Good for tests, where we inspect exactly the statements we triggered.
+     */
+    LIST,
+    /**
+     * Fixed capacity, lock-free ring buffer. Safe to leave registered in a running service, consumers
+     * have to drain captured statements periodically.
+     */
+    RING_BUFFER
+}
@@ -0,0 +1,156 @@
+package pl.db.plan.scanner.inspector;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * Bounded, lock-free multi-producer / multi-consumer ring buffer.
+ * <p>
+ * Every slot has its own sequence number (Vyukov's bounded queue), so producers only compete for the tail
+ * counter with a single CAS and never block each other, consumers do the same on the head counter.
+ * Memory is allocated once, in the constructor.
+ *
+ * @param <T> type of elements
+ */
+public final class CaptureRingBuffer<T> {
+
+    /**
+     * Capacity is rounded up to a power of two, this is the largest one of {@code int}.
+     */
+    static final int MAX_CAPACITY = 1 << 30;
+
+    private final int capacity;
+    private final int mask;
+    private final AtomicReferenceArray<T> elements;
+    private final AtomicLongArray sequences;
+    private final AtomicLong head = new AtomicLong();
+    private final AtomicLong tail = new AtomicLong();
+    private final OverflowPolicy overflowPolicy;
+    private final LongAdder lost = new LongAdder();
+
+    public CaptureRingBuffer(int capacity, OverflowPolicy overflowPolicy) {
+        if (capacity < 2 || capacity > MAX_CAPACITY) {
+            throw new IllegalArgumentException("Capacity must be between 2 and " + MAX_CAPACITY + ", but was: " + capacity);
+        }
+        this.capacity = Integer.highestOneBit(capacity - 1) << 1;
+        this.mask = this.capacity - 1;
+        this.elements = new AtomicReferenceArray<>(this.capacity);
+        this.sequences = new AtomicLongArray(this.capacity);
+        for (int i = 0; i < this.capacity; i++) {
+            sequences.set(i, i);
+        }
+        this.overflowPolicy = overflowPolicy;
+    }
+
+    /**
+     * Adds element to the buffer. When buffer is full, element is either rejected or replaces the oldest one,
+     * depending on {@link OverflowPolicy}.
+     *
+     * @return {@code false} when element was rejected
+     */
+    public boolean offer(T element) {
+        while (true) {
+            long position = tail.get();
+            int index = (int) position & mask;
+            long difference = sequences.get(index) - position;
+            if (difference == 0) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    elements.lazySet(index, element);
+                    sequences.set(index, position + 1);
+                    return true;
+                }
+            } else if (difference < 0) {
+                // buffer is full
+                if (overflowPolicy == OverflowPolicy.DROP_NEWEST) {
+                    lost.increment();
+                    return false;
+                }
+                if (poll() != null) {
+                    lost.increment();
+                }
+            }
+            // otherwise another producer moved the tail, just retry
+        }
+    }
+
+    /**
+     * @return the oldest element or {@code null} when buffer is empty
+     */
+    public T poll() {
+        while (true) {
+            long position = head.get();
+            int index = (int) position & mask;
+            long difference = sequences.get(index) - (position + 1);
+            if (difference == 0) {
+                if (head.compareAndSet(position, position + 1)) {
+                    T element = elements.get(index);
+                    elements.lazySet(index, null);
+                    sequences.set(index, position + capacity);
+                    return element;
+                }
+            } else if (difference < 0) {
+                return null;
+            }
+        }
+    }
+
+    /**
+     * Moves all currently available elements to the consumer.
+     *
+     * @return number of drained elements
+     */
+    public int drain(Consumer<? super T> consumer) {
+        return drain(consumer, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Moves at most {@code limit} elements to the consumer.
+     *
+     * @return number of drained elements
+     */
+    public int drain(Consumer<? super T> consumer, int limit) {
+        int drained = 0;
+        T element;
+        while (drained < limit && (element = poll()) != null) {
+            consumer.accept(element);
+            drained++;
+        }
+        return drained;
+    }
+
+    public List<T> drain() {
+        List<T> result = new ArrayList<>();
+        drain(result::add);
+        return result;
+    }
+
+    /**
+     * @return approximate number of elements, exact only when there are no concurrent producers and consumers
+     */
+    public int size() {
+        long size = tail.get() - head.get();
+        return (int) Math.max(0, Math.min(size, capacity));
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    /**
+     * @return number of elements overwritten or rejected because the buffer was full
+     */
+    public long lostCount() {
+        return lost.sum();
+    }
+
+    public void clear() {
+        while (poll() != null) {
+            // just discard
+        }
+    }
+}
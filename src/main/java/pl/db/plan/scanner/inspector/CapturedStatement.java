@@ -0,0 +1,25 @@
+package pl.db.plan.scanner.inspector;
+
+/**
+ * Single statement prepared by hibernate.
+ *
+ * @param fingerprint {@link QueryFingerprinter fingerprint} of sql or {@code 0} when fingerprinting is disabled
+ * @param statement statement split into jpql comment and native sql
+ * @param caller repository method which produced the statement or {@code null} when unknown
+ */
+public record CapturedStatement(long fingerprint, SplitStatement statement, RepositoryMethod caller) {
+
+    /**
+     * @return leading jpql comment (when {@code use_sql_comments} is enabled), otherwise {@code null}
+     */
+    public String jpqlComment() {
+        return statement.jpqlComment();
+    }
+
+    /**
+     * @return native sql without the comment
+     */
+    public String sql() {
+        return statement.sql();
+    }
+}
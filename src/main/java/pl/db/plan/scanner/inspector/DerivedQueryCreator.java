@@ -0,0 +1,217 @@
+package pl.db.plan.scanner.inspector;
+
+import jakarta.persistence.metamodel.EntityType;
+import jakarta.persistence.metamodel.Metamodel;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mapping.PropertyPath;
+import org.springframework.data.mapping.PropertyReferenceException;
+import org.springframework.data.repository.query.parser.Part;
+import org.springframework.data.repository.query.parser.PartTree;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * JPQL of repository methods without {@code @Query}: derived query methods like {@code findByEmailAndName}, parsed
+ * by Spring Data {@link PartTree} against the domain type, and finders inherited from {@code JpaRepository}.
+ * Queries are built the way Spring Data JPA builds them, so they translate to the sql Hibernate issues for
+ * the method.
+ * <p>
+ * Parameters are named by method parameters, special parameters ({@code Pageable}, {@code Sort}, {@code Limit},
+ * {@code ScrollPosition} and dynamic projection type) are not part of the query, so paging of such methods
+ * is not rendered.
+ */
+public class DerivedQueryCreator {
+
+    private static final Set<String> SPECIAL_PARAMETERS = Set.of(
+            "org.springframework.data.domain.Pageable",
+            "org.springframework.data.domain.Sort",
+            "org.springframework.data.domain.Limit",
+            "org.springframework.data.domain.ScrollPosition",
+            "java.lang.Class");
+
+    private final Metamodel metamodel;
+
+    /**
+     * @param metamodel metamodel of entities, e.g. {@code entityManager.getMetamodel()}, for entity names and ids
+     */
+    public DerivedQueryCreator(Metamodel metamodel) {
+        this.metamodel = metamodel;
+    }
+
+    /**
+     * @param entry derived query method, e.g. {@code findTop3ByEmailAndNameIgnoreCaseOrderByIdDesc}
+     * @throws PropertyReferenceException when the method name refers to unknown property of the domain type
+     * @throws IllegalArgumentException when parameters do not match the method name, or it is not supported by JPA
+     */
+    public RepositoryQuery derive(QueryIndex.Entry entry) {
+        EntityType<?> entity = entity(entry.entity());
+        PartTree tree = new PartTree(entry.method(), entity.getJavaType());
+        String alias = alias(entity);
+        StringBuilder jpql = new StringBuilder("SELECT ");
+        if (tree.isCountProjection()) {
+            jpql.append(tree.isDistinct() ? "COUNT(DISTINCT " : "COUNT(").append(alias).append(')');
+        } else if (tree.isExistsProjection()) {
+            jpql.append(alias).append('.').append(id(entity));
+        } else {
+            // derived delete loads entities first, then removes them one by one
+            jpql.append(tree.isDistinct() ? "DISTINCT " : "").append(alias);
+        }
+        jpql.append(" FROM ").append(entity.getName()).append(' ').append(alias);
+
+        Map<String, String> joins = new LinkedHashMap<>();
+        Iterator<String> parameters = entry.parameters().stream()
+                .filter(parameter -> !SPECIAL_PARAMETERS.contains(parameter.type()))
+                .map(QueryIndex.Parameter::name)
+                .iterator();
+        List<String> disjunction = new ArrayList<>();
+        for (PartTree.OrPart or : tree) {
+            List<String> conjunction = new ArrayList<>();
+            for (Part part : or) {
+                conjunction.add(predicate(path(alias, part.getProperty(), joins), part, parameters));
+            }
+            disjunction.add(String.join(" AND ", conjunction));
+        }
+        joins.forEach((path, join) -> jpql.append(" JOIN ").append(path).append(' ').append(join));
+        if (!disjunction.isEmpty()) {
+            jpql.append(" WHERE ").append(disjunction.size() == 1 ? disjunction.getFirst()
+                    : "(" + String.join(") OR (", disjunction) + ")");
+        }
+        if (parameters.hasNext()) {
+            throw new IllegalArgumentException("Method " + entry.key() + " has more parameters than its name uses");
+        }
+
+        List<String> orders = new ArrayList<>();
+        for (Sort.Order order : tree.getSort()) {
+            String path = alias + "." + order.getProperty();
+            orders.add((order.isIgnoreCase() ? "UPPER(" + path + ")" : path) + " " + order.getDirection());
+        }
+        if (!orders.isEmpty()) {
+            jpql.append(" ORDER BY ").append(String.join(", ", orders));
+        }
+        // applied by maximum results of the query, JPQL has no limit without order
+        Integer maxResults = tree.isExistsProjection() ? Integer.valueOf(1) : tree.getMaxResults();
+        return new RepositoryQuery(entry.repository(), entry.method(), RepositoryQuery.Source.DERIVED, entry.entity(),
+                jpql.toString(), false, false, entry.parameters(), maxResults, null, entry.budget());
+    }
+
+    /**
+     * Finders of {@code SimpleJpaRepository} executed by a single statement. {@code findById} is {@code find}
+     * of entity manager, which loads eager associations by joins, its JPQL loads them by further statements.
+     *
+     * @return queries of {@code JpaRepository} methods, none for entities with composite id
+     */
+    public List<RepositoryQuery> inherited(String repository, String entityName) {
+        EntityType<?> entity = entity(entityName);
+        if (!entity.hasSingleIdAttribute()) {
+            return List.of();
+        }
+        String alias = alias(entity);
+        String from = " FROM " + entity.getName() + " " + alias;
+        String id = alias + "." + id(entity);
+        String idType = entity.getIdType().getJavaType().getName();
+        List<QueryIndex.Parameter> byId = List.of(new QueryIndex.Parameter("id", idType));
+        return List.of(
+                inherited(repository, "findAll", entityName, "SELECT " + alias + from, List.of()),
+                inherited(repository, "findById", entityName, "SELECT " + alias + from + " WHERE " + id + " = :id", byId),
+                inherited(repository, "findAllById", entityName, "SELECT " + alias + from + " WHERE " + id + " IN :ids",
+                        List.of(new QueryIndex.Parameter("ids", Iterable.class.getName()))),
+                inherited(repository, "existsById", entityName, "SELECT COUNT(" + alias + ")" + from + " WHERE " + id + " = :id", byId),
+                inherited(repository, "count", entityName, "SELECT COUNT(" + alias + ")" + from, List.of()));
+    }
+
+    private static RepositoryQuery inherited(String repository, String method, String entity, String jpql,
+                                             List<QueryIndex.Parameter> parameters) {
+        return new RepositoryQuery(repository, method, RepositoryQuery.Source.INHERITED, entity, jpql, false, false,
+                parameters, null, null, null);
+    }
+
+    /**
+     * Collections are joined, implicit joins are allowed only for single valued associations, e.g.
+     * {@code findByAddressesCity} is {@code p1.city} of {@code JOIN p.addresses p1}.
+     */
+    private static String path(String alias, PropertyPath property, Map<String, String> joins) {
+        String path = alias;
+        for (PropertyPath segment = property; segment != null; segment = segment.next()) {
+            String next = path + "." + segment.getSegment();
+            if (segment.hasNext() && segment.isCollection()) {
+                String join = joins.get(next);
+                if (join == null) {
+                    join = alias + (joins.size() + 1);
+                    joins.put(next, join);
+                }
+                path = join;
+            } else {
+                path = next;
+            }
+        }
+        return path;
+    }
+
+    private static String predicate(String path, Part part, Iterator<String> parameters) {
+        boolean ignoreCase = part.shouldIgnoreCase() != Part.IgnoreCaseType.NEVER
+                && part.getProperty().getLeafType() == String.class;
+        String property = ignoreCase ? "UPPER(" + path + ")" : path;
+        return switch (part.getType()) {
+            case SIMPLE_PROPERTY -> property + " = " + parameter(parameters, ignoreCase);
+            case NEGATING_SIMPLE_PROPERTY -> property + " <> " + parameter(parameters, ignoreCase);
+            case GREATER_THAN, AFTER -> property + " > " + parameter(parameters, ignoreCase);
+            case GREATER_THAN_EQUAL -> property + " >= " + parameter(parameters, ignoreCase);
+            case LESS_THAN, BEFORE -> property + " < " + parameter(parameters, ignoreCase);
+            case LESS_THAN_EQUAL -> property + " <= " + parameter(parameters, ignoreCase);
+            case BETWEEN -> property + " BETWEEN " + parameter(parameters, ignoreCase) + " AND " + parameter(parameters, ignoreCase);
+            case IS_NULL -> path + " IS NULL";
+            case IS_NOT_NULL -> path + " IS NOT NULL";
+            case TRUE -> path + " = TRUE";
+            case FALSE -> path + " = FALSE";
+            case IS_EMPTY -> path + " IS EMPTY";
+            case IS_NOT_EMPTY -> path + " IS NOT EMPTY";
+            case IN -> property + " IN " + parameter(parameters, ignoreCase);
+            case NOT_IN -> property + " NOT IN " + parameter(parameters, ignoreCase);
+            case CONTAINING, NOT_CONTAINING -> part.getProperty().getLeafProperty().isCollection()
+                    ? parameter(parameters, false) + (part.getType() == Part.Type.CONTAINING ? " MEMBER OF " : " NOT MEMBER OF ") + path
+                    : like(property, part.getType() == Part.Type.NOT_CONTAINING, parameters, ignoreCase);
+            // wildcards are added to the bound value
+            case LIKE, STARTING_WITH, ENDING_WITH -> like(property, false, parameters, ignoreCase);
+            case NOT_LIKE -> like(property, true, parameters, ignoreCase);
+            case NEAR, WITHIN, REGEX, EXISTS ->
+                    throw new IllegalArgumentException("Unsupported keyword " + part.getType() + " in JPA query " + part);
+        };
+    }
+
+    private static String like(String property, boolean negated, Iterator<String> parameters, boolean ignoreCase) {
+        return property + (negated ? " NOT LIKE " : " LIKE ") + parameter(parameters, ignoreCase) + " ESCAPE '\\'";
+    }
+
+    private static String parameter(Iterator<String> parameters, boolean ignoreCase) {
+        if (!parameters.hasNext()) {
+            throw new IllegalArgumentException("Method has fewer parameters than its name uses");
+        }
+        String parameter = ":" + parameters.next();
+        return ignoreCase ? "UPPER(" + parameter + ")" : parameter;
+    }
+
+    private EntityType<?> entity(String name) {
+        for (EntityType<?> entity : metamodel.getEntities()) {
+            if (entity.getJavaType() != null && entity.getJavaType().getName().equals(name)) {
+                return entity;
+            }
+        }
+        throw new IllegalArgumentException("Unknown entity " + name);
+    }
+
+    private static String id(EntityType<?> entity) {
+        return entity.getId(entity.getIdType().getJavaType()).getName();
+    }
+
+    /**
+     * @return alias like in queries of this project, e.g. {@code p} for {@code Person}
+     */
+    private static String alias(EntityType<?> entity) {
+        return entity.getName().substring(0, 1).toLowerCase();
+    }
+}
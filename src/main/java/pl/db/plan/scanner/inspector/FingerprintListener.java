@@ -0,0 +1,12 @@
+package pl.db.plan.scanner.inspector;
+
+/**
+ * Notified by {@link SqlCaptureInspector} when statement with new shape is seen for the first time.
+ * <p>
+ * Called on the thread which prepares the statement, so implementations must return immediately.
+ */
+@FunctionalInterface
+public interface FingerprintListener {
+
+    void onNewFingerprint(QueryFingerprint fingerprint);
+}
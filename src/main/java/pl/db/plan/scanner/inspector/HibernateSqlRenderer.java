@@ -0,0 +1,148 @@
+package pl.db.plan.scanner.inspector;
+
+import jakarta.persistence.EntityManagerFactory;
+import jakarta.persistence.PersistenceException;
+import org.hibernate.HibernateException;
+import org.hibernate.Version;
+import org.hibernate.engine.spi.LoadQueryInfluencers;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.persister.entity.EntityPersister;
+import org.hibernate.query.BindableType;
+import org.hibernate.query.internal.ParameterMetadataImpl;
+import org.hibernate.query.internal.QueryOptionsImpl;
+import org.hibernate.query.internal.QueryParameterBindingsImpl;
+import org.hibernate.query.spi.HqlInterpretation;
+import org.hibernate.query.spi.ParameterMetadataImplementor;
+import org.hibernate.query.spi.QueryEngine;
+import org.hibernate.query.spi.QueryParameterBinding;
+import org.hibernate.query.spi.QueryParameterImplementor;
+import org.hibernate.query.sqm.internal.DomainParameterXref;
+import org.hibernate.query.sqm.sql.SqmTranslation;
+import org.hibernate.query.sqm.tree.SqmDmlStatement;
+import org.hibernate.query.sqm.tree.SqmStatement;
+import org.hibernate.query.sqm.tree.select.SqmSelectStatement;
+import org.hibernate.sql.ast.SqlAstTranslatorFactory;
+import org.hibernate.sql.ast.tree.MutationStatement;
+import org.hibernate.sql.ast.tree.select.SelectStatement;
+import org.hibernate.sql.exec.spi.JdbcParameterBindings;
+
+import java.util.List;
+
+/**
+ * The only user of Hibernate internals ({@code internal} and {@code spi} packages, SQM translators), which
+ * are not a stable API and change between minor versions. Tested with Hibernate 6.6.29; when internals of
+ * the running version differ, translation fails with {@link UnsupportedOperationException} naming both versions.
+ */
+final class HibernateSqlRenderer {
+
+    static final String TESTED_VERSION = "6.6.29";
+
+    private final SessionFactoryImplementor sessionFactory;
+
+    /**
+     * @throws UnsupportedOperationException when the factory is not a Hibernate session factory
+     */
+    HibernateSqlRenderer(EntityManagerFactory entityManagerFactory) {
+        try {
+            this.sessionFactory = entityManagerFactory.unwrap(SessionFactoryImplementor.class);
+        } catch (PersistenceException e) {
+            throw unsupported("entity manager factory " + entityManagerFactory.getClass().getName(), e);
+        }
+    }
+
+    /**
+     * @param parameterTypes types of method parameters, {@code null} when not known
+     * @return sql of JPQL or criteria query of the query with jdbc placeholders
+     * @throws IllegalArgumentException when JPQL is invalid or the statement is executed as several statements
+     * @throws UnsupportedOperationException when internals of Hibernate are not the tested ones
+     */
+    String render(RepositoryQuery query, List<Class<?>> parameterTypes) {
+        try {
+            return doRender(query, parameterTypes);
+        } catch (ClassCastException | LinkageError e) {
+            throw unsupported("query " + query.key(), e);
+        }
+    }
+
+    private String doRender(RepositoryQuery query, List<Class<?>> parameterTypes) {
+        QueryEngine engine = sessionFactory.getQueryEngine();
+        SqmStatement<?> statement;
+        DomainParameterXref parameterXref;
+        ParameterMetadataImplementor parameterMetadata;
+        if (query.criteria() != null) {
+            // values of criteria are bound already, they are not rendered anyway
+            statement = (SqmStatement<?>) query.criteria();
+            parameterXref = DomainParameterXref.from(statement);
+            parameterMetadata = new ParameterMetadataImpl(parameterXref.getQueryParameters());
+        } else {
+            HqlInterpretation<?> interpretation;
+            try {
+                interpretation = engine.interpretHql(query.query(), null);
+            } catch (HibernateException e) {
+                // entity manager reports invalid queries the same way
+                throw new IllegalArgumentException("Invalid query " + query.key() + ": " + e.getMessage(), e);
+            }
+            statement = interpretation.getSqmStatement();
+            parameterXref = interpretation.getDomainParameterXref();
+            parameterMetadata = interpretation.getParameterMetadata();
+        }
+        QueryParameterBindingsImpl bindings = QueryParameterBindingsImpl.from(parameterMetadata, sessionFactory);
+        bindTypes(query.parameters(), parameterTypes, parameterMetadata, bindings);
+        QueryOptionsImpl options = new QueryOptionsImpl();
+        if (query.maxResults() != null) {
+            options.getLimit().setMaxRows(query.maxResults());
+        }
+        LoadQueryInfluencers influencers = new LoadQueryInfluencers(sessionFactory);
+        SqlAstTranslatorFactory sqlAstTranslatorFactory = sessionFactory.getJdbcServices().getDialect().getSqlAstTranslatorFactory();
+
+        if (statement instanceof SqmSelectStatement<?> select) {
+            SqmTranslation<SelectStatement> translation = engine.getSqmTranslatorFactory()
+                    .createSelectTranslator(select, options, parameterXref, bindings, influencers, sessionFactory, true)
+                    .translate();
+            return sqlAstTranslatorFactory.buildSelectTranslator(sessionFactory, translation.getSqlAst())
+                    .translate(JdbcParameterBindings.NO_BINDINGS, options)
+                    .getSqlString();
+        }
+        SqmDmlStatement<?> mutation = (SqmDmlStatement<?>) statement;
+        EntityPersister entity = sessionFactory.getMappingMetamodel()
+                .getEntityDescriptor(mutation.getTarget().getModel().getHibernateEntityName());
+        if (entity.getSqmMultiTableMutationStrategy() != null) {
+            throw new IllegalArgumentException("Query " + query.key() + " is executed as several statements");
+        }
+        SqmTranslation<? extends MutationStatement> translation = engine.getSqmTranslatorFactory()
+                .createMutationTranslator(mutation, options, parameterXref, bindings, influencers, sessionFactory)
+                .translate();
+        return sqlAstTranslatorFactory.buildMutationTranslator(sessionFactory, translation.getSqlAst())
+                .translate(JdbcParameterBindings.NO_BINDINGS, options)
+                .getSqlString();
+    }
+
+    /**
+     * Binds type of every single valued parameter known by the query, named or ordinal (by position of method
+     * parameter), without value.
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private void bindTypes(List<QueryIndex.Parameter> parameters, List<Class<?>> types,
+                           ParameterMetadataImplementor parameterMetadata, QueryParameterBindingsImpl bindings) {
+        for (int i = 0; i < parameters.size(); i++) {
+            QueryParameterImplementor<?> parameter = parameterMetadata.hasPositionalParameters()
+                    ? parameterMetadata.findQueryParameter(i + 1)
+                    : parameterMetadata.findQueryParameter(parameters.get(i).name());
+            Class<?> type = parameter == null ? null : types.get(i);
+            if (type == null || Iterable.class.isAssignableFrom(type) || type.isArray()) {
+                continue;
+            }
+            BindableType<?> bindType = sessionFactory.getMappingMetamodel().resolveParameterBindType(type);
+            if (bindType != null) {
+                QueryParameterBinding binding = bindings.getBinding(parameter);
+                binding.setBindValue(null, (BindableType) bindType);
+            }
+        }
+    }
+
+    private static UnsupportedOperationException unsupported(String what, Throwable cause) {
+        return new UnsupportedOperationException("Could not translate " + what + " with Hibernate "
+                + Version.getVersionString() + ", translation uses its internals and is tested with " + TESTED_VERSION
+                + " only: " + cause, cause);
+    }
+}
@@ -0,0 +1,15 @@
+package pl.db.plan.scanner.inspector;
+
+/**
+ * What {@link CaptureRingBuffer} does when producers are faster than consumers and the buffer is full.
+ */
+public enum OverflowPolicy {
+    /**
+     * Evict the oldest element, so the buffer always holds the most recent statements.
+     */
+    OVERWRITE_OLDEST,
+    /**
+     * Reject the new element, so the buffer keeps the statements captured first.
+     */
+    DROP_NEWEST
+}
@@ -0,0 +1,84 @@
+package pl.db.plan.scanner.inspector;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Aggregated statistics of all captured statements sharing the same shape.
+ * <p>
+ * Sample sql and jpql comment are taken from the first statement seen, every following statement only bumps
+ * counters, so memory grows with number of distinct shapes, not with number of statements.
+ */
+public class QueryFingerprint {
+
+    private final long id;
+    private final String normalizedSql;
+    private final String sampleSql;
+    private final String jpqlComment;
+    private final long firstSeen;
+    private final LongAdder hits = new LongAdder();
+    private volatile long lastSeen;
+    private final Set<RepositoryMethod> callers = ConcurrentHashMap.newKeySet();
+
+    public QueryFingerprint(long id, String normalizedSql, String sampleSql, String jpqlComment, long firstSeen) {
+        this.id = id;
+        this.normalizedSql = normalizedSql;
+        this.sampleSql = sampleSql;
+        this.jpqlComment = jpqlComment;
+        this.firstSeen = firstSeen;
+        this.lastSeen = firstSeen;
+    }
+
+    void hit(long timestamp) {
+        hits.increment();
+        lastSeen = timestamp;
+    }
+
+    void addCaller(RepositoryMethod caller) {
+        // the same call site keeps producing the same shape, avoid writes once it is known
+        if (!callers.contains(caller)) {
+            callers.add(caller);
+        }
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public String getNormalizedSql() {
+        return normalizedSql;
+    }
+
+    public String getSampleSql() {
+        return sampleSql;
+    }
+
+    public String getJpqlComment() {
+        return jpqlComment;
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getFirstSeen() {
+        return firstSeen;
+    }
+
+    public long getLastSeen() {
+        return lastSeen;
+    }
+
+    /**
+     * @return repository methods which produced statements of this shape, empty when attribution is disabled
+     */
+    public Set<RepositoryMethod> getCallers() {
+        return Set.copyOf(callers);
+    }
+
+    @Override
+    public String toString() {
+        return "QueryFingerprint{id=" + Long.toHexString(id) + ", hits=" + getHits() + ", sql=" + normalizedSql + "}";
+    }
+}
@@ -0,0 +1,269 @@
+package pl.db.plan.scanner.inspector;
+
+/**
+ * Normalizes sql statement into its shape, so the same query with different literals gets the same fingerprint.
+ * <p>
+ * Normalization, done in one pass over characters:
+ * <ul>
+ *     <li>string and numeric literals, jdbc ({@code ?}) and postgres ({@code $1}) placeholders become {@code ?}</li>
+ *     <li>lists of values in {@code IN (...)} are collapsed to single {@code ?}, whatever their length</li>
+ *     <li>comments are removed, whitespace is collapsed and removed around punctuation</li>
+ *     <li>everything except quoted identifiers is lower-cased</li>
+ * </ul>
+ * Fingerprint itself is 64-bit FNV-1a hash of normalized statement, computed without building the string.
+ * Different shapes may share a fingerprint, {@link #matches} tells them apart, also without building the string.
+ */
+public class QueryFingerprinter {
+
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    public long fingerprint(CharSequence sql) {
+        return fingerprint(sql, 0, sql.length());
+    }
+
+    /**
+     * @return fingerprint of {@code sql} fragment between {@code from} (inclusive) and {@code to} (exclusive),
+     * never {@code 0}
+     */
+    public long fingerprint(CharSequence sql, int from, int to) {
+        HashSink sink = new HashSink();
+        scan(sql, from, to, sink);
+        return sink.hash == 0 ? 1 : sink.hash;
+    }
+
+    public String normalize(CharSequence sql) {
+        return normalize(sql, 0, sql.length());
+    }
+
+    public String normalize(CharSequence sql, int from, int to) {
+        StringBuilder sink = new StringBuilder(to - from);
+        scan(sql, from, to, sink::append);
+        return sink.toString();
+    }
+
+    /**
+     * @return whether {@code sql} fragment between {@code from} (inclusive) and {@code to} (exclusive) normalizes
+     * to {@code normalized}
+     */
+    public boolean matches(CharSequence sql, int from, int to, String normalized) {
+        CompareSink sink = new CompareSink(normalized);
+        scan(sql, from, to, sink);
+        return sink.matches();
+    }
+
+    private void scan(CharSequence sql, int from, int to, Sink out) {
+        Scanner scanner = new Scanner(out);
+        int i = from;
+        while (i < to) {
+            char c = sql.charAt(i);
+            char next = i + 1 < to ? sql.charAt(i + 1) : 0;
+            if (Character.isWhitespace(c)) {
+                scanner.space();
+                i++;
+            } else if (c == '/' && next == '*') {
+                int end = indexOf(sql, "*/", i + 2, to);
+                i = end < 0 ? to : end + 2;
+                scanner.space();
+            } else if (c == '-' && next == '-') {
+                while (i < to && sql.charAt(i) != '\n') {
+                    i++;
+                }
+                scanner.space();
+            } else if (c == '\'') {
+                i = skipQuoted(sql, i, to, '\'');
+                scanner.value();
+            } else if (c == '"') {
+                int end = skipQuoted(sql, i, to, '"');
+                scanner.word();
+                for (int j = i; j < end; j++) {
+                    scanner.emit(sql.charAt(j));
+                }
+                i = end;
+            } else if (c == '?') {
+                scanner.value();
+                i++;
+            } else if (c == '$' && Character.isDigit(next)) {
+                i++;
+                while (i < to && Character.isDigit(sql.charAt(i))) {
+                    i++;
+                }
+                scanner.value();
+            } else if (Character.isDigit(c) || (c == '.' && Character.isDigit(next))) {
+                i++;
+                while (i < to && isNumberPart(sql.charAt(i))) {
+                    i++;
+                }
+                scanner.value();
+            } else if (isIdentifierStart(c)) {
+                int start = i;
+                while (i < to && isIdentifierPart(sql.charAt(i))) {
+                    i++;
+                }
+                boolean in = i - start == 2
+                        && Character.toLowerCase(c) == 'i'
+                        && Character.toLowerCase(sql.charAt(start + 1)) == 'n';
+                scanner.word();
+                for (int j = start; j < i; j++) {
+                    scanner.emit(Character.toLowerCase(sql.charAt(j)));
+                }
+                scanner.expectInList = in;
+            } else {
+                scanner.punctuation(c);
+                i++;
+            }
+        }
+    }
+
+    private static int skipQuoted(CharSequence sql, int start, int to, char quote) {
+        int i = start + 1;
+        while (i < to) {
+            if (sql.charAt(i) == quote) {
+                if (i + 1 < to && sql.charAt(i + 1) == quote) {
+                    // escaped quote
+                    i += 2;
+                    continue;
+                }
+                return i + 1;
+            }
+            i++;
+        }
+        return to;
+    }
+
+    private static int indexOf(CharSequence sql, String token, int from, int to) {
+        for (int i = from; i <= to - token.length(); i++) {
+            if (sql.charAt(i) == token.charAt(0) && sql.charAt(i + 1) == token.charAt(1)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean isNumberPart(char c) {
+        return Character.isDigit(c) || c == '.' || c == 'e' || c == 'E';
+    }
+
+    private static boolean isIdentifierStart(char c) {
+        return Character.isLetter(c) || c == '_';
+    }
+
+    private static boolean isIdentifierPart(char c) {
+        return Character.isLetterOrDigit(c) || c == '_' || c == '$';
+    }
+
+    private interface Sink {
+        void append(char c);
+    }
+
+    private static final class HashSink implements Sink {
+        private long hash = FNV_OFFSET;
+
+        @Override
+        public void append(char c) {
+            hash ^= c;
+            hash *= FNV_PRIME;
+        }
+    }
+
+    private static final class CompareSink implements Sink {
+        private final String expected;
+        private int length;
+        private boolean different;
+
+        private CompareSink(String expected) {
+            this.expected = expected;
+        }
+
+        @Override
+        public void append(char c) {
+            if (!different && (length >= expected.length() || expected.charAt(length++) != c)) {
+                different = true;
+            }
+        }
+
+        boolean matches() {
+            return !different && length == expected.length();
+        }
+    }
+
+    /**
+     * Keeps state between tokens: pending whitespace and values of currently scanned {@code IN} list.
+     */
+    private static final class Scanner {
+        private final Sink out;
+        private boolean pendingSpace;
+        private boolean lastWasWord;
+        private boolean lastWasClosing;
+        private boolean lastWasValue;
+        private boolean expectInList;
+        private boolean inList;
+        private boolean pendingComma;
+
+        private Scanner(Sink out) {
+            this.out = out;
+        }
+
+        void space() {
+            pendingSpace = true;
+        }
+
+        void word() {
+            flush(true);
+            lastWasWord = true;
+            lastWasValue = false;
+            inList = false;
+        }
+
+        void value() {
+            if (inList && lastWasValue && pendingComma) {
+                // next value of IN list, collapsed into previous one
+                pendingComma = false;
+                pendingSpace = false;
+                return;
+            }
+            flush(true);
+            out.append('?');
+            lastWasWord = true;
+            lastWasValue = true;
+            expectInList = false;
+        }
+
+        void punctuation(char c) {
+            if (c == ',' && inList) {
+                pendingComma = true;
+                pendingSpace = false;
+                return;
+            }
+            boolean listStart = c == '(' && expectInList;
+            flush(false);
+            out.append(c);
+            inList = listStart;
+            lastWasWord = false;
+            lastWasClosing = c == ')';
+            lastWasValue = false;
+            expectInList = false;
+        }
+
+        void emit(char c) {
+            out.append(c);
+        }
+
+        private void flush(boolean word) {
+            if (pendingComma) {
+                out.append(',');
+                pendingComma = false;
+                lastWasWord = false;
+                inList = false;
+            }
+            if (pendingSpace && word && (lastWasWord || lastWasClosing)) {
+                out.append(' ');
+            }
+            lastWasClosing = false;
+            pendingSpace = false;
+            if (!word) {
+                expectInList = false;
+            }
+        }
+    }
+}
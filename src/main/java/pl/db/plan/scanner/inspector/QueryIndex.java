@@ -0,0 +1,158 @@
+package pl.db.plan.scanner.inspector;
+
+import org.springframework.core.annotation.MergedAnnotation;
+import pl.db.plan.scanner.analyzer.PlanBudget;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Repository methods indexed at compile time by {@code QueryIndexProcessor}, loaded without starting Spring
+ * or scanning the classpath: every jar or directory compiled with the processor has its own index. Jars compiled
+ * without it can be indexed by {@link RepositoryScanner}.
+ *
+ * @param entries indexed methods, in order of repositories and methods
+ */
+public record QueryIndex(List<Entry> entries) {
+
+    /**
+     * Written by {@code QueryIndexProcessor}, see there for the format.
+     */
+    public static final String INDEX = "META-INF/plan-scanner/query-index.tsv";
+
+    public static QueryIndex load() {
+        return load(Thread.currentThread().getContextClassLoader());
+    }
+
+    /**
+     * @return methods of all indexes visible to the class loader, empty when there is none
+     */
+    public static QueryIndex load(ClassLoader classLoader) {
+        List<Entry> entries = new ArrayList<>();
+        try {
+            for (URL url : Collections.list(classLoader.getResources(INDEX))) {
+                try (Reader reader = new InputStreamReader(url.openStream(), StandardCharsets.UTF_8)) {
+                    entries.addAll(read(reader).entries());
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not read query index", e);
+        }
+        return new QueryIndex(List.copyOf(entries));
+    }
+
+    /**
+     * @throws IllegalArgumentException when a line does not have all columns
+     */
+    public static QueryIndex read(Reader reader) throws IOException {
+        List<Entry> entries = new ArrayList<>();
+        BufferedReader lines = new BufferedReader(reader);
+        String line;
+        while ((line = lines.readLine()) != null) {
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            String[] columns = line.split("\t", -1);
+            if (columns.length != 10) {
+                throw new IllegalArgumentException("Invalid query index line: " + line);
+            }
+            List<Parameter> parameters = new ArrayList<>();
+            String declared = unescape(columns[6]);
+            if (!declared.isEmpty()) {
+                for (String parameter : declared.split(",")) {
+                    int colon = parameter.lastIndexOf(':');
+                    parameters.add(new Parameter(parameter.substring(0, colon), parameter.substring(colon + 1)));
+                }
+            }
+            String query = unescape(columns[3]);
+            entries.add(new Entry(unescape(columns[0]), unescape(columns[1]), unescape(columns[2]),
+                    query.isEmpty() ? null : query, Boolean.parseBoolean(columns[4]), Boolean.parseBoolean(columns[5]),
+                    List.copyOf(parameters), columns[7].isEmpty() ? null : budget(Map.of(
+                            "maxCost", Double.parseDouble(columns[7]),
+                            "allowedSeqScans", columns[8].isEmpty() ? new String[0] : unescape(columns[8]).split(","),
+                            "maxRows", Double.parseDouble(columns[9])))));
+        }
+        return new QueryIndex(List.copyOf(entries));
+    }
+
+    /**
+     * @return methods with {@code @Query}
+     */
+    public List<Entry> queries() {
+        return entries.stream().filter(entry -> entry.query() != null).toList();
+    }
+
+    /**
+     * @param attributes attributes of the annotation, missing ones have their default values
+     * @return the budget as if read from the method, equal to any budget with the same attributes
+     */
+    static PlanBudget budget(Map<String, Object> attributes) {
+        return MergedAnnotation.of(PlanBudget.class, attributes).synthesize();
+    }
+
+    private static String unescape(String value) {
+        if (value.indexOf('\\') < 0) {
+            return value;
+        }
+        StringBuilder unescaped = new StringBuilder(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '\\' && i + 1 < value.length()) {
+                char next = value.charAt(++i);
+                unescaped.append(switch (next) {
+                    case 't' -> '\t';
+                    case 'n' -> '\n';
+                    case 'r' -> '\r';
+                    default -> next;
+                });
+            } else {
+                unescaped.append(c);
+            }
+        }
+        return unescaped.toString();
+    }
+
+    /**
+     * @param repository binary name of repository interface, as of {@link Class#getName()}
+     * @param method name of the method
+     * @param entity binary name of the domain type of the repository
+     * @param query value of {@code @Query} or {@code null} for methods without it
+     * @param nativeQuery whether the query is native sql
+     * @param modifying whether the method has {@code @Modifying}
+     * @param parameters parameters of the method
+     * @param budget {@code @PlanBudget} of the method or {@code null} when it has none
+     */
+    public record Entry(
+            String repository,
+            String method,
+            String entity,
+            String query,
+            boolean nativeQuery,
+            boolean modifying,
+            List<Parameter> parameters,
+            PlanBudget budget) {
+
+        /**
+         * @return the same key as {@link RepositoryMethod#toString()}, e.g. {@code PersonRepository.findByName}
+         */
+        public String key() {
+            return repository.substring(repository.lastIndexOf('.') + 1) + "." + method;
+        }
+    }
+
+    /**
+     * @param name name from {@code @Param}, or name of the parameter itself
+     * @param type binary name of erased type, e.g. {@code java.util.List} or {@code long[]}
+     */
+    public record Parameter(String name, String type) {
+    }
+}
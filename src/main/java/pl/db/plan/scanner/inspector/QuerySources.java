@@ -0,0 +1,271 @@
+package pl.db.plan.scanner.inspector;
+
+import jakarta.persistence.EntityManagerFactory;
+import jakarta.persistence.NamedNativeQuery;
+import jakarta.persistence.NamedQuery;
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.CriteriaQuery;
+import jakarta.persistence.criteria.Predicate;
+import jakarta.persistence.criteria.Root;
+import jakarta.persistence.metamodel.EntityType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.jpa.domain.Specification;
+
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Array;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.Parameter;
+import java.lang.reflect.ParameterizedType;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.function.Supplier;
+import java.util.regex.Pattern;
+
+/**
+ * Every source of queries normalized to {@link RepositoryQuery}: repository methods with {@code @Query}, JPQL and
+ * native, named queries of entities, derived methods and inherited finders, specifications and Criteria API queries.
+ * Nothing is translated or executed here, native queries are kept as they are.
+ * <p>
+ * Specifications and Criteria API queries are code, they are created by calling public static methods of given
+ * classes with placeholder arguments: empty strings, zeros, current time, first enum constants and empty collections.
+ * Values are bound as parameters by Hibernate, so they do not change the query.
+ */
+public class QuerySources {
+
+    private static final Logger LOG = LoggerFactory.getLogger(QuerySources.class);
+    private static final Map<Class<?>, Supplier<Object>> PLACEHOLDERS = Map.of(
+            String.class, () -> "",
+            LocalDate.class, LocalDate::now,
+            LocalDateTime.class, LocalDateTime::now,
+            OffsetDateTime.class, OffsetDateTime::now,
+            Instant.class, Instant::now);
+    private static final Pattern MODIFYING = Pattern.compile("^\\s*(UPDATE|DELETE|INSERT)\\b", Pattern.CASE_INSENSITIVE);
+
+    private final EntityManagerFactory entityManagerFactory;
+    private final DerivedQueryCreator derivedQueryCreator;
+
+    public QuerySources(EntityManagerFactory entityManagerFactory) {
+        this.entityManagerFactory = entityManagerFactory;
+        this.derivedQueryCreator = new DerivedQueryCreator(entityManagerFactory.getMetamodel());
+    }
+
+    /**
+     * Methods without {@code @Query} use named query {@code Entity.method} when there is one, like Spring Data does,
+     * otherwise they are derived from their names. Derived methods which cannot be parsed, e.g. implemented by
+     * repository fragments, are skipped with a warning, see {@link #skipped(QueryIndex)}.
+     *
+     * @return queries of all methods of the index with finders inherited from {@code JpaRepository} once per
+     * repository, then named queries which are not queries of repository methods
+     */
+    public List<RepositoryQuery> queries(QueryIndex index) {
+        Map<String, String> skipped = new LinkedHashMap<>();
+        List<RepositoryQuery> queries = queries(index, skipped);
+        skipped.forEach((key, reason) -> LOG.warn("Method {} is skipped, it is not a derived query: {}", key, reason));
+        return queries;
+    }
+
+    /**
+     * @return methods of the index which {@link #queries(QueryIndex)} skips, by their keys, with the reason why
+     * they are not derived queries, empty when the queries of all methods are known
+     */
+    public Map<String, String> skipped(QueryIndex index) {
+        Map<String, String> skipped = new LinkedHashMap<>();
+        queries(index, skipped);
+        return skipped;
+    }
+
+    private List<RepositoryQuery> queries(QueryIndex index, Map<String, String> skipped) {
+        Map<String, RepositoryQuery> named = namedQueriesByName();
+        List<RepositoryQuery> queries = new ArrayList<>();
+        Set<String> repositories = new LinkedHashSet<>();
+        for (QueryIndex.Entry entry : index.entries()) {
+            EntityType<?> entity = entity(entry.entity());
+            // Spring Data looks up named queries by simple name of the domain type
+            String namedQueryName = entity == null ? null : entity.getJavaType().getSimpleName() + "." + entry.method();
+            RepositoryQuery namedQuery = entry.query() == null && entity != null ? named.remove(namedQueryName) : null;
+            if (entry.query() != null) {
+                queries.add(RepositoryQuery.declared(entry));
+            } else if (namedQuery != null) {
+                queries.add(new RepositoryQuery(entry.repository(), entry.method(), RepositoryQuery.Source.NAMED,
+                        entry.entity(), namedQuery.query(), namedQuery.nativeQuery(), entry.modifying(), entry.parameters(),
+                        null, null, entry.budget()));
+            } else {
+                try {
+                    queries.add(derivedQueryCreator.derive(entry));
+                } catch (RuntimeException e) {
+                    skipped.put(entry.key(), e.getMessage());
+                }
+            }
+            // generic base repositories have no entity
+            if (repositories.add(entry.repository()) && entity != null) {
+                queries.addAll(derivedQueryCreator.inherited(entry.repository(), entry.entity()));
+            }
+        }
+        queries.addAll(named.values());
+        return queries;
+    }
+
+    /**
+     * @return {@code @NamedQuery} and {@code @NamedNativeQuery} of all entities, in order of their names, e.g. query
+     * {@code Person.withoutAddresses} of entity {@code Person} has method {@code withoutAddresses}
+     */
+    public List<RepositoryQuery> namedQueries() {
+        return List.copyOf(namedQueriesByName().values());
+    }
+
+    private Map<String, RepositoryQuery> namedQueriesByName() {
+        Map<String, RepositoryQuery> queries = new TreeMap<>();
+        for (EntityType<?> entity : entityManagerFactory.getMetamodel().getEntities()) {
+            Class<?> type = entity.getJavaType();
+            for (NamedQuery query : type.getAnnotationsByType(NamedQuery.class)) {
+                queries.put(query.name(), named(type, query.name(), query.query(), false));
+            }
+            for (NamedNativeQuery query : type.getAnnotationsByType(NamedNativeQuery.class)) {
+                queries.put(query.name(), named(type, query.name(), query.query(), true));
+            }
+        }
+        return queries;
+    }
+
+    private static RepositoryQuery named(Class<?> entity, String name, String query, boolean nativeQuery) {
+        String prefix = entity.getSimpleName() + ".";
+        String method = name.startsWith(prefix) ? name.substring(prefix.length()) : name;
+        return new RepositoryQuery(entity.getName(), method, RepositoryQuery.Source.NAMED, entity.getName(), query,
+                nativeQuery, MODIFYING.matcher(query).find(), List.of(), null, null, null);
+    }
+
+    /**
+     * Specifications of public static methods of the class returning {@code Specification<T>}, e.g.
+     * {@code PersonSpecifications.livesIn(String city)}, as {@code findAll(specification)} of
+     * {@code JpaSpecificationExecutor} queries them.
+     *
+     * @throws IllegalArgumentException when a method fails or its entity is not known
+     */
+    public List<RepositoryQuery> specifications(Class<?> declaringClass) {
+        List<RepositoryQuery> queries = new ArrayList<>();
+        for (Method method : methods(declaringClass)) {
+            if (!Specification.class.isAssignableFrom(method.getReturnType())) {
+                continue;
+            }
+            if (!(method.getGenericReturnType() instanceof ParameterizedType returnType)
+                    || !(returnType.getActualTypeArguments()[0] instanceof Class<?> entity)) {
+                throw new IllegalArgumentException("Entity of specification " + method + " is not known");
+            }
+            Specification<?> specification = (Specification<?>) invoke(method, placeholders(method.getParameters(), 0));
+            queries.add(new RepositoryQuery(declaringClass.getName(), method.getName(), RepositoryQuery.Source.SPECIFICATION,
+                    entity.getName(), null, false, false, parameters(method.getParameters(), 0), null,
+                    criteria(entity, specification), null));
+        }
+        return queries;
+    }
+
+    /**
+     * Queries of public static methods of the class which take {@code CriteriaBuilder} as first parameter and return
+     * {@code CriteriaQuery}, e.g. {@code ActivityReports.actionsPerPerson(CriteriaBuilder builder, LocalDateTime since)}.
+     *
+     * @throws IllegalArgumentException when a method fails
+     */
+    public List<RepositoryQuery> criteria(Class<?> declaringClass) {
+        List<RepositoryQuery> queries = new ArrayList<>();
+        CriteriaBuilder builder = entityManagerFactory.getCriteriaBuilder();
+        for (Method method : methods(declaringClass)) {
+            if (!CriteriaQuery.class.isAssignableFrom(method.getReturnType()) || method.getParameterCount() == 0
+                    || method.getParameterTypes()[0] != CriteriaBuilder.class) {
+                continue;
+            }
+            Object[] arguments = placeholders(method.getParameters(), 1);
+            arguments[0] = builder;
+            CriteriaQuery<?> query = (CriteriaQuery<?>) invoke(method, arguments);
+            String entity = query.getRoots().isEmpty() ? "" : query.getRoots().iterator().next().getJavaType().getName();
+            queries.add(new RepositoryQuery(declaringClass.getName(), method.getName(), RepositoryQuery.Source.CRITERIA,
+                    entity, null, false, false, parameters(method.getParameters(), 1), null, query, null));
+        }
+        return queries;
+    }
+
+    /**
+     * The same query as {@code SimpleJpaRepository} builds for the specification.
+     */
+    @SuppressWarnings("unchecked")
+    private <T> CriteriaQuery<T> criteria(Class<T> entity, Specification<?> specification) {
+        CriteriaBuilder builder = entityManagerFactory.getCriteriaBuilder();
+        CriteriaQuery<T> query = builder.createQuery(entity);
+        Root<T> root = query.from(entity);
+        Predicate predicate = ((Specification<T>) specification).toPredicate(root, query, builder);
+        if (predicate != null) {
+            query.where(predicate);
+        }
+        return query.select(root);
+    }
+
+    private static List<Method> methods(Class<?> declaringClass) {
+        return Arrays.stream(declaringClass.getMethods())
+                .filter(method -> Modifier.isStatic(method.getModifiers()))
+                .sorted(Comparator.comparing(Method::getName).thenComparing(Method::getParameterCount))
+                .toList();
+    }
+
+    private static Object invoke(Method method, Object[] arguments) {
+        try {
+            return method.invoke(null, arguments);
+        } catch (IllegalAccessException | InvocationTargetException e) {
+            throw new IllegalArgumentException("Could not create query of " + method, e);
+        }
+    }
+
+    private static Object[] placeholders(Parameter[] parameters, int from) {
+        Object[] arguments = new Object[parameters.length];
+        for (int i = from; i < parameters.length; i++) {
+            arguments[i] = placeholder(parameters[i].getType());
+        }
+        return arguments;
+    }
+
+    static Object placeholder(Class<?> type) {
+        // zero or false of primitives and their wrappers
+        Class<?> primitive = MethodType.methodType(type).unwrap().returnType();
+        if (primitive.isPrimitive() && primitive != void.class) {
+            return Array.get(Array.newInstance(primitive, 1), 0);
+        }
+        if (type.isEnum()) {
+            return type.getEnumConstants().length == 0 ? null : type.getEnumConstants()[0];
+        }
+        if (PLACEHOLDERS.containsKey(type)) {
+            return PLACEHOLDERS.get(type).get();
+        }
+        if (type == List.class || type == Collection.class || type == Iterable.class) {
+            return List.of();
+        }
+        return type == Set.class ? Set.of() : null;
+    }
+
+    private static List<QueryIndex.Parameter> parameters(Parameter[] parameters, int from) {
+        return Arrays.stream(parameters, from, parameters.length)
+                .map(parameter -> new QueryIndex.Parameter(parameter.getName(), parameter.getType().getName()))
+                .toList();
+    }
+
+    private EntityType<?> entity(String name) {
+        for (EntityType<?> entity : entityManagerFactory.getMetamodel().getEntities()) {
+            if (entity.getJavaType() != null && entity.getJavaType().getName().equals(name)) {
+                return entity;
+            }
+        }
+        return null;
+    }
+}
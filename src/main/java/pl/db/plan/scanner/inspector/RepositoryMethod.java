@@ -0,0 +1,17 @@
+package pl.db.plan.scanner.inspector;
+
+/**
+ * Spring Data repository method which produced captured statement.
+ *
+ * @param repository repository interface, e.g. {@code PersonRepository}
+ * @param method name of the called method, e.g. {@code findByLastName}
+ * @param descriptor descriptor of the called method, e.g. {@code (Ljava/lang/String;)Ljava/util/List;}, which tells
+ *                   overloaded methods apart
+ */
+public record RepositoryMethod(Class<?> repository, String method, String descriptor) {
+
+    @Override
+    public String toString() {
+        return repository.getSimpleName() + "." + method;
+    }
+}
@@ -0,0 +1,126 @@
+package pl.db.plan.scanner.inspector;
+
+import jakarta.persistence.criteria.CriteriaQuery;
+import pl.db.plan.scanner.analyzer.PlanBudget;
+
+import java.util.List;
+
+/**
+ * Query of a repository method, or of any other source of queries, ready to be translated to sql and explained,
+ * whatever it came from.
+ *
+ * @param repository binary name of repository interface, or of class declaring the query
+ * @param method name of the method, or of the query
+ * @param source where the query comes from
+ * @param entity binary name of the domain type of the repository, or of the queried entity
+ * @param query JPQL, sql when {@code nativeQuery}, or {@code null} for {@code criteria}
+ * @param nativeQuery whether the query is native sql, passed to the database as it is
+ * @param modifying whether the query updates or deletes
+ * @param parameters parameters of the method used by the query
+ * @param maxResults limit the repository applies to the query, e.g. of {@code findFirst3By}, otherwise {@code null}
+ * @param criteria query of {@link Source#SPECIFICATION} and {@link Source#CRITERIA}, values are already bound
+ * @param budget {@code @PlanBudget} of the repository method, {@code null} when it has none or is not a method
+ */
+public record RepositoryQuery(
+        String repository,
+        String method,
+        Source source,
+        String entity,
+        String query,
+        boolean nativeQuery,
+        boolean modifying,
+        List<QueryIndex.Parameter> parameters,
+        Integer maxResults,
+        CriteriaQuery<?> criteria,
+        PlanBudget budget) {
+
+    /**
+     * @param entry method with {@code @Query}
+     */
+    public static RepositoryQuery declared(QueryIndex.Entry entry) {
+        if (entry.query() == null) {
+            throw new IllegalArgumentException("Method " + entry.key() + " has no @Query");
+        }
+        return new RepositoryQuery(entry.repository(), entry.method(), Source.DECLARED, entry.entity(), entry.query(),
+                entry.nativeQuery(), entry.modifying(), entry.parameters(), null, null, entry.budget());
+    }
+
+    /**
+     * Native query as Hibernate sends it to the database: named ({@code :name}) and ordinal ({@code ?1})
+     * parameters are jdbc placeholders, quoted literals, identifiers, comments and casts ({@code ::}) are kept.
+     * Collections are a single placeholder, the plan does not depend on number of their elements much.
+     */
+    public String jdbcSql() {
+        if (!nativeQuery) {
+            throw new IllegalStateException(key() + " is not a native query");
+        }
+        StringBuilder sql = new StringBuilder(query.length());
+        int i = 0;
+        int length = query.length();
+        while (i < length) {
+            char c = query.charAt(i);
+            char next = i + 1 < length ? query.charAt(i + 1) : 0;
+            int end;
+            if (c == '\'' || c == '"') {
+                end = query.indexOf(c, i + 1);
+                end = end < 0 ? length : end + 1;
+            } else if (c == '/' && next == '*') {
+                end = query.indexOf("*/", i + 2);
+                end = end < 0 ? length : end + 2;
+            } else if (c == '-' && next == '-') {
+                end = query.indexOf('\n', i + 2);
+                end = end < 0 ? length : end + 1;
+            } else if (c == ':' && next == ':') {
+                end = i + 2;
+            } else if (c == ':' && Character.isJavaIdentifierStart(next) || c == '?' && Character.isDigit(next)) {
+                end = i + 2;
+                while (end < length && Character.isJavaIdentifierPart(query.charAt(end))) {
+                    end++;
+                }
+                sql.append('?');
+                i = end;
+                continue;
+            } else {
+                end = i + 1;
+            }
+            sql.append(query, i, end);
+            i = end;
+        }
+        return sql.toString();
+    }
+
+    /**
+     * @return the same key as {@link QueryIndex.Entry#key()}, e.g. {@code PersonRepository.findByName}
+     */
+    public String key() {
+        return repository.substring(repository.lastIndexOf('.') + 1) + "." + method;
+    }
+
+    public enum Source {
+        /**
+         * {@code @Query} of the method
+         */
+        DECLARED,
+        /**
+         * derived from the method name, e.g. {@code findByEmailAndName}
+         */
+        DERIVED,
+        /**
+         * finder inherited from {@code JpaRepository}, e.g. {@code findById}
+         */
+        INHERITED,
+        /**
+         * {@code @NamedQuery} or {@code @NamedNativeQuery} of an entity, of a repository method when named
+         * {@code Entity.method}, which Spring Data uses instead of deriving the query
+         */
+        NAMED,
+        /**
+         * Spring Data JPA {@code Specification} for {@code JpaSpecificationExecutor}
+         */
+        SPECIFICATION,
+        /**
+         * hand written query of Criteria API
+         */
+        CRITERIA
+    }
+}
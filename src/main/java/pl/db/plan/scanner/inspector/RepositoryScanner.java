@@ -0,0 +1,614 @@
+package pl.db.plan.scanner.inspector;
+
+import org.springframework.asm.AnnotationVisitor;
+import org.springframework.asm.ClassReader;
+import org.springframework.asm.ClassVisitor;
+import org.springframework.asm.MethodVisitor;
+import org.springframework.asm.Opcodes;
+import org.springframework.asm.Type;
+import pl.db.plan.scanner.analyzer.PlanBudget;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.stream.Stream;
+
+/**
+ * Finds Spring Data repositories and their methods in class files of directories and jars, e.g. of third party
+ * jars which were not compiled with {@code QueryIndexProcessor}. Classes are neither loaded nor initialized and
+ * nothing is started: class files are read with ASM repackaged in spring core, every jar and every package
+ * directory in its own virtual thread.
+ * <p>
+ * Produces the same {@link QueryIndex} as the processor, except that parameters without {@code @Param} are named
+ * {@code arg0, arg1, ...} when classes were compiled without {@code -parameters}. Supertypes of repositories must
+ * be among scanned classes too, only Spring Data repository interfaces themselves do not need to.
+ */
+public class RepositoryScanner {
+
+    private static final String SPRING_DATA = "org/springframework/data/";
+    // the domain type is the first type argument of all of them
+    private static final Set<String> REPOSITORIES = Set.of(
+            "org/springframework/data/repository/Repository",
+            "org/springframework/data/repository/CrudRepository",
+            "org/springframework/data/repository/ListCrudRepository",
+            "org/springframework/data/repository/PagingAndSortingRepository",
+            "org/springframework/data/repository/ListPagingAndSortingRepository",
+            "org/springframework/data/repository/history/RevisionRepository",
+            "org/springframework/data/jpa/repository/JpaRepository");
+    private static final String QUERY = "Lorg/springframework/data/jpa/repository/Query;";
+    private static final String MODIFYING = "Lorg/springframework/data/jpa/repository/Modifying;";
+    private static final String PARAM = "Lorg/springframework/data/repository/query/Param;";
+    private static final String PLAN_BUDGET = Type.getDescriptor(PlanBudget.class);
+    // MethodParameters attribute with parameter names is skipped with debug attributes, so only code is skipped
+    private static final int PARSING = ClassReader.SKIP_CODE | ClassReader.SKIP_FRAMES;
+
+    /**
+     * @return directories and jars of {@code java.class.path}
+     */
+    public static List<Path> classPath() {
+        return Arrays.stream(System.getProperty("java.class.path").split(File.pathSeparator))
+                .filter(entry -> !entry.isEmpty())
+                .map(Path::of)
+                .toList();
+    }
+
+    /**
+     * @param roots directories with class files and jars, entries which do not exist are skipped
+     * @throws UncheckedIOException when a directory or jar cannot be read
+     */
+    public QueryIndex scan(Collection<Path> roots) {
+        Map<String, Interface> interfaces = new ConcurrentHashMap<>();
+        List<Future<?>> tasks = new ArrayList<>();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (Path root : roots) {
+                if (Files.isDirectory(root)) {
+                    for (Path directory : packages(root)) {
+                        tasks.add(executor.submit(() -> {
+                            scanPackage(directory, interfaces);
+                            return null;
+                        }));
+                    }
+                } else if (Files.isRegularFile(root) && root.getFileName().toString().endsWith(".jar")) {
+                    tasks.add(executor.submit(() -> {
+                        scanJar(root, interfaces);
+                        return null;
+                    }));
+                }
+            }
+            for (Future<?> task : tasks) {
+                task.get();
+            }
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException io) {
+                throw new UncheckedIOException("Could not scan " + roots, io);
+            }
+            throw new IllegalStateException("Could not scan " + roots, e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Scan of " + roots + " interrupted", e);
+        }
+        return index(interfaces);
+    }
+
+    private static List<Path> packages(Path root) {
+        try (Stream<Path> directories = Files.walk(root)) {
+            return directories.filter(Files::isDirectory).toList();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not list " + root, e);
+        }
+    }
+
+    private static void scanPackage(Path directory, Map<String, Interface> interfaces) throws IOException {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*.class")) {
+            for (Path file : files) {
+                try (InputStream input = Files.newInputStream(file)) {
+                    read(ClassFileHeader.interfaceBytes(input, -1), interfaces);
+                }
+            }
+        }
+    }
+
+    private static void scanJar(Path jar, Map<String, Interface> interfaces) throws IOException {
+        // signatures of signed jars are not verified, classes are not loaded
+        try (ZipFile file = new ZipFile(jar.toFile())) {
+            Enumeration<? extends ZipEntry> entries = file.entries();
+            while (entries.hasMoreElements()) {
+                ZipEntry entry = entries.nextElement();
+                // versioned classes of multi-release jars have the same methods as the base ones
+                if (entry.getName().endsWith(".class") && !entry.getName().startsWith("META-INF/")) {
+                    try (InputStream input = file.getInputStream(entry)) {
+                        read(ClassFileHeader.interfaceBytes(input, entry.getSize()), interfaces);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * @param bytes whole class file of an interface, {@code null} for other class files
+     */
+    private static void read(byte[] bytes, Map<String, Interface> interfaces) {
+        if (bytes == null) {
+            return;
+        }
+        ClassReader reader;
+        try {
+            reader = new ClassReader(bytes);
+        } catch (IllegalArgumentException e) {
+            // class file version newer than ASM knows, such classes cannot be repositories of this application
+            return;
+        }
+        InterfaceVisitor visitor = new InterfaceVisitor();
+        reader.accept(visitor, PARSING);
+        interfaces.put(visitor.type.name(), visitor.type);
+    }
+
+    static QueryIndex index(Map<String, Interface> interfaces) {
+        List<QueryIndex.Entry> entries = new ArrayList<>();
+        for (Interface type : interfaces.values()) {
+            if (type.name().startsWith(SPRING_DATA)) {
+                continue;
+            }
+            String entity = domainType(type.name(), List.of(), interfaces);
+            if (entity == null) {
+                continue;
+            }
+            for (Method method : type.methods()) {
+                entries.add(new QueryIndex.Entry(type.name().replace('/', '.'), method.name(), entity.replace('/', '.'),
+                        method.query(), method.nativeQuery(), method.modifying(), method.parameters(), method.budget()));
+            }
+        }
+        // the same order as of QueryIndexProcessor
+        entries.sort(Comparator.comparing(entry -> entry.repository() + "#" + entry.method()
+                + entry.parameters().stream().map(QueryIndex.Parameter::type).toList()));
+        return new QueryIndex(List.copyOf(entries));
+    }
+
+    /**
+     * @param arguments type arguments of the interface, resolved as far as known
+     * @return internal name of the domain type, empty when it is not known, or {@code null} when the interface
+     * is not a repository
+     */
+    static String domainType(String name, List<TypeArgument> arguments, Map<String, Interface> interfaces) {
+        if (REPOSITORIES.contains(name)) {
+            if (arguments.isEmpty()) {
+                return "";
+            }
+            TypeArgument domain = arguments.getFirst();
+            return domain.name() == null || domain.variable() ? "java/lang/Object" : domain.name();
+        }
+        Interface type = interfaces.get(name);
+        if (type == null) {
+            return null;
+        }
+        for (Supertype supertype : type.supertypes()) {
+            List<TypeArgument> resolved = supertype.arguments().stream()
+                    .map(argument -> argument.resolve(type.typeParameters(), arguments))
+                    .toList();
+            String domain = domainType(supertype.name(), resolved, interfaces);
+            if (domain != null) {
+                return domain;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @param name internal name, e.g. {@code shop/OrderRepository}
+     * @param typeParameters names of type variables of the interface
+     * @param supertypes extended interfaces
+     * @param methods abstract methods declared by the interface
+     */
+    record Interface(String name, List<String> typeParameters, List<Supertype> supertypes, List<Method> methods) {
+    }
+
+    /**
+     * @param name internal name of the supertype
+     * @param arguments type arguments, empty for raw types
+     */
+    record Supertype(String name, List<TypeArgument> arguments) {
+    }
+
+    /**
+     * @param name internal name of the class, name of the type variable, or {@code null} for wildcard
+     * @param variable whether it is a type variable
+     */
+    record TypeArgument(String name, boolean variable) {
+
+        TypeArgument resolve(List<String> typeParameters, List<TypeArgument> arguments) {
+            int index = variable ? typeParameters.indexOf(name) : -1;
+            return index >= 0 && index < arguments.size() ? arguments.get(index) : this;
+        }
+    }
+
+    record Method(String name, String query, boolean nativeQuery, boolean modifying, List<QueryIndex.Parameter> parameters,
+                  PlanBudget budget) {
+    }
+
+    private static class InterfaceVisitor extends ClassVisitor {
+
+        private final List<Method> methods = new ArrayList<>();
+        private String name;
+        private List<String> typeParameters = List.of();
+        private List<Supertype> supertypes = List.of();
+        private Interface type;
+
+        InterfaceVisitor() {
+            super(Opcodes.ASM9);
+        }
+
+        @Override
+        public void visit(int version, int access, String name, String signature, String superName, String[] interfaces) {
+            this.name = name;
+            if (signature == null) {
+                supertypes = Arrays.stream(interfaces).map(supertype -> new Supertype(supertype, List.of())).toList();
+            } else {
+                ClassSignature parsed = new ClassSignature(signature);
+                typeParameters = parsed.typeParameters;
+                supertypes = parsed.supertypes;
+            }
+        }
+
+        @Override
+        public MethodVisitor visitMethod(int access, String name, String descriptor, String signature, String[] exceptions) {
+            // default and static methods are not abstract, bridges are generated for covariant overrides
+            if ((access & Opcodes.ACC_ABSTRACT) == 0 || (access & (Opcodes.ACC_SYNTHETIC | Opcodes.ACC_BRIDGE)) != 0) {
+                return null;
+            }
+            return new MethodCollector(name, Type.getArgumentTypes(descriptor), methods);
+        }
+
+        @Override
+        public void visitEnd() {
+            type = new Interface(name, typeParameters, supertypes, List.copyOf(methods));
+        }
+    }
+
+    private static class MethodCollector extends MethodVisitor {
+
+        private final String name;
+        private final Type[] types;
+        private final List<Method> methods;
+        private final String[] names;
+        private final String[] params;
+        private int parameter;
+        private boolean query;
+        private String value;
+        private boolean nativeQuery;
+        private boolean modifying;
+        private Map<String, Object> budget;
+
+        MethodCollector(String name, Type[] types, List<Method> methods) {
+            super(Opcodes.ASM9);
+            this.name = name;
+            this.types = types;
+            this.methods = methods;
+            this.names = new String[types.length];
+            this.params = new String[types.length];
+        }
+
+        @Override
+        public void visitParameter(String name, int access) {
+            if (parameter < names.length) {
+                names[parameter++] = name;
+            }
+        }
+
+        @Override
+        public AnnotationVisitor visitAnnotation(String descriptor, boolean visible) {
+            if (MODIFYING.equals(descriptor)) {
+                modifying = true;
+            } else if (QUERY.equals(descriptor)) {
+                query = true;
+                return new AnnotationVisitor(Opcodes.ASM9) {
+                    @Override
+                    public void visit(String attribute, Object attributeValue) {
+                        switch (attribute) {
+                            case "value" -> value = (String) attributeValue;
+                            case "nativeQuery" -> nativeQuery = (Boolean) attributeValue;
+                            default -> {
+                            }
+                        }
+                    }
+                };
+            } else if (PLAN_BUDGET.equals(descriptor)) {
+                budget = new HashMap<>();
+                return new AnnotationVisitor(Opcodes.ASM9) {
+                    @Override
+                    public void visit(String attribute, Object attributeValue) {
+                        budget.put(attribute, attributeValue);
+                    }
+
+                    @Override
+                    public AnnotationVisitor visitArray(String attribute) {
+                        List<String> tables = new ArrayList<>();
+                        return new AnnotationVisitor(Opcodes.ASM9) {
+                            @Override
+                            public void visit(String ignored, Object table) {
+                                tables.add((String) table);
+                            }
+
+                            @Override
+                            public void visitEnd() {
+                                budget.put(attribute, tables.toArray(String[]::new));
+                            }
+                        };
+                    }
+                };
+            }
+            return null;
+        }
+
+        @Override
+        public AnnotationVisitor visitParameterAnnotation(int index, String descriptor, boolean visible) {
+            if (!PARAM.equals(descriptor) || index >= params.length) {
+                return null;
+            }
+            return new AnnotationVisitor(Opcodes.ASM9) {
+                @Override
+                public void visit(String attribute, Object attributeValue) {
+                    if ("value".equals(attribute)) {
+                        params[index] = (String) attributeValue;
+                    }
+                }
+            };
+        }
+
+        @Override
+        public void visitEnd() {
+            List<QueryIndex.Parameter> parameters = new ArrayList<>(types.length);
+            for (int i = 0; i < types.length; i++) {
+                String parameterName = params[i] != null ? params[i] : names[i] != null ? names[i] : "arg" + i;
+                parameters.add(new QueryIndex.Parameter(parameterName, types[i].getClassName()));
+            }
+            // @Query without value has the query in named or properties file, like methods without @Query
+            methods.add(new Method(name, query && value != null && !value.isEmpty() ? value : null,
+                    nativeQuery, modifying, List.copyOf(parameters), budget == null ? null : QueryIndex.budget(budget)));
+        }
+    }
+
+    /**
+     * Reads a class file only as far as its access flags and number of its interfaces, which follow the constant
+     * pool, and the rest only for interfaces which extend other interfaces, as only those can be repositories.
+     * Fields, methods and attributes are the larger part of a class file, so they are never read, from jars
+     * not even inflated, for most of the class path.
+     */
+    static final class ClassFileHeader {
+
+        private static final int MAGIC = 0xCAFEBABE;
+        private static final int CHUNK = 1024;
+        private static final int HEADER = 8192;
+
+        private final InputStream input;
+        private final int size;
+        private byte[] bytes;
+        private int length;
+
+        private ClassFileHeader(InputStream input, long size) {
+            this.input = input;
+            this.size = size > 0 && size < Integer.MAX_VALUE ? (int) size : -1;
+            // most class files are not read whole
+            this.bytes = new byte[this.size > 0 ? Math.min(this.size, HEADER) : HEADER];
+        }
+
+        /**
+         * @param size size of the class file, or -1 when it is not known
+         * @return whole class file of an interface with superinterfaces, {@code null} for other classes,
+         * annotations and invalid class files
+         */
+        static byte[] interfaceBytes(InputStream input, long size) throws IOException {
+            ClassFileHeader header = new ClassFileHeader(input, size);
+            int position = header.accessFlagsPosition();
+            // access flags, this class, super class, number of interfaces
+            if (position < 0 || !header.available(position + 8)) {
+                return null;
+            }
+            int accessFlags = header.u2(position);
+            if ((accessFlags & (Opcodes.ACC_INTERFACE | Opcodes.ACC_ANNOTATION)) != Opcodes.ACC_INTERFACE
+                    || header.u2(position + 6) == 0) {
+                return null;
+            }
+            return header.readAll();
+        }
+
+        /**
+         * @return position of access flags, right after the constant pool, -1 when it is not a class file
+         */
+        private int accessFlagsPosition() throws IOException {
+            if (!available(10) || u4(0) != MAGIC) {
+                return -1;
+            }
+            int count = u2(8);
+            int position = 10;
+            for (int entry = 1; entry < count; entry++) {
+                if (!available(position + 3)) {
+                    return -1;
+                }
+                int tag = bytes[position] & 0xFF;
+                switch (tag) {
+                    // Utf8
+                    case 1 -> position += 3 + u2(position + 1);
+                    // Class, String, MethodType, Module, Package
+                    case 7, 8, 16, 19, 20 -> position += 3;
+                    // MethodHandle
+                    case 15 -> position += 4;
+                    // Integer, Float, references, NameAndType, Dynamic, InvokeDynamic
+                    case 3, 4, 9, 10, 11, 12, 17, 18 -> position += 5;
+                    // Long and Double take two entries
+                    case 5, 6 -> {
+                        position += 9;
+                        entry++;
+                    }
+                    default -> {
+                        return -1;
+                    }
+                }
+            }
+            return position;
+        }
+
+        private byte[] readAll() throws IOException {
+            if (size > bytes.length) {
+                bytes = Arrays.copyOf(bytes, size);
+            }
+            while ((size < 0 || length < size) && available(length + 1)) {
+                // reads until the end of the stream
+            }
+            return length == bytes.length ? bytes : Arrays.copyOf(bytes, length);
+        }
+
+        /**
+         * Reads until bytes up to {@code end} are read, in chunks, as the stream ends only past the last byte.
+         *
+         * @return {@code false} when the stream ended before
+         */
+        private boolean available(int end) throws IOException {
+            while (length < end) {
+                if (length == bytes.length) {
+                    bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, end));
+                }
+                int read = input.read(bytes, length, Math.min(bytes.length - length, Math.max(end - length, CHUNK)));
+                if (read < 0) {
+                    return false;
+                }
+                length += read;
+            }
+            return true;
+        }
+
+        private int u2(int position) {
+            return (bytes[position] & 0xFF) << 8 | bytes[position + 1] & 0xFF;
+        }
+
+        private int u4(int position) {
+            return u2(position) << 16 | u2(position + 2);
+        }
+    }
+
+    /**
+     * Type parameters and supertypes of generic class signature, e.g.
+     * {@code <T:Ljava/lang/Object;>Ljava/lang/Object;Lorg/springframework/data/repository/Repository<TT;Ljava/lang/Long;>;}.
+     * Spring does not repackage signature visitors of ASM.
+     */
+    static class ClassSignature {
+
+        final List<String> typeParameters = new ArrayList<>();
+        final List<Supertype> supertypes = new ArrayList<>();
+        private final String signature;
+        private int position;
+
+        ClassSignature(String signature) {
+            this.signature = signature;
+            if (peek() == '<') {
+                position++;
+                while (peek() != '>') {
+                    int colon = signature.indexOf(':', position);
+                    typeParameters.add(signature.substring(position, colon));
+                    position = colon + 1;
+                    // class bound is empty when there are only interface bounds
+                    if (peek() != ':') {
+                        type();
+                    }
+                    while (peek() == ':') {
+                        position++;
+                        type();
+                    }
+                }
+                position++;
+            }
+            while (position < signature.length()) {
+                supertypes.add(classType());
+            }
+        }
+
+        private char peek() {
+            return signature.charAt(position);
+        }
+
+        private TypeArgument type() {
+            switch (peek()) {
+                case 'L' -> {
+                    return new TypeArgument(classType().name(), false);
+                }
+                case 'T' -> {
+                    int semicolon = signature.indexOf(';', position);
+                    TypeArgument variable = new TypeArgument(signature.substring(position + 1, semicolon), true);
+                    position = semicolon + 1;
+                    return variable;
+                }
+                case '[' -> {
+                    position++;
+                    type();
+                    return new TypeArgument("java/lang/Object", false);
+                }
+                default -> {
+                    // primitive component of an array
+                    position++;
+                    return new TypeArgument("java/lang/Object", false);
+                }
+            }
+        }
+
+        private Supertype classType() {
+            position++;
+            StringBuilder name = new StringBuilder();
+            List<TypeArgument> arguments = List.of();
+            while (true) {
+                int end = position;
+                while (signature.charAt(end) != '<' && signature.charAt(end) != '.' && signature.charAt(end) != ';') {
+                    end++;
+                }
+                name.append(signature, position, end);
+                position = end;
+                if (peek() == '<') {
+                    arguments = typeArguments();
+                }
+                if (peek() == ';') {
+                    position++;
+                    return new Supertype(name.toString(), arguments);
+                }
+                // inner class of generic outer class
+                position++;
+                name.append('$');
+            }
+        }
+
+        private List<TypeArgument> typeArguments() {
+            List<TypeArgument> arguments = new ArrayList<>();
+            position++;
+            while (peek() != '>') {
+                if (peek() == '*') {
+                    position++;
+                    arguments.add(new TypeArgument(null, false));
+                } else {
+                    if (peek() == '+' || peek() == '-') {
+                        position++;
+                    }
+                    arguments.add(type());
+                }
+            }
+            position++;
+            return arguments;
+        }
+    }
+}
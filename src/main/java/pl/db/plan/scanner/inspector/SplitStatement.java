@@ -0,0 +1,81 @@
+package pl.db.plan.scanner.inspector;
+
+/**
+ * Statement prepared by hibernate, split into leading jpql comment and native sql.
+ * <p>
+ * Only offsets into the original string are kept, substrings are created on first access and cached,
+ * so statements which are never read cost no copying at all.
+ */
+public final class SplitStatement {
+
+    private final String source;
+    private final int commentEnd;
+    private final int sqlStart;
+    private final int sqlEnd;
+    private String jpqlComment;
+    private String sql;
+
+    SplitStatement(String source, int commentEnd, int sqlStart, int sqlEnd) {
+        this.source = source;
+        this.commentEnd = commentEnd;
+        this.sqlStart = sqlStart;
+        this.sqlEnd = sqlEnd;
+    }
+
+    /**
+     * @return whole statement, exactly as hibernate passed it to the inspector
+     */
+    public String source() {
+        return source;
+    }
+
+    public boolean hasComment() {
+        return commentEnd > 0;
+    }
+
+    /**
+     * @return leading jpql comment including {@code /*} and {@code *}{@code /}, or {@code null} when there is none
+     */
+    public String jpqlComment() {
+        if (commentEnd == 0) {
+            return null;
+        }
+        String comment = jpqlComment;
+        if (comment == null) {
+            comment = source.substring(0, commentEnd);
+            jpqlComment = comment;
+        }
+        return comment;
+    }
+
+    /**
+     * @return native sql without the comment and surrounding whitespace
+     */
+    public String sql() {
+        String result = sql;
+        if (result == null) {
+            result = source.substring(sqlStart, sqlEnd);
+            sql = result;
+        }
+        return result;
+    }
+
+    /**
+     * @return offset of native sql in {@link #source()}, inclusive
+     */
+    public int sqlStart() {
+        return sqlStart;
+    }
+
+    /**
+     * @return offset of native sql end in {@link #source()}, exclusive
+     */
+    public int sqlEnd() {
+        return sqlEnd;
+    }
+
+    @Override
+    public String toString() {
+        return source;
+    }
+}
@@ -4,36 +4,196 @@ import org.hibernate.resource.jdbc.spi.StatementInspector;
 import org.springframework.stereotype.Component;
 
 import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
 
 @Component
-public class SqlCaptureInspector implements StatementInspector {
+public class SqlCaptureInspector implements StatementInspector, AutoCloseable {
 
-    private final Pattern pattern = Pattern.compile("(/\\*.*?\\*/)(\\s+.*)", Pattern.DOTALL);
+    private final StatementSplitter splitter = new StatementSplitter();
 
     private final List<String> jpqlSql = new ArrayList<>();
     private final List<String> nativeSql = new ArrayList<>();
 
+    private final CaptureMode mode;
+    private final CaptureRingBuffer<CapturedStatement> buffer;
+
+    private final QueryFingerprinter fingerprinter = new QueryFingerprinter();
+    private final Map<Long, QueryFingerprint> fingerprints = new ConcurrentHashMap<>();
+    private final LongAdder untrackedFingerprints = new LongAdder();
+    private final LongAdder fingerprintCollisions = new LongAdder();
+    private final List<FingerprintListener> listeners = new CopyOnWriteArrayList<>();
+    private final boolean fingerprinting;
+    private final int maxFingerprints;
+
+    private final CaptureJournal journal;
+    private final CallerAttributor attributor;
+
+    public SqlCaptureInspector(SqlCaptureProperties properties) {
+        this.mode = properties.mode();
+        this.buffer = mode == CaptureMode.RING_BUFFER
+                ? new CaptureRingBuffer<>(properties.capacity(), properties.overflowPolicy())
+                : null;
+        this.fingerprinting = properties.fingerprinting();
+        this.maxFingerprints = properties.maxFingerprints();
+        SqlCaptureProperties.Journal journalProperties = properties.journal();
+        this.journal = journalProperties.enabled()
+                ? new CaptureJournal(journalProperties.directory(), journalProperties.segmentSize().toBytes())
+                : null;
+        SqlCaptureProperties.Attribution attribution = properties.attribution();
+        this.attributor = attribution.enabled()
+                ? new CallerAttributor(attribution.maxDepth(), attribution.samplesPerShape(),
+                        attribution.resampleInterval(), attribution.overheadBudget())
+                : null;
+    }
+
     @Override
     public String inspect(String sql) {
-        Matcher matcher = pattern.matcher(sql);
-
-        if (matcher.matches()) {
-            // we have jpql comment and sql in one string
-            String jpqlComment = matcher.group(1).trim();
-            String remainingSql = matcher.group(2).trim();
+        // jpql comment and sql are separated by offsets only, strings are created when somebody asks for them
+        SplitStatement statement = splitter.split(sql);
+        long fingerprint = 0;
+        RepositoryMethod caller = null;
+        if (fingerprinting) {
+            fingerprint = fingerprinter.fingerprint(sql, statement.sqlStart(), statement.sqlEnd());
+            QueryFingerprint aggregated = aggregate(fingerprint, statement);
+            if (attributor != null && aggregated != null) {
+                // stack is walked for sampled executions of the shape only
+                caller = attributor.attribute(aggregated.getHits());
+                if (caller != null) {
+                    aggregated.addCaller(caller);
+                }
+            }
+        } else if (attributor != null) {
+            caller = attributor.attribute();
+        }
+        if (journal != null) {
+            long id = fingerprint != 0 ? fingerprint : fingerprinter.fingerprint(sql, statement.sqlStart(), statement.sqlEnd());
+            journal.append(id, statement, System.currentTimeMillis(), Thread.currentThread().getName());
+        }
 
-            jpqlSql.add(jpqlComment);
-            nativeSql.add(remainingSql);
+        if (mode == CaptureMode.RING_BUFFER) {
+            buffer.offer(new CapturedStatement(fingerprint, statement, caller));
         } else {
-            // just pure sql
-            nativeSql.add(sql);
+            if (statement.hasComment()) {
+                jpqlSql.add(statement.jpqlComment());
+            }
+            nativeSql.add(statement.sql());
         }
         return sql;
     }
 
+    /**
+     * @return aggregated statistics or {@code null} when limit of distinct fingerprints was reached, or when
+     * the fingerprint belongs to a statement of another shape
+     */
+    QueryFingerprint aggregate(long id, SplitStatement statement) {
+        long now = System.currentTimeMillis();
+        QueryFingerprint fingerprint = fingerprints.get(id);
+        if (fingerprint == null) {
+            if (fingerprints.size() >= maxFingerprints) {
+                untrackedFingerprints.increment();
+                return null;
+            }
+            QueryFingerprint created = new QueryFingerprint(
+                    id,
+                    fingerprinter.normalize(statement.source(), statement.sqlStart(), statement.sqlEnd()),
+                    statement.sql(),
+                    statement.jpqlComment(),
+                    now
+            );
+            fingerprint = fingerprints.putIfAbsent(id, created);
+            if (fingerprint == null) {
+                fingerprint = created;
+                listeners.forEach(listener -> listener.onNewFingerprint(created));
+            }
+        }
+        if (!sameShape(fingerprint, statement)) {
+            fingerprintCollisions.increment();
+            return null;
+        }
+        fingerprint.hit(now);
+        return fingerprint;
+    }
+
+    /**
+     * The same sql as the sample is compared first, that is what repeated statements with placeholders are.
+     */
+    private boolean sameShape(QueryFingerprint fingerprint, SplitStatement statement) {
+        String sample = fingerprint.getSampleSql();
+        int length = statement.sqlEnd() - statement.sqlStart();
+        if (length == sample.length() && statement.source().regionMatches(statement.sqlStart(), sample, 0, length)) {
+            return true;
+        }
+        return fingerprinter.matches(statement.source(), statement.sqlStart(), statement.sqlEnd(), fingerprint.getNormalizedSql());
+    }
+
+    public void addFingerprintListener(FingerprintListener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeFingerprintListener(FingerprintListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * @return one entry per distinct statement shape, the most frequent first
+     */
+    public List<QueryFingerprint> getFingerprints() {
+        return fingerprints.values().stream()
+                .sorted(Comparator.comparingLong(QueryFingerprint::getHits).reversed())
+                .toList();
+    }
+
+    public QueryFingerprint getFingerprint(long id) {
+        return fingerprints.get(id);
+    }
+
+    /**
+     * @return number of statements not aggregated, because limit of distinct fingerprints was reached
+     */
+    public long getUntrackedFingerprintCount() {
+        return untrackedFingerprints.sum();
+    }
+
+    /**
+     * @return number of statements not aggregated, because their fingerprint belongs to a statement of another
+     * shape, it should be zero
+     */
+    public long getFingerprintCollisionCount() {
+        return fingerprintCollisions.sum();
+    }
+
+    /**
+     * Moves captured statements to the consumer, available in {@link CaptureMode#RING_BUFFER} mode only.
+     *
+     * @return number of drained statements
+     */
+    public int drain(Consumer<? super CapturedStatement> consumer) {
+        requireRingBuffer();
+        return buffer.drain(consumer);
+    }
+
+    public List<CapturedStatement> drain() {
+        requireRingBuffer();
+        return buffer.drain();
+    }
+
+    /**
+     * @return number of statements lost because consumers did not drain the ring buffer on time
+     */
+    public long getLostCount() {
+        return buffer != null ? buffer.lostCount() : 0;
+    }
+
+    public CaptureMode getMode() {
+        return mode;
+    }
+
     public List<String> getJpqlSql() {
         return jpqlSql;
     }
@@ -45,5 +205,38 @@ public class SqlCaptureInspector implements StatementInspector {
     public void clear() {
         nativeSql.clear();
         jpqlSql.clear();
+        if (buffer != null) {
+            buffer.clear();
+        }
+        fingerprints.clear();
+        untrackedFingerprints.reset();
+        fingerprintCollisions.reset();
+    }
+
+    /**
+     * @return journal of captured statements or {@code null} when it is disabled
+     */
+    public CaptureJournal getJournal() {
+        return journal;
+    }
+
+    /**
+     * @return attribution of statements to repository methods or {@code null} when it is disabled
+     */
+    public CallerAttributor getAttributor() {
+        return attributor;
+    }
+
+    @Override
+    public void close() {
+        if (journal != null) {
+            journal.close();
+        }
+    }
+
+    private void requireRingBuffer() {
+        if (mode != CaptureMode.RING_BUFFER) {
+            throw new IllegalStateException("Statements can be drained in " + CaptureMode.RING_BUFFER + " mode only");
+        }
     }
 }
@@ -0,0 +1,88 @@
+package pl.db.plan.scanner.inspector;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+import org.springframework.util.unit.DataSize;
+
+import java.nio.file.Path;
+import java.time.Duration;
+
+/**
+ * Settings of {@link SqlCaptureInspector}, bound from {@code plan.scanner.capture.*} properties.
+ *
+ * @param mode where captured statements are kept
+ * @param capacity ring buffer capacity (rounded up to power of two), at most 2^30, used in {@link CaptureMode#RING_BUFFER} mode
+ * @param overflowPolicy what to do when the ring buffer is full
+ * @param fingerprinting whether statements are aggregated by their {@link QueryFingerprint}
+ * @param maxFingerprints maximum number of distinct fingerprints kept, new shapes above the limit are only counted
+ * @param journal settings of {@link CaptureJournal}
+ * @param attribution settings of {@link CallerAttributor}
+ */
+@ConfigurationProperties(prefix = "plan.scanner.capture")
+public record SqlCaptureProperties(
+        @DefaultValue("LIST") CaptureMode mode,
+        @DefaultValue("4096") int capacity,
+        @DefaultValue("OVERWRITE_OLDEST") OverflowPolicy overflowPolicy,
+        @DefaultValue("true") boolean fingerprinting,
+        @DefaultValue("10000") int maxFingerprints,
+        @DefaultValue Journal journal,
+        @DefaultValue Attribution attribution) {
+
+    public static SqlCaptureProperties defaults() {
+        return new SqlCaptureProperties(CaptureMode.LIST, 4096, OverflowPolicy.OVERWRITE_OLDEST, true, 10_000, Journal.disabled(), Attribution.disabled());
+    }
+
+    public SqlCaptureProperties withRingBuffer(int capacity, OverflowPolicy overflowPolicy) {
+        return new SqlCaptureProperties(CaptureMode.RING_BUFFER, capacity, overflowPolicy, fingerprinting, maxFingerprints, journal, attribution);
+    }
+
+    public SqlCaptureProperties withFingerprinting(boolean fingerprinting, int maxFingerprints) {
+        return new SqlCaptureProperties(mode, capacity, overflowPolicy, fingerprinting, maxFingerprints, journal, attribution);
+    }
+
+    public SqlCaptureProperties withJournal(Path directory, DataSize segmentSize) {
+        return new SqlCaptureProperties(mode, capacity, overflowPolicy, fingerprinting, maxFingerprints, new Journal(true, directory, segmentSize), attribution);
+    }
+
+    public SqlCaptureProperties withAttribution(Attribution attribution) {
+        return new SqlCaptureProperties(mode, capacity, overflowPolicy, fingerprinting, maxFingerprints, journal, attribution);
+    }
+
+    /**
+     * @param enabled whether captured statements are written into {@link CaptureJournal}
+     * @param directory directory of journal segments
+     * @param segmentSize size of single, memory-mapped segment file, at most 1GB
+     */
+    public record Journal(
+            @DefaultValue("false") boolean enabled,
+            @DefaultValue("capture-journal") Path directory,
+            @DefaultValue("64MB") DataSize segmentSize) {
+
+        public static Journal disabled() {
+            return new Journal(false, Path.of("capture-journal"), DataSize.ofMegabytes(64));
+        }
+    }
+
+    /**
+     * @param enabled whether statements are attributed to the repository method which produced them
+     * @param maxDepth how many stack frames are inspected at most
+     * @param samplesPerShape how many first executions of every statement shape are attributed
+     * @param resampleInterval afterwards every n-th execution of the shape is attributed
+     * @param overheadBudget average time per statement attribution may take, it is switched off when exceeded
+     */
+    public record Attribution(
+            @DefaultValue("false") boolean enabled,
+            @DefaultValue("256") int maxDepth,
+            @DefaultValue("8") int samplesPerShape,
+            @DefaultValue("1024") int resampleInterval,
+            @DefaultValue("2us") Duration overheadBudget) {
+
+        public static Attribution enabled(Duration overheadBudget) {
+            return new Attribution(true, 256, 8, 1024, overheadBudget);
+        }
+
+        public static Attribution disabled() {
+            return new Attribution(false, 256, 8, 1024, Duration.ofNanos(2_000));
+        }
+    }
+}
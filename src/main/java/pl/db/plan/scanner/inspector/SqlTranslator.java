@@ -0,0 +1,112 @@
+package pl.db.plan.scanner.inspector;
+
+import jakarta.persistence.EntityManagerFactory;
+
+import java.lang.invoke.MethodType;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Translates queries to the sql Hibernate sends to the database, without executing them: JPQL is parsed to SQM
+ * (through the query interpretation cache), SQM is converted to sql AST and rendered by the dialect. No connection
+ * is used, so translation is a pure CPU step and queries are translated in parallel.
+ * <p>
+ * Parameters are jdbc placeholders. Collection parameters are a single placeholder, like in
+ * {@link RepositoryQuery#jdbcSql()}, {@code maxResults} is a placeholder of the limit clause of the dialect.
+ * Types of method parameters are bound, so parameters whose type is not inferred from the query are cast like
+ * at runtime. Native queries are not translated, they are {@link RepositoryQuery#jdbcSql()}.
+ * <p>
+ * Hibernate internals are used by {@link HibernateSqlRenderer} only.
+ */
+public class SqlTranslator {
+
+    private static final Map<String, Class<?>> PRIMITIVES = Stream.of(boolean.class, byte.class, short.class, char.class,
+                    int.class, long.class, float.class, double.class)
+            .collect(Collectors.toMap(Class::getName, type -> MethodType.methodType(type).wrap().returnType()));
+
+    private final HibernateSqlRenderer renderer;
+
+    /**
+     * @throws UnsupportedOperationException when the factory is not a Hibernate session factory
+     */
+    public SqlTranslator(EntityManagerFactory entityManagerFactory) {
+        this.renderer = new HibernateSqlRenderer(entityManagerFactory);
+    }
+
+    /**
+     * @return sql of the query with jdbc placeholders
+     * @throws IllegalArgumentException when JPQL is invalid or the statement is executed as several statements,
+     *                                  e.g. update of an entity of joined inheritance
+     * @throws UnsupportedOperationException when the running Hibernate version translates queries differently
+     *                                       than the tested one
+     */
+    public String translate(RepositoryQuery query) {
+        if (query.nativeQuery()) {
+            return query.jdbcSql();
+        }
+        return renderer.render(query, query.parameters().stream().<Class<?>>map(parameter -> type(parameter.type())).toList());
+    }
+
+    /**
+     * Translates all queries, every query on its own virtual thread, failure of a single query is reported
+     * in its translation.
+     *
+     * @return translations in order of queries
+     */
+    public List<Translation> translateAll(List<RepositoryQuery> queries) throws InterruptedException {
+        Translation[] translations = new Translation[queries.size()];
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < queries.size(); i++) {
+                int index = i;
+                executor.execute(() -> translations[index] = translateOne(queries.get(index)));
+            }
+        }
+        if (Thread.interrupted()) {
+            throw new InterruptedException("Translation of " + queries.size() + " queries was interrupted");
+        }
+        return Arrays.asList(translations);
+    }
+
+    private Translation translateOne(RepositoryQuery query) {
+        long start = System.nanoTime();
+        try {
+            String sql = translate(query);
+            return new Translation(query, sql, Duration.ofNanos(System.nanoTime() - start), null);
+        } catch (RuntimeException e) {
+            return new Translation(query, null, Duration.ofNanos(System.nanoTime() - start), e.getMessage());
+        }
+    }
+
+    /**
+     * @return class of the binary name, {@code null} when it is not known, e.g. of a type variable
+     */
+    private static Class<?> type(String name) {
+        if (PRIMITIVES.containsKey(name)) {
+            return PRIMITIVES.get(name);
+        }
+        try {
+            return Class.forName(name, false, SqlTranslator.class.getClassLoader());
+        } catch (ClassNotFoundException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @param query translated query
+     * @param sql sql with jdbc placeholders or {@code null} when translation failed
+     * @param duration how long translation took
+     * @param error error message when translation failed, otherwise {@code null}
+     */
+    public record Translation(RepositoryQuery query, String sql, Duration duration, String error) {
+
+        public boolean failed() {
+            return error != null;
+        }
+    }
+}
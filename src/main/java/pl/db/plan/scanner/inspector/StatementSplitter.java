@@ -0,0 +1,50 @@
+package pl.db.plan.scanner.inspector;
+
+/**
+ * Finds leading jpql comment, which hibernate adds to sql when {@code hibernate.use_sql_comments} is enabled.
+ * <p>
+ * Single pass over the statement, equivalent to matching {@code (/\*.*?\*\/)(\s+.*)} and trimming both groups,
+ * but without regex engine, matcher and intermediate strings.
+ */
+public class StatementSplitter {
+
+    public SplitStatement split(String statement) {
+        int length = statement.length();
+        if (length >= 4 && statement.charAt(0) == '/' && statement.charAt(1) == '*') {
+            int end = statement.indexOf("*/", 2);
+            while (end >= 0) {
+                int commentEnd = end + 2;
+                if (commentEnd < length && isWhitespace(statement.charAt(commentEnd))) {
+                    int sqlStart = trimStart(statement, commentEnd);
+                    return new SplitStatement(statement, commentEnd, sqlStart, trimEnd(statement, sqlStart, length));
+                }
+                // comment must be followed by whitespace, otherwise it continues to the next terminator
+                end = statement.indexOf("*/", end + 1);
+            }
+        }
+        // just pure sql
+        return new SplitStatement(statement, 0, 0, length);
+    }
+
+    private static int trimStart(String statement, int from) {
+        int i = from;
+        int length = statement.length();
+        while (i < length && statement.charAt(i) <= ' ') {
+            i++;
+        }
+        return i;
+    }
+
+    private static int trimEnd(String statement, int from, int to) {
+        int i = to;
+        while (i > from && statement.charAt(i - 1) <= ' ') {
+            i--;
+        }
+        return i;
+    }
+
+    private static boolean isWhitespace(char c) {
+        // same characters as \s in java.util.regex
+        return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+    }
+}
@@ -0,0 +1,37 @@
+package pl.db.plan.scanner.instrumentation;
+
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import javax.sql.DataSource;
+
+/**
+ * Wraps every data source with {@link InstrumentedDataSource}, next to
+ * {@link pl.db.plan.scanner.inspector.SqlCaptureInspector} which knows what hibernate prepares, we know
+ * how long it runs and how many rows it returns.
+ */
+@Configuration
+@ConditionalOnProperty(prefix = "plan.scanner.instrumentation", name = "enabled", havingValue = "true")
+public class InstrumentationConfiguration {
+
+    @Bean
+    public StatementMetricsRegistry statementMetricsRegistry(InstrumentationProperties properties) {
+        return new StatementMetricsRegistry(properties.maxFingerprints());
+    }
+
+    @Bean
+    public static BeanPostProcessor instrumentedDataSourcePostProcessor(ObjectProvider<StatementMetricsRegistry> registry) {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+                if (bean instanceof DataSource dataSource && !(bean instanceof InstrumentedDataSource)) {
+                    return new InstrumentedDataSource(dataSource, registry.getObject());
+                }
+                return bean;
+            }
+        };
+    }
+}
@@ -0,0 +1,16 @@
+package pl.db.plan.scanner.instrumentation;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+/**
+ * Settings of jdbc instrumentation, bound from {@code plan.scanner.instrumentation.*} properties.
+ *
+ * @param enabled whether data sources are wrapped with {@link InstrumentedDataSource}
+ * @param maxFingerprints maximum number of distinct statements with collected metrics
+ */
+@ConfigurationProperties(prefix = "plan.scanner.instrumentation")
+public record InstrumentationProperties(
+        @DefaultValue("false") boolean enabled,
+        @DefaultValue("10000") int maxFingerprints) {
+}
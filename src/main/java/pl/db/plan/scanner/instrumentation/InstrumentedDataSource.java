@@ -0,0 +1,40 @@
+package pl.db.plan.scanner.instrumentation;
+
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+
+/**
+ * Data source measuring every executed statement: execution time, rows returned or updated and number
+ * of fetch round trips, recorded per query fingerprint in {@link StatementMetricsRegistry}.
+ * <p>
+ * Connections, statements and result sets are wrapped by plain delegating classes, {@link InstrumentedConnection},
+ * {@link InstrumentedStatement} and {@link InstrumentedResultSet}, which measure only executions, rows and closing
+ * and pass every other call straight to the driver, without reflection. Statements and result sets return
+ * the wrappers from {@code getConnection()} and {@code getStatement()}.
+ */
+public class InstrumentedDataSource extends DelegatingDataSource {
+
+    private final StatementMetricsRegistry registry;
+
+    public InstrumentedDataSource(DataSource dataSource, StatementMetricsRegistry registry) {
+        super(dataSource);
+        this.registry = registry;
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        return new InstrumentedConnection(obtainTargetDataSource().getConnection(), registry);
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        return new InstrumentedConnection(obtainTargetDataSource().getConnection(username, password), registry);
+    }
+
+    public StatementMetricsRegistry getRegistry() {
+        return registry;
+    }
+}
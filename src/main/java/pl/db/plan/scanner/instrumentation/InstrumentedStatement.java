@@ -0,0 +1,381 @@
+package pl.db.plan.scanner.instrumentation;
+
+import java.sql.*;
+
+/**
+ * Statement measuring every execution: time, errors and rows updated, recorded in {@link StatementMetrics}
+ * of its sql. Result sets are measured by {@link InstrumentedResultSet}, every other call goes straight
+ * to the target statement.
+ *
+ * @param <S> type of the target statement
+ */
+class InstrumentedStatement<S extends Statement> implements Statement {
+
+    protected final S target;
+    private final Connection connection;
+    private final StatementMetricsRegistry registry;
+    // null for plain statements, where sql is known only when executed
+    private final StatementMetrics prepared;
+    protected StatementMetrics current;
+
+    InstrumentedStatement(S target, Connection connection, StatementMetricsRegistry registry, StatementMetrics prepared) {
+        this.target = target;
+        this.connection = connection;
+        this.registry = registry;
+        this.prepared = prepared;
+        this.current = prepared;
+    }
+
+    @Override
+    public ResultSet executeQuery(String sql) throws SQLException {
+        return query(metricsFor(sql), () -> target.executeQuery(sql));
+    }
+
+    @Override
+    public int executeUpdate(String sql) throws SQLException {
+        return (int) update(metricsFor(sql), () -> target.executeUpdate(sql));
+    }
+
+    @Override
+    public int executeUpdate(String sql, int autoGeneratedKeys) throws SQLException {
+        return (int) update(metricsFor(sql), () -> target.executeUpdate(sql, autoGeneratedKeys));
+    }
+
+    @Override
+    public int executeUpdate(String sql, int[] columnIndexes) throws SQLException {
+        return (int) update(metricsFor(sql), () -> target.executeUpdate(sql, columnIndexes));
+    }
+
+    @Override
+    public int executeUpdate(String sql, String[] columnNames) throws SQLException {
+        return (int) update(metricsFor(sql), () -> target.executeUpdate(sql, columnNames));
+    }
+
+    @Override
+    public long executeLargeUpdate(String sql) throws SQLException {
+        return update(metricsFor(sql), () -> target.executeLargeUpdate(sql));
+    }
+
+    @Override
+    public long executeLargeUpdate(String sql, int autoGeneratedKeys) throws SQLException {
+        return update(metricsFor(sql), () -> target.executeLargeUpdate(sql, autoGeneratedKeys));
+    }
+
+    @Override
+    public long executeLargeUpdate(String sql, int[] columnIndexes) throws SQLException {
+        return update(metricsFor(sql), () -> target.executeLargeUpdate(sql, columnIndexes));
+    }
+
+    @Override
+    public long executeLargeUpdate(String sql, String[] columnNames) throws SQLException {
+        return update(metricsFor(sql), () -> target.executeLargeUpdate(sql, columnNames));
+    }
+
+    @Override
+    public boolean execute(String sql) throws SQLException {
+        return execute(metricsFor(sql), () -> target.execute(sql));
+    }
+
+    @Override
+    public boolean execute(String sql, int autoGeneratedKeys) throws SQLException {
+        return execute(metricsFor(sql), () -> target.execute(sql, autoGeneratedKeys));
+    }
+
+    @Override
+    public boolean execute(String sql, int[] columnIndexes) throws SQLException {
+        return execute(metricsFor(sql), () -> target.execute(sql, columnIndexes));
+    }
+
+    @Override
+    public boolean execute(String sql, String[] columnNames) throws SQLException {
+        return execute(metricsFor(sql), () -> target.execute(sql, columnNames));
+    }
+
+    @Override
+    public int[] executeBatch() throws SQLException {
+        StatementMetrics metrics = current;
+        int[] batch = measure(metrics, target::executeBatch);
+        if (metrics != null) {
+            long updated = 0;
+            for (int rows : batch) {
+                updated += Math.max(0, rows);
+            }
+            metrics.recordRowsUpdated(updated);
+        }
+        return batch;
+    }
+
+    @Override
+    public long[] executeLargeBatch() throws SQLException {
+        StatementMetrics metrics = current;
+        long[] batch = measure(metrics, target::executeLargeBatch);
+        if (metrics != null) {
+            long updated = 0;
+            for (long rows : batch) {
+                updated += Math.max(0, rows);
+            }
+            metrics.recordRowsUpdated(updated);
+        }
+        return batch;
+    }
+
+    @Override
+    public ResultSet getResultSet() throws SQLException {
+        return wrap(target.getResultSet(), current);
+    }
+
+    @Override
+    public ResultSet getGeneratedKeys() throws SQLException {
+        return wrap(target.getGeneratedKeys(), current);
+    }
+
+    @Override
+    public Connection getConnection() {
+        return connection;
+    }
+
+    private StatementMetrics metricsFor(String sql) {
+        if (prepared == null) {
+            current = registry.metricsFor(sql);
+        }
+        return current;
+    }
+
+    /**
+     * Records time of the execution, or its error, in metrics of the statement, which are {@code null} when unknown.
+     */
+    protected final <T> T measure(StatementMetrics metrics, SqlCall<T> call) throws SQLException {
+        if (metrics == null) {
+            return call.call();
+        }
+        long start = System.nanoTime();
+        T result;
+        try {
+            result = call.call();
+        } catch (SQLException | RuntimeException e) {
+            metrics.recordError();
+            throw e;
+        }
+        metrics.recordExecution(System.nanoTime() - start);
+        return result;
+    }
+
+    protected final ResultSet query(StatementMetrics metrics, SqlCall<ResultSet> call) throws SQLException {
+        return wrap(measure(metrics, call), metrics);
+    }
+
+    protected final long update(StatementMetrics metrics, SqlCall<? extends Number> call) throws SQLException {
+        long updated = measure(metrics, call).longValue();
+        if (metrics != null) {
+            metrics.recordRowsUpdated(updated);
+        }
+        return updated;
+    }
+
+    protected final boolean execute(StatementMetrics metrics, SqlCall<Boolean> call) throws SQLException {
+        boolean hasResultSet = measure(metrics, call);
+        if (!hasResultSet && metrics != null) {
+            metrics.recordRowsUpdated(Math.max(0, target.getUpdateCount()));
+        }
+        return hasResultSet;
+    }
+
+    private ResultSet wrap(ResultSet resultSet, StatementMetrics metrics) {
+        return resultSet == null ? null : new InstrumentedResultSet(resultSet, this, metrics);
+    }
+
+    @FunctionalInterface
+    protected interface SqlCall<T> {
+        T call() throws SQLException;
+    }
+
+    @Override
+    public void close() throws SQLException {
+        target.close();
+    }
+
+    @Override
+    public int getMaxFieldSize() throws SQLException {
+        return target.getMaxFieldSize();
+    }
+
+    @Override
+    public void setMaxFieldSize(int max) throws SQLException {
+        target.setMaxFieldSize(max);
+    }
+
+    @Override
+    public int getMaxRows() throws SQLException {
+        return target.getMaxRows();
+    }
+
+    @Override
+    public void setMaxRows(int max) throws SQLException {
+        target.setMaxRows(max);
+    }
+
+    @Override
+    public void setEscapeProcessing(boolean enable) throws SQLException {
+        target.setEscapeProcessing(enable);
+    }
+
+    @Override
+    public int getQueryTimeout() throws SQLException {
+        return target.getQueryTimeout();
+    }
+
+    @Override
+    public void setQueryTimeout(int seconds) throws SQLException {
+        target.setQueryTimeout(seconds);
+    }
+
+    @Override
+    public void cancel() throws SQLException {
+        target.cancel();
+    }
+
+    @Override
+    public SQLWarning getWarnings() throws SQLException {
+        return target.getWarnings();
+    }
+
+    @Override
+    public void clearWarnings() throws SQLException {
+        target.clearWarnings();
+    }
+
+    @Override
+    public void setCursorName(String name) throws SQLException {
+        target.setCursorName(name);
+    }
+
+    @Override
+    public int getUpdateCount() throws SQLException {
+        return target.getUpdateCount();
+    }
+
+    @Override
+    public boolean getMoreResults() throws SQLException {
+        return target.getMoreResults();
+    }
+
+    @Override
+    public void setFetchDirection(int direction) throws SQLException {
+        target.setFetchDirection(direction);
+    }
+
+    @Override
+    public int getFetchDirection() throws SQLException {
+        return target.getFetchDirection();
+    }
+
+    @Override
+    public void setFetchSize(int rows) throws SQLException {
+        target.setFetchSize(rows);
+    }
+
+    @Override
+    public int getFetchSize() throws SQLException {
+        return target.getFetchSize();
+    }
+
+    @Override
+    public int getResultSetConcurrency() throws SQLException {
+        return target.getResultSetConcurrency();
+    }
+
+    @Override
+    public int getResultSetType() throws SQLException {
+        return target.getResultSetType();
+    }
+
+    @Override
+    public void addBatch(String sql) throws SQLException {
+        target.addBatch(sql);
+    }
+
+    @Override
+    public void clearBatch() throws SQLException {
+        target.clearBatch();
+    }
+
+    @Override
+    public boolean getMoreResults(int current) throws SQLException {
+        return target.getMoreResults(current);
+    }
+
+    @Override
+    public int getResultSetHoldability() throws SQLException {
+        return target.getResultSetHoldability();
+    }
+
+    @Override
+    public boolean isClosed() throws SQLException {
+        return target.isClosed();
+    }
+
+    @Override
+    public void setPoolable(boolean poolable) throws SQLException {
+        target.setPoolable(poolable);
+    }
+
+    @Override
+    public boolean isPoolable() throws SQLException {
+        return target.isPoolable();
+    }
+
+    @Override
+    public void closeOnCompletion() throws SQLException {
+        target.closeOnCompletion();
+    }
+
+    @Override
+    public boolean isCloseOnCompletion() throws SQLException {
+        return target.isCloseOnCompletion();
+    }
+
+    @Override
+    public long getLargeUpdateCount() throws SQLException {
+        return target.getLargeUpdateCount();
+    }
+
+    @Override
+    public void setLargeMaxRows(long max) throws SQLException {
+        target.setLargeMaxRows(max);
+    }
+
+    @Override
+    public long getLargeMaxRows() throws SQLException {
+        return target.getLargeMaxRows();
+    }
+
+    @Override
+    public String enquoteLiteral(String val) throws SQLException {
+        return target.enquoteLiteral(val);
+    }
+
+    @Override
+    public String enquoteIdentifier(String identifier, boolean alwaysQuote) throws SQLException {
+        return target.enquoteIdentifier(identifier, alwaysQuote);
+    }
+
+    @Override
+    public boolean isSimpleIdentifier(String identifier) throws SQLException {
+        return target.isSimpleIdentifier(identifier);
+    }
+
+    @Override
+    public String enquoteNCharLiteral(String val) throws SQLException {
+        return target.enquoteNCharLiteral(val);
+    }
+
+    @Override
+    public <T> T unwrap(Class<T> iface) throws SQLException {
+        return target.unwrap(iface);
+    }
+
+    @Override
+    public boolean isWrapperFor(Class<?> iface) throws SQLException {
+        return target.isWrapperFor(iface);
+    }
+}
@@ -0,0 +1,99 @@
+package pl.db.plan.scanner.instrumentation;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Runtime statistics of all statements sharing the same query fingerprint.
+ */
+public class StatementMetrics {
+
+    private final long fingerprint;
+    private final String normalizedSql;
+    private final Histogram executionNanos = new Histogram();
+    private final Histogram rowsReturned = new Histogram();
+    private final Histogram rowsUpdated = new Histogram();
+    private final Histogram fetches = new Histogram();
+    private final LongAdder errors = new LongAdder();
+
+    public StatementMetrics(long fingerprint, String normalizedSql) {
+        this.fingerprint = fingerprint;
+        this.normalizedSql = normalizedSql;
+    }
+
+    void recordExecution(long nanos) {
+        executionNanos.record(nanos);
+    }
+
+    void recordError() {
+        errors.increment();
+    }
+
+    void recordRowsUpdated(long rows) {
+        rowsUpdated.record(rows);
+    }
+
+    void recordResultSet(long rows, long roundTrips) {
+        rowsReturned.record(rows);
+        fetches.record(roundTrips);
+    }
+
+    /**
+     * Adds statistics of {@code other}, e.g. collected on another node, to this one.
+     */
+    public void merge(StatementMetrics other) {
+        executionNanos.merge(other.executionNanos);
+        rowsReturned.merge(other.rowsReturned);
+        rowsUpdated.merge(other.rowsUpdated);
+        fetches.merge(other.fetches);
+        errors.add(other.errors.sum());
+    }
+
+    public long getFingerprint() {
+        return fingerprint;
+    }
+
+    public String getNormalizedSql() {
+        return normalizedSql;
+    }
+
+    public Histogram getExecutionNanos() {
+        return executionNanos;
+    }
+
+    public Histogram getRowsReturned() {
+        return rowsReturned;
+    }
+
+    public Histogram getRowsUpdated() {
+        return rowsUpdated;
+    }
+
+    /**
+     * @return estimated number of fetch round trips per result set, based on fetch size
+     */
+    public Histogram getFetches() {
+        return fetches;
+    }
+
+    public long getErrors() {
+        return errors.sum();
+    }
+
+    /**
+     * @return total execution time of all statements, used to rank statements by real cost
+     */
+    public long getTotalNanos() {
+        return executionNanos.sum();
+    }
+
+    @Override
+    public String toString() {
+        return "StatementMetrics{fingerprint=" + Long.toHexString(fingerprint)
+                + ", executions=" + executionNanos.count()
+                + ", totalMs=" + getTotalNanos() / 1_000_000
+                + ", p99Ms=" + executionNanos.percentile(99) / 1_000_000.0
+                + ", rows=" + rowsReturned.sum()
+                + ", updated=" + rowsUpdated.sum()
+                + ", sql=" + normalizedSql + "}";
+    }
+}
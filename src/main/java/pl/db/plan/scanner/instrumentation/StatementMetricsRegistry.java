@@ -0,0 +1,86 @@
+package pl.db.plan.scanner.instrumentation;
+
+import pl.db.plan.scanner.inspector.QueryFingerprinter;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Keeps {@link StatementMetrics} per query fingerprint. Fingerprints are the same as the ones computed by
+ * {@link pl.db.plan.scanner.inspector.SqlCaptureInspector}, so runtime statistics can be joined with captured
+ * statements.
+ * <p>
+ * Statements are prepared again and again with the same sql, so metrics are also kept by sql and it is
+ * fingerprinted once. At most {@code maxFingerprints} sql strings are kept, others are fingerprinted every time.
+ */
+public class StatementMetricsRegistry {
+
+    private final QueryFingerprinter fingerprinter = new QueryFingerprinter();
+    private final Map<Long, StatementMetrics> metrics = new ConcurrentHashMap<>();
+    private final Map<String, StatementMetrics> metricsBySql = new ConcurrentHashMap<>();
+    private final AtomicInteger fingerprints = new AtomicInteger();
+    private final AtomicInteger statements = new AtomicInteger();
+    private final int maxFingerprints;
+
+    public StatementMetricsRegistry(int maxFingerprints) {
+        this.maxFingerprints = maxFingerprints;
+    }
+
+    /**
+     * @return metrics for given statement, or {@code null} when limit of distinct fingerprints was reached
+     */
+    public StatementMetrics metricsFor(String sql) {
+        StatementMetrics statementMetrics = metricsBySql.get(sql);
+        if (statementMetrics != null) {
+            return statementMetrics;
+        }
+        long fingerprint = fingerprinter.fingerprint(sql);
+        statementMetrics = metrics.get(fingerprint);
+        if (statementMetrics == null) {
+            // the limit is checked by the mapping function, which runs once per new fingerprint
+            statementMetrics = metrics.computeIfAbsent(fingerprint, key -> reserve(fingerprints)
+                    ? new StatementMetrics(key, fingerprinter.normalize(sql)) : null);
+        }
+        if (statementMetrics != null) {
+            StatementMetrics found = statementMetrics;
+            metricsBySql.computeIfAbsent(sql, key -> reserve(statements) ? found : null);
+        }
+        return statementMetrics;
+    }
+
+    public StatementMetrics get(long fingerprint) {
+        return metrics.get(fingerprint);
+    }
+
+    /**
+     * @return all statements, the most expensive (by total execution time) first
+     */
+    public List<StatementMetrics> ranking() {
+        return metrics.values().stream()
+                .sorted(Comparator.comparingLong(StatementMetrics::getTotalNanos).reversed())
+                .toList();
+    }
+
+    public void clear() {
+        // entries are counted one by one, so the limits stay right when statements are added meanwhile
+        metricsBySql.keySet().forEach(sql -> release(metricsBySql.remove(sql), statements));
+        metrics.keySet().forEach(fingerprint -> release(metrics.remove(fingerprint), fingerprints));
+    }
+
+    private boolean reserve(AtomicInteger count) {
+        if (count.incrementAndGet() > maxFingerprints) {
+            count.decrementAndGet();
+            return false;
+        }
+        return true;
+    }
+
+    private static void release(StatementMetrics removed, AtomicInteger count) {
+        if (removed != null) {
+            count.decrementAndGet();
+        }
+    }
+}
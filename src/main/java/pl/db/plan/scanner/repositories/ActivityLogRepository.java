@@ -5,6 +5,7 @@ import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import pl.db.plan.scanner.analyzer.PlanBudget;
 import pl.db.plan.scanner.entities.ActivityLog;
 
 import java.time.LocalDateTime;
@@ -15,6 +16,7 @@ public interface ActivityLogRepository extends JpaRepository<ActivityLog, Long>
     @Query("SELECT a FROM ActivityLog a WHERE a.person.id = :personId AND a.action = :action")
     List<ActivityLog> findByPersonIdAndAction(@Param("personId") Long personId, @Param("action") String action);
 
+    @PlanBudget(maxCost = 50_000, allowedSeqScans = "activity_log")
     @Query("SELECT a FROM ActivityLog a WHERE a.timestamp >= :timestamp")
     List<ActivityLog> findRecentLogs(@Param("timestamp") LocalDateTime timestamp);
 
@@ -26,4 +28,14 @@ public interface ActivityLogRepository extends JpaRepository<ActivityLog, Long>
     @Query("UPDATE ActivityLog a SET a.action = :action WHERE a.person.id = :personId")
     int updateActionForPerson(@Param("personId") Long personId, @Param("action") String action);
 
+    long countByPersonIdAndTimestampAfter(Long personId, LocalDateTime timestamp);
+
+    @Query(value = """
+            SELECT a.action, count(*) AS actions, count(DISTINCT a.person_id) AS persons
+            FROM activity_log a
+            WHERE a.timestamp >= :since
+            GROUP BY a.action
+            ORDER BY actions DESC""", nativeQuery = true)
+    List<Object[]> countActionsSince(@Param("since") LocalDateTime since);
+
 }
@@ -0,0 +1,30 @@
+package pl.db.plan.scanner.repositories;
+
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.CriteriaQuery;
+import jakarta.persistence.criteria.Root;
+import pl.db.plan.scanner.entities.ActivityLog;
+
+import java.time.LocalDateTime;
+
+/**
+ * Reports of activity built with Criteria API.
+ */
+public final class ActivityReports {
+
+    private ActivityReports() {
+    }
+
+    /**
+     * @return person id and number of actions of the person since given time, the most active persons first
+     */
+    public static CriteriaQuery<Object[]> actionsPerPerson(CriteriaBuilder builder, LocalDateTime since) {
+        CriteriaQuery<Object[]> query = builder.createQuery(Object[].class);
+        Root<ActivityLog> log = query.from(ActivityLog.class);
+        query.multiselect(log.get("person").get("id"), builder.count(log))
+                .where(builder.greaterThanOrEqualTo(log.get("timestamp"), since))
+                .groupBy(log.get("person").get("id"))
+                .orderBy(builder.desc(builder.count(log)));
+        return query;
+    }
+}
@@ -4,6 +4,7 @@ import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import pl.db.plan.scanner.analyzer.PlanBudget;
 import pl.db.plan.scanner.entities.Address;
 
 import java.util.List;
@@ -11,10 +12,14 @@ import java.util.List;
 @Repository
 public interface AddressRepository extends JpaRepository<Address, Long> {
 
+    @PlanBudget(maxCost = 100, maxRows = 10)
     @Query("SELECT a FROM Address a WHERE a.person.id = :personId")
     List<Address> findByPersonId(@Param("personId") Long personId);
 
     @Query("SELECT a FROM Address a WHERE LOWER(a.city) = LOWER(:city)")
     List<Address> findByCityIgnoreCase(@Param("city") String city);
 
+    // named query Address.findByPostalCodePrefix
+    List<Address> findByPostalCodePrefix(@Param("prefix") String prefix);
+
 }
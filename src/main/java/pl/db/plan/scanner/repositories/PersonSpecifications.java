@@ -0,0 +1,24 @@
+package pl.db.plan.scanner.repositories;
+
+import org.springframework.data.jpa.domain.Specification;
+import pl.db.plan.scanner.entities.Person;
+
+/**
+ * Specifications for {@link PersonRepository#findAll(Specification)}.
+ */
+public final class PersonSpecifications {
+
+    private PersonSpecifications() {
+    }
+
+    public static Specification<Person> hasEmailDomain(String domain) {
+        return (root, query, builder) -> builder.like(builder.lower(root.get("email")), "%@" + domain.toLowerCase());
+    }
+
+    public static Specification<Person> livesIn(String city) {
+        return (root, query, builder) -> {
+            query.distinct(true);
+            return builder.equal(root.join("addresses").get("city"), city);
+        };
+    }
+}
@@ -0,0 +1,223 @@
+package pl.db.plan.scanner.processor;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.ArrayType;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeMirror;
+import javax.tools.Diagnostic;
+import javax.tools.FileObject;
+import javax.tools.StandardLocation;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Writes index of all Spring Data repository methods at compile time, so queries can be listed without starting
+ * Spring or scanning the classpath. Annotations are matched by name, the processor has no dependencies.
+ * <p>
+ * The index is {@value #INDEX}, a tab separated file with one method per line:
+ * {@code repository, method, entity, query, nativeQuery, modifying, parameters, maxCost, allowedSeqScans, maxRows},
+ * where query is empty for methods without {@code @Query} and parameters are {@code name:type} separated by commas,
+ * named by {@code @Param} or by the parameter itself. Types are erased binary names, as of {@link Class#getName()}.
+ * The last three columns are attributes of {@code @PlanBudget}, tables separated by commas, all of them are empty
+ * for methods without it. Tabs, line breaks and backslashes in values are escaped with backslash.
+ */
+@SupportedAnnotationTypes("*")
+public class QueryIndexProcessor extends AbstractProcessor {
+
+    static final String INDEX = "META-INF/plan-scanner/query-index.tsv";
+
+    private static final String REPOSITORY = "org.springframework.data.repository.Repository";
+    private static final String QUERY = "org.springframework.data.jpa.repository.Query";
+    private static final String MODIFYING = "org.springframework.data.jpa.repository.Modifying";
+    private static final String PARAM = "org.springframework.data.repository.query.Param";
+    private static final String PLAN_BUDGET = "pl.db.plan.scanner.analyzer.PlanBudget";
+
+    // sorted by repository and method, so the index does not change when sources do not
+    private final Map<String, String> lines = new TreeMap<>();
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment round) {
+        TypeElement repository = processingEnv.getElementUtils().getTypeElement(REPOSITORY);
+        if (repository == null) {
+            // spring data is not on the classpath, nothing to index
+            return false;
+        }
+        for (Element element : round.getRootElements()) {
+            if (element instanceof TypeElement type) {
+                indexTypes(type, repository);
+            }
+        }
+        if (round.processingOver() && !lines.isEmpty()) {
+            write();
+        }
+        return false;
+    }
+
+    /**
+     * Indexes the type and its member types, repositories are often nested in a class or interface of their module.
+     */
+    private void indexTypes(TypeElement type, TypeElement repository) {
+        if (type.getKind() == ElementKind.INTERFACE) {
+            index(type, repository);
+        }
+        for (Element member : type.getEnclosedElements()) {
+            if (member instanceof TypeElement memberType) {
+                indexTypes(memberType, repository);
+            }
+        }
+    }
+
+    private void index(TypeElement type, TypeElement repository) {
+        DeclaredType repositoryType = find((DeclaredType) type.asType(), repository);
+        if (repositoryType == null || type.equals(repository)) {
+            return;
+        }
+        String entity = repositoryType.getTypeArguments().isEmpty() ? "" : name(repositoryType.getTypeArguments().getFirst());
+        String repositoryName = processingEnv.getElementUtils().getBinaryName(type).toString();
+        for (Element member : type.getEnclosedElements()) {
+            if (member.getKind() != ElementKind.METHOD || member.getModifiers().contains(Modifier.DEFAULT)
+                    || member.getModifiers().contains(Modifier.STATIC)) {
+                continue;
+            }
+            ExecutableElement method = (ExecutableElement) member;
+            AnnotationMirror query = annotation(method, QUERY);
+            AnnotationMirror budget = annotation(method, PLAN_BUDGET);
+            List<String> parameters = new ArrayList<>();
+            List<String> types = new ArrayList<>();
+            for (VariableElement parameter : method.getParameters()) {
+                AnnotationMirror param = annotation(parameter, PARAM);
+                String name = param == null ? parameter.getSimpleName().toString() : String.valueOf(value(param, "value"));
+                String parameterType = name(parameter.asType());
+                parameters.add(name + ":" + parameterType);
+                types.add(parameterType);
+            }
+            String line = String.join("\t",
+                    escape(repositoryName),
+                    escape(method.getSimpleName().toString()),
+                    escape(entity),
+                    query == null ? "" : escape(String.valueOf(value(query, "value"))),
+                    String.valueOf(query != null && Boolean.TRUE.equals(value(query, "nativeQuery"))),
+                    String.valueOf(annotation(method, MODIFYING) != null),
+                    escape(String.join(",", parameters)),
+                    budget == null ? "" : String.valueOf(value(budget, "maxCost")),
+                    budget == null ? "" : escape(String.join(",", tables(budget))),
+                    budget == null ? "" : String.valueOf(value(budget, "maxRows")));
+            // overloaded methods are told apart by parameter types
+            lines.put(repositoryName + "#" + method.getSimpleName() + types, line);
+        }
+    }
+
+    /**
+     * @return {@code Repository<T, ID>} with type arguments of the given type, or {@code null} when it is not a repository
+     */
+    private DeclaredType find(DeclaredType type, TypeElement repository) {
+        if (type.asElement().equals(repository)) {
+            return type;
+        }
+        for (TypeMirror supertype : processingEnv.getTypeUtils().directSupertypes(type)) {
+            if (supertype instanceof DeclaredType declared) {
+                DeclaredType found = find(declared, repository);
+                if (found != null) {
+                    return found;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return binary name of erased type, e.g. {@code shop.OrderRepository$Order}, which class loaders understand
+     */
+    private String name(TypeMirror type) {
+        TypeMirror erased = processingEnv.getTypeUtils().erasure(type);
+        if (erased instanceof DeclaredType declared) {
+            return processingEnv.getElementUtils().getBinaryName((TypeElement) declared.asElement()).toString();
+        }
+        if (erased instanceof ArrayType array) {
+            return name(array.getComponentType()) + "[]";
+        }
+        return erased.toString();
+    }
+
+    private static AnnotationMirror annotation(Element element, String name) {
+        for (AnnotationMirror annotation : element.getAnnotationMirrors()) {
+            if (((TypeElement) annotation.getAnnotationType().asElement()).getQualifiedName().contentEquals(name)) {
+                return annotation;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return value of annotation attribute, or its default value
+     */
+    private Object value(AnnotationMirror annotation, String attribute) {
+        for (Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> entry
+                : processingEnv.getElementUtils().getElementValuesWithDefaults(annotation).entrySet()) {
+            if (entry.getKey().getSimpleName().contentEquals(attribute)) {
+                return entry.getValue().getValue();
+            }
+        }
+        return null;
+    }
+
+    private List<String> tables(AnnotationMirror budget) {
+        List<String> tables = new ArrayList<>();
+        if (value(budget, "allowedSeqScans") instanceof List<?> values) {
+            values.forEach(table -> tables.add(String.valueOf(((AnnotationValue) table).getValue())));
+        }
+        return tables;
+    }
+
+    private void write() {
+        try {
+            FileObject index = processingEnv.getFiler().createResource(StandardLocation.CLASS_OUTPUT, "", INDEX);
+            try (Writer writer = new OutputStreamWriter(index.openOutputStream(), StandardCharsets.UTF_8)) {
+                writer.write("# repository\tmethod\tentity\tquery\tnativeQuery\tmodifying\tparameters\tmaxCost\tallowedSeqScans\tmaxRows\n");
+                for (String line : lines.values()) {
+                    writer.write(line);
+                    writer.write('\n');
+                }
+            }
+        } catch (IOException e) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, "Could not write " + INDEX + ": " + e.getMessage());
+        }
+    }
+
+    static String escape(String value) {
+        StringBuilder escaped = new StringBuilder(value.length());
+        for (char c : value.toCharArray()) {
+            switch (c) {
+                case '\\' -> escaped.append("\\\\");
+                case '\t' -> escaped.append("\\t");
+                case '\n' -> escaped.append("\\n");
+                case '\r' -> escaped.append("\\r");
+                default -> escaped.append(c);
+            }
+        }
+        return escaped.toString();
+    }
+}
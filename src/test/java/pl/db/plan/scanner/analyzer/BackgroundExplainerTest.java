@@ -0,0 +1,88 @@
+package pl.db.plan.scanner.analyzer;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.context.TestPropertySource;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+import pl.db.plan.scanner.configuration.JpaConfiguration;
+import pl.db.plan.scanner.inspector.QueryFingerprint;
+import pl.db.plan.scanner.inspector.SqlCaptureInspector;
+import pl.db.plan.scanner.repositories.PersonRepository;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest
+@TestPropertySource(properties = {
+    "spring.jpa.show-sql=false",
+    "spring.jpa.properties.hibernate.use_sql_comments=true",
+    "plan.scanner.explain.enabled=true",
+    "plan.scanner.explain.sample-rate=1.0"
+})
+@Import(JpaConfiguration.class)
+@Testcontainers
+public class BackgroundExplainerTest {
+
+    @Autowired
+    private BackgroundExplainer explainer;
+
+    @Autowired
+    private SqlCaptureInspector inspector;
+
+    @Autowired
+    private PersonRepository personRepository;
+
+    @Container
+    @SuppressWarnings("resource")
+    private static final PostgreSQLContainer<?> postgres = new PostgreSQLContainer<>("postgres:15")
+            .withDatabaseName("testdb")
+            .withUsername("test")
+            .withPassword("test");
+
+    @DynamicPropertySource
+    protected static void overrideProps(DynamicPropertyRegistry registry) {
+        registry.add("spring.datasource.url", postgres::getJdbcUrl);
+        registry.add("spring.datasource.username", postgres::getUsername);
+        registry.add("spring.datasource.password", postgres::getPassword);
+        registry.add("spring.datasource.driver-class-name", () -> "org.postgresql.Driver");
+    }
+
+    @Test
+    void shouldExplainNewStatementInBackground() throws InterruptedException {
+        inspector.clear();
+        personRepository.findByName("Robert");
+
+        QueryFingerprint fingerprint = inspector.getFingerprints().stream()
+                .filter(f -> f.getNormalizedSql().contains("from person"))
+                .findFirst()
+                .orElseThrow();
+
+        ExplainResult result = null;
+        for (int i = 0; i < 100 && result == null; i++) {
+            result = explainer.getResult(fingerprint.getId());
+            Thread.sleep(50);
+        }
+        assertNotNull(result, "Statement should be explained in the background");
+        assertFalse(result.failed(), () -> "Explain failed: " + explainer.getResults());
+        assertTrue(result.fullScan(), "There is no index on person.name");
+        assertNotNull(result.totalCost());
+        assertEquals(0, explainer.getRejectedCount());
+    }
+
+    @Test
+    void shouldReplaceJdbcPlaceholders() {
+        var parameterized = new GenericPlanExplainer().parameterize(
+                "/* a = ? */ select p1_0.id from person p1_0 where p1_0.name=? and p1_0.email <> '?' and p1_0.id in (?,?)"
+        );
+        assertEquals(
+                "/* a = ? */ select p1_0.id from person p1_0 where p1_0.name=$1 and p1_0.email <> '?' and p1_0.id in ($2,$3)",
+                parameterized.sql()
+        );
+        assertEquals(3, parameterized.parameters());
+    }
+}
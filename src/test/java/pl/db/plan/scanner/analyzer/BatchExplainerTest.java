@@ -0,0 +1,58 @@
+package pl.db.plan.scanner.analyzer;
+
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@Testcontainers
+class BatchExplainerTest {
+
+    // generic plan is explained differently before postgres 16
+    @Container
+    @SuppressWarnings("resource")
+    private static final PostgreSQLContainer<?> postgres15 = new PostgreSQLContainer<>("postgres:15");
+
+    @Container
+    @SuppressWarnings("resource")
+    private static final PostgreSQLContainer<?> postgres16 = new PostgreSQLContainer<>("postgres:16");
+
+    @ParameterizedTest
+    @ValueSource(ints = {15, 16})
+    void shouldBatchParameterizedStatementsWithGenericPlan(int version) throws SQLException {
+        var postgres = version == 15 ? postgres15 : postgres16;
+        try (Connection connection = DriverManager.getConnection(postgres.getJdbcUrl(), postgres.getUsername(), postgres.getPassword());
+             Statement stmt = connection.createStatement()) {
+            stmt.execute("CREATE TABLE IF NOT EXISTS person (id bigint PRIMARY KEY, name text)");
+            stmt.execute("SET plan_cache_mode = force_custom_plan");
+
+            var results = new BatchExplainer(ExplainOptions.GENERIC_PLAN).explain(connection, List.of(
+                    "select * from person where id = ? and name = ?",
+                    "select count(*) from person",
+                    "select * from person where broken = ?",
+                    "select * from person where name = ?"));
+
+            var analyzer = new ExecutionPlanAnalyzer(ExplainOptions.GENERIC_PLAN);
+            assertEquals(List.of(false, false, true, false), results.stream().map(BatchExplainer.Result::failed).toList());
+            assertEquals("Index Scan", analyzer.analyze(results.getFirst().sql(), results.getFirst().planJson()).root().nodeType());
+            assertTrue(results.get(2).error().contains("broken"), results.get(2)::error);
+            assertEquals("Seq Scan", analyzer.analyze(results.getLast().sql(), results.getLast().planJson()).root().nodeType());
+            // setting and prepared statements of the session are left as they were
+            try (ResultSet rs = stmt.executeQuery("SELECT current_setting('plan_cache_mode'), (SELECT count(*) FROM pg_prepared_statements)")) {
+                assertTrue(rs.next());
+                assertEquals("force_custom_plan", rs.getString(1));
+                assertEquals(0, rs.getInt(2));
+            }
+        }
+    }
+}
@@ -0,0 +1,240 @@
+package pl.db.plan.scanner.analyzer;
+
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Savepoint;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class ExecutionPlanAnalyzerTest {
+
+    static final String JOIN_PLAN = """
+            [
+              {
+                "Plan": {
+                  "Node Type": "Hash Join",
+                  "Parallel Aware": false,
+                  "Join Type": "Inner",
+                  "Startup Cost": 12.5,
+                  "Total Cost": 2040.75,
+                  "Plan Rows": 5000,
+                  "Plan Width": 64,
+                  "Inner Unique": true,
+                  "Hash Cond": "(al1_0.person_id = p1_0.id)",
+                  "Plans": [
+                    {
+                      "Node Type": "Seq Scan",
+                      "Parent Relationship": "Outer",
+                      "Parallel Aware": false,
+                      "Relation Name": "activity_log",
+                      "Alias": "al1_0",
+                      "Startup Cost": 0.00,
+                      "Total Cost": 1887.00,
+                      "Plan Rows": 50000,
+                      "Plan Width": 40,
+                      "Filter": "((action)::text = 'LOGIN'::text)"
+                    },
+                    {
+                      "Node Type": "Hash",
+                      "Parent Relationship": "Inner",
+                      "Startup Cost": 8.30,
+                      "Total Cost": 8.30,
+                      "Plan Rows": 1,
+                      "Plan Width": 24,
+                      "Plans": [
+                        {
+                          "Node Type": "Index Scan",
+                          "Parent Relationship": "Outer",
+                          "Scan Direction": "Forward",
+                          "Index Name": "person_pkey",
+                          "Relation Name": "person",
+                          "Alias": "p1_0",
+                          "Startup Cost": 0.29,
+                          "Total Cost": 8.30,
+                          "Plan Rows": 1,
+                          "Plan Width": 24,
+                          "Index Cond": "(id = 1)"
+                        }
+                      ]
+                    }
+                  ]
+                }
+              }
+            ]
+            """;
+
+    private final ExecutionPlanAnalyzer analyzer = new ExecutionPlanAnalyzer();
+
+    @Test
+    void shouldParsePlanTree() {
+        var plan = analyzer.analyze("select ...", JOIN_PLAN);
+
+        PlanNode root = plan.root();
+        assertEquals("Hash Join", root.nodeType());
+        assertEquals("Inner", root.joinType());
+        assertEquals("(al1_0.person_id = p1_0.id)", root.joinCondition());
+        assertEquals(new BigDecimal("2040.75"), plan.totalCost());
+        assertEquals(true, root.properties().get("Inner Unique"));
+        assertEquals(2, root.children().size());
+
+        PlanNode indexScan = root.children().get(1).children().getFirst();
+        assertEquals("person_pkey", indexScan.indexName());
+        assertEquals("(id = 1)", indexScan.indexCondition());
+        assertEquals(24, indexScan.planWidth());
+        assertEquals("Forward", indexScan.properties().get("Scan Direction"));
+        assertEquals(
+                List.of("Hash Join", "Seq Scan", "Hash", "Index Scan"),
+                root.stream().map(PlanNode::nodeType).toList()
+        );
+    }
+
+    @Test
+    void shouldFindFullScanUnderJoin() {
+        var plan = analyzer.analyze("select ...", JOIN_PLAN);
+
+        assertTrue(plan.hasFullScan());
+        var finding = plan.findings(FindingType.FULL_SCAN).getFirst();
+        assertEquals("activity_log", finding.node().relationName());
+        assertSame(plan.root(), finding.join());
+        assertEquals(
+                "FULL_SCAN: Seq Scan on activity_log al1_0, filter: ((action)::text = 'LOGIN'::text), "
+                        + "under Hash Join on (al1_0.person_id = p1_0.id)",
+                finding.toString()
+        );
+    }
+
+    @Test
+    void shouldNotReportIndexScan() {
+        var plan = analyzer.analyze("select ...", """
+                [{"Plan": {"Node Type": "Index Scan", "Index Name": "person_pkey", "Relation Name": "person",
+                  "Alias": "person", "Startup Cost": 0.29, "Total Cost": 8.30, "Plan Rows": 1, "Plan Width": 24}}]
+                """);
+
+        assertFalse(plan.hasFullScan());
+        assertTrue(plan.findings().isEmpty());
+        assertEquals("Index Scan using person_pkey on person", plan.root().toString());
+    }
+
+    @Test
+    void shouldReportActualTimesAndBuffers() {
+        var plan = analyzer.analyze("select ...", """
+                [{"Plan": {"Node Type": "Nested Loop", "Join Type": "Inner", "Startup Cost": 0.29, "Total Cost": 2100.5,
+                  "Plan Rows": 10, "Plan Width": 40, "Actual Startup Time": 0.05, "Actual Total Time": 12.5,
+                  "Actual Rows": 12, "Actual Loops": 1, "Shared Hit Blocks": 60, "Shared Read Blocks": 900,
+                  "Shared Dirtied Blocks": 0, "Shared Written Blocks": 0, "Local Hit Blocks": 0, "Local Read Blocks": 0,
+                  "Temp Read Blocks": 0, "Temp Written Blocks": 0,
+                  "Plans": [
+                    {"Node Type": "Seq Scan", "Relation Name": "activity_log", "Alias": "al1_0", "Startup Cost": 0.0,
+                     "Total Cost": 2000.0, "Plan Rows": 10, "Plan Width": 32, "Actual Startup Time": 0.03,
+                     "Actual Total Time": 11.9, "Actual Rows": 12, "Actual Loops": 1, "Shared Hit Blocks": 24,
+                     "Shared Read Blocks": 900, "Shared Dirtied Blocks": 0, "Shared Written Blocks": 0,
+                     "Local Hit Blocks": 0, "Local Read Blocks": 0, "Temp Read Blocks": 0, "Temp Written Blocks": 0},
+                    {"Node Type": "Index Scan", "Index Name": "person_pkey", "Relation Name": "person", "Alias": "p1_0",
+                     "Startup Cost": 0.29, "Total Cost": 8.3, "Plan Rows": 1, "Plan Width": 8, "Actual Startup Time": 0.002,
+                     "Actual Total Time": 0.002, "Actual Rows": 1, "Actual Loops": 12, "Shared Hit Blocks": 36,
+                     "Shared Read Blocks": 0, "Shared Dirtied Blocks": 0, "Shared Written Blocks": 0,
+                     "Local Hit Blocks": 0, "Local Read Blocks": 0, "Temp Read Blocks": 0, "Temp Written Blocks": 0}
+                  ]}}]
+                """);
+
+        var root = plan.root();
+        assertEquals(new PlanNode.Actual(0.05, 12.5, 12, 1), root.actual());
+        assertEquals(960, root.buffers().hit() + root.buffers().read());
+        assertEquals(new PlanNode.Buffers(0, 0, 0, 0, 0, 0, 0, 0), root.ownBuffers());
+        assertEquals(12, root.children().get(1).actual().loops());
+
+        var ioBound = plan.findings(FindingType.IO_BOUND);
+        assertEquals(1, ioBound.size());
+        assertEquals("activity_log", ioBound.getFirst().node().relationName());
+        assertEquals(
+                "IO_BOUND: Seq Scan on activity_log al1_0, actual time=0.03..11.9 ms rows=12.0 loops=1, "
+                        + "buffers hit=24 read=900 dirtied=0 written=0, under Nested Loop",
+                ioBound.getFirst().toString()
+        );
+    }
+
+    @Test
+    void shouldRollBackAnalyzedStatement() throws SQLException {
+        var resultSet = mock(ResultSet.class);
+        when(resultSet.next()).thenReturn(true);
+        when(resultSet.getString(1)).thenReturn(JOIN_PLAN);
+        var stmt = mock(Statement.class);
+        when(stmt.executeQuery(anyString())).thenReturn(resultSet);
+        var connection = mock(Connection.class);
+        when(connection.createStatement()).thenReturn(stmt);
+        when(connection.getAutoCommit()).thenReturn(true);
+
+        var update = "update activity_log set action='LOGOUT' where id=1";
+        var plan = new ExecutionPlanAnalyzer(ExplainOptions.analyze(Duration.ofSeconds(5))).analyze(connection, update);
+
+        assertEquals(update, plan.sql());
+        var order = inOrder(connection, stmt);
+        order.verify(connection).setAutoCommit(false);
+        order.verify(stmt).execute("SET LOCAL statement_timeout = 5000");
+        order.verify(stmt).executeQuery("EXPLAIN (ANALYZE, BUFFERS, TIMING, FORMAT JSON) " + update);
+        order.verify(connection).rollback();
+        order.verify(connection).setAutoCommit(true);
+        verify(connection, never()).commit();
+    }
+
+    @Test
+    void shouldReleaseSavepointInTransactionOfCaller() throws SQLException {
+        var savepoint = mock(Savepoint.class);
+        var connection = mock(Connection.class);
+        when(connection.getAutoCommit()).thenReturn(false);
+        when(connection.setSavepoint()).thenReturn(savepoint);
+
+        assertEquals("plan", ExecutionPlanAnalyzer.rolledBack(connection, () -> "plan"));
+
+        var order = inOrder(connection);
+        order.verify(connection).setSavepoint();
+        order.verify(connection).rollback(savepoint);
+        order.verify(connection).releaseSavepoint(savepoint);
+        verify(connection, never()).rollback();
+        verify(connection, never()).setAutoCommit(anyBoolean());
+    }
+
+    @Test
+    void shouldKeepFailureOfWorkWhenRollbackFails() throws SQLException {
+        var connection = mock(Connection.class);
+        when(connection.getAutoCommit()).thenReturn(true);
+        var rollbackFailure = new SQLException("connection lost");
+        doThrow(rollbackFailure).when(connection).rollback();
+        var failure = new SQLException("division by zero");
+
+        var thrown = assertThrows(SQLException.class, () -> ExecutionPlanAnalyzer.rolledBack(connection, () -> {
+            throw failure;
+        }));
+
+        assertSame(failure, thrown);
+        assertArrayEquals(new Throwable[]{rollbackFailure}, thrown.getSuppressed());
+        verify(connection).setAutoCommit(true);
+        // without failure of the work, failure of the rollback is thrown
+        assertSame(rollbackFailure, assertThrows(SQLException.class, () -> ExecutionPlanAnalyzer.rolledBack(connection, () -> "plan")));
+    }
+
+    @Test
+    void shouldRejectBuffersWithoutAnalyze() {
+        assertEquals("FORMAT JSON", ExplainOptions.ESTIMATE.clause());
+        assertThrows(IllegalArgumentException.class, () -> new ExplainOptions(false, true, false, false, null));
+    }
+
+    @Test
+    void shouldNotAnalyzeGenericPlan() {
+        assertThrows(IllegalArgumentException.class, () -> new ExplainOptions(true, false, false, true, null));
+    }
+
+    @Test
+    void shouldRejectInvalidPlan() {
+        assertThrows(IllegalArgumentException.class, () -> analyzer.analyze("select ...", "[{}]"));
+        assertThrows(IllegalArgumentException.class, () -> analyzer.analyze("select ...", "Seq Scan on person"));
+    }
+}
@@ -0,0 +1,20 @@
+package pl.db.plan.scanner.analyzer;
+
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * Example of shop specific rule, registered in {@code META-INF/services} of tests.
+ */
+public class ForeignScanRule implements PlanRule {
+
+    @Override
+    public Set<String> nodeTypes() {
+        return Set.of("Foreign Scan");
+    }
+
+    @Override
+    public void evaluate(PlanNode node, PlanNode join, Consumer<Finding> findings) {
+        findings.accept(new Finding(FindingType.CUSTOM, node, join, "foreign-scan: query reads remote table " + node.relationName()));
+    }
+}
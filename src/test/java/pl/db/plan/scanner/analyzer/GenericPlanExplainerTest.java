@@ -0,0 +1,31 @@
+package pl.db.plan.scanner.analyzer;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class GenericPlanExplainerTest {
+
+    private final GenericPlanExplainer explainer = new GenericPlanExplainer();
+
+    @Test
+    void shouldKeepQuestionMarksOfJsonbOperators() {
+        var parameterized = explainer.parameterize(
+                "select p1_0.id from person p1_0 where p1_0.data ? 'email' and p1_0.data ?| array['a', ?] and p1_0.data ?& ?"
+                        + " and (p1_0.data -> 'tags') ? ? and p1_0.data ?? 'name' and p1_0.name = ?||'%'");
+
+        assertEquals("select p1_0.id from person p1_0 where p1_0.data ? 'email' and p1_0.data ?| array['a', $1] and p1_0.data ?& $2"
+                + " and (p1_0.data -> 'tags') ? $3 and p1_0.data ? 'name' and p1_0.name = $4||'%'", parameterized.sql());
+        assertEquals(4, parameterized.parameters());
+    }
+
+    @Test
+    void shouldReplacePlaceholdersAfterKeywords() {
+        var parameterized = explainer.parameterize(
+                "select ? from person p1_0 where ? = p1_0.age and p1_0.name like ? escape '!' offset ? rows fetch first ? rows only");
+
+        assertEquals("select $1 from person p1_0 where $2 = p1_0.age and p1_0.name like $3 escape '!' offset $4 rows fetch first $5 rows only",
+                parameterized.sql());
+        assertEquals(5, parameterized.parameters());
+    }
+}
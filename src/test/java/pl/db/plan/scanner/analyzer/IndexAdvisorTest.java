@@ -0,0 +1,110 @@
+package pl.db.plan.scanner.analyzer;
+
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+class IndexAdvisorTest {
+
+    private static final String ADDRESS_PLAN = """
+            [{"Plan": {"Node Type": "Seq Scan", "Relation Name": "address", "Alias": "a1_0", "Startup Cost": 0.0,
+              "Total Cost": 1021.0, "Plan Rows": 100, "Plan Width": 40,
+              "Filter": "((lower((a1_0.city)::text) = 'paris'::text) AND (a1_0.created > $1) AND ((a1_0.country)::text = ANY ('{PL,FR}'::text[])) AND (a1_0.street <> 'x'::text))"}}]
+            """;
+    private static final String ADDRESS_INDEX_PLAN = """
+            [{"Plan": {"Node Type": "Bitmap Heap Scan", "Relation Name": "address", "Alias": "a1_0", "Startup Cost": 4.7,
+              "Total Cost": 286.89, "Plan Rows": 100, "Plan Width": 40, "Plans": [
+                {"Node Type": "Bitmap Index Scan", "Index Name": "plan_scanner_candidate", "Startup Cost": 0.0,
+                 "Total Cost": 4.68, "Plan Rows": 100, "Plan Width": 0}]}}]
+            """;
+
+    private final ExecutionPlanAnalyzer analyzer = new ExecutionPlanAnalyzer();
+
+    @Test
+    void shouldDeriveCandidatesFromFilters() {
+        var candidates = IndexAdvisor.candidates(analyzer.analyze("select ...", ADDRESS_PLAN));
+
+        assertEquals(List.of("address ((lower((city)::text)))", "address (country)", "address (created)",
+                        "address ((lower((city)::text)), country, created)"),
+                candidates.stream().map(IndexAdvice.Candidate::toString).toList());
+        assertEquals("CREATE INDEX plan_scanner_candidate ON address ((lower((city)::text)), country, created)",
+                candidates.getLast().ddl(IndexAdvisor.CANDIDATE_NAME));
+    }
+
+    @Test
+    void shouldDeriveCandidatesFromJoins() {
+        var candidates = IndexAdvisor.candidates(analyzer.analyze("select ...", ExecutionPlanAnalyzerTest.JOIN_PLAN));
+
+        assertEquals(List.of(new IndexAdvice.Candidate("activity_log", List.of("action")),
+                new IndexAdvice.Candidate("activity_log", List.of("person_id"))), candidates);
+        // conditions which cannot use b-tree index
+        assertEquals(List.of(), IndexAdvisor.conjuncts("((a = 1) OR (b = 2))"));
+        assertNull(IndexAdvisor.comparison("(name ~~ 'a%'::text)"));
+        assertNull(IndexAdvisor.indexable("now()", "a1_0"));
+        assertNull(IndexAdvisor.indexable("lower((p1_0.name)::text)", "a1_0"));
+        assertEquals("\"timestamp\"", IndexAdvisor.indexable("(al1_0.\"timestamp\")", "al1_0"));
+    }
+
+    @Test
+    void shouldVerifyCandidatesInRolledBackTransaction() throws SQLException {
+        var connection = mock(Connection.class);
+        when(connection.getAutoCommit()).thenReturn(true);
+        var stmt = mock(Statement.class);
+        when(connection.createStatement()).thenReturn(stmt);
+        var statistics = mock(PreparedStatement.class);
+        when(connection.prepareStatement(anyString())).thenReturn(statistics);
+        when(statistics.executeQuery()).thenAnswer(invocation -> {
+            var rs = mock(ResultSet.class);
+            when(rs.next()).thenReturn(true);
+            when(rs.getLong(1)).thenReturn(360_448L);
+            when(rs.getInt(3)).thenReturn(1);
+            when(rs.getLong(4)).thenReturn(50_000L);
+            return rs;
+        });
+        var reexplaining = spy(analyzer);
+        doAnswer(invocation -> {
+            var ddl = mockingDetails(stmt).getInvocations().stream()
+                    .filter(call -> call.getMethod().getName().equals("execute"))
+                    .map(call -> (String) call.getArgument(0)).toList().getLast();
+            return analyzer.analyze("select ...", ddl.contains("lower") && !ddl.contains(",") ? ADDRESS_INDEX_PLAN : ADDRESS_PLAN);
+        }).when(reexplaining).analyze(eq(connection), anyString());
+        Map<String, ExecutionPlan> plans = new LinkedHashMap<>();
+        plans.put("AddressRepository.findByCity", analyzer.analyze("select ...", ADDRESS_PLAN));
+
+        var advice = new IndexAdvisor(reexplaining).advise(connection, plans);
+
+        assertEquals(4, advice.size());
+        var best = advice.getFirst();
+        assertEquals("address ((lower((city)::text)))", best.candidate().toString());
+        assertEquals(734.11, best.costImprovement(), 0.001);
+        assertTrue(best.used());
+        assertEquals(360_448, best.indexSize());
+        assertFalse(advice.get(1).used());
+        verify(stmt).execute("CREATE INDEX plan_scanner_candidate ON address ((lower((city)::text)))");
+        // every candidate is rolled back, nothing is committed
+        verify(connection, times(4)).rollback();
+        verify(connection, never()).commit();
+    }
+
+    @Test
+    void shouldRejectConnectionInTransaction() throws SQLException {
+        var connection = mock(Connection.class);
+        when(connection.getAutoCommit()).thenReturn(false);
+        Map<String, ExecutionPlan> plans = Map.of("AddressRepository.findByCity", analyzer.analyze("select ...", ADDRESS_PLAN));
+
+        assertThrows(IllegalArgumentException.class, () -> new IndexAdvisor(analyzer).advise(connection, plans));
+        verify(connection, never()).createStatement();
+        verify(connection, never()).setSavepoint();
+    }
+}
@@ -0,0 +1,90 @@
+package pl.db.plan.scanner.analyzer;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MisestimateReportTest {
+
+    // planner expects 1 row of LOGIN actions of a person, but the person logged in 200k times
+    private static final String MISESTIMATED_PLAN = """
+            [{"Plan": {"Node Type": "Nested Loop", "Join Type": "Inner", "Startup Cost": 0.71, "Total Cost": 16.6,
+              "Plan Rows": 1, "Plan Width": 64, "Actual Startup Time": 0.04, "Actual Total Time": 310.2,
+              "Actual Rows": 200000, "Actual Loops": 1, "Join Filter": "(al1_0.person_id = p1_0.id)",
+              "Plans": [
+                {"Node Type": "Index Scan", "Index Name": "person_pkey", "Relation Name": "person", "Alias": "p1_0",
+                 "Startup Cost": 0.29, "Total Cost": 8.3, "Plan Rows": 1, "Plan Width": 24, "Actual Startup Time": 0.01,
+                 "Actual Total Time": 0.01, "Actual Rows": 1, "Actual Loops": 1, "Index Cond": "(id = 42)"},
+                {"Node Type": "Index Scan", "Index Name": "activity_log_person_id_idx", "Relation Name": "activity_log",
+                 "Alias": "al1_0", "Startup Cost": 0.42, "Total Cost": 8.3, "Plan Rows": 1, "Plan Width": 40,
+                 "Actual Startup Time": 0.02, "Actual Total Time": 280.5, "Actual Rows": 200000, "Actual Loops": 1,
+                 "Index Cond": "(person_id = 42)", "Filter": "((action)::text = 'LOGIN'::text)"}
+              ]},
+              "Planning Time": 0.2, "Execution Time": 320.1}]
+            """;
+
+    private static final String EXACT_PLAN = """
+            [{"Plan": {"Node Type": "Seq Scan", "Relation Name": "address", "Alias": "a1_0", "Startup Cost": 0.0,
+              "Total Cost": 180.0, "Plan Rows": 5000, "Plan Width": 40, "Actual Startup Time": 0.01,
+              "Actual Total Time": 2.5, "Actual Rows": 4800, "Actual Loops": 1, "Filter": "(lower((city)::text) = 'paris'::text)"},
+              "Planning Time": 0.1, "Execution Time": 2.7}]
+            """;
+
+    private final ExecutionPlanAnalyzer analyzer = new ExecutionPlanAnalyzer(ExplainOptions.analyze(null));
+
+    @Test
+    void shouldFindMisestimatedNodes() throws IOException {
+        var plan = analyzer.analyze("select ...", MISESTIMATED_PLAN);
+
+        assertEquals(List.of("Nested Loop", "Index Scan"),
+                plan.findings(FindingType.MISESTIMATE).stream().map(finding -> finding.node().nodeType()).toList());
+        assertEquals("MISESTIMATE: Index Scan using activity_log_person_id_idx on activity_log al1_0, estimated rows=1.0, "
+                        + "filter: ((action)::text = 'LOGIN'::text), actual time=0.02..280.5 ms rows=200000.0 loops=1, "
+                        + "under Nested Loop on (al1_0.person_id = p1_0.id)",
+                plan.findings(FindingType.MISESTIMATE).get(1).toString());
+        assertEquals(200000, plan.root().misestimate());
+        assertFalse(analyzer.analyze("select ...", EXACT_PLAN).has(FindingType.MISESTIMATE));
+        // the same findings when streamed, children before their parent
+        assertEquals(plan.findings().reversed().stream().map(Finding::toString).toList(),
+                new StreamingPlanReader().read("select ...", new StringReader(MISESTIMATED_PLAN)).findings().stream().map(Finding::toString).toList());
+    }
+
+    @Test
+    void shouldUseConfiguredFactor() {
+        assertTrue(new ExecutionPlanAnalyzer(ExplainOptions.ESTIMATE, 1.01).analyze("select ...", EXACT_PLAN).has(FindingType.MISESTIMATE));
+        // estimated plans have no actual rows
+        assertFalse(new ExecutionPlanAnalyzer(ExplainOptions.ESTIMATE, 1.01).analyze("select ...", ExecutionPlanAnalyzerTest.JOIN_PLAN)
+                .has(FindingType.MISESTIMATE));
+        assertThrows(IllegalArgumentException.class, () -> new ExecutionPlanAnalyzer(ExplainOptions.ESTIMATE, 1));
+    }
+
+    @Test
+    void shouldRankByCostImpactAndSuggestStatistics() {
+        Map<String, ExecutionPlan> plans = new LinkedHashMap<>();
+        plans.put("AddressRepository.findByCity", new ExecutionPlanAnalyzer(ExplainOptions.ESTIMATE, 1.01).analyze("select ...", EXACT_PLAN));
+        plans.put("ActivityLogRepository.findByPersonAndAction", analyzer.analyze("select ...", MISESTIMATED_PLAN));
+
+        var report = MisestimateReport.of(plans);
+
+        assertEquals(List.of("Nested Loop", "Index Scan", "Seq Scan"),
+                report.entries().stream().map(entry -> entry.finding().node().nodeType()).toList());
+        var join = report.entries().getFirst();
+        assertEquals("ActivityLogRepository.findByPersonAndAction", join.key());
+        assertEquals(List.of("activity_log.person_id", "person.id"), join.columns());
+        assertEquals(List.of(), join.statistics());
+        var scan = report.entries().get(1);
+        assertEquals(List.of("activity_log.action", "activity_log.person_id"), scan.columns());
+        assertEquals(List.of("CREATE STATISTICS ON action, person_id FROM activity_log"), scan.statistics());
+        assertEquals(List.of("address.city"), report.entries().get(2).columns());
+        assertEquals(List.of(
+                "CREATE STATISTICS ON action, person_id FROM activity_log",
+                "ALTER TABLE address ALTER COLUMN city SET STATISTICS 1000"
+        ), report.statistics());
+    }
+}
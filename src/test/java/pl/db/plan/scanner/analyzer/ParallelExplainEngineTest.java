@@ -0,0 +1,220 @@
+package pl.db.plan.scanner.analyzer;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.sql.DataSource;
+import java.nio.file.Path;
+import java.sql.Array;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class ParallelExplainEngineTest {
+
+    private static final String PLAN = """
+            [{"Plan": {"Node Type": "Seq Scan", "Relation Name": "person", "Alias": "person",
+              "Startup Cost": 0.0, "Total Cost": 10.0, "Plan Rows": 100, "Plan Width": 24}}]
+            """;
+
+    @Test
+    void shouldExplainInParallelOnReusedConnections() throws Exception {
+        var dataSource = mock(DataSource.class);
+        when(dataSource.getConnection()).thenReturn(mock(Connection.class), mock(Connection.class), mock(Connection.class), mock(Connection.class));
+        var analyzer = new SlowAnalyzer();
+
+        var statements = IntStream.range(0, 16).mapToObj(i -> "select " + i + " from person").toList();
+        var report = new ParallelExplainEngine(dataSource, 4, analyzer).explainAll(statements);
+
+        assertEquals(statements, report.entries().stream().map(ExplainReport.Entry::sql).toList());
+        assertEquals(statements, report.entries().stream().map(entry -> entry.plan().sql()).toList());
+        assertTrue(report.failed().isEmpty());
+        assertEquals(4, report.connections());
+        verify(dataSource, times(4)).getConnection();
+        assertEquals(4, analyzer.connections.size());
+        assertEquals(4, analyzer.maxConcurrent.get());
+        // 16 statements, 50 ms each, on 4 connections
+        assertTrue(report.parallelism() > 2, report::toString);
+    }
+
+    @Test
+    void shouldReportFailedStatement() throws Exception {
+        var connection = mock(Connection.class);
+        var dataSource = mock(DataSource.class);
+        when(dataSource.getConnection()).thenReturn(connection);
+        var analyzer = new SlowAnalyzer();
+
+        var report = new ParallelExplainEngine(dataSource, 8, analyzer)
+                .explainAll(List.of("select 1 from person", "select broken", "select 2 from person"));
+
+        assertEquals(3, report.entries().size());
+        assertEquals(List.of("select broken"), report.failed().stream().map(ExplainReport.Entry::sql).toList());
+        assertEquals("syntax error", report.entries().get(1).error());
+        assertFalse(report.entries().get(2).failed());
+        verify(dataSource, times(3)).getConnection();
+        verify(connection, times(3)).close();
+    }
+
+    @Test
+    void shouldExplainOnlyStatementsMissingInCache(@TempDir Path directory) throws Exception {
+        // statistics of person table are read once per run
+        var statistics = mock(ResultSet.class);
+        when(statistics.next()).thenReturn(true, false, true, false, true, false);
+        when(statistics.getString(1)).thenReturn("person");
+        when(statistics.getString(2)).thenReturn("100");
+        var statisticsQuery = mock(PreparedStatement.class);
+        when(statisticsQuery.executeQuery()).thenReturn(statistics);
+        var connection = mock(Connection.class);
+        when(connection.prepareStatement(anyString())).thenReturn(statisticsQuery);
+        var dataSource = mock(DataSource.class);
+        when(dataSource.getConnection()).thenReturn(connection);
+        var analyzer = new SlowAnalyzer();
+        var file = directory.resolve("plans.json");
+
+        var cache = new PlanCache(100);
+        var first = new ParallelExplainEngine(dataSource, 2, analyzer, cache)
+                .explainAll(List.of("select 1 from person", "select 2 from person"));
+        assertEquals(0, first.cachedCount());
+        assertEquals(2, analyzer.explained.get());
+        cache.save(file);
+
+        var reloaded = PlanCache.load(file, 100);
+        var second = new ParallelExplainEngine(dataSource, 2, analyzer, reloaded)
+                .explainAll(List.of("select 1 from person", "select   2 from person", "select 3 from person"));
+        assertEquals(List.of(true, true, false), second.entries().stream().map(ExplainReport.Entry::cached).toList());
+        assertTrue(second.entries().get(1).plan().hasFullScan());
+        assertEquals(3, analyzer.explained.get());
+
+        // person was analyzed in the meantime
+        when(statistics.getString(2)).thenReturn("200");
+        var third = new ParallelExplainEngine(dataSource, 2, analyzer, reloaded)
+                .explainAll(List.of("select 1 from person"));
+        assertEquals(0, third.cachedCount());
+        assertEquals(4, analyzer.explained.get());
+    }
+
+    @Test
+    void shouldExplainStatementsInBatches() throws Exception {
+        var connection = mock(Connection.class);
+        when(connection.createStatement()).thenReturn(mock(Statement.class));
+        when(connection.createArrayOf(eq("text"), any())).thenAnswer(invocation -> {
+            var array = mock(Array.class);
+            when(array.getArray()).thenReturn(invocation.getArgument(1));
+            return array;
+        });
+        List<Object[]> batches = new ArrayList<>();
+        when(connection.prepareStatement(anyString())).thenAnswer(invocation -> {
+            var call = mock(PreparedStatement.class);
+            Object[][] statements = new Object[1][];
+            doAnswer(set -> statements[0] = (Object[]) set.<Array>getArgument(1).getArray()).when(call).setArray(eq(1), any());
+            when(call.executeQuery()).thenAnswer(execute -> {
+                batches.add(statements[0]);
+                return batchResult(statements[0]);
+            });
+            return call;
+        });
+        var dataSource = mock(DataSource.class);
+        when(dataSource.getConnection()).thenReturn(connection);
+
+        var statements = List.of("select 1 from person", "select 2 from person", "select broken", "select 4 from person", "select 5 from person");
+        var report = new ParallelExplainEngine(dataSource, 1).withBatchSize(2).explainAll(statements);
+
+        assertEquals(3, batches.size(), "One round trip per batch");
+        assertEquals(statements, report.entries().stream().map(ExplainReport.Entry::sql).toList());
+        assertEquals(List.of("select broken"), report.failed().stream().map(ExplainReport.Entry::sql).toList());
+        assertEquals("syntax error at or near \"broken\"", report.entries().get(2).error());
+        assertEquals(Duration.ofNanos(250_000), report.entries().getFirst().duration());
+        assertTrue(report.entries().get(4).plan().hasFullScan());
+    }
+
+    @Test
+    void shouldBatchParameterizedStatementsWithOptionsOfAnalyzer() throws Exception {
+        var connection = mock(Connection.class);
+        when(connection.createStatement()).thenReturn(mock(Statement.class));
+        Map<String, Object[]> arrays = new ConcurrentHashMap<>();
+        when(connection.createArrayOf(anyString(), any())).thenAnswer(invocation -> {
+            arrays.put(invocation.getArgument(0), invocation.getArgument(1));
+            return mock(Array.class);
+        });
+        var call = mock(PreparedStatement.class);
+        when(call.executeQuery()).thenAnswer(execute -> batchResult(arrays.get("text")));
+        when(connection.prepareStatement(anyString())).thenReturn(call);
+        var dataSource = mock(DataSource.class);
+        when(dataSource.getConnection()).thenReturn(connection);
+
+        var statements = List.of("select * from person where id = ? and name = ?", "select * from person where data ? 'x' and age > ?");
+        var report = new ParallelExplainEngine(dataSource, 1, new ExecutionPlanAnalyzer(ExplainOptions.GENERIC_PLAN))
+                .withBatchSize(2).explainAll(statements);
+
+        assertTrue(report.failed().isEmpty(), report::toString);
+        assertEquals(statements, report.entries().stream().map(ExplainReport.Entry::sql).toList());
+        // placeholders of generic plan, the function explains them like GenericPlanExplainer
+        assertArrayEquals(new Object[]{"select * from person where id = $1 and name = $2", "select * from person where data ? 'x' and age > $1"},
+                arrays.get("text"));
+        assertArrayEquals(new Object[]{2, 1}, arrays.get("int4"));
+        verify(call).setString(3, ExplainOptions.GENERIC_PLAN.clause());
+        verify(call).setBoolean(4, true);
+    }
+
+    @Test
+    void shouldRejectBatchesOfAnalyzedStatements() {
+        var analyzer = new ExecutionPlanAnalyzer(ExplainOptions.analyze(Duration.ofSeconds(1)));
+        var engine = new ParallelExplainEngine(mock(DataSource.class), 1, analyzer);
+
+        assertThrows(IllegalArgumentException.class, () -> engine.withBatchSize(2));
+    }
+
+    /**
+     * Rows of {@code pg_temp.plan_scanner_explain} function.
+     */
+    private static ResultSet batchResult(Object[] statements) throws SQLException {
+        var row = new AtomicInteger();
+        var resultSet = mock(ResultSet.class);
+        when(resultSet.next()).thenAnswer(invocation -> row.incrementAndGet() <= statements.length);
+        when(resultSet.getInt(1)).thenAnswer(invocation -> row.get());
+        when(resultSet.getString(2)).thenAnswer(invocation -> statements[row.get() - 1].toString().contains("broken") ? null : PLAN);
+        when(resultSet.getString(3)).thenAnswer(invocation -> statements[row.get() - 1].toString().contains("broken")
+                ? "syntax error at or near \"broken\"" : null);
+        when(resultSet.getLong(4)).thenReturn(250L);
+        return resultSet;
+    }
+
+    private static class SlowAnalyzer extends ExecutionPlanAnalyzer {
+        private final Set<Connection> connections = ConcurrentHashMap.newKeySet();
+        private final AtomicInteger concurrent = new AtomicInteger();
+        private final AtomicInteger maxConcurrent = new AtomicInteger();
+
+        private final AtomicInteger explained = new AtomicInteger();
+
+        @Override
+        public String explain(Connection connection, String sql) throws SQLException {
+            explained.incrementAndGet();
+            connections.add(connection);
+            maxConcurrent.accumulateAndGet(concurrent.incrementAndGet(), Math::max);
+            try {
+                Thread.sleep(50);
+                if (sql.contains("broken")) {
+                    throw new SQLException("syntax error");
+                }
+                return PLAN;
+            } catch (InterruptedException e) {
+                throw new SQLException(e);
+            } finally {
+                concurrent.decrementAndGet();
+            }
+        }
+    }
+}
@@ -0,0 +1,149 @@
+package pl.db.plan.scanner.analyzer;
+
+import org.junit.jupiter.api.Test;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class ParameterSweepTest {
+
+    private static final String SQL = "select al1_0.id from activity_log al1_0 where al1_0.created>? and al1_0.action=?";
+
+    private static final String INDEX_SCAN = """
+            [{"Plan": {"Node Type": "Index Scan", "Relation Name": "activity_log", "Alias": "al1_0",
+              "Index Name": "activity_log_created_idx", "Startup Cost": 0.42, "Total Cost": 8.44,
+              "Plan Rows": 1, "Plan Width": 8}}]
+            """;
+    private static final String SEQ_SCAN = """
+            [{"Plan": {"Node Type": "Seq Scan", "Relation Name": "activity_log", "Alias": "al1_0",
+              "Startup Cost": 0.0, "Total Cost": 4471.0, "Plan Rows": 190000, "Plan Width": 8}}]
+            """;
+
+    @Test
+    void shouldResolveColumnsBoundToParameters() {
+        var root = new JsonPlanParser().parse("""
+                [{"Plan": {"Node Type": "Nested Loop", "Startup Cost": 0.0, "Total Cost": 30.0, "Plan Rows": 1, "Plan Width": 16,
+                  "Plans": [
+                    {"Node Type": "Index Scan", "Relation Name": "activity_log", "Alias": "al1_0", "Index Name": "activity_log_created_idx",
+                     "Startup Cost": 0.0, "Total Cost": 10.0, "Plan Rows": 1, "Plan Width": 8,
+                     "Index Cond": "(al1_0.created > $1)", "Filter": "((al1_0.action)::text = ($2)::text)"},
+                    {"Node Type": "Seq Scan", "Relation Name": "person", "Alias": "p1_0",
+                     "Startup Cost": 0.0, "Total Cost": 20.0, "Plan Rows": 1, "Plan Width": 8,
+                     "Filter": "(($3 = p1_0.age) AND (p1_0.name ~~ $4) AND (p1_0.id = al1_0.person_id))"}
+                  ]}}]
+                """);
+
+        var columns = ParameterSweep.boundColumns(root);
+
+        assertEquals(Map.of(
+                1, new ParameterSweep.Column("activity_log", "created"),
+                2, new ParameterSweep.Column("activity_log", "action"),
+                3, new ParameterSweep.Column("person", "age"),
+                4, new ParameterSweep.Column("person", "name")
+        ), columns);
+    }
+
+    @Test
+    void shouldNotBindParametersOfJoinConditionsToScannedTable() {
+        var root = new JsonPlanParser().parse("""
+                [{"Plan": {"Node Type": "Nested Loop", "Startup Cost": 0.0, "Total Cost": 30.0, "Plan Rows": 1, "Plan Width": 16,
+                  "Join Filter": "((p1_0.name)::text = ($3)::text)",
+                  "Plans": [
+                    {"Node Type": "Seq Scan", "Parent Relationship": "Outer", "Relation Name": "person", "Alias": "p1_0",
+                     "Startup Cost": 0.0, "Total Cost": 20.0, "Plan Rows": 1, "Plan Width": 8, "Filter": "(p1_0.id > $4)"},
+                    {"Node Type": "Index Scan", "Parent Relationship": "Inner", "Relation Name": "activity_log", "Alias": "al1_0",
+                     "Index Name": "activity_log_person_id_idx", "Startup Cost": 0.0, "Total Cost": 10.0, "Plan Rows": 1, "Plan Width": 8,
+                     "Index Cond": "(person_id = p1_0.id)", "Filter": "((al1_0.created > $1) OR (p1_0.age = $2))"}
+                  ]}}]
+                """);
+
+        var columns = ParameterSweep.boundColumns(root);
+
+        // age of person is compared in the filter of activity_log, name in the join filter
+        assertEquals(Map.of(
+                1, new ParameterSweep.Column("activity_log", "created"),
+                4, new ParameterSweep.Column("person", "id")
+        ), columns);
+    }
+
+    @Test
+    void shouldReportValuesWhichChangePlan() throws Exception {
+        var dataSource = mock(DataSource.class);
+        when(dataSource.getConnection()).thenAnswer(invocation -> mock(Connection.class));
+        var analyzer = new StatisticsAwareAnalyzer();
+        var engine = new ParallelExplainEngine(dataSource, 4, analyzer);
+
+        var report = new ParameterSweep(dataSource, engine, 8, 10).sweep(SQL, Map.of(
+                1, List.of(
+                        new ParameterSweep.SweepValue("2025-06-01", ParameterSweep.Source.HISTOGRAM),
+                        new ParameterSweep.SweepValue("2024-01-01", ParameterSweep.Source.HISTOGRAM),
+                        new ParameterSweep.SweepValue("2025-06-20", ParameterSweep.Source.HISTOGRAM)),
+                2, List.of(
+                        new ParameterSweep.SweepValue("LOGIN", ParameterSweep.Source.MOST_COMMON),
+                        new ParameterSweep.SweepValue("LOG'OUT", ParameterSweep.Source.MOST_COMMON))));
+
+        assertEquals(List.of("2025-06-01", "LOGIN"), report.baseline().values());
+        assertEquals("select al1_0.id from activity_log al1_0 where al1_0.created>'2025-06-01' and al1_0.action='LOGIN'", report.baseline().sql());
+        assertEquals(3, report.points().size());
+        assertTrue(analyzer.explained.contains("select al1_0.id from activity_log al1_0 where al1_0.created>'2025-06-01' and al1_0.action='LOG''OUT'"));
+
+        var flips = report.flips();
+        assertEquals(2, flips.size());
+        assertEquals(1, flips.get(0).parameter());
+        assertEquals("2024-01-01", flips.get(0).values().get(0));
+        assertEquals("Seq Scan on activity_log al1_0", flips.get(0).shape());
+        // same shape as baseline, but ten times more expensive
+        assertEquals(2, flips.get(1).parameter());
+        assertEquals("Index Scan using activity_log_created_idx on activity_log al1_0", flips.get(1).shape());
+        assertTrue(report.toString().contains("flip $1 = '2024-01-01' (HISTOGRAM): Seq Scan on activity_log al1_0, cost 4471.0"), report::toString);
+    }
+
+    @Test
+    void shouldNotSweepParametersWithoutStatistics() throws Exception {
+        var dataSource = mock(DataSource.class);
+        var engine = new ParallelExplainEngine(dataSource, 4, new StatisticsAwareAnalyzer());
+
+        var report = new ParameterSweep(dataSource, engine, 8, 10).sweep(SQL, Map.of(
+                2, List.of(new ParameterSweep.SweepValue("LOGIN", ParameterSweep.Source.MOST_COMMON))));
+
+        assertNull(report.baseline());
+        assertEquals(List.of(1), report.unresolved());
+        assertFalse(report.hasFlips());
+        verifyNoInteractions(dataSource);
+    }
+
+    @Test
+    void shouldRejectInvalidSettings() {
+        var dataSource = mock(DataSource.class);
+        var engine = new ParallelExplainEngine(dataSource, 1);
+
+        assertThrows(IllegalArgumentException.class, () -> new ParameterSweep(dataSource, engine, 1, 10));
+        assertThrows(IllegalArgumentException.class, () -> new ParameterSweep(dataSource, engine, 8, 1));
+    }
+
+    /**
+     * Old timestamp matches most of the table, other values keep index scan with different costs.
+     */
+    private static class StatisticsAwareAnalyzer extends ExecutionPlanAnalyzer {
+        private final Set<String> explained = ConcurrentHashMap.newKeySet();
+
+        @Override
+        public String explain(Connection connection, String sql) {
+            explained.add(sql);
+            if (sql.contains("'2024-")) {
+                return SEQ_SCAN;
+            }
+            if (sql.contains("LOG''OUT")) {
+                return INDEX_SCAN.replace("8.44", "120.0");
+            }
+            return sql.contains("'2025-06-20'") ? INDEX_SCAN.replace("8.44", "9.8") : INDEX_SCAN;
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package pl.db.plan.scanner.analyzer;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.*;
+
+class PlanBaselinesTest {
+
+    private static final String INDEX_PLAN = """
+            [{"Plan": {"Node Type": "Nested Loop", "Join Type": "Inner", "Startup Cost": 0.57, "Total Cost": 8.3,
+              "Plan Rows": 1, "Plan Width": 64, "Plans": [
+                {"Node Type": "Index Scan", "Index Name": "person_pkey", "Relation Name": "person", "Alias": "p1_0",
+                 "Startup Cost": 0.29, "Total Cost": 4.1, "Plan Rows": 1, "Plan Width": 24, "Index Cond": "(id = $1)"},
+                {"Node Type": "Index Scan", "Index Name": "address_person_id_idx", "Relation Name": "address", "Alias": "a1_0",
+                 "Startup Cost": 0.28, "Total Cost": 4.2, "Plan Rows": 1, "Plan Width": 40, "Index Cond": "(person_id = $1)"}
+              ]}}]
+            """;
+
+    private final ExecutionPlanAnalyzer analyzer = new ExecutionPlanAnalyzer();
+
+    @Test
+    void shouldSaveAndLoadBaselines(@TempDir Path directory) throws IOException {
+        var baselines = new PlanBaselines();
+        baselines.put("PersonRepository.findWithAddress", analyzer.analyze("select ...", INDEX_PLAN));
+        baselines.put("ActivityLogRepository.findByAction", analyzer.analyze("select ...", ExecutionPlanAnalyzerTest.JOIN_PLAN));
+        Path file = directory.resolve("baselines/plan-baselines.bin");
+        baselines.save(file);
+
+        var loaded = PlanBaselines.load(file);
+
+        assertEquals(2, loaded.size());
+        assertEquals(baselines.get("PersonRepository.findWithAddress"), loaded.get("PersonRepository.findWithAddress"));
+        var root = loaded.get("ActivityLogRepository.findByAction");
+        assertEquals("Hash Join(Seq Scan on activity_log, Hash(Index Scan using person_pkey on person))", root.shape());
+        assertEquals(2040.75, root.totalCost());
+        assertThat(Files.size(file)).isLessThan(300);
+        assertFalse(loaded.diff("PersonRepository.findWithAddress", analyzer.analyze("select ...", INDEX_PLAN), 2).changed());
+        assertNull(loaded.diff("PersonRepository.findById", analyzer.analyze("select ...", INDEX_PLAN), 2));
+    }
+
+    @Test
+    void shouldReportLostIndexAndCostIncrease() {
+        var baselines = new PlanBaselines();
+        baselines.put("PersonRepository.findWithAddress", analyzer.analyze("select ...", INDEX_PLAN));
+        var current = analyzer.analyze("select ...", INDEX_PLAN
+                .replace("\"Total Cost\": 8.3", "\"Total Cost\": 450.0")
+                .replace("\"Node Type\": \"Index Scan\", \"Index Name\": \"address_person_id_idx\"", "\"Node Type\": \"Seq Scan\""));
+
+        var diff = baselines.diff("PersonRepository.findWithAddress", current, 2);
+
+        assertEquals(List.of(PlanDiff.ChangeType.COST_INCREASED, PlanDiff.ChangeType.INDEX_LOST),
+                diff.changes().stream().map(PlanDiff.Change::type).toList());
+        assertEquals("COST_INCREASED at Nested Loop: 8.3 -> 450.0 (54.2x)", diff.changes().get(0).toString());
+        assertEquals("INDEX_LOST at Nested Loop > Index Scan: Index Scan using address_person_id_idx on address -> Seq Scan on address a1_0",
+                diff.changes().get(1).toString());
+        // tolerated cost increase
+        assertFalse(baselines.diff("PersonRepository.findWithAddress", analyzer.analyze("select ...", INDEX_PLAN.replace("8.3", "12.0")), 2).changed());
+    }
+
+    @Test
+    void shouldReportCostIncreaseOfNodeWhenWholePlanIsTolerated() {
+        var baselines = new PlanBaselines();
+        baselines.put("PersonRepository.findWithAddress", analyzer.analyze("select ...", INDEX_PLAN));
+        var current = analyzer.analyze("select ...", INDEX_PLAN
+                .replace("\"Total Cost\": 8.3", "\"Total Cost\": 16.0")
+                .replace("\"Total Cost\": 4.2", "\"Total Cost\": 11.5"));
+
+        var diff = baselines.diff("PersonRepository.findWithAddress", current, 2);
+
+        assertEquals(1, diff.changes().size());
+        assertEquals("COST_INCREASED at Nested Loop > Index Scan: 4.2 -> 11.5 (2.7x)", diff.changes().getFirst().toString());
+        // cheap nodes are compared with the cost of a page read
+        baselines.put("PersonRepository.findCheap", analyzer.analyze("select ...", INDEX_PLAN.replace("\"Total Cost\": 4.1", "\"Total Cost\": 0.2")));
+        assertFalse(baselines.diff("PersonRepository.findCheap", analyzer.analyze("select ...",
+                INDEX_PLAN.replace("\"Total Cost\": 4.1", "\"Total Cost\": 0.9")), 2).changed());
+    }
+
+    @Test
+    void shouldReportChangedStructure() {
+        var baselines = new PlanBaselines();
+        baselines.put("ActivityLogRepository.findByAction", analyzer.analyze("select ...", ExecutionPlanAnalyzerTest.JOIN_PLAN));
+        var current = analyzer.analyze("select ...", INDEX_PLAN);
+
+        var diff = baselines.diff("ActivityLogRepository.findByAction", current, 1000);
+
+        assertEquals(List.of(PlanDiff.ChangeType.NODE_CHANGED, PlanDiff.ChangeType.NODE_CHANGED, PlanDiff.ChangeType.NODE_CHANGED,
+                        PlanDiff.ChangeType.NODE_REMOVED),
+                diff.changes().stream().map(PlanDiff.Change::type).toList());
+        assertEquals("NODE_CHANGED at Hash Join > Hash: Hash -> Index Scan using address_person_id_idx on address a1_0", diff.changes().get(2).toString());
+        assertEquals("NODE_REMOVED at Hash Join > Hash: Index Scan using person_pkey on person -> null", diff.changes().get(3).toString());
+        assertTrue(diff.has(PlanDiff.ChangeType.NODE_CHANGED));
+        // person_pkey is still used, on another position
+        assertFalse(diff.has(PlanDiff.ChangeType.INDEX_LOST));
+    }
+
+    @Test
+    void shouldLoadAndDiffThousandsOfBaselinesQuickly(@TempDir Path directory) throws IOException {
+        int queries = 5_000;
+        var plan = analyzer.analyze("select ...", ExecutionPlanAnalyzerTest.JOIN_PLAN);
+        var baselines = new PlanBaselines();
+        for (int i = 0; i < queries; i++) {
+            baselines.put("Repository" + i / 10 + ".find" + i, plan);
+        }
+        Path file = directory.resolve("plan-baselines.bin");
+        baselines.save(file);
+
+        long start = System.nanoTime();
+        var loaded = PlanBaselines.load(file);
+        long changed = loaded.keys().stream().filter(key -> loaded.diff(key, plan, 2).changed()).count();
+        long millis = (System.nanoTime() - start) / 1_000_000;
+
+        assertEquals(0, changed);
+        assertEquals(queries, loaded.size());
+        assertThat(millis).isLessThan(1000);
+        // strings are stored once, every node takes a few bytes
+        assertThat(Files.size(file)).isLessThan(queries * 64L);
+    }
+
+    @Test
+    void shouldRejectOtherFiles(@TempDir Path directory) throws IOException {
+        Path file = Files.writeString(directory.resolve("plan-baselines.bin"), "not baselines");
+
+        assertThrows(IOException.class, () -> PlanBaselines.load(file));
+        assertEquals(0, PlanBaselines.load(directory.resolve("missing.bin")).size());
+    }
+}
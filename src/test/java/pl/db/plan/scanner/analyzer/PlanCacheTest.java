@@ -0,0 +1,73 @@
+package pl.db.plan.scanner.analyzer;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PlanCacheTest {
+
+    private static final String PLAN = "[{\"Plan\": {\"Node Type\": \"Seq Scan\", \"Relation Name\": \"person\"}}]";
+    private static final StatisticsSnapshot STATISTICS = new StatisticsSnapshot(Map.of("person", 1L, "address", 2L));
+
+    @Test
+    void shouldInvalidatePlanWhenStatisticsOfItsTablesChange() {
+        var cache = new PlanCache(10);
+        cache.put("select * from person", PLAN, Set.of("person"), STATISTICS);
+
+        assertNotNull(cache.get("select * from person", STATISTICS));
+        assertNotNull(cache.get("select * from person", new StatisticsSnapshot(Map.of("person", 1L, "address", 3L))));
+        assertNull(cache.get("select * from person", new StatisticsSnapshot(Map.of("person", 4L, "address", 2L))));
+        assertNull(cache.get("select * from person", new StatisticsSnapshot(Map.of("address", 2L))));
+        assertEquals(2, cache.getHitCount());
+        assertEquals(2, cache.getMissCount());
+    }
+
+    @Test
+    void shouldEvictLeastRecentlyUsedPlan() {
+        var cache = new PlanCache(2);
+        cache.put("select 1", PLAN, Set.of(), STATISTICS);
+        cache.put("select 2", PLAN, Set.of(), STATISTICS);
+        cache.get("select 1", STATISTICS);
+        cache.put("select 3", PLAN, Set.of(), STATISTICS);
+
+        assertEquals(2, cache.size());
+        assertNotNull(cache.get("select 1", STATISTICS));
+        assertNull(cache.get("select 2", STATISTICS));
+        assertNotNull(cache.get("select 3", STATISTICS));
+    }
+
+    @Test
+    void shouldKeepPlansBetweenRuns(@TempDir Path directory) throws IOException {
+        var file = directory.resolve("cache").resolve("plans.json");
+        var cache = new PlanCache(2);
+        cache.put("select 1", PLAN, Set.of("person"), STATISTICS);
+        cache.put("select 2", PLAN, Set.of("person", "address"), STATISTICS);
+        cache.get("select 1", STATISTICS);
+        cache.save(file);
+
+        var loaded = PlanCache.load(file, 2);
+        assertEquals(Set.of("person", "address"), loaded.tables());
+        var plan = loaded.get("select 2", STATISTICS);
+        assertEquals(PLAN, plan.planJson());
+        assertEquals(List.of("address", "person"), plan.tables());
+        // order of use is kept, so select 1 is the least recently used one now
+        loaded.put("select 3", PLAN, Set.of(), STATISTICS);
+        assertNull(loaded.get("select 1", STATISTICS));
+        assertTrue(PlanCache.load(directory.resolve("missing.json"), 2).tables().isEmpty());
+    }
+
+    @Test
+    void shouldIgnoreWhitespaceOutsideOfLiterals() {
+        assertEquals(
+                "select * from person where name = 'John  Smith'",
+                PlanCache.key("  select *\n  from person\twhere name = 'John  Smith' ")
+        );
+    }
+}
@@ -0,0 +1,141 @@
+package pl.db.plan.scanner.analyzer;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PlanRulesTest {
+
+    private static final String ANALYZED_PLAN = """
+            [{"Plan": {"Node Type": "Sort", "Startup Cost": 60000.0, "Total Cost": 61000.0, "Plan Rows": 400000,
+              "Plan Width": 64, "Actual Startup Time": 900.0, "Actual Total Time": 1000.0, "Actual Rows": 400000,
+              "Actual Loops": 1, "Sort Method": "external merge", "Sort Space Used": 12000, "Sort Space Type": "Disk",
+              "Plans": [
+                {"Node Type": "Hash Join", "Parent Relationship": "Outer", "Join Type": "Inner", "Startup Cost": 20000.0,
+                 "Total Cost": 50000.0, "Plan Rows": 400000, "Plan Width": 64, "Actual Startup Time": 300.0,
+                 "Actual Total Time": 800.0, "Actual Rows": 400000, "Actual Loops": 1, "Hash Cond": "(al1_0.person_id = p1_0.id)",
+                 "Plans": [
+                   {"Node Type": "Seq Scan", "Parent Relationship": "Outer", "Relation Name": "activity_log", "Alias": "al1_0",
+                    "Startup Cost": 0.0, "Total Cost": 18000.0, "Plan Rows": 400000, "Plan Width": 40,
+                    "Actual Startup Time": 0.01, "Actual Total Time": 200.0, "Actual Rows": 400000, "Actual Loops": 1},
+                   {"Node Type": "Hash", "Parent Relationship": "Inner", "Startup Cost": 15000.0, "Total Cost": 15000.0,
+                    "Plan Rows": 300000, "Plan Width": 24, "Actual Startup Time": 250.0, "Actual Total Time": 250.0,
+                    "Actual Rows": 300000, "Actual Loops": 1, "Hash Buckets": 131072, "Hash Batches": 4,
+                    "Peak Memory Usage": 4096,
+                    "Plans": [
+                      {"Node Type": "Nested Loop", "Parent Relationship": "Outer", "Join Type": "Inner", "Startup Cost": 0.0,
+                       "Total Cost": 14000.0, "Plan Rows": 300000, "Plan Width": 24, "Actual Startup Time": 0.1,
+                       "Actual Total Time": 240.0, "Actual Rows": 300000, "Actual Loops": 1,
+                       "Plans": [
+                         {"Node Type": "Bitmap Heap Scan", "Parent Relationship": "Outer", "Relation Name": "person",
+                          "Alias": "p1_0", "Startup Cost": 100.0, "Total Cost": 900.0, "Plan Rows": 100, "Plan Width": 24,
+                          "Actual Startup Time": 1.0, "Actual Total Time": 9.0, "Actual Rows": 100, "Actual Loops": 1,
+                          "Recheck Cond": "(name = 'Smith'::text)", "Rows Removed by Index Recheck": 5200,
+                          "Exact Heap Blocks": 10, "Lossy Heap Blocks": 300},
+                         {"Node Type": "Foreign Scan", "Parent Relationship": "Inner", "Relation Name": "remote_address",
+                          "Alias": "ra", "Startup Cost": 100.0, "Total Cost": 130.0, "Plan Rows": 3000, "Plan Width": 8,
+                          "Actual Startup Time": 0.5, "Actual Total Time": 2.2, "Actual Rows": 3000, "Actual Loops": 100}
+                       ]}
+                    ]}
+                 ]}
+              ]},
+              "Planning Time": 0.5, "Execution Time": 1010.0}]
+            """;
+
+    private final ExecutionPlanAnalyzer analyzer = new ExecutionPlanAnalyzer(ExplainOptions.analyze(null));
+
+    @Test
+    void shouldFindProblemsOfAnalyzedPlan() throws IOException {
+        var plan = analyzer.analyze("select ...", ANALYZED_PLAN);
+
+        assertEquals(List.of(
+                "SORT_SPILL: Sort, external merge, 12000 kB on disk, actual time=900.0..1000.0 ms rows=400000.0 loops=1",
+                "FULL_SCAN: Seq Scan on activity_log al1_0, actual time=0.01..200.0 ms rows=400000.0 loops=1, under Hash Join on (al1_0.person_id = p1_0.id)",
+                "LARGE_SEQ_SCAN: Seq Scan on activity_log al1_0, cost 18000.0, actual time=0.01..200.0 ms rows=400000.0 loops=1, under Hash Join on (al1_0.person_id = p1_0.id)",
+                "LARGE_HASH_BUILD: Hash, 4 batches, 4096 kB in memory, actual time=250.0..250.0 ms rows=300000.0 loops=1, under Hash Join on (al1_0.person_id = p1_0.id)",
+                "BITMAP_RECHECK: Bitmap Heap Scan on person p1_0, 300 lossy blocks, 5200 rows removed by recheck, actual time=1.0..9.0 ms rows=100.0 loops=1, under Nested Loop",
+                "NESTED_LOOP_LARGE_INNER: Foreign Scan on remote_address ra, 3000.0 rows in each of 100 loops, actual time=0.5..2.2 ms rows=3000.0 loops=100, under Nested Loop",
+                "CUSTOM: Foreign Scan on remote_address ra, foreign-scan: query reads remote table remote_address, actual time=0.5..2.2 ms rows=3000.0 loops=100, under Nested Loop"
+        ), plan.findings().stream().map(Finding::toString).toList());
+        // streamed plan is evaluated by the same rules, children before their parent
+        assertEquals(plan.findings().stream().map(Finding::toString).sorted().toList(),
+                new StreamingPlanReader(analyzer.getRules()).read("select ...", new StringReader(ANALYZED_PLAN))
+                        .findings().stream().map(Finding::toString).sorted().toList());
+    }
+
+    @Test
+    void shouldFindLargeParallelSeqScan() {
+        var rules = new ExecutionPlanAnalyzer(ExplainOptions.ESTIMATE, new PlanRules(List.of(new PlanRules.LargeSeqScan(10_000))));
+
+        var plan = rules.analyze("select ...", """
+                [{"Plan": {"Node Type": "Gather", "Parallel Aware": false, "Total Cost": 25000.0, "Plan Rows": 400000,
+                  "Workers Planned": 2,
+                  "Plans": [
+                    {"Node Type": "Seq Scan", "Parent Relationship": "Outer", "Parallel Aware": true,
+                     "Relation Name": "activity_log", "Alias": "al1_0", "Total Cost": 12000.0, "Plan Rows": 166667}
+                  ]}}]
+                """);
+
+        assertEquals(List.of("LARGE_SEQ_SCAN: Seq Scan on activity_log al1_0, parallel, cost 12000.0"),
+                plan.findings().stream().map(Finding::toString).toList());
+    }
+
+    @Test
+    void shouldLoadRulesWithServiceLoader() {
+        var rules = PlanRules.load(ExecutionPlanAnalyzer.DEFAULT_MISESTIMATE_FACTOR).rules();
+
+        assertEquals(PlanRules.builtIn(ExecutionPlanAnalyzer.DEFAULT_MISESTIMATE_FACTOR).size() + 1, rules.size());
+        assertInstanceOf(ForeignScanRule.class, rules.getLast());
+        // rules of estimated plans only
+        var estimated = new ExecutionPlanAnalyzer(ExplainOptions.ESTIMATE, new PlanRules(List.of(new PlanRules.FullScan())));
+        assertEquals(List.of(FindingType.FULL_SCAN),
+                estimated.analyze("select ...", ANALYZED_PLAN).findings().stream().map(Finding::type).toList());
+    }
+
+    @Test
+    void shouldEvaluateEveryNodeOnlyByItsRules() {
+        int branches = 2_500;
+        StringBuilder json = new StringBuilder("[{\"Plan\": {\"Node Type\": \"Append\", \"Total Cost\": 1, \"Plans\": [");
+        for (int i = 0; i < branches; i++) {
+            json.append(i > 0 ? "," : "").append("""
+                    {"Node Type": "Sort", "Total Cost": 1, "Plans": [
+                      {"Node Type": "Index Scan", "Index Name": "person_pkey", "Relation Name": "person", "Total Cost": 1}]}
+                    """);
+        }
+        json.append("]}}]");
+        AtomicLong everyNode = new AtomicLong();
+        AtomicLong sortNodes = new AtomicLong();
+        List<PlanRule> rules = new ArrayList<>();
+        rules.add((node, join, findings) -> everyNode.incrementAndGet());
+        for (int i = 0; i < 500; i++) {
+            rules.add(new CountingRule("Sort", sortNodes));
+        }
+
+        new ExecutionPlanAnalyzer(ExplainOptions.ESTIMATE, new PlanRules(rules)).analyze("select ...", json.toString());
+
+        assertEquals(2L * branches + 1, everyNode.get());
+        // 500 rules are not called for 2 501 nodes which are not sorts
+        assertEquals(500L * branches, sortNodes.get());
+    }
+
+    private record CountingRule(String nodeType, AtomicLong calls) implements PlanRule {
+
+        @Override
+        public Set<String> nodeTypes() {
+            return Set.of(nodeType);
+        }
+
+        @Override
+        public void evaluate(PlanNode node, PlanNode join, Consumer<Finding> findings) {
+            calls.incrementAndGet();
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package pl.db.plan.scanner.analyzer;
+
+import org.junit.jupiter.api.Test;
+import pl.db.plan.scanner.repositories.ActivityLogRepository;
+import pl.db.plan.scanner.repositories.PersonRepository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PlanVerdictTest {
+
+    private static final String PERSON_SEQ_SCAN = """
+            [{"Plan": {"Node Type": "Seq Scan", "Relation Name": "person", "Alias": "p1_0", "Startup Cost": 0.0,
+              "Total Cost": 21.5, "Plan Rows": 40, "Plan Width": 40, "Filter": "((name)::text = $1)"}}]
+            """;
+
+    private final ExecutionPlanAnalyzer analyzer = new ExecutionPlanAnalyzer();
+
+    @Test
+    void shouldAllowFullScanOfBatchQuery() throws NoSuchMethodException {
+        var budget = ActivityLogRepository.class.getMethod("findRecentLogs", LocalDateTime.class).getAnnotation(PlanBudget.class);
+        var plan = analyzer.analyze("select ...", ExecutionPlanAnalyzerTest.JOIN_PLAN);
+
+        var verdict = PlanVerdict.of("ActivityLogRepository.findRecentLogs", budget, plan);
+
+        assertTrue(verdict.passed(), verdict::toString);
+        assertEquals("PASSED ActivityLogRepository.findRecentLogs: cost 2040.75, estimated rows 5000.0", verdict.toString());
+    }
+
+    @Test
+    void shouldReportEveryViolationOfLookup() throws NoSuchMethodException {
+        var budget = PersonRepository.class.getMethod("findByName", String.class).getAnnotation(PlanBudget.class);
+        var plan = analyzer.analyze("select ...", PERSON_SEQ_SCAN.replace("21.5", "210.5"));
+
+        var verdict = PlanVerdict.of("PersonRepository.findByName", budget, plan);
+
+        assertFalse(verdict.passed());
+        assertEquals(List.of("cost 210.5 exceeds 100.0", "estimated rows 40.0 exceed 10.0", "sequential scan of person is not allowed"),
+                verdict.violations());
+        assertEquals("FAILED PersonRepository.findByName: cost 210.5 exceeds 100.0, estimated rows 40.0 exceed 10.0, "
+                + "sequential scan of person is not allowed", verdict.toString());
+    }
+
+    @Test
+    void shouldPassMethodsWithoutBudget() {
+        var verdict = PlanVerdict.of("PersonRepository.findAll", null, analyzer.analyze("select ...", PERSON_SEQ_SCAN));
+
+        assertTrue(verdict.passed());
+        assertEquals("NO BUDGET PersonRepository.findAll: cost 21.5", verdict.toString());
+    }
+}
@@ -0,0 +1,131 @@
+package pl.db.plan.scanner.analyzer;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class StreamingPlanReaderTest {
+
+    private static final String BUFFERS_PLAN = """
+            [{"Plan": {"Node Type": "Nested Loop", "Join Type": "Inner", "Startup Cost": 0.29, "Total Cost": 2100.5,
+              "Plan Rows": 10, "Plan Width": 40, "Actual Startup Time": 0.05, "Actual Total Time": 12.5,
+              "Actual Rows": 12, "Actual Loops": 1, "Shared Hit Blocks": 60, "Shared Read Blocks": 900,
+              "Shared Dirtied Blocks": 0, "Shared Written Blocks": 0, "Local Hit Blocks": 0, "Local Read Blocks": 0,
+              "Temp Read Blocks": 0, "Temp Written Blocks": 0,
+              "Plans": [
+                {"Node Type": "Seq Scan", "Relation Name": "activity_log", "Alias": "al1_0", "Startup Cost": 0.0,
+                 "Total Cost": 2000.0, "Plan Rows": 10, "Plan Width": 32, "Actual Startup Time": 0.03,
+                 "Actual Total Time": 11.9, "Actual Rows": 12, "Actual Loops": 1, "Shared Hit Blocks": 24,
+                 "Shared Read Blocks": 900, "Shared Dirtied Blocks": 0, "Shared Written Blocks": 0,
+                 "Local Hit Blocks": 0, "Local Read Blocks": 0, "Temp Read Blocks": 0, "Temp Written Blocks": 0},
+                {"Node Type": "Index Scan", "Index Name": "person_pkey", "Relation Name": "person", "Alias": "p1_0",
+                 "Startup Cost": 0.29, "Total Cost": 8.3, "Plan Rows": 1, "Plan Width": 8, "Actual Startup Time": 0.002,
+                 "Actual Total Time": 0.002, "Actual Rows": 1, "Actual Loops": 12, "Shared Hit Blocks": 36,
+                 "Shared Read Blocks": 0, "Shared Dirtied Blocks": 0, "Shared Written Blocks": 0,
+                 "Local Hit Blocks": 0, "Local Read Blocks": 0, "Temp Read Blocks": 0, "Temp Written Blocks": 0}
+              ]},
+              "Planning Time": 0.1, "Execution Time": 12.6}]
+            """;
+
+    private final StreamingPlanReader reader = new StreamingPlanReader();
+    private final ExecutionPlanAnalyzer analyzer = new ExecutionPlanAnalyzer();
+
+    @Test
+    void shouldFindTheSameAsPlanTree() throws IOException {
+        List<String> nodes = new ArrayList<>();
+        var summary = reader.read("select ...", new StringReader(ExecutionPlanAnalyzerTest.JOIN_PLAN), Double.POSITIVE_INFINITY,
+                node -> nodes.add(node.toString()));
+
+        assertEquals(List.of("Seq Scan on activity_log al1_0", "Index Scan using person_pkey on person p1_0", "Hash", "Hash Join"), nodes);
+        assertEquals(4, summary.nodes());
+        assertEquals(2, summary.depth());
+        assertEquals("Hash Join", summary.root().nodeType());
+        assertTrue(summary.root().children().isEmpty());
+        assertEquals(true, summary.root().properties().get("Inner Unique"));
+        assertTrue(summary.hasFullScan());
+        assertEquals(
+                analyzer.analyze("select ...", ExecutionPlanAnalyzerTest.JOIN_PLAN).findings().stream().map(Finding::toString).toList(),
+                summary.findings().stream().map(Finding::toString).toList()
+        );
+    }
+
+    @Test
+    void shouldPassOwnBuffersOfNodes() throws IOException {
+        List<PlanNode> nodes = new ArrayList<>();
+        var summary = reader.read("select ...", new StringReader(BUFFERS_PLAN), Double.POSITIVE_INFINITY, nodes::add);
+
+        var nestedLoop = nodes.getLast();
+        assertEquals(0, nestedLoop.buffers().hit());
+        assertEquals(0, nestedLoop.buffers().read());
+        assertEquals(12, nestedLoop.actual().rows());
+        assertEquals(900, nodes.getFirst().buffers().read());
+        assertEquals(
+                analyzer.analyze("select ...", BUFFERS_PLAN).findings().stream().map(Finding::toString).toList(),
+                summary.findings().stream().map(Finding::toString).toList()
+        );
+        assertTrue(summary.has(FindingType.IO_BOUND));
+    }
+
+    @Test
+    void shouldReportPlanOverBudget() throws IOException {
+        var summary = reader.read("select ...", new StringReader(ExecutionPlanAnalyzerTest.JOIN_PLAN), 1000, node -> {
+        });
+
+        assertEquals("OVER_BUDGET: Hash Join, cost 2040.75", summary.findings(FindingType.OVER_BUDGET).getFirst().toString());
+        // budget is checked as soon as root is read, before its children
+        assertEquals(FindingType.OVER_BUDGET, summary.findings().getFirst().type());
+        assertFalse(reader.read("select ...", new StringReader(ExecutionPlanAnalyzerTest.JOIN_PLAN), 5000, node -> {
+        }).has(FindingType.OVER_BUDGET));
+    }
+
+    @Test
+    void shouldReadDeepPlan() throws IOException {
+        int depth = 5_000;
+        StringBuilder json = new StringBuilder("[{\"Plan\": ");
+        for (int i = 0; i < depth; i++) {
+            json.append("{\"Node Type\": \"Nested Loop\", \"Total Cost\": ").append(depth - i).append(", \"Plans\": [");
+        }
+        json.append("{\"Node Type\": \"Seq Scan\", \"Relation Name\": \"person\", \"Total Cost\": 1}");
+        json.append("]}".repeat(depth)).append("}]");
+
+        var summary = reader.read("select ...", new StringReader(json.toString()));
+
+        assertEquals(depth + 1, summary.nodes());
+        assertEquals(depth, summary.depth());
+        assertEquals("Nested Loop", summary.findings().getFirst().join().nodeType());
+    }
+
+    @Test
+    void shouldRejectInvalidPlan() {
+        assertThrows(IllegalArgumentException.class, () -> reader.read("select ...", new StringReader("[{\"Planning Time\": 0.1}]")));
+        assertThrows(IllegalArgumentException.class, () -> reader.read("select ...", new StringReader("[{\"Plan\": {\"Node Type\": \"Seq")));
+        assertThrows(IllegalArgumentException.class, () -> reader.read("select ...", new StringReader("not a plan")));
+    }
+
+    @Test
+    void shouldStreamPlanFromResultSet() throws Exception {
+        var rs = mock(ResultSet.class);
+        when(rs.next()).thenReturn(true);
+        when(rs.getCharacterStream(1)).thenReturn(new StringReader(ExecutionPlanAnalyzerTest.JOIN_PLAN));
+        var stmt = mock(Statement.class);
+        when(stmt.executeQuery("EXPLAIN (FORMAT JSON) select ...")).thenReturn(rs);
+        var connection = mock(Connection.class);
+        when(connection.createStatement()).thenReturn(stmt);
+
+        var summary = analyzer.stream(connection, "select ...", Double.POSITIVE_INFINITY, node -> {
+        });
+
+        assertEquals(4, summary.nodes());
+        verify(rs, never()).getString(1);
+        verify(rs).close();
+    }
+}
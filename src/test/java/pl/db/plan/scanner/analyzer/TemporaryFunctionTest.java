@@ -0,0 +1,81 @@
+package pl.db.plan.scanner.analyzer;
+
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class TemporaryFunctionTest {
+
+    private static final String DEFINITION = "CREATE OR REPLACE FUNCTION pg_temp.plan_scanner_test() ...";
+
+    @Test
+    void shouldCreateFunctionOncePerSession() throws SQLException {
+        var statement = mock(Statement.class);
+        var session = connection(statement, true);
+        var pooled = mock(Connection.class);
+        when(pooled.unwrap(Connection.class)).thenReturn(session);
+        when(pooled.getAutoCommit()).thenReturn(true);
+        when(pooled.createStatement()).thenReturn(statement);
+        var function = new TemporaryFunction(DEFINITION);
+
+        assertEquals("1", function.call(session, () -> "1"));
+        assertEquals("2", function.call(pooled, () -> "2"));
+        assertEquals("3", function.call(session, () -> "3"));
+
+        verify(statement, times(1)).execute(DEFINITION);
+        // another session
+        function.call(connection(statement, true), () -> "4");
+        verify(statement, times(2)).execute(DEFINITION);
+    }
+
+    @Test
+    void shouldNotRememberFunctionCreatedInTransaction() throws SQLException {
+        var statement = mock(Statement.class);
+        var connection = connection(statement, false);
+        var function = new TemporaryFunction(DEFINITION);
+
+        function.call(connection, () -> "1");
+        function.call(connection, () -> "2");
+
+        verify(statement, times(2)).execute(DEFINITION);
+    }
+
+    @Test
+    void shouldCreateDiscardedFunctionAgain() throws SQLException {
+        var statement = mock(Statement.class);
+        var connection = connection(statement, true);
+        var function = new TemporaryFunction(DEFINITION);
+        function.call(connection, () -> "1");
+        var calls = new AtomicInteger();
+
+        String result = function.call(connection, () -> {
+            if (calls.incrementAndGet() == 1) {
+                throw new SQLException("function pg_temp.plan_scanner_test() does not exist", "42883");
+            }
+            return "2";
+        });
+
+        assertEquals("2", result);
+        verify(statement, times(2)).execute(DEFINITION);
+        // other errors are not retried
+        var error = new SQLException("syntax error", "42601");
+        assertSame(error, assertThrows(SQLException.class, () -> function.call(connection, () -> {
+            throw error;
+        })));
+        verify(statement, times(2)).execute(DEFINITION);
+    }
+
+    private static Connection connection(Statement statement, boolean autoCommit) throws SQLException {
+        var connection = mock(Connection.class);
+        when(connection.unwrap(Connection.class)).thenReturn(connection);
+        when(connection.getAutoCommit()).thenReturn(autoCommit);
+        when(connection.createStatement()).thenReturn(statement);
+        return connection;
+    }
+}
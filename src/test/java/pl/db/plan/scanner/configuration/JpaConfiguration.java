@@ -6,7 +6,6 @@ import org.springframework.boot.test.context.TestConfiguration;
 import org.springframework.context.annotation.Bean;
 import pl.db.plan.scanner.generators.EntityGenerator;
 import pl.db.plan.scanner.inspector.SqlCaptureInspector;
-import pl.db.plan.scanner.inspector.helpers.SqlRegexHelper;
 import pl.db.plan.scanner.inspector.helpers.StringHelper;
 
 @TestConfiguration
@@ -20,11 +19,6 @@ public class JpaConfiguration {
         return new EntityGenerator();
     }
 
-    @Bean
-    public SqlRegexHelper sqlRegexHelper() {
-        return new SqlRegexHelper();
-    }
-
     @Bean
     public StringHelper stringHelper() {
         return new StringHelper();
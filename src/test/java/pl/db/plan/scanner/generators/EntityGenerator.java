@@ -8,6 +8,7 @@ import pl.db.plan.scanner.entities.Person;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Random;
 import java.util.random.RandomGenerator;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
@@ -16,7 +17,18 @@ import static org.instancio.Select.field;
 
 public class EntityGenerator {
 
-    private final RandomGenerator randomGenerator = RandomGenerator.getDefault();
+    private final RandomGenerator randomGenerator;
+
+    public EntityGenerator() {
+        this.randomGenerator = RandomGenerator.getDefault();
+    }
+
+    /**
+     * Generator of the same entities on every run, e.g. for plans compared with baselines.
+     */
+    public EntityGenerator(long seed) {
+        this.randomGenerator = new Random(seed);
+    }
 
     public List<Person> createPersons(int numberOfPersons, int maxAddresses, int maxActivities) {
         return IntStream.range(0, numberOfPersons)
@@ -42,7 +54,7 @@ public class EntityGenerator {
                 .generate(field(ActivityLog::getTimestamp), gen -> gen.temporal().localDateTime())
                 .toModel();
 
-        ActivityLog log = Instancio.create(model);
+        ActivityLog log = create(model);
         log.setPerson(person);
         var logs = person.getActivityLogs();
         if (logs == null) {
@@ -63,7 +75,7 @@ public class EntityGenerator {
                 .generate(field(Address::getPostalCode), gen -> gen.text().word())
                 .toModel();
 
-        Address address = Instancio.create(model);
+        Address address = create(model);
         address.setPerson(person);
         List<Address> addresses = person.getAddresses();
         if (addresses == null) {
@@ -83,6 +95,10 @@ public class EntityGenerator {
                 .generate(field(Person::getName), gen -> new NameGenerator())
                 .generate(field(Person::getEmail), gen -> new EmailGenerator())
                 .toModel();
-        return Instancio.create(model);
+        return create(model);
+    }
+
+    private <T> T create(Model<T> model) {
+        return Instancio.of(model).withSeed(randomGenerator.nextLong()).create();
     }
 }
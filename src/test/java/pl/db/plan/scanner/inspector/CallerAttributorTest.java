@@ -0,0 +1,123 @@
+package pl.db.plan.scanner.inspector;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.boot.context.properties.source.MapConfigurationPropertySource;
+import org.springframework.data.repository.Repository;
+import pl.db.plan.scanner.entities.Person;
+
+import java.lang.reflect.Proxy;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CallerAttributorTest {
+
+    interface SampleRepository extends Repository<Person, Long> {
+        Object findByLastName();
+
+        Object findByLastName(String lastName);
+
+        Object countByFirstName();
+    }
+
+    interface NotRepository {
+        Object findByLastName();
+    }
+
+    @Test
+    void shouldAttributeStatementToRepositoryMethod() {
+        var attributor = new CallerAttributor(256, 8, 1024, Duration.ofSeconds(1));
+        var repository = proxy(SampleRepository.class, attributor::attribute);
+
+        assertEquals(method("findByLastName"), repository.findByLastName());
+        assertEquals(method("countByFirstName"), repository.countByFirstName());
+        assertEquals("SampleRepository.findByLastName", repository.findByLastName().toString());
+        // overloaded methods are different callers
+        assertEquals(new RepositoryMethod(SampleRepository.class, "findByLastName", "(Ljava/lang/String;)Ljava/lang/Object;"),
+                repository.findByLastName("Smith"));
+        assertEquals(4, attributor.getAttributedCount());
+    }
+
+    @Test
+    void shouldNotAttributeStatementOutsideRepository() {
+        var attributor = new CallerAttributor(256, 8, 1024, Duration.ofSeconds(1));
+        var other = proxy(NotRepository.class, attributor::attribute);
+
+        assertNull(other.findByLastName());
+        assertNull(attributor.attribute());
+        assertEquals(2, attributor.getUnattributedCount());
+    }
+
+    @Test
+    void shouldSwitchOffWhenBudgetIsExceeded() {
+        var attributor = new CallerAttributor(256, 8, 1024, Duration.ZERO);
+        var repository = proxy(SampleRepository.class, attributor::attribute);
+
+        for (int i = 0; i < CallerAttributor.BUDGET_WINDOW; i++) {
+            repository.findByLastName();
+        }
+
+        assertFalse(attributor.isEnabled());
+        assertNull(repository.findByLastName());
+        assertTrue(attributor.getTotalNanos() > 0);
+    }
+
+    @Test
+    void shouldWalkStackForSampledExecutionsOnly() {
+        var attributor = new CallerAttributor(256, 2, 4, Duration.ofSeconds(1));
+        var repository = proxy(SampleRepository.class, () -> {
+            List<RepositoryMethod> callers = new ArrayList<>();
+            for (int occurrence = 1; occurrence <= 8; occurrence++) {
+                callers.add(attributor.attribute(occurrence));
+            }
+            return callers;
+        });
+
+        var method = method("findByLastName");
+        assertEquals(Arrays.asList(method, method, null, method, null, null, null, method), repository.findByLastName());
+        assertEquals(8, attributor.getStatementCount());
+        assertEquals(4, attributor.getAttributedCount());
+    }
+
+    @Test
+    void shouldAggregateCallersPerFingerprint() {
+        var inspector = new SqlCaptureInspector(SqlCaptureProperties.defaults()
+                .withAttribution(SqlCaptureProperties.Attribution.enabled(Duration.ofSeconds(1))));
+        var repository = proxy(SampleRepository.class, () -> inspector.inspect("select p1_0.id from person p1_0 where p1_0.last_name=?"));
+
+        repository.findByLastName();
+        repository.countByFirstName();
+        repository.findByLastName();
+
+        var fingerprint = inspector.getFingerprints().getFirst();
+        assertEquals(3, fingerprint.getHits());
+        assertEquals(Set.of(
+                method("findByLastName"),
+                method("countByFirstName")
+        ), fingerprint.getCallers());
+    }
+
+    @Test
+    void shouldBeOffByDefaultWhenBoundAndWhenCreated() {
+        var bound = new Binder(new MapConfigurationPropertySource(Map.of()))
+                .bindOrCreate("plan.scanner.capture", SqlCaptureProperties.class);
+
+        assertFalse(bound.attribution().enabled());
+        assertEquals(SqlCaptureProperties.defaults(), bound);
+    }
+
+    private static <T> T proxy(Class<T> type, Supplier<Object> body) {
+        return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, (proxy, method, args) -> body.get()));
+    }
+
+    private static RepositoryMethod method(String name) {
+        return new RepositoryMethod(SampleRepository.class, name, "()Ljava/lang/Object;");
+    }
+}
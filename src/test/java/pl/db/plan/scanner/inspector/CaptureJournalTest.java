@@ -0,0 +1,173 @@
+package pl.db.plan.scanner.inspector;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.*;
+
+class CaptureJournalTest {
+
+    private final StatementSplitter splitter = new StatementSplitter();
+
+    @TempDir
+    private Path directory;
+
+    @Test
+    void shouldReplayCapturedStatements() throws IOException {
+        try (var journal = new CaptureJournal(directory, 4096)) {
+            journal.append(1, splitter.split("/* SELECT p FROM Person p */ select p1_0.id from person p1_0"), 100, "main");
+            journal.append(2, splitter.split("select a1_0.city from address a1_0 where a1_0.city='Kraków'"), 101, "wątek-1");
+            journal.append(1, splitter.split("/* SELECT p FROM Person p */ select p1_0.id from person p1_0"), 102, "main");
+        }
+
+        List<CaptureJournalReader.JournalEntry> entries = new ArrayList<>();
+        new CaptureJournalReader(directory).replay(entries::add);
+
+        assertEquals(3, entries.size());
+        assertEquals(new CaptureJournalReader.JournalEntry(1, "select p1_0.id from person p1_0", "/* SELECT p FROM Person p */", 100, "main"), entries.get(0));
+        assertEquals(new CaptureJournalReader.JournalEntry(2, "select a1_0.city from address a1_0 where a1_0.city='Kraków'", null, 101, "wątek-1"), entries.get(1));
+        assertEquals(102, entries.get(2).timestamp());
+    }
+
+    @Test
+    void shouldSkipRecordsWhichWereNotCommitted() throws IOException {
+        try (var journal = new CaptureJournal(directory, 4096)) {
+            journal.append(1, splitter.split("select p1_0.id from person p1_0"), 100, "main");
+            journal.append(2, splitter.split("select a1_0.id from address a1_0"), 101, "stalled");
+            journal.append(1, splitter.split("select p1_0.id from person p1_0"), 102, "main");
+        }
+        // execution of the stalled writer is left reserved, as it is before commit
+        try (FileChannel channel = FileChannel.open(directory.resolve(CaptureJournal.segmentName(1)), StandardOpenOption.READ,
+                StandardOpenOption.WRITE)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size());
+            int offset = CaptureJournal.SEGMENT_HEADER;
+            for (int record = 0; record < 3; record++) {
+                offset += buffer.getInt(offset);
+            }
+            buffer.putInt(offset, -buffer.getInt(offset));
+            buffer.force();
+        }
+
+        List<CaptureJournalReader.JournalEntry> entries = new ArrayList<>();
+        new CaptureJournalReader(directory).replay(entries::add);
+
+        assertEquals(List.of(100L, 102L), entries.stream().map(CaptureJournalReader.JournalEntry::timestamp).toList());
+    }
+
+    @Test
+    void shouldRollSegmentsWithConcurrentWriters() throws IOException, InterruptedException {
+        int threads = 4;
+        int perThread = 2_000;
+        try (var journal = new CaptureJournal(directory, 16 * 1024)) {
+            ExecutorService executor = Executors.newFixedThreadPool(threads);
+            for (int t = 0; t < threads; t++) {
+                executor.submit(() -> {
+                    for (int i = 0; i < perThread; i++) {
+                        long fingerprint = i % 10;
+                        journal.append(fingerprint, splitter.split("select " + fingerprint + " from person"), i, Thread.currentThread().getName());
+                    }
+                });
+            }
+            executor.shutdown();
+            assertTrue(executor.awaitTermination(30, TimeUnit.SECONDS));
+            assertEquals(0, journal.getLostCount());
+        }
+
+        try (Stream<Path> files = Files.list(directory)) {
+            assertThat(files.count()).isGreaterThan(1);
+        }
+        var fingerprints = new CaptureJournalReader(directory).aggregate();
+        assertEquals(10, fingerprints.size());
+        assertEquals(threads * perThread, fingerprints.stream().mapToLong(QueryFingerprint::getHits).sum());
+    }
+
+    @Test
+    void shouldKeepShapeOfEveryExecutionWhenSegmentsRollUnderContention() throws IOException, InterruptedException {
+        int threads = 8;
+        int statements = 2_000;
+        // shapes much larger than executions, the shape of a new statement often does not fit where its execution would
+        String padding = "x".repeat(700);
+        try (var journal = new CaptureJournal(directory, 8 * 1024)) {
+            CountDownLatch start = new CountDownLatch(1);
+            ExecutorService executor = Executors.newFixedThreadPool(threads);
+            for (int t = 0; t < threads; t++) {
+                executor.submit(() -> {
+                    start.await();
+                    for (int i = 0; i < statements; i++) {
+                        journal.append(i, splitter.split("select '" + padding + "' from person where id=" + i), i, "t");
+                    }
+                    return null;
+                });
+            }
+            start.countDown();
+            executor.shutdown();
+            assertTrue(executor.awaitTermination(30, TimeUnit.SECONDS));
+            assertEquals(0, journal.getLostCount());
+        }
+
+        long[] replayed = {0};
+        new CaptureJournalReader(directory).replay(entry -> replayed[0]++);
+        assertEquals((long) threads * statements, replayed[0]);
+    }
+
+    @Test
+    void shouldRejectSegmentsWhosePositionsDoNotFitIntoInt() {
+        assertThrows(IllegalArgumentException.class, () -> new CaptureJournal(directory, 512));
+        assertThrows(IllegalArgumentException.class, () -> new CaptureJournal(directory, DataSize.ofGigabytes(2).toBytes()));
+        assertThrows(IllegalArgumentException.class, () -> new CaptureJournal(directory, DataSize.ofGigabytes(5).toBytes()));
+    }
+
+    @Test
+    void shouldRememberShapesUntilTableIsFull() {
+        // 16 slots
+        var shapes = new CaptureJournal.ShapeTable(1024);
+        for (long fingerprint = 1; fingerprint <= 16; fingerprint++) {
+            assertFalse(shapes.contains(fingerprint));
+            shapes.add(fingerprint);
+            shapes.add(fingerprint);
+            assertTrue(shapes.contains(fingerprint));
+        }
+
+        // full table, shapes are written again
+        shapes.add(-17);
+        assertFalse(shapes.contains(-17));
+        shapes.add(0);
+        assertFalse(shapes.contains(0));
+        assertFalse(shapes.contains(Long.MIN_VALUE + 1));
+        assertTrue(shapes.contains(16));
+    }
+
+    @Test
+    void shouldWriteJournalFromInspector() throws IOException {
+        var properties = SqlCaptureProperties.defaults().withJournal(directory, DataSize.ofKilobytes(64));
+        try (var inspector = new SqlCaptureInspector(properties)) {
+            inspector.inspect("/* SELECT p FROM Person p WHERE p.id = :id */ select p1_0.id from person p1_0 where p1_0.id=1");
+            inspector.inspect("/* SELECT p FROM Person p WHERE p.id = :id */ select p1_0.id from person p1_0 where p1_0.id=2");
+        }
+        // next journal continues with new segment
+        try (var journal = new CaptureJournal(directory, 4096)) {
+            assertEquals(directory, journal.getDirectory());
+        }
+
+        var fingerprints = new CaptureJournalReader(directory).aggregate();
+        assertEquals(1, fingerprints.size());
+        assertEquals(2, fingerprints.getFirst().getHits());
+        assertEquals("select p1_0.id from person p1_0 where p1_0.id=?", fingerprints.getFirst().getNormalizedSql());
+    }
+}
@@ -0,0 +1,101 @@
+package pl.db.plan.scanner.inspector;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CaptureRingBufferTest {
+
+    @Test
+    void shouldRoundCapacityToPowerOfTwo() {
+        assertEquals(8, new CaptureRingBuffer<String>(5, OverflowPolicy.DROP_NEWEST).capacity());
+        assertEquals(8, new CaptureRingBuffer<String>(8, OverflowPolicy.DROP_NEWEST).capacity());
+        assertThrows(IllegalArgumentException.class, () -> new CaptureRingBuffer<String>(1, OverflowPolicy.DROP_NEWEST));
+        // would be rounded up to 2^31, which overflows
+        assertThrows(IllegalArgumentException.class,
+                () -> new CaptureRingBuffer<String>(CaptureRingBuffer.MAX_CAPACITY + 1, OverflowPolicy.DROP_NEWEST));
+    }
+
+    @Test
+    void shouldDropNewestWhenFull() {
+        var buffer = new CaptureRingBuffer<Integer>(4, OverflowPolicy.DROP_NEWEST);
+        for (int i = 0; i < 6; i++) {
+            buffer.offer(i);
+        }
+        assertEquals(List.of(0, 1, 2, 3), buffer.drain());
+        assertEquals(2, buffer.lostCount());
+        assertNull(buffer.poll());
+    }
+
+    @Test
+    void shouldOverwriteOldestWhenFull() {
+        var buffer = new CaptureRingBuffer<Integer>(4, OverflowPolicy.OVERWRITE_OLDEST);
+        for (int i = 0; i < 6; i++) {
+            assertTrue(buffer.offer(i));
+        }
+        assertEquals(List.of(2, 3, 4, 5), buffer.drain());
+        assertEquals(2, buffer.lostCount());
+    }
+
+    @Test
+    void shouldNotLoseElementsWithConcurrentProducersAndConsumer() throws InterruptedException {
+        int producers = 8;
+        int perProducer = 50_000;
+        var buffer = new CaptureRingBuffer<Integer>(1024, OverflowPolicy.DROP_NEWEST);
+        var start = new CountDownLatch(1);
+        var done = new CountDownLatch(producers);
+        ExecutorService executor = Executors.newFixedThreadPool(producers);
+        for (int p = 0; p < producers; p++) {
+            int offset = p * perProducer;
+            executor.submit(() -> {
+                start.await();
+                for (int i = 0; i < perProducer; i++) {
+                    while (!buffer.offer(offset + i)) {
+                        Thread.onSpinWait();
+                    }
+                }
+                done.countDown();
+                return null;
+            });
+        }
+
+        Set<Integer> received = new HashSet<>();
+        List<Integer> batch = new ArrayList<>();
+        start.countDown();
+        while (done.getCount() > 0 || buffer.size() > 0) {
+            batch.clear();
+            buffer.drain(batch::add);
+            received.addAll(batch);
+        }
+        buffer.drain(received::add);
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+
+        assertEquals(producers * perProducer, received.size());
+    }
+
+    @Test
+    void shouldCaptureIntoRingBuffer() {
+        var inspector = new SqlCaptureInspector(SqlCaptureProperties.defaults().withRingBuffer(2, OverflowPolicy.OVERWRITE_OLDEST));
+        inspector.inspect("/* SELECT p FROM Person p */ select p1_0.id from person p1_0");
+        inspector.inspect("select 1");
+        inspector.inspect("select 2");
+
+        var statements = inspector.drain();
+        assertEquals(2, statements.size());
+        assertEquals("select 1", statements.get(0).sql());
+        assertNull(statements.get(0).jpqlComment());
+        assertEquals(1, inspector.getLostCount());
+        assertTrue(inspector.getNativeSql().isEmpty());
+        assertTrue(inspector.drain().isEmpty());
+    }
+}
@@ -0,0 +1,77 @@
+package pl.db.plan.scanner.inspector;
+
+import org.hibernate.SessionFactory;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.mapping.PropertyReferenceException;
+import pl.db.plan.scanner.entities.ActivityLog;
+import pl.db.plan.scanner.entities.Address;
+import pl.db.plan.scanner.entities.Person;
+import pl.db.plan.scanner.inspector.helpers.OfflineSessionFactory;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DerivedQueryCreatorTest {
+
+    private static SessionFactory sessionFactory;
+    private static DerivedQueryCreator creator;
+
+    @BeforeAll
+    static void buildMetamodel() {
+        sessionFactory = OfflineSessionFactory.create();
+        creator = new DerivedQueryCreator(sessionFactory.getMetamodel());
+    }
+
+    @AfterAll
+    static void close() {
+        sessionFactory.close();
+    }
+
+    @Test
+    void shouldCreateJpqlOfDerivedMethods() {
+        assertJpql("SELECT p FROM Person p WHERE p.email = :email AND p.name = :name",
+                entry(Person.class, "findByEmailAndName", "email", "name"));
+        assertJpql("SELECT COUNT(a) FROM ActivityLog a WHERE a.person.id = :personId AND a.timestamp > :timestamp",
+                entry(ActivityLog.class, "countByPersonIdAndTimestampAfter", "personId", "timestamp"));
+        var top = assertJpql("SELECT a FROM Address a WHERE (UPPER(a.city) = UPPER(:city)) OR (a.street LIKE :street ESCAPE '\\') "
+                        + "ORDER BY a.id DESC",
+                entry(Address.class, "findTop3ByCityIgnoreCaseOrStreetStartingWithOrderByIdDesc", "city", "street"));
+        assertEquals(3, top.maxResults());
+        assertJpql("SELECT DISTINCT p FROM Person p JOIN p.addresses p1 WHERE p1.city IN :cities AND p.email IS NOT NULL",
+                entry(Person.class, "findDistinctByAddressesCityInAndEmailNotNull", "cities"));
+        var exists = assertJpql("SELECT p.id FROM Person p WHERE p.email = :email", entry(Person.class, "existsByEmail", "email"));
+        assertEquals(1, exists.maxResults());
+        // paging is applied by the repository, it is not part of the query
+        var paged = new QueryIndex.Entry(Person.class.getName() + "Repository", "findByName", Person.class.getName(), null,
+                false, false, List.of(new QueryIndex.Parameter("name", "java.lang.String"),
+                new QueryIndex.Parameter("pageable", "org.springframework.data.domain.Pageable")), null);
+        assertJpql("SELECT p FROM Person p WHERE p.name = :name", paged);
+    }
+
+    @Test
+    void shouldRejectInvalidMethods() {
+        assertThrows(PropertyReferenceException.class, () -> creator.derive(entry(Person.class, "findByNickname", "nickname")));
+        assertThrows(IllegalArgumentException.class, () -> creator.derive(entry(Person.class, "findByNameAndEmail", "name")));
+        assertThrows(IllegalArgumentException.class, () -> creator.derive(entry(Person.class, "findByName", "name", "email")));
+        assertThrows(IllegalArgumentException.class, () -> creator.derive(entry(Object.class, "findByName", "name")));
+    }
+
+    private RepositoryQuery assertJpql(String expected, QueryIndex.Entry entry) {
+        var query = creator.derive(entry);
+        assertEquals(expected, query.query());
+        assertEquals(RepositoryQuery.Source.DERIVED, query.source());
+        try (var entityManager = sessionFactory.createEntityManager()) {
+            assertDoesNotThrow(() -> entityManager.createQuery(query.query()), query.query());
+        }
+        return query;
+    }
+
+    private static QueryIndex.Entry entry(Class<?> entity, String method, String... parameters) {
+        return new QueryIndex.Entry(entity.getName() + "Repository", method, entity.getName(), null, false, false,
+                Arrays.stream(parameters).map(name -> new QueryIndex.Parameter(name, "java.lang.Object")).toList(), null);
+    }
+}
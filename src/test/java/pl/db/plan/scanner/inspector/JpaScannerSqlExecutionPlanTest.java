@@ -1,36 +1,36 @@
 package pl.db.plan.scanner.inspector;
 
 import jakarta.persistence.EntityManager;
-import jakarta.persistence.TypedQuery;
-import org.instancio.Instancio;
+import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
-import org.springframework.context.ApplicationContext;
 import org.springframework.context.annotation.Import;
-import org.springframework.data.jpa.repository.JpaRepository;
-import org.springframework.data.jpa.repository.Query;
-import org.springframework.data.repository.query.Param;
-import org.springframework.stereotype.Repository;
 import org.springframework.test.context.DynamicPropertyRegistry;
 import org.springframework.test.context.DynamicPropertySource;
 import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.transaction.TestTransaction;
 import org.testcontainers.containers.PostgreSQLContainer;
 import org.testcontainers.junit.jupiter.Container;
 import org.testcontainers.junit.jupiter.Testcontainers;
+import pl.db.plan.scanner.analyzer.ExecutionPlanAnalyzer;
+import pl.db.plan.scanner.analyzer.ExplainOptions;
+import pl.db.plan.scanner.analyzer.ExplainReport;
+import pl.db.plan.scanner.analyzer.ParallelExplainEngine;
+import pl.db.plan.scanner.analyzer.PlanBaselines;
+import pl.db.plan.scanner.analyzer.PlanBudget;
+import pl.db.plan.scanner.analyzer.PlanVerdict;
 import pl.db.plan.scanner.configuration.JpaConfiguration;
-import pl.db.plan.scanner.inspector.helpers.SqlRegexHelper;
 import pl.db.plan.scanner.inspector.helpers.StringHelper;
+import pl.db.plan.scanner.inspector.records.ExecutionPlanRecord;
 import pl.db.plan.scanner.inspector.records.NativeQueryRecord;
+import pl.db.plan.scanner.repositories.ActivityReports;
+import pl.db.plan.scanner.repositories.PersonSpecifications;
 
-import java.lang.annotation.Annotation;
-import java.lang.reflect.Method;
-import java.lang.reflect.ParameterizedType;
-import java.lang.reflect.Type;
+import java.io.IOException;
+import java.nio.file.Path;
 import java.sql.SQLException;
 import java.util.*;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -45,21 +45,18 @@ import static org.junit.jupiter.api.Assertions.*;
 @Testcontainers
 public class JpaScannerSqlExecutionPlanTest extends AbstractSqlExecutionPlanTest {
 
-    private static final Pattern PARAM_NAME_PATTERN = Pattern.compile(":(\\w+)");
     private static final Integer EXPECTED_NUMBER_OF_ENTITIES = 3;
-    private static final Integer EXPECTED_NUMBER_OF_QUERIES = 7;
+    // declared, derived, named and inherited from JpaRepository, specifications and criteria
+    private static final Integer EXPECTED_NUMBER_OF_QUERIES = 30;
     private static final Integer MAX_PERSONS = 1000;
     private static final Integer MAX_ADDRESSES = 5;
     private static final Integer MAX_ACTIVITIES = 100;
-
-    @Autowired
-    private ApplicationContext context;
-
-    @Autowired
-    private SqlCaptureInspector inspector;
-
-    @Autowired
-    private SqlRegexHelper sqlRegexHelper;
+    private static final Integer EXPLAIN_CONNECTIONS = 4;
+    // resolved by the build, relative to the project when run from an IDE
+    private static final Path PLAN_BASELINES = Path.of(System.getProperty("plan.baselines.file", "src/test/resources/plan-baselines.bin"));
+    // relative, a node may cost up to 50% more than in its baseline
+    private static final double COST_TOLERANCE = 1.5;
+    private static final Set<String> EXPECTED_OVER_BUDGET = Set.of("AddressRepository.findByPersonId", "PersonRepository.findByName");
 
     @Autowired
     private EntityManager entityManager;
@@ -82,24 +79,38 @@ public class JpaScannerSqlExecutionPlanTest extends AbstractSqlExecutionPlanTest
         registry.add("spring.datasource.driver-class-name", () -> "org.postgresql.Driver");
     }
 
+    @AfterEach
+    void deleteData() throws SQLException {
+        deleteCommittedData();
+    }
+
     @Test
-    void shouldFindInvalidExecutionPlan() {
-        var repositories = findRepositories();
-        var jpaQueries = findQueries(repositories);
+    void shouldFindInvalidExecutionPlan() throws InterruptedException {
+        var jpaQueries = findQueries();
         var nativeQueries = translateToNativeSql(jpaQueries);
         insertBulkPersons(MAX_PERSONS, MAX_ADDRESSES, MAX_ACTIVITIES);
+        // statistics of uncommitted rows are not collected, the data is seeded and deleted after the test
+        TestTransaction.flagForCommit();
+        TestTransaction.end();
         assertDoesNotThrow(this::recalculateStatistics);
         assertDoesNotThrow(() -> {
-            var plans = nativeQueries.stream().map(q -> {
+            // placeholders are kept, we check the generic plan, the one prepared statements get in production
+            var sqls = nativeQueries.stream().map(q -> {
                 System.out.println(q);
-                var sql = sqlRegexHelper.replacePlaceholders(q);
-                System.out.println("FIXED SQL: " + sql);
-                try {
-                    return explainPlan(sql);
-                } catch (SQLException ex) {
-                    throw new RuntimeException("Explain plan does not work for sql: " + sql, ex);
-                }
+                return q.query();
             }).toList();
+            var genericPlanAnalyzer = new ExecutionPlanAnalyzer(ExplainOptions.GENERIC_PLAN);
+            var report = new ParallelExplainEngine(dataSource, EXPLAIN_CONNECTIONS, genericPlanAnalyzer).explainAll(sqls);
+            System.out.println(report);
+            report.entries().forEach(entry -> {
+                assertFalse(entry.failed(), () -> "Explain plan does not work for sql: " + entry.sql() + ", " + entry.error());
+                entry.plan().findings().forEach(System.out::println);
+            });
+            comparePlanBaselines(nativeQueries, report);
+            var verdicts = checkPlanBudgets(nativeQueries, report);
+            var plans = report.entries().stream()
+                    .map(entry -> new ExecutionPlanRecord(entry.sql(), entry.plan().hasFullScan(), entry.plan().totalCost()))
+                    .toList();
 
             // Generally you should ensure here that you have no full scan queries and cost is lower than threshold.
             // For this demo app, we've built some simple jpa queries, where execution plan contains and does not
@@ -111,6 +122,11 @@ public class JpaScannerSqlExecutionPlanTest extends AbstractSqlExecutionPlanTest
             //    assertFalse(p.fullScan());
             //    assertThat(p.cost()).as("Expected cost < " + MAX_COST).isLessThanOrEqualTo(MAX_COST);
             //});
+            // Per method, with budgets from @PlanBudget, methods without budget always pass. Demo repositories
+            // declare budgets their plans do not meet, lookups by columns without index, so we know they are checked.
+            var overBudget = verdicts.stream().filter(v -> !v.passed()).map(PlanVerdict::method).collect(Collectors.toSet());
+            assertEquals(EXPECTED_OVER_BUDGET, overBudget, () -> verdicts.stream().map(PlanVerdict::toString)
+                    .collect(Collectors.joining("\n")));
             stringHelper.printTable(plans);
             assertEquals(EXPECTED_NUMBER_OF_QUERIES, plans.size());
         });
@@ -118,114 +134,89 @@ public class JpaScannerSqlExecutionPlanTest extends AbstractSqlExecutionPlanTest
         assertNotNull(nativeQueries);
     }
 
-    private Set<String> findRepositories() {
-        Map<String, Object> repos = context.getBeansWithAnnotation(Repository.class);
-        var repositories = repos.values().stream().map(o -> {
-            Class<?>[] interfaces = o.getClass().getInterfaces();
-            for (Class<?> jpaRepository : interfaces) {
-                if (JpaRepository.class.isAssignableFrom(jpaRepository)) {
-                    return jpaRepository.getName();
+    /**
+     * Fails on plans which differ from accepted plans and on queries without accepted plan. Current plans are
+     * accepted only with {@code -Pplan.baselines.update=true}, the baseline file is committed with them.
+     */
+    private void comparePlanBaselines(List<NativeQueryRecord> nativeQueries, ExplainReport report) throws IOException {
+        var baselines = PlanBaselines.load(PLAN_BASELINES);
+        boolean update = Boolean.getBoolean("plan.baselines.update");
+        List<String> problems = new ArrayList<>();
+        for (int i = 0; i < nativeQueries.size(); i++) {
+            String method = nativeQueries.get(i).method();
+            var plan = report.entries().get(i).plan();
+            var diff = baselines.diff(method, plan, COST_TOLERANCE);
+            if (diff == null || diff.changed()) {
+                problems.add(diff == null ? method + ": no baseline" : diff.toString());
+                if (update) {
+                    baselines.put(method, plan);
                 }
             }
-            return null;
-        }).filter(Objects::nonNull).collect(Collectors.toSet());
-        assertNotNull(repositories);
-        assertEquals(EXPECTED_NUMBER_OF_ENTITIES, repositories.size());
-        return repositories;
+        }
+        problems.forEach(System.out::println);
+        if (update) {
+            if (!problems.isEmpty()) {
+                baselines.save(PLAN_BASELINES);
+            }
+        } else {
+            assertTrue(problems.isEmpty(), () -> "Plans differ from " + PLAN_BASELINES + ", accept them with "
+                    + "-Pplan.baselines.update=true:\n" + String.join("\n", problems));
+        }
     }
 
-    private Map<Class<?>, List<Method>> findQueries(Set<String> classes) {
-        Map<Class<?>, List<Method>> queries = new HashMap<>();
-        classes.forEach(c -> {
-            try {
-                Class<?> repoClass = Class.forName(c);
-                ParameterizedType genericInterface = (ParameterizedType) repoClass.getGenericInterfaces()[0];
-                Type entity = genericInterface.getActualTypeArguments()[0];
-                String entityName = entity.getTypeName();
-                Class<?> entityClass = Class.forName(entityName);
-
-                for (Method method : repoClass.getDeclaredMethods()) {
-                    Query queryAnnotation = method.getAnnotation(Query.class);
-                    if (queryAnnotation != null) {
-                        var elements = queries.getOrDefault(entityClass, new ArrayList<>());
-                        elements.add(method);
-                        queries.put(entityClass, elements);
-                    }
-                }
-            } catch (ClassNotFoundException e) {
-                throw new RuntimeException(e);
-            }
-        });
-        assertNotNull(queries);
+    /**
+     * Checks plans of methods against their {@link PlanBudget}, methods without budget get a verdict too.
+     */
+    private List<PlanVerdict> checkPlanBudgets(List<NativeQueryRecord> nativeQueries, ExplainReport report) {
+        List<PlanVerdict> verdicts = new ArrayList<>();
+        for (int i = 0; i < nativeQueries.size(); i++) {
+            var query = nativeQueries.get(i);
+            verdicts.add(PlanVerdict.of(query.method(), query.budget(), report.entries().get(i).plan()));
+        }
+        verdicts.forEach(System.out::println);
+        return verdicts;
+    }
+
+    /**
+     * Methods come from the index written at compile time by {@code QueryIndexProcessor}, no repository beans
+     * or reflection over their proxies are needed. Methods without {@code @Query} use named queries or are derived
+     * from their names. Specifications and criteria queries are created by their static factory methods.
+     */
+    private Map<Class<?>, List<RepositoryQuery>> findQueries() {
+        var index = QueryIndex.load();
+        var sources = new QuerySources(entityManager.getEntityManagerFactory());
+        List<RepositoryQuery> all = new ArrayList<>(sources.queries(index));
+        assertEquals(Map.of(), sources.skipped(index), "We parse all derived methods");
+        all.addAll(sources.specifications(PersonSpecifications.class));
+        all.addAll(sources.criteria(ActivityReports.class));
+        Map<Class<?>, List<RepositoryQuery>> queries = new HashMap<>();
+        all.forEach(query -> queries.computeIfAbsent(type(query.entity()), entity -> new ArrayList<>()).add(query));
         assertEquals(EXPECTED_NUMBER_OF_ENTITIES, queries.size(), "We have 3 database entities");
-        assertEquals(EXPECTED_NUMBER_OF_QUERIES, queries.values().stream().mapToInt(List::size).sum(), "We have 7 jpa queries");
+        assertEquals(EXPECTED_NUMBER_OF_QUERIES, queries.values().stream().mapToInt(List::size).sum(), "We have 30 queries");
         return queries;
     }
 
-    private List<NativeQueryRecord> translateToNativeSql(Map<Class<?>, List<Method>> jpaQueries) {
-        List<List<NativeQueryRecord>> capturedSql = jpaQueries.entrySet().stream()
-            .map(e -> {
-                var clazz = e.getKey();
-                var methods = e.getValue();
-                return methods.stream().map(m -> runQuery(m, clazz)).toList();
-            }).toList();
-
-        List<NativeQueryRecord> flatList = capturedSql.stream().flatMap(List::stream).toList();
+    /**
+     * Queries are translated by Hibernate all at once, without being executed, modifying queries change no data.
+     * The generic plan needs no values of parameters.
+     */
+    private List<NativeQueryRecord> translateToNativeSql(Map<Class<?>, List<RepositoryQuery>> jpaQueries) throws InterruptedException {
+        var queries = jpaQueries.values().stream().flatMap(List::stream).toList();
+        var translations = new SqlTranslator(entityManager.getEntityManagerFactory()).translateAll(queries);
+
+        List<NativeQueryRecord> flatList = translations.stream().map(translation -> {
+            assertFalse(translation.failed(), translation::toString);
+            return new NativeQueryRecord(translation.query().key(), translation.sql(), Map.of(), translation.query().budget());
+        }).toList();
         assertEquals(EXPECTED_NUMBER_OF_QUERIES, flatList.size(), "We found all queries");
         return flatList;
     }
 
-    private <T> NativeQueryRecord runQuery(Method method, Class<T> clazz) {
-        inspector.clear();
-
-        // retrieve jpql query from method
-        Query queryAnnotation = method.getAnnotation(Query.class);
-        String jpql = queryAnnotation.value();
-
-        Map<String, Object> parameterValues = null;
-        // depends on sql command, slightly different approach
-        if (jpql.toLowerCase().startsWith("select")) {
-            TypedQuery<T> query = entityManager.createQuery(jpql, clazz);
-            parameterValues = fillQueryParameters(method, jpql, query);
-            query.getResultList();
-        } else {
-            var query = entityManager.createQuery(jpql);
-            parameterValues = fillQueryParameters(method, jpql, query);
-            query.executeUpdate();
-        }
-
-        List<String> capturedSql = inspector.getNativeSql();
-        assertEquals(1, capturedSql.size());
-        return new NativeQueryRecord(capturedSql.getFirst(), parameterValues);
-    }
-
-    private Map<String, Object> fillQueryParameters(Method method, String jpql, jakarta.persistence.Query query) {
-        Set<String> paramNames = extractNamedParameters(jpql);
-        Annotation[][] paramAnnotations = method.getParameterAnnotations();
-        Class<?>[] paramTypes = method.getParameterTypes();
-
-        Map<String, Object> values = new HashMap<>();
-        for (int i = 0; i < paramAnnotations.length; i++) {
-            for (Annotation annotation : paramAnnotations[i]) {
-                if (annotation instanceof Param) {
-                    String name = ((Param) annotation).value();
-                    if (paramNames.contains(name)) {
-                        Object value = Instancio.of(paramTypes[i]).create();
-                        values.put(name, value);
-                    }
-                }
-            }
-        }
-        values.forEach(query::setParameter);
-        return values;
-    }
-
-    private Set<String> extractNamedParameters(String jpql) {
-        Matcher matcher = PARAM_NAME_PATTERN.matcher(jpql);
-        Set<String> params = new HashSet<>();
-        while (matcher.find()) {
-            params.add(matcher.group(1));
+    private static Class<?> type(String name) {
+        try {
+            return Class.forName(name);
+        } catch (ClassNotFoundException e) {
+            throw new IllegalStateException(e);
         }
-        return params;
     }
 }
@@ -0,0 +1,104 @@
+package pl.db.plan.scanner.inspector;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class QueryFingerprinterTest {
+
+    private final QueryFingerprinter fingerprinter = new QueryFingerprinter();
+
+    @Test
+    void shouldReplaceLiteralsAndPlaceholders() {
+        assertEquals(
+            "select al1_0.id from activity_log al1_0 where al1_0.person_id=? and al1_0.action=?",
+            fingerprinter.normalize("select al1_0.id from activity_log al1_0 where al1_0.person_id = 4975 and al1_0.action = 'it''s'")
+        );
+        assertEquals(
+            "select p.id from person p where p.name=? and p.id>?",
+            fingerprinter.normalize("SELECT p.id FROM person p WHERE p.name = $1 AND p.id > ?")
+        );
+        assertEquals("select ?", fingerprinter.normalize("select 12.5e3"));
+    }
+
+    @Test
+    void shouldCollapseWhitespaceAndComments() {
+        assertEquals(
+            "select p1_0.id,p1_0.name from person p1_0 where p1_0.name=?",
+            fingerprinter.normalize("/* SELECT p FROM Person p */\n  select\n    p1_0.id,\n    p1_0.name\n  from person p1_0 -- comment\n  where p1_0.name=?  ")
+        );
+    }
+
+    @Test
+    void shouldCollapseInLists() {
+        String expected = "select a.id from address a where a.person_id in(?) and a.city=?";
+        assertEquals(expected, fingerprinter.normalize("select a.id from address a where a.person_id in (?) and a.city = ?"));
+        assertEquals(expected, fingerprinter.normalize("select a.id from address a where a.person_id IN (1, 2, 3) and a.city = 'Roma'"));
+        assertEquals(
+            "select a.id from address a where a.person_id in(select p.id from person p where p.id in(?))",
+            fingerprinter.normalize("select a.id from address a where a.person_id in (select p.id from person p where p.id in (?, ?))")
+        );
+        assertEquals("select coalesce(a.city,?,?) from address a", fingerprinter.normalize("select coalesce(a.city, 'x', 'y') from address a"));
+    }
+
+    @Test
+    void shouldKeepQuotedIdentifiers() {
+        assertEquals("select \"Person\".\"Name\" from \"Person\"", fingerprinter.normalize("SELECT \"Person\".\"Name\" FROM \"Person\""));
+    }
+
+    @Test
+    void shouldGiveSameFingerprintForSameShape() {
+        long first = fingerprinter.fingerprint("select * from person where id in (1, 2) and name = 'John'");
+        long second = fingerprinter.fingerprint("select *\nfrom person\nwhere id in (7) and name='Kate'");
+        long other = fingerprinter.fingerprint("select * from person where id in (1, 2) and email = 'John'");
+        assertEquals(first, second);
+        assertNotEquals(first, other);
+
+        String sql = "xx select * from person where id = 1 yy";
+        assertEquals(fingerprinter.fingerprint("select * from person where id = 2"), fingerprinter.fingerprint(sql, 3, sql.length() - 3));
+    }
+
+    @Test
+    void shouldAggregateStatementsByFingerprint() {
+        var inspector = new SqlCaptureInspector(SqlCaptureProperties.defaults().withFingerprinting(true, 2));
+        inspector.inspect("/* SELECT p FROM Person p WHERE p.id = :id */ select p1_0.id from person p1_0 where p1_0.id=1");
+        inspector.inspect("select p1_0.id from person p1_0 where p1_0.id=2");
+        inspector.inspect("select p1_0.id from person p1_0 where p1_0.id=3");
+        inspector.inspect("select 1");
+        inspector.inspect("select a.id from address a");
+
+        var fingerprints = inspector.getFingerprints();
+        assertEquals(2, fingerprints.size());
+        var top = fingerprints.getFirst();
+        assertEquals(3, top.getHits());
+        assertEquals("select p1_0.id from person p1_0 where p1_0.id=?", top.getNormalizedSql());
+        assertEquals("select p1_0.id from person p1_0 where p1_0.id=1", top.getSampleSql());
+        assertEquals("/* SELECT p FROM Person p WHERE p.id = :id */", top.getJpqlComment());
+        assertEquals(1, inspector.getUntrackedFingerprintCount());
+        assertEquals(5, inspector.getNativeSql().size());
+    }
+
+    @Test
+    void shouldNotAggregateStatementsOfOtherShapeWithTheSameFingerprint() {
+        var inspector = new SqlCaptureInspector(SqlCaptureProperties.defaults().withFingerprinting(true, 10));
+        inspector.inspect("select p1_0.id from person p1_0 where p1_0.id=1");
+        long id = inspector.getFingerprints().getFirst().getId();
+        var splitter = new StatementSplitter();
+
+        // the same shape with another literal, and a colliding statement of another shape
+        assertNotNull(inspector.aggregate(id, splitter.split("select p1_0.id from person p1_0 where p1_0.id=2")));
+        assertNull(inspector.aggregate(id, splitter.split("select a.id from address a")));
+
+        assertEquals(2, inspector.getFingerprint(id).getHits());
+        assertEquals(1, inspector.getFingerprintCollisionCount());
+        assertTrue(fingerprinter.matches("x select p.id from person p where p.id in (1, 2) x", 2, 48,
+                "select p.id from person p where p.id in(?)"));
+        assertFalse(fingerprinter.matches("select p.id from person p", 0, 25, "select p.id from person"));
+        assertFalse(fingerprinter.matches("select p.id from person", 0, 23, "select p.id from person p"));
+    }
+}
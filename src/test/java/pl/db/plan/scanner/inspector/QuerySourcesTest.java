@@ -0,0 +1,149 @@
+package pl.db.plan.scanner.inspector;
+
+import org.hibernate.SessionFactory;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import pl.db.plan.scanner.entities.ActivityLog;
+import pl.db.plan.scanner.entities.Address;
+import pl.db.plan.scanner.entities.Person;
+import pl.db.plan.scanner.inspector.helpers.OfflineSessionFactory;
+import pl.db.plan.scanner.repositories.ActivityReports;
+import pl.db.plan.scanner.repositories.PersonSpecifications;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class QuerySourcesTest {
+
+    private static SessionFactory sessionFactory;
+    private static QuerySources sources;
+
+    @BeforeAll
+    static void buildMetamodel() {
+        sessionFactory = OfflineSessionFactory.create();
+        sources = new QuerySources(sessionFactory);
+    }
+
+    @AfterAll
+    static void close() {
+        sessionFactory.close();
+    }
+
+    @Test
+    void shouldListQueriesOfAllRepositoryMethods() {
+        var index = QueryIndex.load();
+        var queries = sources.queries(index);
+
+        assertEquals(Map.of(), sources.skipped(index));
+        // declared, derived and named methods, five inherited finders of every repository and unbound named query
+        assertEquals(8 + 2 + 1 + 3 * 5 + 1, queries.size());
+        var byKey = queries.stream().collect(Collectors.toMap(RepositoryQuery::key, Function.identity()));
+        assertEquals("SELECT p FROM Person p WHERE p.email = :email AND p.name = :name",
+                byKey.get("PersonRepository.findByEmailAndName").query());
+        assertEquals("SELECT a FROM ActivityLog a WHERE a.id = :id", byKey.get("ActivityLogRepository.findById").query());
+        assertEquals("SELECT COUNT(a) FROM Address a", byKey.get("AddressRepository.count").query());
+        // named query is used instead of deriving the method
+        var named = byKey.get("AddressRepository.findByPostalCodePrefix");
+        assertEquals(RepositoryQuery.Source.NAMED, named.source());
+        assertEquals("SELECT a FROM Address a WHERE a.postalCode LIKE CONCAT(:prefix, '%')", named.query());
+        assertEquals(List.of(new QueryIndex.Parameter("prefix", "java.lang.String")), named.parameters());
+        var unbound = byKey.get("Person.withoutAddresses");
+        assertEquals(Person.class.getName(), unbound.entity());
+        assertTrue(unbound.parameters().isEmpty());
+        assertTrue(byKey.get("ActivityLogRepository.countActionsSince").nativeQuery());
+        assertEquals(List.of(8L, 2L, 15L, 2L, 0L, 0L), Stream.of(RepositoryQuery.Source.values())
+                .map(source -> queries.stream().filter(query -> query.source() == source).count()).toList());
+        try (var entityManager = sessionFactory.createEntityManager()) {
+            queries.stream().filter(query -> !query.nativeQuery())
+                    .forEach(query -> assertDoesNotThrow(() -> entityManager.createQuery(query.query()), query::key));
+        }
+    }
+
+    @Test
+    void shouldReportMethodsWhichAreNotDerivedQueries() {
+        var index = new QueryIndex(List.of(new QueryIndex.Entry(Address.class.getName() + "Repository", "recalculateDistances",
+                Address.class.getName(), null, false, false, List.of(), null)));
+
+        var queries = sources.queries(index);
+
+        assertTrue(queries.stream().noneMatch(query -> query.method().equals("recalculateDistances")));
+        assertEquals(Set.of("AddressRepository.recalculateDistances"), sources.skipped(index).keySet());
+    }
+
+    @Test
+    void shouldListNamedQueriesOfEntities() {
+        assertEquals(List.of("Address.findByPostalCodePrefix", "Person.withoutAddresses"), sources.namedQueries().stream()
+                .map(RepositoryQuery::key).toList());
+    }
+
+    @Test
+    void shouldCreateQueriesOfSpecifications() {
+        var queries = sources.specifications(PersonSpecifications.class);
+
+        assertEquals(List.of("hasEmailDomain", "livesIn"), queries.stream().map(RepositoryQuery::method).toList());
+        var livesIn = queries.getLast();
+        assertEquals(RepositoryQuery.Source.SPECIFICATION, livesIn.source());
+        assertEquals(Person.class.getName(), livesIn.entity());
+        assertNull(livesIn.query());
+        assertEquals(List.of(new QueryIndex.Parameter("city", "java.lang.String")), livesIn.parameters());
+        assertTrue(livesIn.criteria().isDistinct());
+        assertEquals(Person.class, livesIn.criteria().getResultType());
+        try (var entityManager = sessionFactory.createEntityManager()) {
+            queries.forEach(query -> assertDoesNotThrow(() -> entityManager.createQuery(query.criteria()), query::key));
+        }
+    }
+
+    @Test
+    void shouldCreateQueriesOfCriteria() {
+        var queries = sources.criteria(ActivityReports.class);
+
+        assertEquals(1, queries.size());
+        var query = queries.getFirst();
+        assertEquals("ActivityReports.actionsPerPerson", query.key());
+        assertEquals(RepositoryQuery.Source.CRITERIA, query.source());
+        assertEquals(ActivityLog.class.getName(), query.entity());
+        assertEquals(List.of(new QueryIndex.Parameter("since", LocalDateTime.class.getName())), query.parameters());
+        try (var entityManager = sessionFactory.createEntityManager()) {
+            assertDoesNotThrow(() -> entityManager.createQuery(query.criteria()));
+        }
+    }
+
+    @Test
+    void shouldPassNativeQueriesWithJdbcPlaceholders() {
+        assertEquals("SELECT * FROM address a WHERE a.city = ? AND a.id IN (?) AND a.street = ?",
+                nativeQuery("SELECT * FROM address a WHERE a.city = :city AND a.id IN (:ids) AND a.street = ?1").jdbcSql());
+        // casts, literals, quoted identifiers and comments are not parameters
+        assertEquals("SELECT ?::date, ':day', \"a:b\" FROM t -- :comment\nWHERE x = ? /* :y */",
+                nativeQuery("SELECT :day::date, ':day', \"a:b\" FROM t -- :comment\nWHERE x = :x /* :y */").jdbcSql());
+        assertThrows(IllegalStateException.class, () -> new RepositoryQuery(Address.class.getName(), "count",
+                RepositoryQuery.Source.INHERITED, Address.class.getName(), "SELECT COUNT(a) FROM Address a", false, false,
+                List.of(), null, null, null).jdbcSql());
+    }
+
+    @Test
+    void shouldCreatePlaceholderArguments() {
+        assertEquals(0, QuerySources.placeholder(int.class));
+        assertEquals(0L, QuerySources.placeholder(Long.class));
+        assertEquals(false, QuerySources.placeholder(boolean.class));
+        assertEquals("", QuerySources.placeholder(String.class));
+        assertEquals(TimeUnit.NANOSECONDS, QuerySources.placeholder(TimeUnit.class));
+        assertEquals(List.of(), QuerySources.placeholder(Iterable.class));
+        assertEquals(Set.of(), QuerySources.placeholder(Set.class));
+        assertInstanceOf(LocalDateTime.class, QuerySources.placeholder(LocalDateTime.class));
+        assertNull(QuerySources.placeholder(Person.class));
+    }
+
+    private static RepositoryQuery nativeQuery(String sql) {
+        return new RepositoryQuery(Address.class.getName() + "Repository", "find", RepositoryQuery.Source.DECLARED,
+                Address.class.getName(), sql, true, false, List.of(), null, null, null);
+    }
+}
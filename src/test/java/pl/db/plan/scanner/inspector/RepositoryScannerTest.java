@@ -0,0 +1,273 @@
+package pl.db.plan.scanner.inspector;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import pl.db.plan.scanner.processor.QueryIndexProcessor;
+import pl.db.plan.scanner.repositories.PersonRepository;
+
+import javax.tools.ToolProvider;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URISyntaxException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RepositoryScannerTest {
+
+    private static final String BASE_REPOSITORY = """
+            package shop.common;
+
+            import org.springframework.data.jpa.repository.JpaRepository;
+            import org.springframework.data.jpa.repository.Query;
+            import org.springframework.data.repository.NoRepositoryBean;
+
+            import java.util.List;
+
+            @NoRepositoryBean
+            public interface BaseRepository<I, E extends Comparable<E>> extends Auditable, JpaRepository<E, I> {
+
+                @Query("SELECT e FROM #{#entityName} e WHERE e.deleted = false")
+                List<E> findActive();
+            }
+            """;
+    private static final String AUDITABLE = """
+            package shop.common;
+
+            public interface Auditable {
+                String auditor();
+            }
+            """;
+    private static final String ORDER_REPOSITORY = """
+            package shop;
+
+            import org.springframework.data.jpa.repository.Modifying;
+            import org.springframework.data.jpa.repository.Query;
+            import org.springframework.data.repository.query.Param;
+            import pl.db.plan.scanner.analyzer.PlanBudget;
+            import shop.common.BaseRepository;
+
+            import java.util.List;
+
+            public interface OrderRepository extends BaseRepository<Long, OrderRepository.Order> {
+
+                String BY_STATUS = "SELECT o FROM Order o WHERE o.status = :status";
+
+                @Query(BY_STATUS + " ORDER BY o.id")
+                List<Order> findByStatus(@Param("status") String status);
+
+                @PlanBudget(maxCost = 50, allowedSeqScans = {"orders", "order_lines"}, maxRows = 100)
+                @Query(value = "SELECT * FROM orders WHERE id = ANY(:ids)", nativeQuery = true)
+                List<Order> findByIds(@Param("ids") long[] ids);
+
+                @Modifying
+                @Query("DELETE FROM Order o WHERE o.id = :id")
+                int deleteOrder(@Param("id") long id);
+
+                List<Order> findByCustomerIdAndStatus(Long customerId, String status);
+
+                default List<Order> findOpen() {
+                    return findByStatus("OPEN");
+                }
+
+                record Order(Long id) implements Comparable<Order> {
+                    public int compareTo(Order other) {
+                        return id.compareTo(other.id);
+                    }
+                }
+            }
+            """;
+
+    private static final String CATALOG = """
+            package shop;
+
+            import org.springframework.data.jpa.repository.JpaRepository;
+            import org.springframework.data.jpa.repository.Query;
+            import org.springframework.data.repository.query.Param;
+
+            import java.util.List;
+
+            public class Catalog {
+
+                public record Product(Long id, String name) {
+                }
+
+                public interface ProductRepository extends JpaRepository<Product, Long> {
+
+                    @Query("SELECT p FROM Product p WHERE p.id > :id")
+                    List<Product> findAfter(@Param("id") long id);
+
+                    List<Product> findByName(String name);
+                }
+
+                static class Admin {
+
+                    interface AuditRepository extends JpaRepository<Product, Long> {
+                        long countByName(String name);
+                    }
+                }
+            }
+            """;
+
+    private static final Pattern PUBLIC_TYPE = Pattern.compile("public (?:interface|class) (\\w+)");
+
+    private final RepositoryScanner scanner = new RepositoryScanner();
+
+    @Test
+    void shouldFindRepositoriesInJarWithoutLoadingThem(@TempDir Path directory) throws IOException {
+        Path classes = compile(directory, BASE_REPOSITORY, AUDITABLE, ORDER_REPOSITORY);
+        Path jar = jar(classes, directory.resolve("shop.jar"));
+
+        var index = scanner.scan(List.of(jar, directory.resolve("missing.jar")));
+
+        assertEquals(List.of("OrderRepository.deleteOrder", "OrderRepository.findByCustomerIdAndStatus",
+                        "OrderRepository.findByIds", "OrderRepository.findByStatus", "BaseRepository.findActive"),
+                index.entries().stream().map(QueryIndex.Entry::key).toList());
+        var delete = index.entries().getFirst();
+        // domain type is resolved through type variables of the generic supertype
+        assertEquals("shop.OrderRepository$Order", delete.entity());
+        assertTrue(delete.modifying());
+        assertEquals(List.of(new QueryIndex.Parameter("id", "long")), delete.parameters());
+        var derived = index.entries().get(1);
+        assertNull(derived.query());
+        // compiled without -parameters
+        assertEquals(List.of(new QueryIndex.Parameter("arg0", "java.lang.Long"), new QueryIndex.Parameter("arg1", "java.lang.String")),
+                derived.parameters());
+        var nativeQuery = index.entries().get(2);
+        assertTrue(nativeQuery.nativeQuery());
+        assertEquals(List.of(new QueryIndex.Parameter("ids", "long[]")), nativeQuery.parameters());
+        assertEquals(QueryIndex.budget(Map.of("maxCost", 50.0, "allowedSeqScans", new String[]{"orders", "order_lines"},
+                "maxRows", 100.0)), nativeQuery.budget());
+        assertNull(delete.budget());
+        assertEquals("SELECT o FROM Order o WHERE o.status = :status ORDER BY o.id", index.entries().get(3).query());
+        // generic repository itself has unknown domain type
+        assertEquals("java.lang.Object", index.entries().getLast().entity());
+    }
+
+    @Test
+    void shouldFindTheSameMethodsAsQueryIndexProcessor() throws URISyntaxException {
+        Path classes = Path.of(PersonRepository.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+
+        assertEquals(QueryIndex.load().entries(), scanner.scan(List.of(classes)).entries());
+    }
+
+    @Test
+    void shouldFindTheSameNestedRepositoriesAsQueryIndexProcessor(@TempDir Path directory) throws IOException {
+        Path classes = compile(directory, List.of("-processor", QueryIndexProcessor.class.getName(), "-parameters"), CATALOG);
+        QueryIndex processed;
+        try (var reader = Files.newBufferedReader(classes.resolve(QueryIndex.INDEX))) {
+            processed = QueryIndex.read(reader);
+        }
+
+        var scanned = scanner.scan(List.of(classes));
+
+        assertEquals(List.of("Catalog$Admin$AuditRepository.countByName", "Catalog$ProductRepository.findAfter",
+                        "Catalog$ProductRepository.findByName"),
+                processed.entries().stream().map(QueryIndex.Entry::key).toList());
+        assertEquals("shop.Catalog$Product", processed.entries().getFirst().entity());
+        assertEquals(processed.entries(), scanned.entries());
+    }
+
+    @Test
+    void shouldScanWholeClassPath() {
+        long start = System.nanoTime();
+        var index = scanner.scan(RepositoryScanner.classPath());
+        long millis = (System.nanoTime() - start) / 1_000_000;
+
+        // test classes have repositories too
+        var application = index.entries().stream()
+                .filter(entry -> entry.repository().startsWith(PersonRepository.class.getPackageName())).toList();
+        assertEquals(QueryIndex.load().entries(), application);
+        // tens of thousands of classes of all dependencies
+        assertTrue(millis < 5000, () -> "Class path scanned in " + millis + " ms");
+    }
+
+    @Test
+    void shouldReadWholeClassFilesOfInterfacesWithSuperinterfacesOnly() throws IOException {
+        byte[] repository = classFile(PersonRepository.class);
+
+        assertArrayEquals(repository, RepositoryScanner.ClassFileHeader.interfaceBytes(new ByteArrayInputStream(repository), repository.length));
+        // size of class files in directories is not known, streams return a few bytes at a time
+        assertArrayEquals(repository, RepositoryScanner.ClassFileHeader.interfaceBytes(trickle(repository), -1));
+        assertNull(RepositoryScanner.ClassFileHeader.interfaceBytes(trickle(classFile(RepositoryScanner.class)), -1));
+        assertNull(RepositoryScanner.ClassFileHeader.interfaceBytes(trickle(classFile(FingerprintListener.class)), -1));
+        assertNull(RepositoryScanner.ClassFileHeader.interfaceBytes(trickle(classFile(Test.class)), -1));
+        assertNull(RepositoryScanner.ClassFileHeader.interfaceBytes(new ByteArrayInputStream(Arrays.copyOf(repository, 200)), -1));
+        assertNull(RepositoryScanner.ClassFileHeader.interfaceBytes(new ByteArrayInputStream(new byte[]{1, 2, 3}), 3));
+    }
+
+    @Test
+    void shouldParseGenericSignatures() {
+        var signature = new RepositoryScanner.ClassSignature(
+                "<I:Ljava/lang/Object;E::Ljava/lang/Comparable<TE;>;>Ljava/lang/Object;Lshop/Auditable;"
+                        + "Lshop/Outer<[I>.Inner<*>;Lorg/springframework/data/jpa/repository/JpaRepository<TE;TI;>;");
+
+        assertEquals(List.of("I", "E"), signature.typeParameters);
+        assertEquals(List.of(
+                new RepositoryScanner.Supertype("java/lang/Object", List.of()),
+                new RepositoryScanner.Supertype("shop/Auditable", List.of()),
+                new RepositoryScanner.Supertype("shop/Outer$Inner", List.of(new RepositoryScanner.TypeArgument(null, false))),
+                new RepositoryScanner.Supertype("org/springframework/data/jpa/repository/JpaRepository", List.of(
+                        new RepositoryScanner.TypeArgument("E", true), new RepositoryScanner.TypeArgument("I", true)))
+        ), signature.supertypes);
+    }
+
+    private static Path compile(Path directory, String... sources) throws IOException {
+        return compile(directory, List.of("-proc:none"), sources);
+    }
+
+    private static Path compile(Path directory, List<String> options, String... sources) throws IOException {
+        Path classes = Files.createDirectories(directory.resolve("classes"));
+        List<String> arguments = new ArrayList<>(options);
+        arguments.addAll(List.of("-classpath", System.getProperty("java.class.path"), "-d", classes.toString()));
+        for (String source : sources) {
+            Matcher type = PUBLIC_TYPE.matcher(source);
+            assertTrue(type.find());
+            Path file = directory.resolve(type.group(1) + ".java");
+            Files.writeString(file, source);
+            arguments.add(file.toString());
+        }
+        assertEquals(0, ToolProvider.getSystemJavaCompiler().run(null, null, null, arguments.toArray(String[]::new)));
+        return classes;
+    }
+
+    private static Path jar(Path classes, Path jar) throws IOException {
+        try (OutputStream output = Files.newOutputStream(jar);
+             JarOutputStream entries = new JarOutputStream(output);
+             Stream<Path> files = Files.walk(classes)) {
+            for (Path file : files.filter(Files::isRegularFile).toList()) {
+                entries.putNextEntry(new JarEntry(classes.relativize(file).toString().replace('\\', '/')));
+                entries.write(Files.readAllBytes(file));
+                entries.closeEntry();
+            }
+        }
+        return jar;
+    }
+
+    private static byte[] classFile(Class<?> type) throws IOException {
+        try (InputStream input = type.getResourceAsStream(type.getSimpleName() + ".class")) {
+            return input.readAllBytes();
+        }
+    }
+
+    private static InputStream trickle(byte[] bytes) {
+        return new ByteArrayInputStream(bytes) {
+            @Override
+            public synchronized int read(byte[] buffer, int offset, int length) {
+                return super.read(buffer, offset, Math.min(length, 7));
+            }
+        };
+    }
+}
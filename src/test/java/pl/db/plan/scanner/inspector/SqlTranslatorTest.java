@@ -0,0 +1,141 @@
+package pl.db.plan.scanner.inspector;
+
+import jakarta.persistence.EntityManagerFactory;
+import jakarta.persistence.PersistenceException;
+import jakarta.persistence.criteria.CriteriaQuery;
+import org.hibernate.SessionFactory;
+import org.hibernate.Version;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import pl.db.plan.scanner.entities.Address;
+import pl.db.plan.scanner.entities.Person;
+import pl.db.plan.scanner.inspector.helpers.OfflineSessionFactory;
+import pl.db.plan.scanner.repositories.ActivityReports;
+import pl.db.plan.scanner.repositories.PersonSpecifications;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class SqlTranslatorTest {
+
+    private static SessionFactory sessionFactory;
+    private static QuerySources sources;
+    private static SqlTranslator translator;
+
+    @BeforeAll
+    static void buildMetamodel() {
+        sessionFactory = OfflineSessionFactory.create();
+        sources = new QuerySources(sessionFactory);
+        translator = new SqlTranslator(sessionFactory);
+    }
+
+    @AfterAll
+    static void close() {
+        sessionFactory.close();
+    }
+
+    @Test
+    void shouldTranslateQueriesOfAllSourcesWithoutDatabase() throws InterruptedException {
+        var translations = translator.translateAll(allQueries());
+
+        assertEquals(30, translations.size());
+        translations.forEach(translation -> assertFalse(translation.failed(), translation::toString));
+        Map<String, String> sql = translations.stream()
+                .collect(Collectors.toMap(translation -> translation.query().key(), SqlTranslator.Translation::sql));
+        assertEquals("select p1_0.id,p1_0.email,p1_0.name from Person p1_0 where p1_0.email=? and p1_0.name=?",
+                sql.get("PersonRepository.findByEmailAndName"));
+        assertEquals("select a1_0.id,a1_0.city,a1_0.person_id,a1_0.postalCode,a1_0.street from address a1_0 where a1_0.id in (?)",
+                sql.get("AddressRepository.findAllById"));
+        // modifying queries are translated, not executed
+        assertEquals("update activity_log al1_0 set action=? where al1_0.id=?", sql.get("ActivityLogRepository.updateActionById"));
+        assertEquals("select distinct p1_0.id,p1_0.email,p1_0.name from Person p1_0 join address a1_0 on p1_0.id=a1_0.person_id "
+                + "where a1_0.city=?", sql.get("PersonSpecifications.livesIn"));
+        assertEquals("select al1_0.person_id,count(al1_0.id) from activity_log al1_0 where al1_0.timestamp>=? group by 1 "
+                + "order by count(al1_0.id) desc", sql.get("ActivityReports.actionsPerPerson"));
+        assertTrue(sql.get("ActivityLogRepository.countActionsSince").contains("WHERE a.timestamp >= ?"));
+    }
+
+    @Test
+    void shouldApplyMaxResults() {
+        var creator = new DerivedQueryCreator(sessionFactory.getMetamodel());
+        var exists = creator.derive(new QueryIndex.Entry(Person.class.getName() + "Repository", "existsByEmail",
+                Person.class.getName(), null, false, false, List.of(new QueryIndex.Parameter("email", "java.lang.String")), null));
+
+        assertEquals("select p1_0.id from Person p1_0 where p1_0.email=? fetch first ? rows only", translator.translate(exists));
+    }
+
+    @Test
+    void shouldCastParametersByTypesOfMethodParameters() {
+        var query = query("SELECT :since, a.id FROM Address a", new QueryIndex.Parameter("since", "java.time.LocalDateTime"));
+        var untyped = query("SELECT :since, a.id FROM Address a");
+
+        assertEquals("select cast(? as timestamp(6)),a1_0.id from address a1_0", translator.translate(query));
+        assertEquals("select cast(? as integer),a1_0.id from address a1_0", translator.translate(untyped));
+        assertEquals("select cast(? as bigint),a1_0.id from address a1_0 where a1_0.city=?", translator.translate(
+                query("SELECT ?2, a.id FROM Address a WHERE a.city = ?1", new QueryIndex.Parameter("city", "java.lang.String"),
+                        new QueryIndex.Parameter("limit", "long"))));
+    }
+
+    @Test
+    void shouldReportInvalidQueries() throws InterruptedException {
+        var invalid = query("SELECT a FROM Address a WHERE a.nickname = :nickname");
+
+        assertThrows(IllegalArgumentException.class, () -> translator.translate(invalid));
+        var translations = translator.translateAll(List.of(invalid, query("SELECT COUNT(a) FROM Address a")));
+        assertTrue(translations.getFirst().failed());
+        assertNull(translations.getFirst().sql());
+        assertEquals("select count(a1_0.id) from address a1_0", translations.getLast().sql());
+    }
+
+    @Test
+    void shouldFailLoudlyWhenTranslationIsNotSupported() throws InterruptedException {
+        var foreign = new RepositoryQuery(Address.class.getName() + "Repository", "find", RepositoryQuery.Source.CRITERIA,
+                Address.class.getName(), null, false, false, List.of(), null, mock(CriteriaQuery.class), null);
+
+        var error = assertThrows(UnsupportedOperationException.class, () -> translator.translate(foreign));
+        assertTrue(error.getMessage().startsWith("Could not translate query AddressRepository.find with Hibernate "
+                + Version.getVersionString() + ", translation uses its internals and is tested with 6.6.29 only"), error::getMessage);
+        assertEquals(error.getMessage(), translator.translateAll(List.of(foreign)).getFirst().error());
+        var factory = mock(EntityManagerFactory.class);
+        when(factory.unwrap(any())).thenThrow(new PersistenceException("not Hibernate"));
+        assertTrue(assertThrows(UnsupportedOperationException.class, () -> new SqlTranslator(factory)).getMessage()
+                .contains("tested with 6.6.29"));
+    }
+
+    @Test
+    void shouldTranslateInParallelLikeOneByOne() throws InterruptedException {
+        List<RepositoryQuery> queries = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            queries.addAll(allQueries());
+        }
+        Collections.shuffle(queries);
+
+        var translations = translator.translateAll(queries);
+
+        Map<String, String> expected = allQueries().stream()
+                .collect(Collectors.toMap(RepositoryQuery::key, translator::translate));
+        for (int i = 0; i < queries.size(); i++) {
+            assertSame(queries.get(i), translations.get(i).query());
+            assertEquals(expected.get(queries.get(i).key()), translations.get(i).sql());
+        }
+    }
+
+    private static List<RepositoryQuery> allQueries() {
+        List<RepositoryQuery> queries = new ArrayList<>(sources.queries(QueryIndex.load()));
+        queries.addAll(sources.specifications(PersonSpecifications.class));
+        queries.addAll(sources.criteria(ActivityReports.class));
+        return queries;
+    }
+
+    private static RepositoryQuery query(String jpql, QueryIndex.Parameter... parameters) {
+        return new RepositoryQuery(Address.class.getName() + "Repository", "find", RepositoryQuery.Source.DECLARED,
+                Address.class.getName(), jpql, false, false, List.of(parameters), null, null, null);
+    }
+}
@@ -0,0 +1,55 @@
+package pl.db.plan.scanner.inspector;
+
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StatementSplitterTest {
+
+    // previous, regex based implementation of SqlCaptureInspector, used as a reference
+    private static final Pattern PATTERN = Pattern.compile("(/\\*.*?\\*/)(\\s+.*)", Pattern.DOTALL);
+
+    private final StatementSplitter splitter = new StatementSplitter();
+
+    @ParameterizedTest
+    @ValueSource(strings = {
+        "/* SELECT p FROM Person p WHERE p.name = :name */ select p1_0.id,p1_0.name from person p1_0 where p1_0.name=?",
+        "/* SELECT p \n FROM Person p \n WHERE p.name = :name */ select p1_0.id,p1_0.name from person p1_0 where p1_0.name=?",
+        "/* comment */\n\n    select\n        p1_0.id\n    from\n        person p1_0\n  \n",
+        "/* comment */select 1",
+        "/* a */x */ select 1",
+        "/* not closed select 1",
+        "/**/ select 1",
+        "/* only comment */   ",
+        "select p1_0.id,p1_0.name from person p1_0 where p1_0.name=?",
+        "  /* leading space */ select 1",
+        ""
+    })
+    void shouldSplitTheSameWayAsRegex(String input) {
+        SplitStatement statement = splitter.split(input);
+        Matcher matcher = PATTERN.matcher(input);
+
+        assertSame(input, statement.source());
+        if (matcher.matches()) {
+            assertTrue(statement.hasComment());
+            assertEquals(matcher.group(1).trim(), statement.jpqlComment());
+            assertEquals(matcher.group(2).trim(), statement.sql());
+        } else {
+            assertFalse(statement.hasComment());
+            assertNull(statement.jpqlComment());
+            assertEquals(input, statement.sql());
+        }
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"/* SELECT 1 */ select 1", "select 1"})
+    void shouldMaterializeStringsOnce(String input) {
+        SplitStatement statement = splitter.split(input);
+        assertSame(statement.sql(), statement.sql());
+        assertSame(statement.jpqlComment(), statement.jpqlComment());
+    }
+}
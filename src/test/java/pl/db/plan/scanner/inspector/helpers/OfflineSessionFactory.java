@@ -0,0 +1,27 @@
+package pl.db.plan.scanner.inspector.helpers;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.cfg.Configuration;
+import pl.db.plan.scanner.entities.ActivityLog;
+import pl.db.plan.scanner.entities.Address;
+import pl.db.plan.scanner.entities.Person;
+
+/**
+ * Session factory of entities of this project without database, queries are only parsed and checked against
+ * the model.
+ */
+public final class OfflineSessionFactory {
+
+    private OfflineSessionFactory() {
+    }
+
+    public static SessionFactory create() {
+        return new Configuration()
+                .addAnnotatedClass(Person.class)
+                .addAnnotatedClass(Address.class)
+                .addAnnotatedClass(ActivityLog.class)
+                .setProperty("hibernate.dialect", "org.hibernate.dialect.PostgreSQLDialect")
+                .setProperty("hibernate.boot.allow_jdbc_metadata_access", "false")
+                .buildSessionFactory();
+    }
+}
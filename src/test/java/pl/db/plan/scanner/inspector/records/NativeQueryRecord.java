@@ -1,6 +1,8 @@
 package pl.db.plan.scanner.inspector.records;
 
+import pl.db.plan.scanner.analyzer.PlanBudget;
+
 import java.util.Map;
 
-public record NativeQueryRecord(String query, Map<String, Object> parameterValues) {
+public record NativeQueryRecord(String method, String query, Map<String, Object> parameterValues, PlanBudget budget) {
 }
@@ -0,0 +1,49 @@
+package pl.db.plan.scanner.instrumentation;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class HistogramTest {
+
+    @Test
+    void shouldKeepBucketBoundsConsistent() {
+        for (long value : new long[]{0, 1, 15, 16, 17, 31, 32, 1000, 123_456_789, Long.MAX_VALUE}) {
+            int bucket = Histogram.bucket(value);
+            assertThat(Histogram.upperBound(bucket)).isGreaterThanOrEqualTo(value);
+            if (bucket > 0) {
+                assertThat(Histogram.upperBound(bucket - 1)).isLessThan(value);
+            }
+        }
+    }
+
+    @Test
+    void shouldEstimatePercentilesWithinBucketPrecision() {
+        var histogram = new Histogram();
+        for (int i = 1; i <= 10_000; i++) {
+            histogram.record(i);
+        }
+        assertEquals(10_000, histogram.count());
+        assertEquals(10_000, histogram.max());
+        assertEquals(5000.5, histogram.mean(), 0.001);
+        assertThat(histogram.percentile(50)).isBetween(5000L, 5625L);
+        assertThat(histogram.percentile(99)).isBetween(9900L, 10_000L);
+        assertEquals(10_000, histogram.percentile(100));
+    }
+
+    @Test
+    void shouldMergeHistograms() {
+        var first = new Histogram();
+        var second = new Histogram();
+        first.record(10);
+        second.record(20);
+        second.record(1_000_000);
+
+        first.merge(second);
+        assertEquals(3, first.count());
+        assertEquals(1_000_030, first.sum());
+        assertEquals(1_000_000, first.max());
+        assertThat(first.percentile(60)).isBetween(20L, 21L);
+    }
+}
@@ -0,0 +1,118 @@
+package pl.db.plan.scanner.instrumentation;
+
+import org.junit.jupiter.api.Test;
+import pl.db.plan.scanner.inspector.QueryFingerprinter;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class InstrumentedDataSourceTest {
+
+    private static final String SELECT = "/* SELECT p FROM Person p WHERE p.name = :name */ select p1_0.id from person p1_0 where p1_0.name=?";
+    private static final String UPDATE = "update activity_log set action=? where person_id=?";
+
+    @Test
+    void shouldRecordRowsAndFetchesPerFingerprint() throws SQLException {
+        var resultSet = mock(ResultSet.class);
+        when(resultSet.next()).thenReturn(true, true, true, true, true, false, true, true, true, true, true, false);
+        when(resultSet.getFetchSize()).thenReturn(2);
+        var select = mock(PreparedStatement.class);
+        when(select.executeQuery()).thenReturn(resultSet);
+        var update = mock(PreparedStatement.class);
+        when(update.executeUpdate()).thenReturn(42);
+        var connection = mock(Connection.class);
+        when(connection.prepareStatement(SELECT)).thenReturn(select);
+        when(connection.prepareStatement(UPDATE)).thenReturn(update);
+        var target = mock(DataSource.class);
+        when(target.getConnection()).thenReturn(connection);
+
+        var registry = new StatementMetricsRegistry(100);
+        var dataSource = new InstrumentedDataSource(target, registry);
+        try (Connection conn = dataSource.getConnection()) {
+            for (int i = 0; i < 2; i++) {
+                try (PreparedStatement stmt = conn.prepareStatement(SELECT)) {
+                    stmt.setString(1, "John");
+                    try (ResultSet rs = stmt.executeQuery()) {
+                        while (rs.next()) {
+                            assertNotNull(rs);
+                        }
+                    }
+                }
+            }
+            try (PreparedStatement stmt = conn.prepareStatement(UPDATE)) {
+                assertEquals(42, stmt.executeUpdate());
+            }
+        }
+
+        var selectMetrics = registry.get(new QueryFingerprinter().fingerprint(SELECT));
+        assertEquals("select p1_0.id from person p1_0 where p1_0.name=?", selectMetrics.getNormalizedSql());
+        assertEquals(2, selectMetrics.getExecutionNanos().count());
+        assertEquals(10, selectMetrics.getRowsReturned().sum());
+        assertEquals(3, selectMetrics.getFetches().max());
+
+        var updateMetrics = registry.get(new QueryFingerprinter().fingerprint(UPDATE));
+        assertEquals(42, updateMetrics.getRowsUpdated().sum());
+        assertEquals(2, registry.ranking().size());
+        verify(connection).close();
+    }
+
+    @Test
+    void shouldMeasurePlainStatementsAndReturnWrappers() throws SQLException {
+        var resultSet = mock(ResultSet.class);
+        when(resultSet.next()).thenReturn(true, false);
+        var statement = mock(Statement.class);
+        when(statement.execute(SELECT)).thenReturn(true);
+        when(statement.getResultSet()).thenReturn(resultSet);
+        when(statement.executeBatch()).thenReturn(new int[]{1, Statement.SUCCESS_NO_INFO, 2});
+        var connection = mock(Connection.class);
+        when(connection.createStatement()).thenReturn(statement);
+        var target = mock(DataSource.class);
+        when(target.getConnection()).thenReturn(connection);
+
+        var registry = new StatementMetricsRegistry(100);
+        var dataSource = new InstrumentedDataSource(target, registry);
+        try (Connection conn = dataSource.getConnection(); Statement stmt = conn.createStatement()) {
+            assertTrue(stmt.execute(SELECT));
+            try (ResultSet rs = stmt.getResultSet()) {
+                assertTrue(rs.next());
+                assertSame(stmt, rs.getStatement());
+            }
+            assertSame(conn, stmt.getConnection());
+            stmt.addBatch(UPDATE);
+            stmt.addBatch(UPDATE);
+            stmt.executeBatch();
+        }
+
+        var selectMetrics = registry.get(new QueryFingerprinter().fingerprint(SELECT));
+        assertEquals(1, selectMetrics.getRowsReturned().sum());
+        // batch of a plain statement is recorded with the sql executed last
+        assertEquals(2, selectMetrics.getExecutionNanos().count());
+        assertEquals(3, selectMetrics.getRowsUpdated().sum());
+        verify(statement, times(2)).addBatch(UPDATE);
+        verify(statement).close();
+    }
+
+    @Test
+    void shouldCountErrors() throws SQLException {
+        var statement = mock(PreparedStatement.class);
+        when(statement.executeUpdate()).thenThrow(new SQLException("boom"));
+        var connection = mock(Connection.class);
+        when(connection.prepareStatement(UPDATE)).thenReturn(statement);
+        var target = mock(DataSource.class);
+        when(target.getConnection()).thenReturn(connection);
+
+        var registry = new StatementMetricsRegistry(100);
+        var dataSource = new InstrumentedDataSource(target, registry);
+        try (Connection conn = dataSource.getConnection(); PreparedStatement stmt = conn.prepareStatement(UPDATE)) {
+            assertThrows(SQLException.class, stmt::executeUpdate);
+        }
+        assertEquals(1, registry.get(new QueryFingerprinter().fingerprint(UPDATE)).getErrors());
+    }
+}
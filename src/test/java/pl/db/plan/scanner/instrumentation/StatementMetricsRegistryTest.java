@@ -0,0 +1,49 @@
+package pl.db.plan.scanner.instrumentation;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StatementMetricsRegistryTest {
+
+    @Test
+    void shouldKeepMetricsOfTheSameSqlAndOfTheSameShape() {
+        var registry = new StatementMetricsRegistry(10);
+
+        var metrics = registry.metricsFor("select * from person where id = 1");
+
+        assertSame(metrics, registry.metricsFor("select * from person where id = 1"));
+        assertSame(metrics, registry.metricsFor("select * from person where id = 2"));
+        assertEquals(1, registry.ranking().size());
+    }
+
+    @Test
+    void shouldNotExceedLimitOfFingerprintsWhenStatementsComeConcurrently() throws InterruptedException {
+        var registry = new StatementMetricsRegistry(50);
+        var start = new CountDownLatch(1);
+
+        try (var executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < 500; i++) {
+                String sql = "select * from t" + i;
+                executor.execute(() -> {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    registry.metricsFor(sql);
+                });
+            }
+            start.countDown();
+        }
+
+        assertEquals(50, registry.ranking().size());
+        assertNull(registry.metricsFor("select * from other"));
+        registry.clear();
+        assertNotNull(registry.metricsFor("select * from other"));
+        assertEquals(1, registry.ranking().size());
+    }
+}
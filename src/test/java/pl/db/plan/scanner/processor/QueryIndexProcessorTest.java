@@ -0,0 +1,119 @@
+package pl.db.plan.scanner.processor;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import pl.db.plan.scanner.inspector.QueryIndex;
+
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class QueryIndexProcessorTest {
+
+    private static final String REPOSITORY = """
+            package shop;
+
+            import org.springframework.data.jpa.repository.JpaRepository;
+            import org.springframework.data.jpa.repository.Modifying;
+            import org.springframework.data.jpa.repository.Query;
+            import org.springframework.data.repository.query.Param;
+            import pl.db.plan.scanner.analyzer.PlanBudget;
+
+            import java.util.List;
+
+            public interface OrderRepository extends JpaRepository<OrderRepository.Order, Long> {
+
+                String BY_STATUS = "SELECT o FROM Order o WHERE o.status = :status";
+
+                @PlanBudget(maxCost = 5_000, allowedSeqScans = {"orders", "order_lines"})
+                @Query(BY_STATUS + " ORDER BY o.id")
+                List<Order> findByStatus(@Param("status") String status);
+
+                @Query(value = "SELECT * FROM orders o\\nWHERE o.customer_id IN (:ids)", nativeQuery = true)
+                List<Order> findByCustomers(@Param("ids") List<Long> ids);
+
+                @Modifying
+                @Query("DELETE FROM Order o WHERE o.id = :id")
+                int deleteOrder(@Param("id") long id);
+
+                List<Order> findByCustomerIdAndStatus(Long customerId, String status);
+
+                default List<Order> findOpen() {
+                    return findByStatus("OPEN");
+                }
+
+                class Order {
+                }
+            }
+            """;
+    private static final String NOT_REPOSITORY = """
+            package shop;
+
+            public interface Clock {
+                long now();
+            }
+            """;
+
+    @Test
+    void shouldIndexRepositoryMethods(@TempDir Path directory) throws IOException {
+        Path sources = Files.createDirectories(directory.resolve("src/shop"));
+        Path classes = Files.createDirectories(directory.resolve("classes"));
+        Files.writeString(sources.resolve("OrderRepository.java"), REPOSITORY);
+        Files.writeString(sources.resolve("Clock.java"), NOT_REPOSITORY);
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+
+        int result = compiler.run(null, null, null, "-proc:only", "-processor", QueryIndexProcessor.class.getName(),
+                "-classpath", System.getProperty("java.class.path"), "-d", classes.toString(),
+                sources.resolve("OrderRepository.java").toString(), sources.resolve("Clock.java").toString());
+
+        assertEquals(0, result);
+        QueryIndex index;
+        try (var reader = Files.newBufferedReader(classes.resolve(QueryIndex.INDEX))) {
+            index = QueryIndex.read(reader);
+        }
+        assertEquals(List.of("deleteOrder", "findByCustomerIdAndStatus", "findByCustomers", "findByStatus"),
+                index.entries().stream().map(QueryIndex.Entry::method).toList());
+        var delete = index.entries().getFirst();
+        assertEquals("OrderRepository.deleteOrder", delete.key());
+        assertEquals("shop.OrderRepository$Order", delete.entity());
+        assertTrue(delete.modifying());
+        assertEquals(List.of(new QueryIndex.Parameter("id", "long")), delete.parameters());
+        var derived = index.entries().get(1);
+        assertNull(derived.query());
+        assertEquals(List.of(new QueryIndex.Parameter("customerId", "java.lang.Long"), new QueryIndex.Parameter("status", "java.lang.String")),
+                derived.parameters());
+        var nativeQuery = index.entries().get(2);
+        assertTrue(nativeQuery.nativeQuery());
+        assertEquals("SELECT * FROM orders o\nWHERE o.customer_id IN (:ids)", nativeQuery.query());
+        assertEquals(List.of(new QueryIndex.Parameter("ids", "java.util.List")), nativeQuery.parameters());
+        // constants are resolved by the compiler
+        assertEquals("SELECT o FROM Order o WHERE o.status = :status ORDER BY o.id", index.entries().get(3).query());
+        assertEquals(3, index.queries().size());
+        // budget with default values of attributes which are not set
+        var budget = index.entries().get(3).budget();
+        assertEquals(5_000, budget.maxCost());
+        assertArrayEquals(new String[]{"orders", "order_lines"}, budget.allowedSeqScans());
+        assertEquals(Double.POSITIVE_INFINITY, budget.maxRows());
+        assertNull(delete.budget());
+    }
+
+    @Test
+    void shouldLoadIndexOfApplicationRepositories() {
+        long start = System.nanoTime();
+        var index = QueryIndex.load();
+        long millis = (System.nanoTime() - start) / 1_000_000;
+
+        assertEquals(8, index.queries().size());
+        assertEquals(List.of("ActivityLogRepository", "AddressRepository", "PersonRepository"),
+                index.entries().stream().map(entry -> entry.key().substring(0, entry.key().indexOf('.'))).distinct().toList());
+        assertEquals(2, index.queries().stream().filter(QueryIndex.Entry::modifying).count());
+        assertEquals(List.of("ActivityLogRepository.findRecentLogs", "AddressRepository.findByPersonId", "PersonRepository.findByName"),
+                index.entries().stream().filter(entry -> entry.budget() != null).map(QueryIndex.Entry::key).toList());
+        assertTrue(millis < 1000, () -> "Index loaded in " + millis + " ms");
+    }
+}